@@ -0,0 +1,119 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.benchmark;
+
+import com.invirgance.convirgance.source.FileSource;
+import com.invirgance.convirgance.target.OutputStreamTarget;
+import com.invirgance.virge.file.Convert;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures Convert for every pair of input and output formats over synthetic
+ * datasets of several widths and row counts. Output is discarded so the 
+ * score reflects parsing and encoding rather than the disk. The records
+ * counter reports records/sec; run with -prof gc (the default in 
+ * BenchmarkRunner) for allocation rates.
+ * 
+ * @author agent
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConversionBenchmark
+{
+    @Param({"json", "csv", "tsv", "pipe", "delimited", "jbin", "jbin-z"})
+    public String input;
+    
+    @Param({"json", "csv", "tsv", "pipe", "delimited", "jbin", "jbin-z"})
+    public String output;
+    
+    @Param({"10", "50", "200"})
+    public int width;
+    
+    @Param({"10000", "100000"})
+    public int rows;
+    
+    @Param({"false", "true"})
+    public boolean detectTypes;
+    
+    private File file;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters
+    {
+        public long records;
+        
+        @Setup(Level.Iteration)
+        public void reset()
+        {
+            records = 0;
+        }
+    }
+    
+    @Setup(Level.Trial)
+    public void setup() throws IOException
+    {
+        file = Formats.write(input, width, rows);
+    }
+    
+    @TearDown(Level.Trial)
+    public void teardown()
+    {
+        file.delete();
+    }
+
+    @Benchmark
+    public void convert(Counters counters)
+    {
+        Convert convert = new Convert();
+        
+        convert.setSource(new FileSource(file));
+        convert.setInput(Formats.getInput(input));
+        convert.setTarget(new OutputStreamTarget(OutputStream.nullOutputStream()));
+        convert.setOutput(Formats.getOutput(output));
+        convert.setDetectTypes(detectTypes);
+        convert.execute();
+        
+        counters.records += rows;
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.benchmark;
+
+import com.invirgance.convirgance.source.FileSource;
+import com.invirgance.convirgance.source.Source;
+import com.invirgance.convirgance.target.FileTarget;
+import com.invirgance.convirgance.target.Target;
+import com.invirgance.virge.file.source.ChannelFileSource;
+import com.invirgance.virge.file.source.MappedFileSource;
+import com.invirgance.virge.file.target.ChannelFileTarget;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the default FileSource/FileTarget against the NIO implementations
+ * used for large files. Each invocation streams the whole file, so the score
+ * is the time to move sizeMb megabytes. Pass -p sizeMb=4096 to test multi-GB 
+ * files.
+ * 
+ * @author agent
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FileIOBenchmark
+{
+    @Param({"1024"})
+    public int sizeMb;
+    
+    @Param({"8192"})
+    public int readSize;
+    
+    private File input;
+    private File output;
+    private byte[] chunk;
+
+    @Setup
+    public void setup() throws IOException
+    {
+        Random random = new Random(0);
+        
+        input = File.createTempFile("virge-io-in", ".csv");
+        output = File.createTempFile("virge-io-out", ".csv");
+        chunk = new byte[readSize];
+        
+        for(int i=0; i<chunk.length; i++) chunk[i] = (byte)('a' + random.nextInt(26));
+        
+        try(OutputStream out = new FileOutputStream(input))
+        {
+            for(long written = 0; written < sizeMb * 1024L * 1024L; written += chunk.length)
+            {
+                out.write(chunk);
+            }
+        }
+    }
+    
+    @TearDown
+    public void teardown()
+    {
+        input.delete();
+        output.delete();
+    }
+    
+    private long read(Source source) throws IOException
+    {
+        byte[] buffer = new byte[readSize];
+        long total = 0;
+        int count;
+        
+        try(InputStream in = source.getInputStream())
+        {
+            while((count = in.read(buffer)) > 0) total += count;
+        }
+        
+        return total;
+    }
+    
+    private long write(Target target) throws IOException
+    {
+        long total = sizeMb * 1024L * 1024L;
+        long written = 0;
+        
+        try(OutputStream out = target.getOutputStream())
+        {
+            while(written < total)
+            {
+                out.write(chunk);
+                written += chunk.length;
+            }
+        }
+        
+        return written;
+    }
+
+    @Benchmark
+    public long readFileSource() throws IOException
+    {
+        return read(new FileSource(input));
+    }
+
+    @Benchmark
+    public long readMappedFileSource() throws IOException
+    {
+        return read(new MappedFileSource(input));
+    }
+
+    @Benchmark
+    public long readChannelFileSource() throws IOException
+    {
+        return read(new ChannelFileSource(input));
+    }
+
+    @Benchmark
+    public long writeFileTarget() throws IOException
+    {
+        return write(new FileTarget(output));
+    }
+
+    @Benchmark
+    public long writeChannelFileTarget() throws IOException
+    {
+        return write(new ChannelFileTarget(output));
+    }
+}
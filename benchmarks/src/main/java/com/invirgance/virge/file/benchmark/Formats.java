@@ -0,0 +1,180 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.benchmark;
+
+import com.invirgance.convirgance.input.CSVInput;
+import com.invirgance.convirgance.input.DelimitedInput;
+import com.invirgance.convirgance.input.Input;
+import com.invirgance.convirgance.input.JBINInput;
+import com.invirgance.convirgance.input.JSONInput;
+import com.invirgance.convirgance.json.JSONObject;
+import com.invirgance.convirgance.output.CSVOutput;
+import com.invirgance.convirgance.output.DelimitedOutput;
+import com.invirgance.convirgance.output.JBINOutput;
+import com.invirgance.convirgance.output.JSONOutput;
+import com.invirgance.convirgance.output.Output;
+import com.invirgance.convirgance.target.FileTarget;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Format names used by the benchmarks and the synthetic data they run on. 
+ * The names match the convert tool, with jbin-z for compressed jbin.
+ * 
+ * @author agent
+ */
+public class Formats
+{
+    public static Input<JSONObject> getInput(String format)
+    {
+        switch(format)
+        {
+            case "csv":
+                return new CSVInput();
+                
+            case "tsv":
+                return new DelimitedInput('\t');
+                
+            case "pipe":
+                return new DelimitedInput('|');
+                
+            case "delimited":
+                return new DelimitedInput();
+                
+            case "jbin":
+            case "jbin-z":
+                return new JBINInput();
+                
+            case "json":
+                return new JSONInput();
+                
+            default:
+                throw new IllegalArgumentException("Unknown format: " + format);
+        }
+    }
+    
+    public static Output getOutput(String format)
+    {
+        switch(format)
+        {
+            case "csv":
+                return new CSVOutput();
+                
+            case "tsv":
+                return new DelimitedOutput('\t');
+                
+            case "pipe":
+                return new DelimitedOutput('|');
+                
+            case "delimited":
+                return new DelimitedOutput();
+                
+            case "jbin":
+                return new JBINOutput(false);
+                
+            case "jbin-z":
+                return new JBINOutput(true);
+                
+            case "json":
+                return new JSONOutput();
+                
+            default:
+                throw new IllegalArgumentException("Unknown format: " + format);
+        }
+    }
+    
+    /**
+     * Generates records with a repeatable mix of long, double, boolean and
+     * string columns.
+     * 
+     * @param width the number of columns in each record
+     * @param rows the number of records
+     * @return an iterable that generates the records on demand
+     */
+    public static Iterable<JSONObject> generate(int width, int rows)
+    {
+        return () -> new Iterator<JSONObject>() {
+            
+            private int row;
+            
+            @Override
+            public boolean hasNext()
+            {
+                return (row < rows);
+            }
+
+            @Override
+            public JSONObject next()
+            {
+                JSONObject record = new JSONObject();
+                
+                if(!hasNext()) throw new NoSuchElementException();
+                
+                for(int i=0; i<width; i++)
+                {
+                    switch(i % 4)
+                    {
+                        case 0:
+                            record.put("c" + i, (long)row * (i + 1));
+                            break;
+                            
+                        case 1:
+                            record.put("c" + i, row / (double)(i + 1));
+                            break;
+                            
+                        case 2:
+                            record.put("c" + i, ((row + i) % 3) == 0);
+                            break;
+                            
+                        default:
+                            record.put("c" + i, "value " + row + "-" + i);
+                    }
+                }
+                
+                row++;
+                
+                return record;
+            }
+        };
+    }
+    
+    /**
+     * Writes a synthetic dataset in the provided format to a temporary file.
+     * 
+     * @param format the format name
+     * @param width the number of columns
+     * @param rows the number of records
+     * @return the temporary file, deleted on exit
+     * @throws IOException if the file cannot be created
+     */
+    public static File write(String format, int width, int rows) throws IOException
+    {
+        File file = File.createTempFile("virge-bench-" + width + "x" + rows + "-", "." + format);
+        
+        file.deleteOnExit();
+        getOutput(format).write(new FileTarget(file), generate(width, rows));
+        
+        return file;
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file;
+
+import static com.invirgance.virge.Virge.HELP_DESCRIPTION_SPACING;
+import static com.invirgance.virge.Virge.HELP_SPACING;
+import static com.invirgance.virge.file.VirgeFile.printToolHelp;
+import com.invirgance.virge.file.aggregate.AggregateFunction;
+import com.invirgance.virge.file.aggregate.AggregateTransformer;
+import com.invirgance.virge.tool.Tool;
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Groups the records of a file and computes aggregates such as counts and 
+ * sums for each group. Reading and writing are handled by the convert tool, 
+ * so the results can be written in any supported format.
+ * 
+ * @author agent
+ */
+public class Aggregate implements Tool
+{
+    private Convert convert;
+    private String[] groupBy;
+    private List<AggregateFunction> functions = new ArrayList<>();
+    private long memory = AggregateTransformer.DEFAULT_MEMORY;
+    private int workers = Runtime.getRuntime().availableProcessors();
+    private File temporaryDirectory;
+
+    public String[] getGroupBy()
+    {
+        return groupBy;
+    }
+
+    /**
+     * @param groupBy the columns to group by or null to aggregate all records as one group
+     */
+    public void setGroupBy(String... groupBy)
+    {
+        this.groupBy = groupBy;
+    }
+
+    public List<AggregateFunction> getFunctions()
+    {
+        return functions;
+    }
+
+    public void setFunctions(List<AggregateFunction> functions)
+    {
+        this.functions = functions;
+    }
+
+    public long getMemory()
+    {
+        return memory;
+    }
+
+    public void setMemory(long memory)
+    {
+        this.memory = memory;
+    }
+
+    public int getWorkers()
+    {
+        return workers;
+    }
+
+    public void setWorkers(int workers)
+    {
+        this.workers = workers;
+    }
+
+    public File getTemporaryDirectory()
+    {
+        return temporaryDirectory;
+    }
+
+    public void setTemporaryDirectory(File temporaryDirectory)
+    {
+        this.temporaryDirectory = temporaryDirectory;
+    }
+    
+    @Override
+    public String getName()
+    {
+        return "aggregate";
+    }
+
+    @Override
+    public String getShortDescription()
+    {
+        return "Groups records and computes counts, sums and other aggregates per group.";
+    }
+
+    @Override
+    public String getExample()
+    {
+        return "virge.jar file aggregate --group-by region --aggregate \"count,sum(amount),distinct(customer)\" \"/sales.csv\" \"/totals.json\"";
+    }
+
+    @Override
+    public String[] getHelp()
+    {
+        return new String[]
+        {
+            HELP_SPACING + "--group-by <COLUMN,...>",
+            HELP_SPACING + "-g <COLUMN,...>",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "Columns to group records by. All records form a single group when not specified.",
+            "",
+            HELP_SPACING + "--aggregate <FUNCTION,...>",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "Aggregates to compute: count, count(col), sum(col), min(col), max(col), avg(col) and distinct(col).",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "distinct is an approximate count. Name a result with \"as\" (e.g. \"sum(amount) as total\").",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "May be repeated. Defaults to count.",
+            "",
+            HELP_SPACING + "--memory [SIZE]",
+            HELP_SPACING + "-m [SIZE]",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "Memory for groups (e.g. 1g). Defaults to 256m. Beyond this, groups are partitioned to disk.",
+            "",
+            HELP_SPACING + "--workers [COUNT]",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "Number of threads aggregating records. Defaults to the number of processors.",
+            "",
+            HELP_SPACING + "--temp-dir <DIRECTORY>",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "Directory for spilled partitions. Defaults to the system temporary directory.",
+            "",
+            HELP_SPACING + "--source, --target, --source-type, --target-type and other convert options",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "Applied as described for the convert tool. --where and --columns are applied before grouping, --skip and --limit to the groups.",
+            "",
+            HELP_SPACING + "--help",
+            HELP_SPACING + "-h",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING  + "Display this menu.",
+        };
+    }
+
+    @Override
+    public boolean parse(String[] args, int start) throws MalformedURLException, IOException
+    {
+        List<String> options = new ArrayList<>();
+        
+        convert = new Convert();
+        functions = new ArrayList<>();
+        
+        if(start == args.length) 
+        {
+            printToolHelp(this);
+            
+            return true;
+        }
+        
+        for(int i=start; i<args.length; i++)
+        {
+            switch(args[i])
+            {
+                case "--help":
+                case "-h":
+                    printToolHelp(this);
+                    return true;
+                    
+                case "--group-by":
+                case "-g":
+                    groupBy = args[++i].split(",");
+                    
+                    for(int j=0; j<groupBy.length; j++) groupBy[j] = groupBy[j].trim();
+                    
+                    break;
+                    
+                case "--aggregate":
+                    functions.addAll(AggregateFunction.parseList(args[++i]));
+                    break;
+                    
+                case "--memory":
+                case "-m":
+                    memory = convert.getSize("memory", args[++i]);
+                    break;
+                    
+                case "--workers":
+                    workers = convert.getCount("worker count", args[++i]);
+                    break;
+                    
+                case "--temp-dir":
+                    temporaryDirectory = new File(args[++i]);
+                    break;
+                    
+                default:
+                    options.add(args[i]);
+            }
+        }
+        
+        if(options.isEmpty()) 
+        {
+            System.err.println("No source specified!");
+            
+            return false;
+        }
+        
+        if(functions.isEmpty()) functions.add(AggregateFunction.parse("count"));
+        
+        return convert.parse(options.toArray(String[]::new), 0);
+    }
+
+    @Override
+    public void execute()
+    {
+        AggregateTransformer aggregate = new AggregateTransformer(groupBy, functions);
+        
+        aggregate.setMemory(memory);
+        aggregate.setThreads(workers);
+        aggregate.setTemporaryDirectory(temporaryDirectory);
+        
+        convert.addTransform(aggregate);
+        convert.execute();
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file;
+
+import com.invirgance.convirgance.ConvirganceException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Stream compression formats that can be layered underneath any file format.
+ * 
+ * @author agent
+ */
+public enum Compression
+{
+    NONE(""),
+    GZIP(".gz"),
+    DEFLATE(".deflate");
+    
+    private static final int BUFFER_SIZE = 64 * 1024;
+    
+    private final String extension;
+
+    private Compression(String extension)
+    {
+        this.extension = extension;
+    }
+
+    public String getExtension()
+    {
+        return extension;
+    }
+    
+    /**
+     * Looks up a compression by the name used on the command line.
+     * 
+     * @param name none, gzip, or deflate
+     * @return the matching compression or null if not recognized
+     */
+    public static Compression get(String name)
+    {
+        switch(name.toLowerCase())
+        {
+            case "none":
+                return NONE;
+                
+            case "gz":
+            case "gzip":
+                return GZIP;
+                
+            case "deflate":
+            case "zlib":
+                return DEFLATE;
+                
+            default:
+                return null;
+        }
+    }
+    
+    /**
+     * Determines the compression from a file name such as data.csv.gz
+     * 
+     * @param path the file name or path
+     * @return the detected compression or NONE
+     */
+    public static Compression detect(String path)
+    {
+        path = path.toLowerCase();
+        
+        if(path.endsWith(".gz") || path.endsWith(".gzip")) return GZIP;
+        if(path.endsWith(".deflate") || path.endsWith(".zz")) return DEFLATE;
+        
+        return NONE;
+    }
+    
+    /**
+     * Removes the compression extension from a file name so that the format
+     * extension can be detected. e.g. data.csv.gz becomes data.csv
+     * 
+     * @param path the file name or path
+     * @return the path without the compression extension
+     */
+    public static String strip(String path)
+    {
+        if(detect(path) == NONE) return path;
+        
+        return path.substring(0, path.lastIndexOf('.'));
+    }
+    
+    public InputStream decompress(InputStream in)
+    {
+        try
+        {
+            switch(this)
+            {
+                case GZIP:
+                    return new GZIPInputStream(in, BUFFER_SIZE);
+                    
+                case DEFLATE:
+                    return new InflaterInputStream(in, new Inflater(), BUFFER_SIZE);
+                    
+                default:
+                    return in;
+            }
+        }
+        catch(IOException e)
+        {
+            throw new ConvirganceException(e);
+        }
+    }
+    
+    public OutputStream compress(OutputStream out)
+    {
+        try
+        {
+            switch(this)
+            {
+                case GZIP:
+                    return new GZIPOutputStream(out, BUFFER_SIZE);
+                    
+                case DEFLATE:
+                    return new DeflaterOutputStream(out, new Deflater(), BUFFER_SIZE);
+                    
+                default:
+                    return out;
+            }
+        }
+        catch(IOException e)
+        {
+            throw new ConvirganceException(e);
+        }
+    }
+}
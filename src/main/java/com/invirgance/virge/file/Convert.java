@@ -41,16 +41,60 @@ import com.invirgance.convirgance.target.FileTarget;
 import com.invirgance.convirgance.target.OutputStreamTarget;
 import com.invirgance.convirgance.target.Target;
 import com.invirgance.convirgance.transform.CoerceStringsTransformer;
-import com.invirgance.virge.Virge;
+import com.invirgance.convirgance.transform.Transformer;
 import static com.invirgance.virge.Virge.HELP_DESCRIPTION_SPACING;
 import static com.invirgance.virge.Virge.HELP_SPACING;
-import static com.invirgance.virge.Virge.exit;
+import static com.invirgance.virge.file.VirgeFile.exit;
 import static com.invirgance.virge.file.VirgeFile.printToolHelp;
+import com.invirgance.virge.file.cache.CacheEntry;
+import com.invirgance.virge.file.cache.ConversionCache;
+import com.invirgance.virge.file.cache.ConversionCache.Result;
+import com.invirgance.virge.file.checkpoint.CheckpointedConversion;
+import com.invirgance.virge.file.index.IndexedJBINSource;
+import com.invirgance.virge.file.index.IndexedJBINWriter;
+import com.invirgance.virge.file.index.JBINIndex;
+import com.invirgance.virge.file.input.ConcatReader;
+import com.invirgance.virge.file.input.FormatSniffer;
+import com.invirgance.virge.file.input.ParallelDelimitedReader;
+import com.invirgance.virge.file.metrics.ConversionMetrics;
+import com.invirgance.virge.file.metrics.CountingTransformer;
+import com.invirgance.virge.file.metrics.MeteredSource;
+import com.invirgance.virge.file.metrics.MeteredTarget;
+import com.invirgance.virge.file.metrics.MeteringTransformer;
+import com.invirgance.virge.file.output.FollowWriter;
+import com.invirgance.virge.file.output.PartitionedWriter;
+import com.invirgance.virge.file.output.ShardedWriter;
+import com.invirgance.virge.file.pipeline.Pipeline;
+import com.invirgance.virge.file.source.ChannelFileSource;
+import com.invirgance.virge.file.source.CloseableSource;
+import com.invirgance.virge.file.source.CompressedSource;
+import com.invirgance.virge.file.source.FollowFileSource;
+import com.invirgance.virge.file.source.MappedFileSource;
+import com.invirgance.virge.file.source.PeekableSource;
+import com.invirgance.virge.file.source.RangeURLSource;
+import com.invirgance.virge.file.target.ChannelFileTarget;
+import com.invirgance.virge.file.target.CompressedTarget;
+import com.invirgance.virge.file.transform.FilterTransformer;
+import com.invirgance.virge.file.transform.InferTypesTransformer;
+import com.invirgance.virge.file.transform.LimitTransformer;
+import com.invirgance.virge.file.transform.ReservoirTransformer;
+import com.invirgance.virge.file.transform.SampleTransformer;
+import com.invirgance.virge.file.transform.ProjectTransformer;
+import com.invirgance.virge.file.transform.TransformerChain;
+import com.invirgance.virge.file.transform.WhereParser;
 import com.invirgance.virge.tool.Tool;
 import java.io.File;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 
 /**
@@ -59,8 +103,17 @@ import java.net.URI;
  */
 public class Convert implements Tool
 {
+    /**
+     * Local files at least this large are read and written through NIO
+     * channels rather than the default streams.
+     */
+    public static final long LARGE_FILE_THRESHOLD = 64 * 1024 * 1024;
+    
+    private static final long PROGRESS_INTERVAL = 10_000;
+    
     private Source source;
     private Input<JSONObject> input;
+    private boolean inputSpecified;
 
     private Target target;
     private Output output;
@@ -69,6 +122,46 @@ public class Convert implements Tool
     private char outputDelimiter;
     private boolean jbinCompress;
     private boolean detectTypes;
+    private boolean inferTypes;
+    private int inferSample = InferTypesTransformer.DEFAULT_SAMPLE_SIZE;
+    
+    private String[] columns;
+    private Predicate<JSONObject> where;
+    private String whereExpression;
+    private final List<Transformer> transforms = new ArrayList<>();
+    
+    private File sourceFile;
+    private File targetFile;
+    private int ioBufferSize;
+    private Compression sourceCompression;
+    private Compression targetCompression;
+    private int threads = 1;
+    private int connections = RangeURLSource.DEFAULT_CONNECTIONS;
+    private boolean pipelined;
+    private boolean follow;
+    private File checkpoint;
+    private boolean resume;
+    private boolean stats;
+    private long splitRows;
+    private long splitBytes;
+    private String[] partitionBy;
+    private int maxOpenFiles = PartitionedWriter.DEFAULT_MAX_OPEN;
+    private boolean index;
+    private long skip;
+    private long limit = -1;
+    private double sampleRate = -1;
+    private int sampleSize = -1;
+    private long seed = SampleTransformer.DEFAULT_SEED;
+    private File cacheDirectory;
+    private long cacheSize = ConversionCache.DEFAULT_MAX_SIZE;
+    private boolean cacheHash;
+    private Result cacheResult;
+    private final List<File> concat = new ArrayList<>();
+    private boolean concatOrdered = true;
+    private int concatWorkers = ConcatReader.DEFAULT_THREADS;
+    private long concatMemory = ConcatReader.DEFAULT_MEMORY;
+    
+    private ConversionMetrics metrics;
 
     public Source getSource()
     {
@@ -78,6 +171,92 @@ public class Convert implements Tool
     public void setSource(Source source)
     {
         this.source = source;
+        this.sourceFile = null;
+        
+        concat.clear();
+    }
+
+    /**
+     * @return the local files to concatenate or an empty list for a single source
+     */
+    public List<File> getSourceFiles()
+    {
+        return concat;
+    }
+
+    /**
+     * Adds a local file to the sources. When there is more than one source,
+     * the records of every source are converted into the single target. 
+     * Each source is read on its own thread and columns that differ between
+     * sources are reconciled into a union of the columns in the first record
+     * of each source. The first records are read on the worker threads from
+     * a second opening of each source. The conversion fails if a later 
+     * record has a column outside the union, unless the columns have been 
+     * set.
+     * 
+     * @param file a local source file
+     */
+    public void addSourceFile(File file)
+    {
+        if(source == null)
+        {
+            source = new FileSource(file);
+            sourceFile = file;
+            
+            return;
+        }
+        
+        if(sourceFile == null) throw new ConvirganceException("Multiple sources must be local files");
+        if(concat.isEmpty()) concat.add(sourceFile);
+        
+        concat.add(file);
+    }
+
+    public boolean isConcatOrdered()
+    {
+        return concatOrdered;
+    }
+
+    /**
+     * @param concatOrdered true to convert the sources one after another or false to convert records in the order they are parsed
+     */
+    public void setConcatOrdered(boolean concatOrdered)
+    {
+        this.concatOrdered = concatOrdered;
+    }
+
+    public int getConcatWorkers()
+    {
+        return concatWorkers;
+    }
+
+    /**
+     * @param concatWorkers the number of sources read at the same time
+     */
+    public void setConcatWorkers(int concatWorkers)
+    {
+        this.concatWorkers = concatWorkers;
+    }
+
+    public long getConcatMemory()
+    {
+        return concatMemory;
+    }
+
+    /**
+     * @param concatMemory approximate heap used to prefetch records from the sources in bytes
+     */
+    public void setConcatMemory(long concatMemory)
+    {
+        this.concatMemory = concatMemory;
+    }
+
+    /**
+     * @return the source file or null if the source is not a local file
+     */
+    public File getSourceFile()
+    {
+        return sourceFile;
     }
 
     public Input<JSONObject> getInput()
@@ -98,6 +277,7 @@ public class Convert implements Tool
     public void setTarget(Target target)
     {
         this.target = target;
+        this.targetFile = null;
     }
 
     public Output getOutput()
@@ -109,6 +289,506 @@ public class Convert implements Tool
     {
         this.output = output;
     }
+
+    public boolean isDetectTypes()
+    {
+        return detectTypes;
+    }
+
+    /**
+     * When enabled, strings in the input records are coerced into numbers 
+     * and booleans where possible.
+     * 
+     * @param detectTypes true to coerce input strings
+     */
+    public void setDetectTypes(boolean detectTypes)
+    {
+        this.detectTypes = detectTypes;
+    }
+
+    public boolean isInferTypes()
+    {
+        return inferTypes;
+    }
+
+    /**
+     * When enabled, a fixed type is inferred for each column from a sample of
+     * the first records and string values are converted to that type. This
+     * takes precedence over detectTypes.
+     * 
+     * @param inferTypes true to infer column types from a sample
+     */
+    public void setInferTypes(boolean inferTypes)
+    {
+        this.inferTypes = inferTypes;
+    }
+
+    public int getInferSample()
+    {
+        return inferSample;
+    }
+
+    /**
+     * @param inferSample the number of records sampled when inferring column types
+     */
+    public void setInferSample(int inferSample)
+    {
+        this.inferSample = inferSample;
+    }
+
+    public String[] getColumns()
+    {
+        return columns;
+    }
+
+    /**
+     * Limits the target to the provided columns in the order given.
+     * 
+     * @param columns the columns to keep or null for all columns
+     */
+    public void setColumns(String... columns)
+    {
+        this.columns = columns;
+    }
+
+    public Predicate<JSONObject> getWhere()
+    {
+        return where;
+    }
+
+    /**
+     * Only records matching the predicate are written to the target.
+     * 
+     * @param where the predicate or null for all records
+     */
+    public void setWhere(Predicate<JSONObject> where)
+    {
+        this.where = where;
+        this.whereExpression = null;
+    }
+    
+    /**
+     * Only records matching the expression are written to the target. See
+     * WhereParser for the supported syntax.
+     * 
+     * @param expression e.g. "status = 'ACTIVE' and amount &gt;= 100"
+     */
+    public void setWhere(String expression)
+    {
+        this.where = new WhereParser(expression).parse();
+        this.whereExpression = expression;
+    }
+
+    public List<Transformer> getTransforms()
+    {
+        return transforms;
+    }
+
+    /**
+     * Adds a transformer applied after the where filter and columns but 
+     * before skip and limit. Used by tools built on top of the conversion 
+     * such as sort.
+     * 
+     * @param transform the transformer to add
+     */
+    public void addTransform(Transformer transform)
+    {
+        transforms.add(transform);
+    }
+
+    public long getSplitRows()
+    {
+        return splitRows;
+    }
+
+    /**
+     * Splits the target into numbered shards of at most this many records.
+     * Requires a local file target.
+     * 
+     * @param splitRows records per shard or 0 to disable
+     */
+    public void setSplitRows(long splitRows)
+    {
+        this.splitRows = splitRows;
+    }
+
+    public long getSplitBytes()
+    {
+        return splitBytes;
+    }
+
+    /**
+     * Splits the target into numbered shards of approximately this size. 
+     * Requires a local file target.
+     * 
+     * @param splitBytes approximate bytes per shard or 0 to disable
+     */
+    public void setSplitBytes(long splitBytes)
+    {
+        this.splitBytes = splitBytes;
+    }
+
+    public String[] getPartitionBy()
+    {
+        return partitionBy;
+    }
+
+    /**
+     * Writes a file per distinct value of the given columns, each in a 
+     * directory named column=value next to the target file. Requires a local
+     * target file.
+     * 
+     * @param partitionBy the columns to partition by or null to disable
+     */
+    public void setPartitionBy(String... partitionBy)
+    {
+        this.partitionBy = partitionBy;
+    }
+
+    public int getMaxOpenFiles()
+    {
+        return maxOpenFiles;
+    }
+
+    /**
+     * @param maxOpenFiles the maximum number of partition files open at once
+     */
+    public void setMaxOpenFiles(int maxOpenFiles)
+    {
+        this.maxOpenFiles = maxOpenFiles;
+    }
+
+    public boolean isStats()
+    {
+        return stats;
+    }
+
+    /**
+     * When enabled, progress is printed to stderr during the conversion and
+     * a summary of the metrics is printed when it completes.
+     * 
+     * @param stats true to print conversion statistics
+     */
+    public void setStats(boolean stats)
+    {
+        this.stats = stats;
+    }
+
+    /**
+     * Metrics are always collected. This returns the metrics of the current
+     * or most recent call to execute().
+     * 
+     * @return the conversion metrics or null if execute() has not been called
+     */
+    public ConversionMetrics getMetrics()
+    {
+        return metrics;
+    }
+
+    public int getIOBufferSize()
+    {
+        return ioBufferSize;
+    }
+
+    /**
+     * Sets the buffer size used when reading and writing local files. Setting
+     * a size forces the FileChannel based sources and targets regardless of 
+     * file size, in place of memory mapping large sources.
+     * 
+     * @param ioBufferSize buffer size in bytes or 0 for the defaults
+     */
+    public void setIOBufferSize(int ioBufferSize)
+    {
+        if(ioBufferSize < 0) throw new ConvirganceException("Buffer size must not be negative: " + ioBufferSize);
+        
+        this.ioBufferSize = ioBufferSize;
+    }
+
+    public Compression getSourceCompression()
+    {
+        return sourceCompression;
+    }
+
+    /**
+     * Sets the compression of the source. When not set, the compression is
+     * detected from the source file extension (e.g. data.csv.gz).
+     * 
+     * @param sourceCompression compression of the source or null to detect
+     */
+    public void setSourceCompression(Compression sourceCompression)
+    {
+        this.sourceCompression = sourceCompression;
+    }
+
+    public Compression getTargetCompression()
+    {
+        return targetCompression;
+    }
+
+    /**
+     * Sets the compression of the target. When not set, the compression is
+     * detected from the target file extension (e.g. data.jbin.gz).
+     * 
+     * @param targetCompression compression of the target or null to detect
+     */
+    public void setTargetCompression(Compression targetCompression)
+    {
+        this.targetCompression = targetCompression;
+    }
+
+    public int getThreads()
+    {
+        return threads;
+    }
+
+    /**
+     * Sets the number of threads used to parse the source. Parallel parsing
+     * is only possible for local CSV and delimited files. Other sources are
+     * always read on a single thread.
+     * 
+     * @param threads number of parser threads or 0 to use all available processors
+     */
+    public void setThreads(int threads)
+    {
+        if(threads < 0) throw new ConvirganceException("Thread count must not be negative: " + threads);
+        if(threads == 0) threads = Runtime.getRuntime().availableProcessors();
+        
+        this.threads = threads;
+    }
+
+    public int getConnections()
+    {
+        return connections;
+    }
+
+    /**
+     * Sets the number of concurrent range requests used to download HTTP
+     * sources. Servers that do not support ranges are downloaded on a single
+     * connection.
+     * 
+     * @param connections number of concurrent downloads
+     */
+    public void setConnections(int connections)
+    {
+        if(connections < 1) throw new ConvirganceException("Connection count must be at least 1: " + connections);
+        
+        this.connections = connections;
+    }
+
+    public File getCheckpoint()
+    {
+        return checkpoint;
+    }
+
+    /**
+     * Enables checkpointing of the conversion. The target must be a local
+     * file. Progress is periodically saved to the checkpoint file, which is
+     * removed when the conversion completes.
+     * 
+     * @param checkpoint the checkpoint file or null to disable checkpoints
+     */
+    public void setCheckpoint(File checkpoint)
+    {
+        this.checkpoint = checkpoint;
+    }
+
+    public boolean isResume()
+    {
+        return resume;
+    }
+
+    /**
+     * When enabled, a conversion with a checkpoint continues from the saved
+     * checkpoint rather than starting over. If no checkpoint has been saved
+     * the conversion starts from the beginning.
+     * 
+     * @param resume true to resume from the checkpoint
+     */
+    public void setResume(boolean resume)
+    {
+        this.resume = resume;
+    }
+
+    public boolean isIndex()
+    {
+        return index;
+    }
+
+    /**
+     * When enabled, JBIN targets are written with a sparse index sidecar
+     * (e.g. data.jbin.idx) that allows later reads to seek directly to a 
+     * record and counts to be answered without reading the file.
+     * 
+     * @param index true to write an index with JBIN targets
+     */
+    public void setIndex(boolean index)
+    {
+        this.index = index;
+    }
+
+    public long getSkip()
+    {
+        return skip;
+    }
+
+    /**
+     * Skips the given number of records before converting. Indexed JBIN
+     * sources seek directly to the first record when no where filter is set.
+     * 
+     * @param skip number of records to skip
+     */
+    public void setSkip(long skip)
+    {
+        this.skip = skip;
+    }
+
+    public long getLimit()
+    {
+        return limit;
+    }
+
+    /**
+     * @param limit the maximum number of records to convert or -1 for no limit
+     */
+    public void setLimit(long limit)
+    {
+        this.limit = limit;
+    }
+
+    public double getSampleRate()
+    {
+        return sampleRate;
+    }
+
+    /**
+     * Keeps each record with the given probability. Sampling is applied 
+     * before skip and limit so a limit stops reading once enough sampled 
+     * records are converted.
+     * 
+     * @param sampleRate probability between 0 and 1 or -1 for no sampling
+     */
+    public void setSampleRate(double sampleRate)
+    {
+        this.sampleRate = sampleRate;
+    }
+
+    public int getSampleSize()
+    {
+        return sampleSize;
+    }
+
+    /**
+     * Converts a uniform random sample of exactly this many records, or all
+     * of the records if there are fewer. The entire source is read.
+     * 
+     * @param sampleSize the number of records to sample or -1 for no sampling
+     */
+    public void setSampleSize(int sampleSize)
+    {
+        this.sampleSize = sampleSize;
+    }
+
+    public long getSeed()
+    {
+        return seed;
+    }
+
+    /**
+     * @param seed the random seed used by sampling so that runs are reproducible
+     */
+    public void setSeed(long seed)
+    {
+        this.seed = seed;
+    }
+
+    public File getCacheDirectory()
+    {
+        return cacheDirectory;
+    }
+
+    /**
+     * Enables the conversion cache. When the source file and the options 
+     * are unchanged since a previous conversion, the cached output is linked
+     * to the target instead of converting again. Requires a local source and
+     * target file.
+     * 
+     * @param cacheDirectory the cache directory or null to disable caching
+     */
+    public void setCacheDirectory(File cacheDirectory)
+    {
+        this.cacheDirectory = cacheDirectory;
+    }
+
+    public long getCacheSize()
+    {
+        return cacheSize;
+    }
+
+    /**
+     * @param cacheSize total size of cached outputs in bytes before the least recently used are evicted
+     */
+    public void setCacheSize(long cacheSize)
+    {
+        this.cacheSize = cacheSize;
+    }
+
+    public boolean isCacheHash()
+    {
+        return cacheHash;
+    }
+
+    /**
+     * When enabled, a content hash of the source is cached so that a source 
+     * with a new modification time but the same content is not converted 
+     * again.
+     * 
+     * @param cacheHash true to hash source files
+     */
+    public void setCacheHash(boolean cacheHash)
+    {
+        this.cacheHash = cacheHash;
+    }
+
+    /**
+     * @return the outcome of the cache lookup by the last execute() or null if caching is disabled
+     */
+    public Result getCacheResult()
+    {
+        return cacheResult;
+    }
+
+    public boolean isFollow()
+    {
+        return follow;
+    }
+
+    /**
+     * When enabled, the source file is followed like <code>tail -f</code>.
+     * The conversion keeps running and converts records as they are appended
+     * to the source, flushing the target whenever the source is idle.
+     * 
+     * @param follow true to follow the source file
+     */
+    public void setFollow(boolean follow)
+    {
+        this.follow = follow;
+    }
+
+    public boolean isPipelined()
+    {
+        return pipelined;
+    }
+
+    /**
+     * When enabled, reading, transforming and writing run on separate threads
+     * connected by bounded queues so that parse and encode costs overlap.
+     * 
+     * @param pipelined true to run the conversion stages concurrently
+     */
+    public void setPipelined(boolean pipelined)
+    {
+        this.pipelined = pipelined;
+    }
     
     private boolean isURL(String path)
     {
@@ -133,11 +813,15 @@ public class Convert implements Tool
     {
         File file;
         
+        sourceFile = null;
+        
+        if(sourceCompression == null) sourceCompression = Compression.detect(isURL(path) ? URI.create(path).getPath() : path);
+        
         if(path.equals("-")) return new InputStreamSource(System.in);
           
         if(isURL(path))
         {
-            return new InputStreamSource(URI.create(path).toURL().openStream());
+            return new RangeURLSource(URI.create(path).toURL());
         }
         
         file = new File(path);
@@ -149,12 +833,59 @@ public class Convert implements Tool
             throw new ConvirganceException("File not found: " + path);
         }
         
+        sourceFile = file;
+        
+        return getFileSource(file);
+    }
+    
+    private Source getFileSource(File file)
+    {
+        if(ioBufferSize > 0) return new ChannelFileSource(file, ioBufferSize);
+        if(file.length() >= LARGE_FILE_THRESHOLD) return new MappedFileSource(file);
+        
         return new FileSource(file);
     }
     
+    /**
+     * Adds a source path or glob. Additional sources must be local files.
+     */
+    private void addSource(String path) throws MalformedURLException, IOException
+    {
+        List<Path> files;
+        
+        if(!isURL(path) && Glob.isGlob(path))
+        {
+            files = new Glob(path).find();
+            
+            if(files.isEmpty()) exit(255, "No files match: " + path);
+            
+            for(Path file : files) addSource(file.toString());
+            
+            return;
+        }
+        
+        if(source == null)
+        {
+            source = getSource(path);
+            
+            if(input == null) input = detectInput(path);
+            
+            return;
+        }
+        
+        if(sourceFile == null || isURL(path) || path.equals("-")) exit(255, "Multiple sources must be local files");
+        if(!new File(path).isFile()) exit(255, "File not found: " + path);
+        
+        addSourceFile(new File(path));
+    }
+    
     private Target getTarget(String path) throws MalformedURLException, IOException
     {
         File file;
+        
+        targetFile = null;
+        
+        if(targetCompression == null) targetCompression = Compression.detect(isURL(path) ? URI.create(path).getPath() : path);
 
         if(path.equals("-")) return new OutputStreamTarget(System.out);
     
@@ -170,18 +901,45 @@ public class Convert implements Tool
             file.getParentFile().mkdirs();
         }
         
+        targetFile = file;
+        
+        return getFileTarget(file);
+    }
+    
+    private Target getFileTarget(File file)
+    {
+        if(ioBufferSize > 0) return new ChannelFileTarget(file, ioBufferSize);
+        
+        // Large sources generally produce large targets
+        if(sourceFile != null && sourceFile.length() >= LARGE_FILE_THRESHOLD) return new ChannelFileTarget(file);
+        
         return new FileTarget(file);
     }   
     
-    // TODO: Improve auto-detection
-    private Input<JSONObject> detectInput(String path) throws MalformedURLException
+    private Target getShardTarget(File file)
+    {
+        JBINIndex.delete(file);
+        
+        return getFileTarget(file);
+    }
+    
+    /**
+     * Chooses the input from the extension of a path, ignoring any 
+     * compression extension. Sources with other extensions are detected 
+     * from their content when they are read.
+     * 
+     * @param path a file path or URL
+     * @return the input for the extension or null if it isn't recognized
+     * @see FormatSniffer
+     */
+    Input<JSONObject> detectInput(String path) throws MalformedURLException
     {
         if(isURL(path))
         {
             path = URI.create(path).toURL().getFile();
         }
         
-        path = path.toLowerCase();
+        path = Compression.strip(path.toLowerCase());
         
         if(path.endsWith(".json")) return new JSONInput();
         if(path.endsWith(".csv")) return new CSVInput(); 
@@ -190,6 +948,51 @@ public class Convert implements Tool
         return null;
     }
     
+    /**
+     * Reads a local file, decompressing it based on its extension. When no 
+     * input is given the format is detected from the content.
+     * 
+     * @param file the file to read
+     * @param input the format of the file or null to detect it
+     * @return the records of the file
+     */
+    static Iterable<JSONObject> read(File file, Input<JSONObject> input)
+    {
+        return read(new FileSource(file), file.getPath(), input);
+    }
+    
+    /**
+     * Reads a source, decompressing it if the name has a compression
+     * extension and detecting the format from the content if no input is 
+     * given.
+     * 
+     * @param source the source to read
+     * @param name the path of the source
+     * @param input the input or null to detect it
+     * @return the records of the source
+     */
+    static Iterable<JSONObject> read(Source source, String name, Input<JSONObject> input)
+    {
+        Compression compression = Compression.detect(name);
+        Input<JSONObject> reader = input;
+        PeekableSource peekable;
+        FormatSniffer sniffer;
+        
+        if(compression != Compression.NONE) source = new CompressedSource(source, compression);
+        
+        if(reader == null)
+        {
+            peekable = new PeekableSource(source, FormatSniffer.PEEK_SIZE);
+            sniffer = new FormatSniffer(peekable.peek());
+            reader = sniffer.getInput();
+            source = peekable;
+            
+            if(reader == null) throw new ConvirganceException("Unable to detect the format of " + name);
+        }
+        
+        return reader.read(source);
+    }
+    
     // TODO: Should the default be symetrical input/output?
     private Output detectOutput(String path) throws MalformedURLException
     {
@@ -198,7 +1001,7 @@ public class Convert implements Tool
             path = URI.create(path).toURL().getFile();
         }
         
-        path = path.toLowerCase();
+        path = Compression.strip(path.toLowerCase());
         
         if(path.endsWith(".json")) return new JSONOutput();
         if(path.endsWith(".csv")) return new CSVOutput(); 
@@ -207,7 +1010,7 @@ public class Convert implements Tool
         return null;
     }
    
-    private Input<JSONObject> getInputType(String type)
+    Input<JSONObject> getInputType(String type)
     {
         switch(type)
         {
@@ -238,36 +1041,452 @@ public class Convert implements Tool
         }
     }
     
-    private Output getOutputType(String type)
+    private Output getOutputType(String type)
+    {
+        switch(type)
+        {
+            case "csv": 
+                return new CSVOutput();
+            
+            case "tsv":
+                return new DelimitedOutput('\t');
+            
+            case "pipe":
+                return new DelimitedOutput('|');
+            
+            case "delimited":
+                
+                if(outputDelimiter != 0) return new DelimitedOutput(outputDelimiter);
+                
+                return new DelimitedOutput();
+            
+            case "jbin":
+                return new JBINOutput(jbinCompress);
+                
+            case "json":
+                return new JSONOutput();
+                
+            default:
+                exit(255, "Unknown output type: " + type);
+                return null; // Keep the compiler happy
+        }
+    }
+
+    private Compression getCompression(String name)
+    {
+        Compression compression = Compression.get(name);
+        
+        if(compression == null) exit(255, "Unknown compression: " + name);
+        
+        return compression;
+    }
+    
+    private IndexedJBINSource getIndexedSource()
+    {
+        JBINIndex jbinIndex;
+        
+        if(skip <= 0 || where != null || !transforms.isEmpty() || sourceFile == null || follow || isSampled() || isConcat()) return null;
+        if(!(input instanceof JBINInput)) return null;
+        if(sourceCompression != null && sourceCompression != Compression.NONE) return null;
+        
+        jbinIndex = JBINIndex.load(sourceFile);
+        
+        if(jbinIndex == null) return null;
+        
+        return new IndexedJBINSource(sourceFile, jbinIndex, jbinIndex.getSegment(skip));
+    }
+    
+    private Source openSource(Source base)
+    {
+        Source metered;
+        
+        if(base instanceof RangeURLSource) ((RangeURLSource)base).setConnections(connections);
+        
+        metered = new MeteredSource(base, metrics);
+        
+        if(sourceCompression == null || sourceCompression == Compression.NONE) return metered;
+        
+        return new CompressedSource(metered, sourceCompression);
+    }
+    
+    /**
+     * Detects the input type from the content of the source. The peeked bytes
+     * remain buffered so the source is only read once.
+     */
+    private Source sniff(Source from)
+    {
+        PeekableSource peekable = new PeekableSource(from, FormatSniffer.PEEK_SIZE);
+        FormatSniffer sniffer = new FormatSniffer(peekable.peek());
+        Compression compression = sniffer.getCompression();
+        
+        if(compression != Compression.NONE && (sourceCompression == null || sourceCompression == Compression.NONE))
+        {
+            sourceCompression = compression;
+            peekable = new PeekableSource(new CompressedSource(peekable, compression), FormatSniffer.PEEK_SIZE);
+            sniffer = new FormatSniffer(peekable.peek());
+        }
+        
+        input = sniffer.getInput();
+        
+        return peekable;
+    }
+    
+    private void convertCheckpointed(Source from)
+    {
+        CheckpointedConversion conversion;
+        List<Transformer> transformers = new ArrayList<>();
+        boolean compressed = (sourceCompression != null && sourceCompression != Compression.NONE);
+        
+        if(targetFile == null) exit(254, "Checkpoints require a local target file");
+        if(output instanceof JSONOutput) exit(254, "JSON targets cannot be checkpointed");
+        if(targetCompression == Compression.DEFLATE) exit(254, "Deflate targets cannot be checkpointed");
+        if(pipelined || follow || inferTypes || splitRows > 0 || splitBytes > 0 || partitionBy != null || index) exit(254, "--checkpoint cannot be combined with --pipeline, --follow, --infer-types, --split-rows, --split-bytes, --partition-by or --index");
+        if(skip > 0 || limit >= 0 || isSampled() || !transforms.isEmpty()) exit(254, "Checkpoints are only supported by the convert tool without --skip, --limit or sampling");
+        
+        conversion = new CheckpointedConversion(input, output, targetFile, checkpoint);
+        
+        if(sourceFile != null && !compressed && (input instanceof CSVInput || input instanceof DelimitedInput))
+        {
+            conversion.setSourceFile(sourceFile, input instanceof CSVInput);
+            
+            if(from instanceof PeekableSource) ((PeekableSource)from).close();
+        }
+        else
+        {
+            conversion.setSource(from);
+        }
+        
+        if(where != null) transformers.add(new FilterTransformer(where));
+        if(columns != null) transformers.add(new ProjectTransformer(columns));
+        if(detectTypes) transformers.add(new CoerceStringsTransformer());
+        
+        if(!transformers.isEmpty()) conversion.setTransformer(new TransformerChain(transformers));
+        
+        conversion.setHeaderLine(output instanceof CSVOutput || output instanceof DelimitedOutput);
+        conversion.setCompression(targetCompression);
+        conversion.setMetrics(metrics);
+        
+        conversion.run(resume);
+    }
+    
+    private FollowFileSource openFollow()
+    {
+        FollowFileSource following;
+        
+        if(sourceFile == null) exit(254, "Only local source files can be followed");
+        if(!transforms.isEmpty()) exit(254, "Only the convert tool can follow a source file");
+        if(pipelined || inferTypes || splitRows > 0 || splitBytes > 0 || partitionBy != null || index) exit(254, "--follow cannot be combined with --pipeline, --infer-types, --split-rows, --split-bytes, --partition-by or --index");
+        if(output instanceof JSONOutput) exit(254, "JSON targets cannot be followed");
+        if(targetCompression == Compression.DEFLATE) exit(254, "Deflate targets cannot be followed");
+        
+        if(input == null) ((PeekableSource)sniff(new FileSource(sourceFile))).close();
+        
+        if(sourceCompression != null && sourceCompression != Compression.NONE) exit(254, "Compressed sources cannot be followed");
+        if(input == null || input instanceof JBINInput) exit(254, "Only text sources can be followed");
+        
+        following = new FollowFileSource(sourceFile);
+        
+        following.setSkipHeader(input instanceof CSVInput || input instanceof DelimitedInput);
+        
+        return following;
+    }
+    
+    private Target openTarget()
+    {
+        Target metered = new MeteredTarget(target, metrics);
+        
+        if(targetCompression == null || targetCompression == Compression.NONE) return metered;
+        
+        return new CompressedTarget(metered, targetCompression);
+    }
+    
+    private Consumer<Iterable<JSONObject>> getFollowWriter(FollowFileSource following)
+    {
+        FollowWriter writer = new FollowWriter(output, new MeteredTarget(target, metrics));
+        
+        writer.setHeaderLine(output instanceof CSVOutput || output instanceof DelimitedOutput);
+        writer.setCompression(targetCompression);
+        
+        // Records already read reach the target while waiting for more
+        following.setIdleListener(writer::flush);
+        
+        return writer::write;
+    }
+    
+    private Consumer<Iterable<JSONObject>> getWriter(Target to)
+    {
+        ShardedWriter writer;
+        IndexedJBINWriter indexed;
+        PartitionedWriter partitioned;
+        
+        if(index)
+        {
+            if(!(output instanceof JBINOutput)) exit(254, "Only jbin targets can be indexed");
+            if(targetFile == null) exit(254, "Indexing requires a local target file");
+            if(targetCompression != null && targetCompression != Compression.NONE) exit(254, "Compressed files cannot be indexed");
+            if(jbinCompress) exit(254, "--index cannot be combined with --jbin-compress, as compressed segments may depend on the segments before them");
+            if(splitRows > 0 || splitBytes > 0 || partitionBy != null) exit(254, "--index cannot be combined with --split-rows, --split-bytes or --partition-by");
+            
+            indexed = new IndexedJBINWriter(output, targetFile);
+            
+            return records -> metrics.addBytesOut(indexed.write(records).getLength());
+        }
+        
+        if(partitionBy != null)
+        {
+            if(targetFile == null) exit(254, "Partitioning requires a local target file");
+            if(output instanceof JSONOutput) exit(254, "JSON targets cannot be partitioned");
+            if(targetCompression == Compression.DEFLATE) exit(254, "Deflate targets cannot be partitioned");
+            if(splitRows > 0 || splitBytes > 0) exit(254, "--partition-by cannot be combined with --split-rows or --split-bytes");
+            
+            partitioned = new PartitionedWriter(output, targetFile, partitionBy, targetCompression);
+            
+            partitioned.setHeaderLine(output instanceof CSVOutput || output instanceof DelimitedOutput);
+            partitioned.setMaxOpen(maxOpenFiles);
+            
+            return records -> metrics.addBytesOut(partitioned.write(records));
+        }
+        
+        if(splitRows <= 0 && splitBytes <= 0) return records -> output.write(to, records);
+        if(targetFile == null) throw new ConvirganceException("Splitting the output requires a local file target");
+        if(output instanceof JSONOutput) exit(254, "JSON targets cannot be split");
+        
+        writer = new ShardedWriter(output, targetFile, targetCompression);
+        
+        writer.setHeaderLine(output instanceof CSVOutput || output instanceof DelimitedOutput);
+        writer.setSplitRows(splitRows);
+        writer.setSplitBytes(splitBytes);
+        writer.setTargets(this::getShardTarget);
+        
+        return records -> {
+            for(ShardedWriter.Shard shard : writer.write(records)) metrics.addBytesOut(shard.getBytes());
+        };
+    }
+    
+    private long getLong(String name, String value)
+    {
+        try
+        {
+            return Long.parseLong(value);
+        }
+        catch(NumberFormatException e)
+        {
+            exit(255, "Invalid " + name + ": " + value);
+            return 0; // Keep the compiler happy
+        }
+    }
+    
+    private double getRate(String name, String value)
+    {
+        double rate = -1;
+        
+        try
+        {
+            rate = Double.parseDouble(value);
+        }
+        catch(NumberFormatException e)
+        {
+            // Reported below
+        }
+        
+        if(!(rate >= 0 && rate <= 1)) exit(255, "Invalid " + name + ": " + value);
+        
+        return rate;
+    }
+    
+    int getCount(String name, String value)
+    {
+        try
+        {
+            return Integer.parseInt(value);
+        }
+        catch(NumberFormatException e)
+        {
+            exit(255, "Invalid " + name + ": " + value);
+            return 0; // Keep the compiler happy
+        }
+    }
+    
+    long getSize(String name, String value)
+    {
+        long multiplier = 1;
+        char unit = value.isEmpty() ? 0 : value.charAt(value.length() - 1);
+        
+        switch(Character.toLowerCase(unit))
+        {
+            // Each unit intentionally falls through to the smaller units
+            case 'g':
+                multiplier *= 1024;
+            case 'm':
+                multiplier *= 1024;
+            case 'k':
+                multiplier *= 1024;
+                value = value.substring(0, value.length() - 1);
+        }
+        
+        try
+        {
+            return Long.parseLong(value) * multiplier;
+        }
+        catch(NumberFormatException e)
+        {
+            exit(255, "Invalid " + name + ": " + value);
+            return 0; // Keep the compiler happy
+        }
+    }
+    
+    /**
+     * Describes every option that changes the converted output. Part of the
+     * cache key, so options that can't be described disable caching.
+     */
+    private String getCacheOptions()
+    {
+        StringBuilder options = new StringBuilder();
+        
+        options.append("input=").append(input == null ? "detect" : input.getClass().getName());
+        
+        if(input instanceof DelimitedInput) options.append(" source-delimiter=").append((int)((DelimitedInput)input).getDelimiter());
+        
+        options.append(" output=").append(output.getClass().getName());
+        
+        if(output instanceof DelimitedOutput) options.append(" target-delimiter=").append((int)((DelimitedOutput)output).getDelimiter());
+        
+        options.append(" jbin-compress=").append(jbinCompress);
+        options.append(" detect-types=").append(detectTypes);
+        options.append(" infer-types=").append(inferTypes ? inferSample : 0);
+        options.append(" source-compression=").append(sourceCompression);
+        options.append(" target-compression=").append(targetCompression);
+        options.append(" columns=").append(columns == null ? null : String.join(",", columns));
+        options.append(" where=").append(whereExpression);
+        options.append(" skip=").append(skip);
+        options.append(" limit=").append(limit);
+        options.append(" sample-rate=").append(sampleRate);
+        options.append(" sample-size=").append(sampleSize);
+        options.append(" seed=").append(seed);
+        
+        return options.toString();
+    }
+    
+    private ConversionCache openCache()
+    {
+        ConversionCache cache;
+        
+        if(sourceFile == null || targetFile == null || isConcat()) exit(254, "--cache-dir requires a single local source and a local target file");
+        if(follow || checkpoint != null || index || splitRows > 0 || splitBytes > 0 || partitionBy != null) exit(254, "--cache-dir cannot be combined with --follow, --checkpoint, --index, --split-rows, --split-bytes or --partition-by");
+        if(!transforms.isEmpty() || (where != null && whereExpression == null)) exit(254, "--cache-dir is not supported by this tool");
+        
+        cache = new ConversionCache(cacheDirectory);
+        
+        cache.setMaxSize(cacheSize);
+        cache.setHashing(cacheHash);
+        
+        return cache;
+    }
+    
+    private boolean isConcat()
+    {
+        return (concat.size() > 1);
+    }
+    
+    private Input<JSONObject> getConcatInput(File file)
+    {
+        if(inputSpecified) return input;
+        
+        try
+        {
+            return detectInput(file.getPath());
+        }
+        catch(MalformedURLException e)
+        {
+            throw new ConvirganceException(e);
+        }
+    }
+    
+    /**
+     * Opens the source when the worker thread starts reading it rather than
+     * when the concatenation starts.
+     */
+    private Iterable<JSONObject> readConcat(File file, CloseableSource source)
+    {
+        return () -> read(source, file.getPath(), getConcatInput(file)).iterator();
+    }
+    
+    /**
+     * Reads only the first record of a source. The source is opened apart
+     * from the one being concatenated and closed as soon as the record has
+     * been read.
+     */
+    private Iterable<JSONObject> peekConcat(File file)
+    {
+        return () -> {
+            CloseableSource peek = new CloseableSource(new FileSource(file));
+            Iterator<JSONObject> iterator;
+            
+            try
+            {
+                iterator = read(peek, file.getPath(), getConcatInput(file)).iterator();
+                
+                return iterator.hasNext() ? List.of(iterator.next()).iterator() : Collections.emptyIterator();
+            }
+            finally
+            {
+                peek.close();
+            }
+        };
+    }
+    
+    private void closePeeked(CloseableSource from)
+    {
+        if(from.getSource() instanceof PeekableSource) ((PeekableSource)from.getSource()).close();
+    }
+    
+    private Runnable getLimitListener(CloseableSource from, ParallelDelimitedReader reader, ConcatReader concatenated, List<CloseableSource> sources)
     {
-        switch(type)
-        {
-            case "csv": 
-                return new CSVOutput();
-            
-            case "tsv":
-                return new DelimitedOutput('\t');
+        return () -> {
+            if(reader != null) reader.close();
+            else if(concatenated == null) from.close();
+            else concatenated.close();
             
-            case "pipe":
-                return new DelimitedOutput('|');
+            for(CloseableSource source : sources) source.close();
             
-            case "delimited":
-                
-                if(outputDelimiter != 0) return new DelimitedOutput(outputDelimiter);
-                
-                return new DelimitedOutput();
+            // Spilled runs and partitions are no longer needed either
+            closeTransforms();
+        };
+    }
+    
+    /**
+     * Closes the added transformers that hold threads or temporary files 
+     * until their output is exhausted.
+     */
+    private void closeTransforms()
+    {
+        for(Transformer transform : transforms)
+        {
+            if(!(transform instanceof AutoCloseable)) continue;
             
-            case "jbin":
-                return new JBINOutput(jbinCompress);
-                
-            case "json":
-                return new JSONOutput();
-                
-            default:
-                exit(255, "Unknown output type: " + type);
-                return null; // Keep the compiler happy
+            try
+            {
+                ((AutoCloseable)transform).close();
+            }
+            catch(Exception e)
+            {
+                throw new ConvirganceException(e);
+            }
         }
     }
+    
+    private boolean isSampled()
+    {
+        return (sampleRate >= 0 || sampleSize >= 0);
+    }
+    
+    private boolean isParallel()
+    {
+        if(threads < 2 || sourceFile == null || follow || isConcat()) return false;
+        if(sourceCompression != null && sourceCompression != Compression.NONE) return false;
+        
+        return (input instanceof CSVInput || input instanceof DelimitedInput);
+    }
 
     private boolean error(String message)
     {
@@ -301,7 +1520,21 @@ public class Convert implements Tool
         {
             HELP_SPACING + "--source <PATH> or piped data -",
             HELP_SPACING + "-s <PATH> or piped data -",
-            HELP_SPACING + HELP_DESCRIPTION_SPACING + "Alternate method of specifying the source file. When piping data the input type must be specified.",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "Alternate method of specifying the source file. When the type can't be determined from the extension it is detected from the content.",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "Repeat or use a glob such as \"parts/*.csv\" to convert several local files into one target.",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "Sources with different columns are combined using the columns of their first records. Use --columns if later records add columns.",
+            "",
+            HELP_SPACING + "--source-list <FILE>",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "Read the source paths or globs from FILE, one per line.",
+            "",
+            HELP_SPACING + "--concat-order [source|arrival]",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "With several sources, write the records one source after another (source, the default) or as soon as they are parsed (arrival).",
+            "",
+            HELP_SPACING + "--concat-workers [COUNT]",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "Number of sources read at the same time. Defaults to " + ConcatReader.DEFAULT_THREADS + ".",
+            "",
+            HELP_SPACING + "--concat-memory [SIZE]",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "Approximate memory used to read ahead in the sources (e.g. 256m). Defaults to 64m.",
             "",
             HELP_SPACING + "--source-type [FORMAT]",
             HELP_SPACING + "-i [FORMAT]",
@@ -327,9 +1560,101 @@ public class Convert implements Tool
             HELP_SPACING + "-a",
             HELP_SPACING + HELP_DESCRIPTION_SPACING + "Attempts to automatically coerce strings in the input records into numbers and booleans.",
             "",
+            HELP_SPACING + "--columns [COLUMN,...]",
+            HELP_SPACING + "-c [COLUMN,...]",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "Only keep the listed columns, in the order given.",
+            "",
+            HELP_SPACING + "--where [EXPRESSION]",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "Only keep records matching the expression. Supports =, !=, <, <=, >, >=, in (...), is [not] null, and, or, not and parentheses.",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "e.g. \"status = 'ACTIVE' and region in ('US', 'CA')\"",
+            "",
+            HELP_SPACING + "--infer-types",
+            HELP_SPACING + "-A",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "Infers a fixed type for each column from the first records and converts values to it. Faster and more consistent than --detect-input-types.",
+            "",
+            HELP_SPACING + "--infer-sample [COUNT]",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "Number of records sampled by --infer-types. Defaults to " + InferTypesTransformer.DEFAULT_SAMPLE_SIZE + ".",
+            "",
             HELP_SPACING + "--jbin-compress",
             HELP_SPACING + "-z",
             HELP_SPACING + HELP_DESCRIPTION_SPACING + "Enable compression when writing a jbin file",            
+            "",
+            HELP_SPACING + "--threads [COUNT]",
+            HELP_SPACING + "-j [COUNT]",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "Parse csv and delimited source files on the given number of threads. Use 0 for all processors.",
+            "",
+            HELP_SPACING + "--connections [COUNT]",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "Download http and https sources over the given number of concurrent range requests. Defaults to 4.",
+            "",
+            HELP_SPACING + "--source-compression [COMPRESSION]",
+            HELP_SPACING + "-x [COMPRESSION]",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "Decompress the source while reading. Supported options are none, gzip, and deflate. Detected from .gz and .deflate extensions by default.",
+            "",
+            HELP_SPACING + "--target-compression [COMPRESSION]",
+            HELP_SPACING + "-X [COMPRESSION]",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "Compress the target while writing. Supported options are none, gzip, and deflate. Detected from .gz and .deflate extensions by default.",
+            "",
+            HELP_SPACING + "--io-buffer [SIZE]",
+            HELP_SPACING + "-b [SIZE]",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "Buffer size for reading and writing local files (e.g. 64k, 16m). By default files over 64m are read through memory mapping and written with large buffers.",
+            "",
+            HELP_SPACING + "--split-rows [COUNT]",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "Split the target into numbered files (e.g. name-00001.jbin) of at most COUNT records each, plus a name.manifest.json listing them.",
+            "",
+            HELP_SPACING + "--split-bytes [SIZE]",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "Split the target into numbered files of approximately SIZE bytes each (e.g. 256m).",
+            "",
+            HELP_SPACING + "--partition-by <COLUMN,...>",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "Write a file per distinct value of the columns in directories beside the target (e.g. out/date=2026-10-01/part.jbin for out/part.jbin).",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "Null and empty values are written as %null and %empty. Other % and unsafe characters are written as %XX.",
+            "",
+            HELP_SPACING + "--max-open-files [COUNT]",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "Maximum partition files open at once with --partition-by. Others are closed and reopened for appending. Defaults to 128.",
+            "",
+            HELP_SPACING + "--skip [COUNT]",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "Skip the first COUNT records (after --where). Indexed jbin sources seek directly to the record.",
+            "",
+            HELP_SPACING + "--limit [COUNT]",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "Convert at most COUNT records (after --where and --skip).",
+            "",
+            HELP_SPACING + "--sample-rate [RATE]",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "Convert a random sample keeping each record with probability RATE between 0 and 1 (after --where, before --skip and --limit).",
+            "",
+            HELP_SPACING + "--sample-size [COUNT]",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "Convert a uniform random sample of COUNT records in their original order. Reads the entire source.",
+            "",
+            HELP_SPACING + "--seed [NUMBER]",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "Random seed for --sample-rate and --sample-size. The same seed gives the same sample.",
+            "",
+            HELP_SPACING + "--cache-dir [DIRECTORY]",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "Cache conversions in DIRECTORY. If the source file and options are unchanged since the last run, the cached output is linked to the target instead.",
+            "",
+            HELP_SPACING + "--cache-size [SIZE]",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "Evict the least recently used cached outputs over SIZE (e.g. 512m, 20g). Defaults to 1g.",
+            "",
+            HELP_SPACING + "--cache-hash",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "Also cache a hash of the source content so that files touched without changing are not converted again.",
+            "",
+            HELP_SPACING + "--index",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "Write a sparse index sidecar (e.g. data.jbin.idx) with uncompressed jbin targets for fast --skip and count.",
+            "",
+            HELP_SPACING + "--checkpoint [FILE]",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "Periodically save the progress of the conversion to FILE so that it can be resumed if interrupted. Requires a local target file that is not json.",
+            "",
+            HELP_SPACING + "--resume",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "Resume an interrupted conversion from the --checkpoint file. The target is truncated to the last checkpoint and appended to.",
+            "",
+            HELP_SPACING + "--follow",
+            HELP_SPACING + "-f",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "Keep converting records as they are appended to a csv, delimited or json source file. Handles truncation and rotation of the source. Stop with Ctrl-C.",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "Records read so far are written whenever the source is idle. The target cannot be json or deflate compressed.",
+            "",
+            HELP_SPACING + "--stats",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "Print progress to stderr during the conversion and a summary of record counts, timings and memory when complete.",
+            "",
+            HELP_SPACING + "--pipeline",
+            HELP_SPACING + "-P",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "Run reading, transforming and writing concurrently on separate threads.",
             "",           
             HELP_SPACING + "--help",
             HELP_SPACING + "-h",
@@ -370,15 +1695,21 @@ public class Convert implements Tool
 
                 case "--source":
                 case "-s":
-                    source = getSource(args[++i]);
+                    addSource(args[++i]);
+                    break;
                     
-                    if(input == null) input = detectInput(args[i]);
+                case "--source-list":
+                    for(String line : Files.readAllLines(Path.of(args[++i])))
+                    {
+                        if(!line.isBlank()) addSource(line.trim());
+                    }
                     
                     break;
                     
                 case "--source-type":
                 case "-i":
                     input = getInputType(args[++i]);
+                    inputSpecified = true;
                     break;
                     
                 case "--target":
@@ -415,6 +1746,27 @@ public class Convert implements Tool
                     detectTypes = true;
                     break;
                     
+                case "--columns":
+                case "-c":
+                    columns = args[++i].split(",");
+                    
+                    for(int j=0; j<columns.length; j++) columns[j] = columns[j].trim();
+                    
+                    break;
+                    
+                case "--where":
+                    setWhere(args[++i]);
+                    break;
+                    
+                case "--infer-types":
+                case "-A":
+                    inferTypes = true;
+                    break;
+                    
+                case "--infer-sample":
+                    inferSample = getCount("sample size", args[++i]);
+                    break;
+                    
                 case "--jbin-compress":
                 case "-z":
                     jbinCompress = true;
@@ -422,15 +1774,154 @@ public class Convert implements Tool
                     if(output instanceof JBINOutput) ((JBINOutput)output).setCompressed(jbinCompress);
                     
                     break;
+                    
+                case "--threads":
+                case "-j":
+                    setThreads(getCount("thread count", args[++i]));
+                    break;
+                    
+                case "--connections":
+                    setConnections(getCount("connection count", args[++i]));
+                    break;
+                    
+                case "--source-compression":
+                case "-x":
+                    sourceCompression = getCompression(args[++i]);
+                    break;
+                    
+                case "--target-compression":
+                case "-X":
+                    targetCompression = getCompression(args[++i]);
+                    break;
+                    
+                case "--io-buffer":
+                case "-b":
+                    setIOBufferSize((int)Math.min(Integer.MAX_VALUE, getSize("buffer size", args[++i])));
+                    
+                    if(ioBufferSize > 0 && sourceFile != null) source = getFileSource(sourceFile);
+                    if(ioBufferSize > 0 && targetFile != null) target = new ChannelFileTarget(targetFile, ioBufferSize);
+                    
+                    break;
+                    
+                case "--pipeline":
+                case "-P":
+                    pipelined = true;
+                    break;
+                    
+                case "--index":
+                    index = true;
+                    break;
+                    
+                case "--skip":
+                    skip = getLong("skip", args[++i]);
+                    
+                    if(skip < 0) exit(255, "Invalid skip: " + args[i]);
+                    
+                    break;
+                    
+                case "--limit":
+                    limit = getLong("limit", args[++i]);
+                    
+                    if(limit < 0) exit(255, "Invalid limit: " + args[i]);
+                    
+                    break;
+                    
+                case "--sample-rate":
+                    sampleRate = getRate("sample rate", args[++i]);
+                    break;
+                    
+                case "--sample-size":
+                    sampleSize = getCount("sample size", args[++i]);
+                    
+                    if(sampleSize < 0) exit(255, "Invalid sample size: " + args[i]);
+                    
+                    break;
+                    
+                case "--seed":
+                    seed = getLong("seed", args[++i]);
+                    break;
+                    
+                case "--checkpoint":
+                    checkpoint = new File(args[++i]);
+                    break;
+                    
+                case "--resume":
+                    resume = true;
+                    break;
+                    
+                case "--follow":
+                case "-f":
+                    follow = true;
+                    break;
+                    
+                case "--stats":
+                    stats = true;
+                    break;
+                    
+                case "--split-rows":
+                    splitRows = getCount("split rows", args[++i]);
+                    break;
+                    
+                case "--split-bytes":
+                    splitBytes = getSize("split size", args[++i]);
+                    break;
+                    
+                case "--partition-by":
+                    partitionBy = args[++i].split(",");
+                    
+                    for(int j=0; j<partitionBy.length; j++) partitionBy[j] = partitionBy[j].trim();
+                    
+                    break;
+                    
+                case "--max-open-files":
+                    maxOpenFiles = getCount("open file count", args[++i]);
+                    break;
+                    
+                case "--cache-dir":
+                    cacheDirectory = new File(args[++i]);
+                    break;
+                    
+                case "--cache-size":
+                    cacheSize = getSize("cache size", args[++i]);
+                    break;
+                    
+                case "--cache-hash":
+                    cacheHash = true;
+                    break;
+                    
+                case "--concat-order":
+                    switch(args[++i])
+                    {
+                        case "source":
+                            concatOrdered = true;
+                            break;
+                            
+                        case "arrival":
+                            concatOrdered = false;
+                            break;
+                            
+                        default:
+                            exit(255, "Unknown concat order: " + args[i]);
+                    }
+                    
+                    break;
+                    
+                case "--concat-workers":
+                    concatWorkers = getCount("concat worker count", args[++i]);
+                    
+                    if(concatWorkers < 1) exit(255, "Invalid concat worker count: " + args[i]);
+                    
+                    break;
+                    
+                case "--concat-memory":
+                    concatMemory = getSize("concat memory", args[++i]);
+                    break;
                                                     
                 default:
                     
                     if(source == null && (args[i].equals("-") || args[i].contains(".")))
                     {
-                        source = getSource(args[i]);
-                    
-                        if(input == null) input = detectInput(args[i]);
-
+                        addSource(args[i]);
                         break;
                     }
                     else if(target == null && (args[i].equals("-") || args[i].contains(".")))
@@ -448,8 +1939,8 @@ public class Convert implements Tool
             }
         }
         
+        // Sources without a recognized extension are detected from their content in execute()
         if(source == null) return error("No source specified!");
-        if(input == null) return error("No source type specified and unable to autodetect");
         if(target == null) return error("No target specified!");
         if(output == null) return error("No target type specified and unable to autodetect");
         
@@ -458,18 +1949,255 @@ public class Convert implements Tool
 
     @Override
     public void execute()
+    {
+        // Spill files are removed even if the conversion stops early
+        try(TemporaryFiles.Scope scope = TemporaryFiles.open())
+        {
+            convert();
+        }
+    }
+    
+    private void convert()
     {
         Iterable<JSONObject> iterable;
+        List<Transformer> early = new ArrayList<>();
+        List<Transformer> transformers = new ArrayList<>();
+        MeteringTransformer read;
+        MeteringTransformer written;
+        Consumer<Iterable<JSONObject>> writer;
+        Pipeline pipeline = null;
+        IndexedJBINSource indexed = null;
+        FollowFileSource following = null;
+        ParallelDelimitedReader reader = null;
+        LimitTransformer limiter;
+        SampleTransformer sampler;
+        ReservoirTransformer reservoir;
+        CloseableSource closeable;
+        ConversionCache cache = null;
+        CacheEntry cached = null;
+        ConcatReader concatenated = null;
+        List<CloseableSource> concatSources = new ArrayList<>();
+        List<Iterable<JSONObject>> concatReaders = new ArrayList<>();
+        List<Iterable<JSONObject>> peeks = new ArrayList<>();
+        Source from;
+        
+        if(source == null) exit(254, "No source specified!");
+        if(target == null) exit(254, "No target specified!");
+        if(output == null) exit(254, "No output type specified and unable to autodetect");
+        if(resume && checkpoint == null) exit(254, "--resume requires --checkpoint");
+        if(follow && sampleSize >= 0) exit(254, "--sample-size cannot be combined with --follow");
+        if(isConcat() && (follow || checkpoint != null)) exit(254, "Multiple sources cannot be combined with --follow or --checkpoint");
+        
+        cacheResult = null;
+        
+        if(cacheDirectory != null)
+        {
+            cache = openCache();
+            cached = cache.describe(sourceFile, getCacheOptions());
+            cacheResult = cache.restore(cached, targetFile);
+            
+            if(cacheResult != Result.MISS)
+            {
+                if(stats) System.err.println("Source unchanged. " + (cacheResult == Result.UNCHANGED ? "Target is up to date." : "Restored target from cache."));
+                
+                return;
+            }
+            
+            // The target may be a link to a cached output that must not be overwritten
+            if(!targetFile.delete() && targetFile.exists()) exit(254, "Unable to replace " + targetFile);
+        }
+        
+        // An index of the old target would no longer match. Indexed writes save a new one.
+        if(targetFile != null) JBINIndex.delete(targetFile);
+        
+        metrics = new ConversionMetrics();
+        metrics.start();
+        
+        if(stats) metrics.startProgress(System.err, PROGRESS_INTERVAL);
+        
+        if(follow)
+        {
+            following = openFollow();
+            from = new MeteredSource(following, metrics);
+        }
+        else
+        {
+            indexed = getIndexedSource();
+            from = openSource(indexed != null ? indexed : source);
+        }
+        
+        if(input == null) from = sniff(from);
+        if(input == null) exit(254, "No input type specified and unable to autodetect");
+        
+        if(checkpoint != null)
+        {
+            try
+            {
+                convertCheckpointed(from);
+            }
+            finally
+            {
+                metrics.finish();
+            }
+            
+            if(stats) metrics.print(System.err);
+            
+            return;
+        }
+        
+        // Lets the source be closed as soon as the limit is reached
+        closeable = new CloseableSource(from);
+        from = closeable;
+        
+        writer = (following != null) ? getFollowWriter(following) : getWriter(openTarget());
+        written = new MeteringTransformer(metrics::setRecordsWritten);
+        
+        // Filter and project before anything else sees the records
+        if(where != null) early.add(new FilterTransformer(where));
+        if(columns != null) early.add(new ProjectTransformer(columns));
+        
+        // Records are counted before the filter, on the source threads when there are several
+        if(isParallel() || isConcat())
+        {
+            read = new MeteringTransformer(null);
+            
+            early.add(0, new CountingTransformer(metrics::addRecordsRead));
+        }
+        else
+        {
+            read = new MeteringTransformer(metrics::setRecordsRead);
+        }
+        
+        if(isParallel())
+        {
+            reader = new ParallelDelimitedReader(sourceFile, input, threads, input instanceof CSVInput);
+            
+            // Inferred types must be consistent across chunks so they are applied after reassembly
+            if(detectTypes && !inferTypes) early.add(new CoerceStringsTransformer());
+            if(!early.isEmpty()) reader.setTransformer(new TransformerChain(early));
+            
+            early.clear();
+            
+            iterable = reader;
+            
+            metrics.addBytesIn(sourceFile.length());
+            
+            closePeeked(closeable);
+        }
+        else if(isConcat())
+        {
+            for(File file : concat)
+            {
+                concatSources.add(new CloseableSource(new FileSource(file)));
+                concatReaders.add(readConcat(file, concatSources.get(concatSources.size() - 1)));
+                peeks.add(peekConcat(file));
+                
+                metrics.addBytesIn(file.length());
+            }
+            
+            concatenated = new ConcatReader(concatReaders);
+            
+            concatenated.setThreads(concatWorkers);
+            concatenated.setMemory(concatMemory);
+            concatenated.setOrdered(concatOrdered);
+            
+            // Reconcile, filter and coerce on the source threads
+            if(columns == null) concatenated.setPeeks(peeks);
+            if(detectTypes && !inferTypes) early.add(new CoerceStringsTransformer());
+            if(!early.isEmpty()) concatenated.setTransformer(new TransformerChain(early));
+            
+            early.clear();
+            
+            iterable = concatenated;
+            
+            closePeeked(closeable);
+        }
+        else
+        {
+            iterable = input.read(from);
+            
+            if(detectTypes && !inferTypes) transformers.add(new CoerceStringsTransformer());
+        }
+        
+        if(inferTypes) transformers.add(new InferTypesTransformer(inferSample));
+        
+        iterable = read.transform(iterable);
+        
+        for(Transformer transformer : early) iterable = transformer.transform(iterable);
+        for(Transformer transformer : transforms) iterable = transformer.transform(iterable);
+        
+        if(sampleRate >= 0)
+        {
+            sampler = new SampleTransformer(sampleRate);
+            
+            sampler.setSeed(seed);
+            
+            iterable = sampler.transform(iterable);
+        }
+        
+        if(sampleSize >= 0)
+        {
+            reservoir = new ReservoirTransformer(sampleSize);
+            
+            reservoir.setSeed(seed);
+            
+            iterable = reservoir.transform(iterable);
+        }
         
-        if(source == null) Virge.exit(254, "No source specified!");
-        if(input == null) Virge.exit(254, "No input type specified and unable to autodetect");
-        if(target == null) Virge.exit(254, "No target specified!");
-        if(output == null) Virge.exit(254, "No output type specified and unable to autodetect");
+        if(skip > 0 || limit >= 0)
+        {
+            limiter = new LimitTransformer(skip - (indexed != null ? indexed.getFirstRecord() : 0), limit);
+            
+            limiter.setLimitListener(getLimitListener(closeable, reader, concatenated, concatSources));
+            
+            iterable = limiter.transform(iterable);
+        }
         
-        iterable = input.read(source);
+        transformers.add(written);
         
-        if(detectTypes) iterable = new CoerceStringsTransformer().transform(iterable);
+        try
+        {
+            if(pipelined)
+            {
+                pipeline = new Pipeline();
+                
+                pipeline.run(iterable, transformers, writer);
+            }
+            else
+            {
+                for(Transformer transformer : transformers) iterable = transformer.transform(iterable);
+
+                writer.accept(iterable);
+            }
+        }
+        finally
+        {
+            closeable.close();
+            
+            if(reader != null) reader.close();
+            if(concatenated != null) concatenated.close();
+            
+            for(CloseableSource concatSource : concatSources) concatSource.close();
+            
+            closeTransforms();
+            
+            // The counters only publish periodically and when exhausted, which --limit prevents
+            if(!isParallel() && !isConcat()) metrics.setRecordsRead(read.getCount());
+            
+            metrics.setRecordsWritten(written.getCount());
+            metrics.finish();
+            
+            if(pipeline != null)
+            {
+                metrics.setStageNanos(read.getNanos(), written.getNanos() - pipeline.getTransformWaitNanos(), metrics.getElapsedNanos() - pipeline.getWriteWaitNanos());
+            }
+            else
+            {
+                metrics.setStageNanos(read.getNanos(), written.getNanos() - read.getNanos(), metrics.getElapsedNanos() - written.getNanos());
+            }
+        }
         
-        output.write(target, iterable);
+        if(cache != null) cache.store(cached, targetFile);
+        if(stats) metrics.print(System.err);
     }
 }
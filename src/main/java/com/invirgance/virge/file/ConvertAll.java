@@ -0,0 +1,447 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file;
+
+import com.invirgance.convirgance.ConvirganceException;
+import static com.invirgance.virge.Virge.HELP_DESCRIPTION_SPACING;
+import static com.invirgance.virge.Virge.HELP_SPACING;
+import static com.invirgance.virge.file.VirgeFile.exit;
+import static com.invirgance.virge.file.VirgeFile.printToolHelp;
+import com.invirgance.virge.file.cache.ConversionCache.Result;
+import com.invirgance.virge.tool.Tool;
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * Converts every file in a directory tree or matching a glob in a single JVM.
+ * Each file is converted by its own Convert instance on a bounded pool of 
+ * worker threads.
+ * 
+ * @author agent
+ */
+public class ConvertAll implements Tool
+{
+    private static final List<String> TYPES = List.of("json", "csv", "tsv", "pipe", "delimited", "jbin");
+    
+    private Path base;
+    private Glob glob;
+    private File targetDirectory;
+    private String targetType;
+    private int workers = Runtime.getRuntime().availableProcessors();
+    
+    private final List<String> options = new ArrayList<>();
+    private boolean sourceType;
+    private Compression targetCompression = Compression.NONE;
+
+    public File getTargetDirectory()
+    {
+        return targetDirectory;
+    }
+
+    public void setTargetDirectory(File targetDirectory)
+    {
+        this.targetDirectory = targetDirectory;
+    }
+
+    public String getTargetType()
+    {
+        return targetType;
+    }
+
+    public void setTargetType(String targetType)
+    {
+        this.targetType = targetType;
+    }
+
+    public int getWorkers()
+    {
+        return workers;
+    }
+
+    public void setWorkers(int workers)
+    {
+        this.workers = workers;
+    }
+    
+    private void setSource(String path)
+    {
+        if(Glob.isGlob(path))
+        {
+            glob = new Glob(path);
+            base = glob.getBase();
+            
+            return;
+        }
+        
+        base = Path.of(path);
+        glob = null;
+
+        if(!Files.isDirectory(base)) exit(255, "Source directory not found: " + path);
+    }
+    
+    private List<Path> getFiles() throws IOException
+    {
+        Convert detector = new Convert();
+        List<Path> files = new ArrayList<>();
+        List<Path> found;
+        
+        if(glob != null)
+        {
+            found = glob.find();
+        }
+        else
+        {
+            try(Stream<Path> stream = Files.walk(base))
+            {
+                found = stream.filter(Files::isRegularFile).sorted().toList();
+            }
+        }
+        
+        // Skip files we don't know how to read unless the type was given
+        for(Path path : found)
+        {
+            if(sourceType || detector.detectInput(path.toString()) != null) files.add(path);
+        }
+        
+        return files;
+    }
+    
+    private void checkTargets(List<Path> files)
+    {
+        Map<File,Path> targets = new HashMap<>();
+        Path previous;
+        
+        // Sources differing only by extension (data.csv, data.json) would overwrite each other
+        for(Path file : files)
+        {
+            previous = targets.putIfAbsent(getTarget(file).getAbsoluteFile(), file);
+            
+            if(previous != null) exit(254, "Both " + previous + " and " + file + " would be converted to " + getTarget(file) + ". Narrow the source pattern so only one is converted.");
+        }
+    }
+    
+    private String getExtension()
+    {
+        switch(targetType)
+        {
+            case "pipe":
+            case "delimited":
+                return "txt";
+                
+            default:
+                return targetType;
+        }
+    }
+    
+    private File getTarget(Path source)
+    {
+        String name = Compression.strip(base.relativize(source).toString());
+        int index = name.lastIndexOf('.');
+        
+        if(index > name.lastIndexOf(File.separatorChar)) name = name.substring(0, index);
+        
+        return new File(targetDirectory, name + "." + getExtension() + targetCompression.getExtension());
+    }
+    
+    private String convert(Path source, File target) throws IOException
+    {
+        Convert convert = new Convert();
+        List<String> args = new ArrayList<>(options);
+        long start = System.currentTimeMillis();
+        
+        args.add("--source");
+        args.add(source.toString());
+        args.add("--target");
+        args.add(target.toString());
+        args.add("--target-type");
+        args.add(targetType);
+        
+        if(!convert.parse(args.toArray(String[]::new), 0)) throw new ConvirganceException("Unable to configure conversion");
+        
+        convert.execute();
+        
+        if(convert.getCacheResult() == Result.UNCHANGED) return "unchanged";
+        if(convert.getCacheResult() == Result.RESTORED) return "restored from cache";
+        
+        return (System.currentTimeMillis() - start) + "ms";
+    }
+    
+    @Override
+    public String getName()
+    {
+        return "convert-all";
+    }
+
+    @Override
+    public String getShortDescription()
+    {
+        return "Converts all files in a directory or matching a pattern to the provided format.";
+    }
+
+    @Override
+    public String getExample()
+    {
+        return "virge.jar file convert-all \"/reports/*.csv\" -o jbin -d \"/converted\"";
+    }
+
+    @Override
+    public String[] getHelp()
+    {
+        return new String[]
+        {
+            HELP_SPACING + "--source <DIRECTORY or PATTERN>",
+            HELP_SPACING + "-s <DIRECTORY or PATTERN>",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "Directory to convert recursively or a glob pattern such as \"data/**/*.csv\".",
+            "",
+            HELP_SPACING + "--target-directory <DIRECTORY>",
+            HELP_SPACING + "-d <DIRECTORY>",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "Directory to write the converted files into. The source directory structure is preserved.",
+            "",
+            HELP_SPACING + "--target-type [FORMAT]",
+            HELP_SPACING + "-o [FORMAT]",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "Format of the converted files. Currently supported options are json, csv, tsv, pipe, delimited, and jbin",
+            "",
+            HELP_SPACING + "--workers [COUNT]",
+            HELP_SPACING + "-w [COUNT]",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "Number of files to convert at the same time. Defaults to the number of processors.",
+            "",
+            HELP_SPACING + "--source-type [FORMAT]",
+            HELP_SPACING + "-i [FORMAT]",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "Format of the source files. Detected from each file extension when not specified.",
+            "",
+            HELP_SPACING + "--source-delimiter, --target-delimiter, --detect-input-types, --jbin-compress, --io-buffer",
+            HELP_SPACING + "--source-compression, --target-compression, --columns, --where",
+            HELP_SPACING + "--cache-dir, --cache-size, --cache-hash",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "Applied to each file as described for the convert tool.",
+            "",
+            HELP_SPACING + "--help",
+            HELP_SPACING + "-h",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING  + "Display this menu.",
+        };
+    }
+
+    @Override
+    public boolean parse(String[] args, int start) throws MalformedURLException, IOException
+    {
+        if(start == args.length) 
+        {
+            printToolHelp(this);
+            
+            return true;
+        }
+        
+        for(int i=start; i<args.length; i++)
+        {
+            switch(args[i])
+            {
+                case "--help":
+                case "-h":
+                    printToolHelp(this);
+                    return true;
+                    
+                case "--source":
+                case "-s":
+                    setSource(args[++i]);
+                    break;
+                    
+                case "--target-directory":
+                case "-d":
+                    targetDirectory = new File(args[++i]);
+                    break;
+                    
+                case "--target-type":
+                case "-o":
+                    targetType = args[++i];
+                    
+                    if(!TYPES.contains(targetType)) exit(255, "Unknown output type: " + targetType);
+                    
+                    break;
+                    
+                case "--workers":
+                case "-w":
+                    workers = getCount("worker count", args[++i]);
+                    
+                    break;
+                    
+                case "--source-type":
+                case "-i":
+                    sourceType = true;
+                    
+                    if(!TYPES.contains(args[i+1])) exit(255, "Unknown input type: " + args[i+1]);
+                    
+                    options.add(args[i]);
+                    options.add(args[++i]);
+                    break;
+                    
+                case "--target-compression":
+                case "-X":
+                    targetCompression = Compression.get(args[i+1]);
+                    
+                    if(targetCompression == null) exit(255, "Unknown compression: " + args[i+1]);
+                    
+                    options.add(args[i]);
+                    options.add(args[++i]);
+                    break;
+                    
+                case "--source-compression":
+                case "-x":
+                case "--source-delimiter":
+                case "-S":
+                case "--target-delimiter":
+                case "-T":
+                case "--io-buffer":
+                case "-b":
+                case "--columns":
+                case "-c":
+                case "--where":
+                case "--cache-dir":
+                case "--cache-size":
+                    options.add(args[i]);
+                    options.add(args[++i]);
+                    break;
+                    
+                case "--detect-input-types":
+                case "-a":
+                case "--jbin-compress":
+                case "-z":
+                case "--cache-hash":
+                    options.add(args[i]);
+                    break;
+                    
+                default:
+                    
+                    if(base == null)
+                    {
+                        setSource(args[i]);
+                    }
+                    else if(targetDirectory == null)
+                    {
+                        targetDirectory = new File(args[i]);
+                    }
+                    else
+                    {
+                        exit(255, "Unknown parameter: " + args[i]);
+                    }
+            }
+        }
+        
+        if(base == null) return error("No source specified!");
+        if(targetDirectory == null) return error("No target directory specified!");
+        if(targetType == null) return error("No target type specified!");
+        
+        return true;
+    }
+    
+    private int getCount(String name, String value)
+    {
+        int count;
+        
+        try
+        {
+            count = Integer.parseInt(value);
+        }
+        catch(NumberFormatException e)
+        {
+            count = 0;
+        }
+        
+        if(count < 1) exit(255, "Invalid " + name + ": " + value);
+        
+        return count;
+    }
+    
+    private boolean error(String message)
+    {
+        System.err.println(message);
+        
+        return false;
+    }
+
+    @Override
+    public void execute()
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        List<Future<String>> results = new ArrayList<>();
+        List<Path> files;
+        File target;
+        int failures = 0;
+        
+        try
+        {
+            files = getFiles();
+        }
+        catch(IOException e)
+        {
+            throw new ConvirganceException(e);
+        }
+        
+        checkTargets(files);
+        
+        for(Path file : files)
+        {
+            target = getTarget(file);
+            
+            final File output = target;
+            
+            results.add(executor.submit(() -> convert(file, output)));
+        }
+        
+        executor.shutdown();
+        
+        for(int i=0; i<files.size(); i++)
+        {
+            try
+            {
+                System.out.println("OK      " + files.get(i) + " -> " + getTarget(files.get(i)) + " (" + results.get(i).get() + ")");
+            }
+            catch(ExecutionException e)
+            {
+                System.out.println("FAILED  " + files.get(i) + ": " + e.getCause().getMessage());
+                failures++;
+            }
+            catch(InterruptedException e)
+            {
+                executor.shutdownNow();
+                Thread.currentThread().interrupt();
+                
+                throw new ConvirganceException(e);
+            }
+        }
+        
+        System.out.println();
+        System.out.println("Converted " + (files.size() - failures) + " of " + files.size() + " files");
+        
+        if(failures > 0) exit(1, failures + " conversions failed");
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file;
+
+import com.invirgance.convirgance.input.Input;
+import com.invirgance.convirgance.json.JSONObject;
+import static com.invirgance.virge.Virge.HELP_DESCRIPTION_SPACING;
+import static com.invirgance.virge.Virge.HELP_SPACING;
+import static com.invirgance.virge.file.VirgeFile.exit;
+import static com.invirgance.virge.file.VirgeFile.printToolHelp;
+import com.invirgance.virge.file.index.JBINIndex;
+import com.invirgance.virge.tool.Tool;
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+
+/**
+ * Counts the records in a file. Indexed JBIN files are counted from their 
+ * index without reading the file.
+ * 
+ * @author agent
+ */
+public class Count implements Tool
+{
+    private File file;
+    private Input<JSONObject> input;
+
+    public File getFile()
+    {
+        return file;
+    }
+
+    public void setFile(File file)
+    {
+        this.file = file;
+    }
+
+    public Input<JSONObject> getInput()
+    {
+        return input;
+    }
+
+    public void setInput(Input<JSONObject> input)
+    {
+        this.input = input;
+    }
+    
+    /**
+     * @return the number of records in the file
+     */
+    public long count()
+    {
+        JBINIndex index = JBINIndex.load(file);
+        long count = 0;
+        
+        if(index != null) return index.getRecords();
+        
+        for(JSONObject record : Convert.read(file, input)) count++;
+        
+        return count;
+    }
+    
+    @Override
+    public String getName()
+    {
+        return "count";
+    }
+
+    @Override
+    public String getShortDescription()
+    {
+        return "Counts the records in a file.";
+    }
+
+    @Override
+    public String getExample()
+    {
+        return "virge.jar file count \"/data.jbin\"";
+    }
+
+    @Override
+    public String[] getHelp()
+    {
+        return new String[]
+        {
+            HELP_SPACING + "--source <FILE>",
+            HELP_SPACING + "-s <FILE>",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "File to count. Jbin files with an index (see convert --index) are counted without reading the file.",
+            "",
+            HELP_SPACING + "--source-type [FORMAT]",
+            HELP_SPACING + "-i [FORMAT]",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "Format of the file. Detected from the extension or content when not specified.",
+            "",
+            HELP_SPACING + "--help",
+            HELP_SPACING + "-h",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING  + "Display this menu.",
+        };
+    }
+
+    @Override
+    public boolean parse(String[] args, int start) throws MalformedURLException, IOException
+    {
+        Convert detector = new Convert();
+        
+        if(start == args.length) 
+        {
+            printToolHelp(this);
+            
+            return true;
+        }
+        
+        for(int i=start; i<args.length; i++)
+        {
+            switch(args[i])
+            {
+                case "--help":
+                case "-h":
+                    printToolHelp(this);
+                    return true;
+                    
+                case "--source":
+                case "-s":
+                    file = new File(args[++i]);
+                    break;
+                    
+                case "--source-type":
+                case "-i":
+                    input = detector.getInputType(args[++i]);
+                    break;
+                    
+                default:
+                    
+                    if(file == null)
+                    {
+                        file = new File(args[i]);
+                    }
+                    else
+                    {
+                        exit(255, "Unknown parameter: " + args[i]);
+                    }
+            }
+        }
+        
+        if(file == null)
+        {
+            System.err.println("No source specified!");
+            
+            return false;
+        }
+        
+        if(!file.isFile()) exit(254, "File not found: " + file);
+        if(input == null) input = detector.detectInput(file.getPath());
+        
+        return true;
+    }
+
+    @Override
+    public void execute()
+    {
+        System.out.println(count());
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file;
+
+import static com.invirgance.virge.Virge.HELP_DESCRIPTION_SPACING;
+import static com.invirgance.virge.Virge.HELP_SPACING;
+import static com.invirgance.virge.file.VirgeFile.printToolHelp;
+import com.invirgance.virge.file.dedup.DedupTransformer;
+import com.invirgance.virge.tool.Tool;
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Removes duplicate records from a file using a fixed amount of memory. 
+ * Reading and writing are handled by the convert tool, so every source and 
+ * target it supports can be deduplicated.
+ * 
+ * @author agent
+ */
+public class Dedup implements Tool
+{
+    private Convert convert;
+    private String[] keys;
+    private long memory = DedupTransformer.DEFAULT_MEMORY;
+    private boolean approximate;
+    private File temporaryDirectory;
+
+    public String[] getKeys()
+    {
+        return keys;
+    }
+
+    /**
+     * @param keys the columns that identify a duplicate or null to compare entire records
+     */
+    public void setKeys(String... keys)
+    {
+        this.keys = keys;
+    }
+
+    public long getMemory()
+    {
+        return memory;
+    }
+
+    public void setMemory(long memory)
+    {
+        this.memory = memory;
+    }
+
+    public boolean isApproximate()
+    {
+        return approximate;
+    }
+
+    public void setApproximate(boolean approximate)
+    {
+        this.approximate = approximate;
+    }
+
+    public File getTemporaryDirectory()
+    {
+        return temporaryDirectory;
+    }
+
+    public void setTemporaryDirectory(File temporaryDirectory)
+    {
+        this.temporaryDirectory = temporaryDirectory;
+    }
+    
+    @Override
+    public String getName()
+    {
+        return "dedup";
+    }
+
+    @Override
+    public String getShortDescription()
+    {
+        return "Removes duplicate records from a file, keeping the first of each.";
+    }
+
+    @Override
+    public String getExample()
+    {
+        return "virge.jar file dedup --key \"customer_id,order_id\" \"/feed.csv\" \"/unique.csv\"";
+    }
+
+    @Override
+    public String[] getHelp()
+    {
+        return new String[]
+        {
+            HELP_SPACING + "--key <COLUMN,...>",
+            HELP_SPACING + "-k <COLUMN,...>",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "Columns that identify a duplicate. Entire records are compared when not specified.",
+            "",
+            HELP_SPACING + "--memory [SIZE]",
+            HELP_SPACING + "-m [SIZE]",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "Off-heap memory for tracking keys (e.g. 1g). Defaults to 256m. Beyond this, unseen keys are partitioned to disk.",
+            "",
+            HELP_SPACING + "--approximate",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "Track keys with a Bloom filter. Never spills to disk, but may rarely drop a unique record.",
+            "",
+            HELP_SPACING + "--temp-dir <DIRECTORY>",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "Directory for spilled partitions. Defaults to the system temporary directory.",
+            "",
+            HELP_SPACING + "--source, --target, --source-type, --target-type and other convert options",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "Applied as described for the convert tool. --where and --columns are applied before removing duplicates, --skip and --limit after.",
+            "",
+            HELP_SPACING + "--help",
+            HELP_SPACING + "-h",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING  + "Display this menu.",
+        };
+    }
+
+    @Override
+    public boolean parse(String[] args, int start) throws MalformedURLException, IOException
+    {
+        List<String> options = new ArrayList<>();
+        
+        convert = new Convert();
+        
+        if(start == args.length) 
+        {
+            printToolHelp(this);
+            
+            return true;
+        }
+        
+        for(int i=start; i<args.length; i++)
+        {
+            switch(args[i])
+            {
+                case "--help":
+                case "-h":
+                    printToolHelp(this);
+                    return true;
+                    
+                case "--key":
+                case "-k":
+                    keys = args[++i].split(",");
+                    
+                    for(int j=0; j<keys.length; j++) keys[j] = keys[j].trim();
+                    
+                    break;
+                    
+                case "--memory":
+                case "-m":
+                    memory = convert.getSize("memory", args[++i]);
+                    break;
+                    
+                case "--approximate":
+                    approximate = true;
+                    break;
+                    
+                case "--temp-dir":
+                    temporaryDirectory = new File(args[++i]);
+                    break;
+                    
+                default:
+                    options.add(args[i]);
+            }
+        }
+        
+        if(options.isEmpty()) 
+        {
+            System.err.println("No source specified!");
+            
+            return false;
+        }
+        
+        return convert.parse(options.toArray(String[]::new), 0);
+    }
+
+    @Override
+    public void execute()
+    {
+        DedupTransformer dedup = new DedupTransformer(keys);
+        
+        dedup.setMemory(memory);
+        dedup.setApproximate(approximate);
+        dedup.setTemporaryDirectory(temporaryDirectory);
+        
+        convert.addTransform(dedup);
+        convert.execute();
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file;
+
+import com.invirgance.convirgance.ConvirganceException;
+
+/**
+ * Thrown by a tool to stop with an exit status rather than exiting the JVM.
+ * The file module turns it into the process exit status, while the 
+ * conversion server returns it to the client and keeps running.
+ * 
+ * @author agent
+ */
+public class ExitException extends ConvirganceException
+{
+    private final int status;
+
+    /**
+     * @param status the exit status
+     * @param message the message for the user or null if it was already printed
+     */
+    public ExitException(int status, String message)
+    {
+        super(message);
+        
+        this.status = status;
+    }
+
+    public int getStatus()
+    {
+        return status;
+    }
+}
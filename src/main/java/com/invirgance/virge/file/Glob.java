@@ -0,0 +1,109 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * A file name pattern such as <code>/reports/2026-*&#47;*.csv</code>, split
+ * into the fixed directory it starts from and a pattern matched against 
+ * paths relative to that directory.
+ * 
+ * @author agent
+ */
+public class Glob
+{
+    private static final char[] SPECIAL = new char[]{ '*', '?', '[', '{' };
+    
+    private final Path base;
+    private final PathMatcher matcher;
+    private final int depth;
+
+    public Glob(String pattern)
+    {
+        int index = pattern.length();
+        
+        for(char c : SPECIAL)
+        {
+            if(pattern.indexOf(c) >= 0) index = Math.min(index, pattern.indexOf(c));
+        }
+        
+        index = pattern.lastIndexOf(File.separatorChar, index);
+        
+        this.base = Path.of(index < 0 ? "." : pattern.substring(0, index + 1));
+        this.matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern.substring(index + 1));
+        
+        // Only ** crosses directories, so other patterns don't need a deep walk
+        if(pattern.contains("**")) this.depth = Integer.MAX_VALUE;
+        else this.depth = (int)pattern.substring(index + 1).chars().filter(c -> c == File.separatorChar).count() + 1;
+    }
+    
+    /**
+     * @param path a file path
+     * @return true if the path contains glob characters
+     */
+    public static boolean isGlob(String path)
+    {
+        for(char c : SPECIAL)
+        {
+            if(path.indexOf(c) >= 0) return true;
+        }
+        
+        return false;
+    }
+
+    /**
+     * @return the directory the pattern is relative to
+     */
+    public Path getBase()
+    {
+        return base;
+    }
+    
+    /**
+     * Finds the files matching the pattern
+     * 
+     * @return the matching regular files, sorted by path
+     * @throws IOException if the directories cannot be read
+     */
+    public List<Path> find() throws IOException
+    {
+        List<Path> files = new ArrayList<>();
+        
+        if(!Files.isDirectory(base)) return files;
+        
+        try(Stream<Path> stream = Files.walk(base, depth))
+        {
+            stream.filter(Files::isRegularFile).filter(path -> matcher.matches(base.relativize(path))).sorted().forEach(files::add);
+        }
+        
+        return files;
+    }
+}
@@ -0,0 +1,344 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file;
+
+import com.invirgance.convirgance.input.Input;
+import com.invirgance.convirgance.json.JSONObject;
+import static com.invirgance.virge.Virge.HELP_DESCRIPTION_SPACING;
+import static com.invirgance.virge.Virge.HELP_SPACING;
+import static com.invirgance.virge.file.VirgeFile.exit;
+import static com.invirgance.virge.file.VirgeFile.printToolHelp;
+import com.invirgance.virge.file.join.HashJoinTransformer;
+import com.invirgance.virge.tool.Tool;
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Joins the records of a source with the records of a second file on one or
+ * more columns. The source is read and written by the convert tool, so every
+ * source and target it supports can be joined.
+ * 
+ * @author agent
+ */
+public class Join implements Tool
+{
+    private Convert convert;
+    private File right;
+    private Input<JSONObject> rightInput;
+    private String[] on;
+    private String[] rightOn;
+    private HashJoinTransformer.Type type = HashJoinTransformer.Type.INNER;
+    private String rightPrefix = "right_";
+    private long memory = HashJoinTransformer.DEFAULT_MEMORY;
+    private int workers = Runtime.getRuntime().availableProcessors();
+    private File temporaryDirectory;
+
+    public File getRight()
+    {
+        return right;
+    }
+
+    public void setRight(File right)
+    {
+        this.right = right;
+    }
+
+    public Input<JSONObject> getRightInput()
+    {
+        return rightInput;
+    }
+
+    /**
+     * @param rightInput the format of the right file or null to detect it
+     */
+    public void setRightInput(Input<JSONObject> rightInput)
+    {
+        this.rightInput = rightInput;
+    }
+
+    public String[] getOn()
+    {
+        return on;
+    }
+
+    public void setOn(String... on)
+    {
+        this.on = on;
+    }
+
+    public String[] getRightOn()
+    {
+        return rightOn;
+    }
+
+    /**
+     * @param rightOn the join columns of the right file or null if they have the same names as the source columns
+     */
+    public void setRightOn(String... rightOn)
+    {
+        this.rightOn = rightOn;
+    }
+
+    public HashJoinTransformer.Type getType()
+    {
+        return type;
+    }
+
+    public void setType(HashJoinTransformer.Type type)
+    {
+        this.type = type;
+    }
+
+    public String getRightPrefix()
+    {
+        return rightPrefix;
+    }
+
+    public void setRightPrefix(String rightPrefix)
+    {
+        this.rightPrefix = rightPrefix;
+    }
+
+    public long getMemory()
+    {
+        return memory;
+    }
+
+    public void setMemory(long memory)
+    {
+        this.memory = memory;
+    }
+
+    public int getWorkers()
+    {
+        return workers;
+    }
+
+    public void setWorkers(int workers)
+    {
+        this.workers = workers;
+    }
+
+    public File getTemporaryDirectory()
+    {
+        return temporaryDirectory;
+    }
+
+    public void setTemporaryDirectory(File temporaryDirectory)
+    {
+        this.temporaryDirectory = temporaryDirectory;
+    }
+    
+    @Override
+    public String getName()
+    {
+        return "join";
+    }
+
+    @Override
+    public String getShortDescription()
+    {
+        return "Joins the records of a file with the records of another file on matching columns.";
+    }
+
+    @Override
+    public String getExample()
+    {
+        return "virge.jar file join --right \"/customers.csv\" --on customer_id \"/orders.csv\" \"/enriched.jbin\"";
+    }
+
+    @Override
+    public String[] getHelp()
+    {
+        return new String[]
+        {
+            HELP_SPACING + "--right <FILE>",
+            HELP_SPACING + "-r <FILE>",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "File to join the source with.",
+            "",
+            HELP_SPACING + "--right-type [FORMAT]",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "Format of the right file. Detected from the extension or content when not specified.",
+            "",
+            HELP_SPACING + "--on <COLUMN,...>",
+            HELP_SPACING + "-k <COLUMN,...>",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "Source columns to join on. Values are compared by type, so \"42\" matches 42. Nulls never match.",
+            "",
+            HELP_SPACING + "--right-on <COLUMN,...>",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "Right file columns to join on. Defaults to the --on columns.",
+            "",
+            HELP_SPACING + "--join-type [inner|left|anti]",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "inner (default) writes joined matches, left also writes source records without a match",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "and anti writes only the source records without a match.",
+            "",
+            HELP_SPACING + "--right-prefix <PREFIX>",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "Prefix for right columns whose names are already used by the source. Defaults to right_.",
+            "",
+            HELP_SPACING + "--memory [SIZE]",
+            HELP_SPACING + "-m [SIZE]",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "Memory for the hash table (e.g. 1g). Defaults to 256m. Beyond this, both sides are partitioned to disk",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "and records are written one partition at a time rather than in source order.",
+            "",
+            HELP_SPACING + "--workers [COUNT]",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "Number of threads matching records. Defaults to the number of processors.",
+            "",
+            HELP_SPACING + "--temp-dir <DIRECTORY>",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "Directory for partitions. Defaults to the system temporary directory.",
+            "",
+            HELP_SPACING + "--source, --target, --source-type, --target-type and other convert options",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "Applied as described for the convert tool. --where and --columns are applied to the source before joining.",
+            "",
+            HELP_SPACING + "--help",
+            HELP_SPACING + "-h",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING  + "Display this menu.",
+        };
+    }
+    
+    private String[] getColumns(String value)
+    {
+        String[] columns = value.split(",");
+        
+        for(int i=0; i<columns.length; i++) columns[i] = columns[i].trim();
+        
+        return columns;
+    }
+
+    @Override
+    public boolean parse(String[] args, int start) throws MalformedURLException, IOException
+    {
+        List<String> options = new ArrayList<>();
+        
+        convert = new Convert();
+        
+        if(start == args.length) 
+        {
+            printToolHelp(this);
+            
+            return true;
+        }
+        
+        for(int i=start; i<args.length; i++)
+        {
+            switch(args[i])
+            {
+                case "--help":
+                case "-h":
+                    printToolHelp(this);
+                    return true;
+                    
+                case "--right":
+                case "-r":
+                    right = new File(args[++i]);
+                    break;
+                    
+                case "--right-type":
+                    rightInput = convert.getInputType(args[++i]);
+                    break;
+                    
+                case "--on":
+                case "-k":
+                    on = getColumns(args[++i]);
+                    break;
+                    
+                case "--right-on":
+                    rightOn = getColumns(args[++i]);
+                    break;
+                    
+                case "--join-type":
+                    switch(args[++i])
+                    {
+                        case "inner":
+                            type = HashJoinTransformer.Type.INNER;
+                            break;
+                            
+                        case "left":
+                            type = HashJoinTransformer.Type.LEFT;
+                            break;
+                            
+                        case "anti":
+                            type = HashJoinTransformer.Type.ANTI;
+                            break;
+                            
+                        default:
+                            exit(255, "Unknown join type: " + args[i]);
+                    }
+                    
+                    break;
+                    
+                case "--right-prefix":
+                    rightPrefix = args[++i];
+                    break;
+                    
+                case "--memory":
+                case "-m":
+                    memory = convert.getSize("memory", args[++i]);
+                    break;
+                    
+                case "--workers":
+                    workers = convert.getCount("worker count", args[++i]);
+                    break;
+                    
+                case "--temp-dir":
+                    temporaryDirectory = new File(args[++i]);
+                    break;
+                    
+                default:
+                    options.add(args[i]);
+            }
+        }
+        
+        if(options.isEmpty()) 
+        {
+            System.err.println("No source specified!");
+            
+            return false;
+        }
+        
+        if(right == null) exit(255, "No right file specified!");
+        if(!right.isFile()) exit(254, "File not found: " + right);
+        if(on == null) exit(255, "No join columns specified!");
+        if(rightOn != null && rightOn.length != on.length) exit(255, "--on and --right-on must name the same number of columns");
+        if(rightInput == null) rightInput = convert.detectInput(right.getPath());
+        
+        return convert.parse(options.toArray(String[]::new), 0);
+    }
+
+    @Override
+    public void execute()
+    {
+        HashJoinTransformer join = new HashJoinTransformer(Convert.read(right, rightInput), on, (rightOn != null) ? rightOn : on, type);
+        File left = convert.getSourceFile();
+        
+        join.setMemory(memory);
+        join.setThreads(workers);
+        join.setRightPrefix(rightPrefix);
+        join.setTemporaryDirectory(temporaryDirectory);
+        
+        // Build the hash table from the smaller file where the join allows it
+        if(type == HashJoinTransformer.Type.INNER && left != null && left.length() < right.length()) join.setBuildLeft(true);
+        
+        convert.addTransform(join);
+        convert.execute();
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file;
+
+import com.invirgance.convirgance.output.CSVOutput;
+import com.invirgance.convirgance.output.DelimitedOutput;
+import static com.invirgance.virge.Virge.HELP_DESCRIPTION_SPACING;
+import static com.invirgance.virge.Virge.HELP_SPACING;
+import static com.invirgance.virge.file.VirgeFile.printToolHelp;
+import com.invirgance.virge.file.profile.ProfileTransformer;
+import com.invirgance.virge.tool.Tool;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Computes statistics for every column of a file in a single pass. Reading 
+ * and writing are handled by the convert tool, so any source can be profiled
+ * and the results written as JSON, CSV or any other supported format.
+ * 
+ * @author agent
+ */
+public class Profile implements Tool
+{
+    private Convert convert;
+    private int top = ProfileTransformer.DEFAULT_TOP;
+    private int workers = Runtime.getRuntime().availableProcessors();
+
+    public int getTop()
+    {
+        return top;
+    }
+
+    public void setTop(int top)
+    {
+        this.top = top;
+    }
+
+    public int getWorkers()
+    {
+        return workers;
+    }
+
+    public void setWorkers(int workers)
+    {
+        this.workers = workers;
+    }
+    
+    @Override
+    public String getName()
+    {
+        return "profile";
+    }
+
+    @Override
+    public String getShortDescription()
+    {
+        return "Reports null counts, ranges, distinct counts, frequent values and types for every column of a file.";
+    }
+
+    @Override
+    public String getExample()
+    {
+        return "virge.jar file profile \"/feed.csv\" \"/profile.json\"";
+    }
+
+    @Override
+    public String[] getHelp()
+    {
+        return new String[]
+        {
+            HELP_SPACING + "Each column is reported with its inferred type, count of values, nulls (including missing and empty values),",
+            HELP_SPACING + "approximate distinct count, min, max, longest value and approximate most frequent values.",
+            "",
+            HELP_SPACING + "--top [COUNT]",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "Number of most frequent values reported per column. Defaults to 10.",
+            "",
+            HELP_SPACING + "--workers [COUNT]",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "Number of threads profiling records. Defaults to the number of processors.",
+            "",
+            HELP_SPACING + "--source, --target, --source-type, --target-type and other convert options",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "Applied as described for the convert tool. --where and --columns select what is profiled.",
+            "",
+            HELP_SPACING + "--help",
+            HELP_SPACING + "-h",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING  + "Display this menu.",
+        };
+    }
+
+    @Override
+    public boolean parse(String[] args, int start) throws MalformedURLException, IOException
+    {
+        List<String> options = new ArrayList<>();
+        
+        convert = new Convert();
+        
+        if(start == args.length) 
+        {
+            printToolHelp(this);
+            
+            return true;
+        }
+        
+        for(int i=start; i<args.length; i++)
+        {
+            switch(args[i])
+            {
+                case "--help":
+                case "-h":
+                    printToolHelp(this);
+                    return true;
+                    
+                case "--top":
+                    top = convert.getCount("top count", args[++i]);
+                    break;
+                    
+                case "--workers":
+                    workers = convert.getCount("worker count", args[++i]);
+                    break;
+                    
+                default:
+                    options.add(args[i]);
+            }
+        }
+        
+        if(options.isEmpty()) 
+        {
+            System.err.println("No source specified!");
+            
+            return false;
+        }
+        
+        return convert.parse(options.toArray(String[]::new), 0);
+    }
+
+    @Override
+    public void execute()
+    {
+        ProfileTransformer profile = new ProfileTransformer();
+        
+        profile.setTop(top);
+        profile.setThreads(workers);
+        
+        // Flat formats can't hold the list of frequent values
+        profile.setNested(!(convert.getOutput() instanceof CSVOutput || convert.getOutput() instanceof DelimitedOutput));
+        
+        convert.addTransform(profile);
+        convert.execute();
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file;
+
+import static com.invirgance.virge.Virge.HELP_DESCRIPTION_SPACING;
+import static com.invirgance.virge.Virge.HELP_SPACING;
+import static com.invirgance.virge.file.VirgeFile.exit;
+import static com.invirgance.virge.file.VirgeFile.printToolHelp;
+import com.invirgance.virge.file.server.ConversionServer;
+import com.invirgance.virge.file.server.ServerClient;
+import com.invirgance.virge.tool.Tool;
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+
+/**
+ * Runs a long-lived conversion server so that repeated conversions avoid JVM
+ * startup. Commands are forwarded to the server when the VIRGE_FILE_SOCKET
+ * environment variable names its socket.
+ * 
+ * @author agent
+ */
+public class Serve implements Tool
+{
+    private File socket;
+    private int workers = Runtime.getRuntime().availableProcessors();
+    private int queue = ConversionServer.DEFAULT_QUEUE;
+
+    public File getSocket()
+    {
+        return socket;
+    }
+
+    public void setSocket(File socket)
+    {
+        this.socket = socket;
+    }
+
+    public int getWorkers()
+    {
+        return workers;
+    }
+
+    public void setWorkers(int workers)
+    {
+        this.workers = workers;
+    }
+
+    public int getQueue()
+    {
+        return queue;
+    }
+
+    public void setQueue(int queue)
+    {
+        this.queue = queue;
+    }
+    
+    @Override
+    public String getName()
+    {
+        return "serve";
+    }
+
+    @Override
+    public String getShortDescription()
+    {
+        return "Runs a server that keeps the JVM warm and runs file commands sent to a Unix domain socket.";
+    }
+
+    @Override
+    public String getExample()
+    {
+        return "java -jar virge.jar file serve --socket \"/run/virge.sock\"";
+    }
+
+    @Override
+    public String[] getHelp()
+    {
+        return new String[]
+        {
+            HELP_SPACING + "--socket <FILE>",
+            HELP_SPACING + "-s <FILE>",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "Unix domain socket to listen on. Only the user running the server can connect.",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "Set " + ServerClient.SOCKET_VARIABLE + " to this path and other virge.jar file commands are sent to the server.",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "Commands run locally when no server is listening, the server is busy, the working directory",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "differs from the server's, or standard input (-) is used.",
+            "",
+            HELP_SPACING + "--workers [COUNT]",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "Number of commands run at once. Defaults to the number of processors.",
+            "",
+            HELP_SPACING + "--queue [COUNT]",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "Number of commands waiting to run before new commands are turned away. Defaults to 64.",
+            "",
+            HELP_SPACING + "--help",
+            HELP_SPACING + "-h",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING  + "Display this menu.",
+        };
+    }
+    
+    @Override
+    public boolean parse(String[] args, int start) throws MalformedURLException, IOException
+    {
+        Convert options = new Convert();
+        
+        if(start == args.length) 
+        {
+            printToolHelp(this);
+            
+            return true;
+        }
+        
+        for(int i=start; i<args.length; i++)
+        {
+            switch(args[i])
+            {
+                case "--help":
+                case "-h":
+                    printToolHelp(this);
+                    return true;
+                    
+                case "--socket":
+                case "-s":
+                    socket = new File(args[++i]);
+                    break;
+                    
+                case "--workers":
+                    workers = options.getCount("worker count", args[++i]);
+                    break;
+                    
+                case "--queue":
+                    queue = options.getCount("queue size", args[++i]);
+                    break;
+                    
+                default:
+                    exit(255, "Unknown parameter: " + args[i]);
+            }
+        }
+        
+        if(socket == null)
+        {
+            System.err.println("No socket specified!");
+            
+            return false;
+        }
+        
+        return true;
+    }
+
+    @Override
+    public void execute()
+    {
+        ConversionServer server = new ConversionServer(socket);
+        
+        server.setWorkers(workers);
+        server.setQueue(queue);
+        
+        try
+        {
+            server.run();
+        }
+        catch(IOException e)
+        {
+            exit(254, e.getMessage());
+        }
+    }
+}
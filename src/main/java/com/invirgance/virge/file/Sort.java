@@ -0,0 +1,199 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file;
+
+import com.invirgance.convirgance.ConvirganceException;
+import static com.invirgance.virge.Virge.HELP_DESCRIPTION_SPACING;
+import static com.invirgance.virge.Virge.HELP_SPACING;
+import static com.invirgance.virge.file.VirgeFile.exit;
+import static com.invirgance.virge.file.VirgeFile.printToolHelp;
+import com.invirgance.virge.file.sort.ExternalSortTransformer;
+import com.invirgance.virge.file.sort.SortKey;
+import com.invirgance.virge.tool.Tool;
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sorts a file by one or more columns, spilling sorted runs to disk when the
+ * file does not fit in the memory budget. Reading and writing are handled by
+ * the convert tool, so every source and target it supports can be sorted.
+ * 
+ * @author agent
+ */
+public class Sort implements Tool
+{
+    private Convert convert;
+    private List<SortKey> keys;
+    private long memory = ExternalSortTransformer.DEFAULT_MEMORY;
+    private File temporaryDirectory;
+
+    public List<SortKey> getKeys()
+    {
+        return keys;
+    }
+
+    public void setKeys(List<SortKey> keys)
+    {
+        this.keys = keys;
+    }
+
+    public long getMemory()
+    {
+        return memory;
+    }
+
+    public void setMemory(long memory)
+    {
+        this.memory = memory;
+    }
+
+    public File getTemporaryDirectory()
+    {
+        return temporaryDirectory;
+    }
+
+    public void setTemporaryDirectory(File temporaryDirectory)
+    {
+        this.temporaryDirectory = temporaryDirectory;
+    }
+    
+    @Override
+    public String getName()
+    {
+        return "sort";
+    }
+
+    @Override
+    public String getShortDescription()
+    {
+        return "Sorts a file by one or more columns, even when it does not fit in memory.";
+    }
+
+    @Override
+    public String getExample()
+    {
+        return "virge.jar file sort --by \"region,amount:desc\" \"/sales.csv\" \"/sorted.csv\"";
+    }
+
+    @Override
+    public String[] getHelp()
+    {
+        return new String[]
+        {
+            HELP_SPACING + "--by <COLUMN[:num|:str][:desc],...>",
+            HELP_SPACING + "-k <COLUMN[:num|:str][:desc],...>",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "Columns to sort by. Append :desc to sort a column in descending order. Each column is compared as numbers only if every value in the first run is a number, so values with leading zeros such as zip codes sort as text. Append :num or :str to choose.",
+            "",
+            HELP_SPACING + "--memory [SIZE]",
+            HELP_SPACING + "-m [SIZE]",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "Approximate memory used to hold records before spilling sorted runs to disk (e.g. 512m). Defaults to 256m.",
+            "",
+            HELP_SPACING + "--temp-dir <DIRECTORY>",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "Directory for spilled runs. Defaults to the system temporary directory.",
+            "",
+            HELP_SPACING + "--source, --target, --source-type, --target-type and other convert options",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING + "Applied as described for the convert tool. --where and --columns are applied before sorting, --skip and --limit after.",
+            "",
+            HELP_SPACING + "--help",
+            HELP_SPACING + "-h",
+            HELP_SPACING + HELP_DESCRIPTION_SPACING  + "Display this menu.",
+        };
+    }
+
+    @Override
+    public boolean parse(String[] args, int start) throws MalformedURLException, IOException
+    {
+        List<String> options = new ArrayList<>();
+        
+        convert = new Convert();
+        
+        if(start == args.length) 
+        {
+            printToolHelp(this);
+            
+            return true;
+        }
+        
+        for(int i=start; i<args.length; i++)
+        {
+            switch(args[i])
+            {
+                case "--help":
+                case "-h":
+                    printToolHelp(this);
+                    return true;
+                    
+                case "--by":
+                case "-k":
+                    try
+                    {
+                        keys = SortKey.parse(args[++i]);
+                    }
+                    catch(ConvirganceException e)
+                    {
+                        exit(255, e.getMessage());
+                    }
+                    
+                    break;
+                    
+                case "--memory":
+                case "-m":
+                    memory = convert.getSize("memory", args[++i]);
+                    break;
+                    
+                case "--temp-dir":
+                    temporaryDirectory = new File(args[++i]);
+                    break;
+                    
+                default:
+                    options.add(args[i]);
+            }
+        }
+        
+        if(keys == null) return error("No sort columns specified!");
+        if(options.isEmpty()) return error("No source specified!");
+        
+        return convert.parse(options.toArray(String[]::new), 0);
+    }
+    
+    private boolean error(String message)
+    {
+        System.err.println(message);
+        
+        return false;
+    }
+
+    @Override
+    public void execute()
+    {
+        ExternalSortTransformer sorter = new ExternalSortTransformer(keys);
+        
+        sorter.setMemory(memory);
+        sorter.setTemporaryDirectory(temporaryDirectory);
+        
+        convert.addTransform(sorter);
+        convert.execute();
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file;
+
+import com.invirgance.convirgance.ConvirganceException;
+import java.io.File;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Creates the spill files used by sorts, dedups, aggregates and joins. Files
+ * created inside a scope are deleted when the scope is closed, even if the
+ * records were never read to the end, and any files left when the JVM shuts
+ * down are deleted then. Unlike File.deleteOnExit(), nothing is retained for
+ * deleted files, so a long running server doesn't accumulate them.
+ * 
+ * @author agent
+ */
+public class TemporaryFiles
+{
+    private static final Set<File> files = ConcurrentHashMap.newKeySet();
+    private static final InheritableThreadLocal<Scope> scope = new InheritableThreadLocal<>();
+    
+    static
+    {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            for(File file : files) file.delete();
+        }, "virge-cleanup"));
+    }
+    
+    /**
+     * Creates a new empty temporary file in the current scope
+     * 
+     * @param prefix the start of the file name
+     * @param suffix the end of the file name
+     * @param directory the directory or null for the system temporary directory
+     * @return the new file
+     */
+    public static File create(String prefix, String suffix, File directory)
+    {
+        Scope current = scope.get();
+        File file;
+        
+        try
+        {
+            file = File.createTempFile(prefix, suffix, directory);
+        }
+        catch(IOException e)
+        {
+            throw new ConvirganceException(e);
+        }
+        
+        files.add(file);
+        
+        if(current != null) current.files.add(file);
+        
+        return file;
+    }
+    
+    /**
+     * Deletes a file created by create() once it is no longer needed
+     * 
+     * @param file the file to delete
+     */
+    public static void delete(File file)
+    {
+        file.delete();
+        files.remove(file);
+    }
+    
+    /**
+     * Opens a scope for the current thread and the threads it starts. Close
+     * the scope in the same thread.
+     * 
+     * @return the new scope
+     */
+    public static Scope open()
+    {
+        Scope opened = new Scope(scope.get());
+        
+        scope.set(opened);
+        
+        return opened;
+    }
+    
+    public static class Scope implements AutoCloseable
+    {
+        private final Scope parent;
+        private final Set<File> files = ConcurrentHashMap.newKeySet();
+
+        private Scope(Scope parent)
+        {
+            this.parent = parent;
+        }
+
+        /**
+         * Deletes the files created in this scope that still exist
+         */
+        @Override
+        public void close()
+        {
+            if(parent == null) scope.remove();
+            else scope.set(parent);
+            
+            for(File file : files) delete(file);
+            
+            files.clear();
+        }
+    }
+}
@@ -23,6 +23,8 @@ package com.invirgance.virge.file;
 
 import static com.invirgance.virge.Virge.HELP_DESCRIPTION_SPACING;
 import static com.invirgance.virge.Virge.HELP_SPACING;
+import com.invirgance.virge.Virge;
+import com.invirgance.virge.file.server.ServerClient;
 import com.invirgance.virge.tool.Tool;
 import java.io.PrintStream;
 import java.util.HashMap;
@@ -39,11 +41,22 @@ public class VirgeFile
     private static final String HELP = "Tools for copying, converting/transforming files.";
     
     public static Tool SELECTED;
+    
+    // The tool of a job run by the conversion server, which runs several at once
+    private static final InheritableThreadLocal<Tool[]> job = new InheritableThreadLocal<>();
 
     public static final Map<String,Tool> lookup = new HashMap<>();
     
     public static final Tool[] tools = new Tool[] {
         new Convert(),
+        new ConvertAll(),
+        new Count(),
+        new Sort(),
+        new Dedup(),
+        new Aggregate(),
+        new Join(),
+        new Profile(),
+        new Serve(),
     }; 
     
     static {
@@ -61,12 +74,27 @@ public class VirgeFile
         out.println();
     }
     
+    /**
+     * Stops the current tool with an exit status. Tools call this rather than
+     * exiting the JVM so that they can also run inside the conversion server.
+     * 
+     * @param status the exit status
+     * @param message the error message to print
+     * @throws ExitException always
+     */
+    public static void exit(int status, String message)
+    {
+        throw new ExitException(status, message);
+    }
+    
     public static void printToolHelp(Tool selected)
     {
+        Tool current = (job.get() != null) ? job.get()[0] : SELECTED;
+        
         // TODO look at adding sub tools to Tool
-        Boolean level = SELECTED != null && selected != null && !SELECTED.getName().equals(selected.getName()) || SELECTED != null && selected == null;
+        Boolean level = current != null && selected != null && !current.getName().equals(selected.getName()) || current != null && selected == null;
         
-        String top = level ? SELECTED.getName() : "";
+        String top = level ? current.getName() : "";
         String sub = selected != null ? selected.getName() : "";
         
         // This is for tools that have no sub tools but are parents (declared in tools above)
@@ -85,13 +113,13 @@ public class VirgeFile
             
             print(selected.getHelp(), System.out);
         }
-        else if(SELECTED != null)
+        else if(current != null)
         {
             // Top level tools
             System.out.println();
             System.out.println("Usage: virge.jar file " + top + sub + " <COMMAND>");
             System.out.println();
-            System.out.println(SELECTED.getShortDescription());
+            System.out.println(current.getShortDescription());
             System.out.println();            
             System.out.println("Options:");
             System.out.println();
@@ -102,7 +130,7 @@ public class VirgeFile
             System.out.println("Commands:");
             System.out.println();
             
-            print(SELECTED.getHelp(), System.out); 
+            print(current.getHelp(), System.out); 
         }
         else
         {
@@ -123,7 +151,43 @@ public class VirgeFile
             System.out.println(); 
         }
         
-        System.exit(1);
+        throw new ExitException(1, null);
+    }
+    
+    /**
+     * Runs a command line in the current thread on a new instance of the tool.
+     * Used by the conversion server, so the selected tool is only visible to
+     * the threads of this command.
+     * 
+     * @param args the command line arguments, starting with the tool name
+     * @throws ExitException if the tool stops with an exit status
+     * @throws Exception if the tool fails
+     */
+    public static void run(String[] args) throws Exception
+    {
+        Tool tool = (args.length > 0) ? lookup.get(args[0]) : null;
+        
+        if(tool != null) tool = tool.getClass().getDeclaredConstructor().newInstance();
+        
+        job.set(new Tool[]{ tool });
+        
+        try
+        {
+            if(tool == null)
+            {
+                System.err.println("\nUnknown Command: " + (args.length > 0 ? args[0] : ""));
+
+                printToolHelp(null);
+            }
+
+            if(!tool.parse(args, 1)) printToolHelp(null);
+
+            tool.execute();
+        }
+        finally
+        {
+            job.remove();
+        }
     }
     
     /**
@@ -133,25 +197,41 @@ public class VirgeFile
      */
     public static void main(String[] args) throws Exception
     {
-        // NOTE: -? might be a special pattern in some shells, zsh?
-        if(args.length == 0 || args[0].equals("--help") || args[0].equals("-h"))
-        {   
-            printToolHelp(null);
-         
-            return;
-        }
+        Integer status;
         
-        SELECTED = lookup.get(args[0]);
+        try
+        {
+            // NOTE: -? might be a special pattern in some shells, zsh?
+            if(args.length == 0 || args[0].equals("--help") || args[0].equals("-h"))
+            {   
+                printToolHelp(null);
+
+                return;
+            }
+
+            // Hand the command to a warm server when one is configured and running
+            status = ServerClient.forward(args);
 
-        if(SELECTED == null) 
+            if(status != null) System.exit(status);
+
+            SELECTED = lookup.get(args[0]);
+
+            if(SELECTED == null) 
+            {
+                System.err.println("\nUnknown Command: " + args[0]);
+
+                printToolHelp(null);
+            }
+
+            if(!SELECTED.parse(args, 1)) printToolHelp(null);
+
+            SELECTED.execute();
+        }
+        catch(ExitException e)
         {
-            System.err.println("\nUnknown Command: " + args[0]);
+            if(e.getMessage() == null) System.exit(e.getStatus());
             
-            printToolHelp(null);
+            Virge.exit(e.getStatus(), e.getMessage());
         }
-        
-        if(!SELECTED.parse(args, 1)) printToolHelp(null);
-        
-        SELECTED.execute();
     }
 }
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.aggregate;
+
+import com.invirgance.convirgance.json.JSONObject;
+import com.invirgance.virge.file.sort.SortKey;
+
+/**
+ * Accumulates one aggregate for every group. State is held in primitive 
+ * arrays indexed by group id rather than in boxed record values. Partial 
+ * state can be merged from another accumulator of the same type, or saved 
+ * into a record and loaded back when aggregation spills to disk.
+ * 
+ * @author agent
+ */
+public abstract class Accumulator
+{
+    protected final String column;
+    
+    private int capacity;
+
+    /**
+     * @param column the column to aggregate or null for aggregates over entire records
+     */
+    public Accumulator(String column)
+    {
+        this.column = column;
+    }
+
+    public String getColumn()
+    {
+        return column;
+    }
+    
+    /**
+     * Makes room for the given number of groups
+     * 
+     * @param groups the number of groups
+     */
+    public void ensure(int groups)
+    {
+        if(groups <= capacity) return;
+        
+        capacity = Math.max(16, Math.max(groups, capacity * 2));
+        
+        resize(capacity);
+    }
+    
+    /**
+     * Returns a column value as a Long or Double, or null if the value is not
+     * numeric. Numeric strings are converted.
+     * 
+     * @param record the record to read
+     * @return the numeric value or null
+     */
+    protected Number getNumber(JSONObject record)
+    {
+        Object key = SortKey.toKey(record.get(column));
+        
+        return (key instanceof Number) ? (Number)key : null;
+    }
+    
+    /**
+     * @param capacity the new number of groups the arrays must hold
+     */
+    protected abstract void resize(int capacity);
+    
+    public abstract void add(int group, JSONObject record);
+    
+    /**
+     * Merges the state of a group in another accumulator into a group of this one
+     * 
+     * @param group the group in this accumulator
+     * @param other an accumulator of the same type
+     * @param from the group in the other accumulator
+     */
+    public abstract void merge(int group, Accumulator other, int from);
+    
+    /**
+     * @param group the group
+     * @return the final value of the aggregate for the group
+     */
+    public abstract Object get(int group);
+    
+    /**
+     * Stores the partial state of a group in a record
+     * 
+     * @param group the group
+     * @param partial the record to store the state in
+     * @param name a prefix unique to this accumulator for the stored fields
+     */
+    public abstract void save(int group, JSONObject partial, String name);
+    
+    /**
+     * Merges partial state previously stored with save() into a group
+     * 
+     * @param group the group
+     * @param partial the record holding the state
+     * @param name the prefix used when saving
+     */
+    public abstract void load(int group, JSONObject partial, String name);
+}
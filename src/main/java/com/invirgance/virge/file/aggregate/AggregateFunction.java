@@ -0,0 +1,168 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.aggregate;
+
+import com.invirgance.convirgance.ConvirganceException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An aggregate to compute for each group, such as <code>sum(amount)</code>.
+ * 
+ * @author agent
+ */
+public class AggregateFunction
+{
+    public enum Type
+    {
+        COUNT,
+        SUM,
+        MIN,
+        MAX,
+        AVG,
+        DISTINCT
+    }
+    
+    private final Type type;
+    private final String column;
+    private final String name;
+
+    /**
+     * @param type the aggregate to compute
+     * @param column the column to aggregate, or null when counting records
+     * @param name the output column name
+     */
+    public AggregateFunction(Type type, String column, String name)
+    {
+        this.type = type;
+        this.column = column;
+        this.name = name;
+    }
+
+    public Type getType()
+    {
+        return type;
+    }
+
+    public String getColumn()
+    {
+        return column;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+    
+    public Accumulator createAccumulator()
+    {
+        switch(type)
+        {
+            case COUNT:
+                return new CountAccumulator(column);
+                
+            case SUM:
+                return new SumAccumulator(column, false);
+                
+            case AVG:
+                return new SumAccumulator(column, true);
+                
+            case MIN:
+                return new ExtremeAccumulator(column, false);
+                
+            case MAX:
+                return new ExtremeAccumulator(column, true);
+                
+            default:
+                return new DistinctAccumulator(column);
+        }
+    }
+    
+    /**
+     * Parses a single aggregate such as <code>count</code>, <code>sum(amount)</code>
+     * or <code>avg(amount) as mean</code>. Unless named, the output column is
+     * the function and column joined by an underscore (e.g. sum_amount).
+     * 
+     * @param spec the aggregate
+     * @return the parsed aggregate
+     */
+    public static AggregateFunction parse(String spec)
+    {
+        String expression = spec.trim();
+        String name = null;
+        String column = null;
+        Type type;
+        int index;
+        
+        index = expression.toLowerCase().lastIndexOf(" as ");
+        
+        if(index > 0)
+        {
+            name = expression.substring(index + 4).trim();
+            expression = expression.substring(0, index).trim();
+        }
+        
+        index = expression.indexOf('(');
+        
+        if(index > 0)
+        {
+            if(!expression.endsWith(")")) throw new ConvirganceException("Invalid aggregate: " + spec);
+            
+            column = expression.substring(index + 1, expression.length() - 1).trim();
+            expression = expression.substring(0, index).trim();
+            
+            if(column.isEmpty() || column.equals("*")) column = null;
+        }
+        
+        try
+        {
+            type = Type.valueOf(expression.toUpperCase());
+        }
+        catch(IllegalArgumentException e)
+        {
+            throw new ConvirganceException("Unknown aggregate function " + expression + " in: " + spec);
+        }
+        
+        if(column == null && type != Type.COUNT) throw new ConvirganceException("A column is required for aggregate: " + spec);
+        if(name == null) name = expression.toLowerCase() + (column == null ? "" : "_" + column);
+        
+        return new AggregateFunction(type, column, name);
+    }
+    
+    /**
+     * Parses a comma separated list of aggregates
+     * 
+     * @param spec the aggregates (e.g. "count,sum(amount),max(amount) as largest")
+     * @return the parsed aggregates
+     */
+    public static List<AggregateFunction> parseList(String spec)
+    {
+        List<AggregateFunction> functions = new ArrayList<>();
+        
+        for(String function : spec.split(","))
+        {
+            if(!function.isBlank()) functions.add(parse(function));
+        }
+        
+        return functions;
+    }
+}
@@ -0,0 +1,341 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.aggregate;
+
+import com.invirgance.convirgance.ConvirganceException;
+import com.invirgance.convirgance.json.JSONObject;
+import com.invirgance.convirgance.transform.Transformer;
+import com.invirgance.virge.file.dedup.HashPartitions;
+import com.invirgance.virge.file.pipeline.BatchWorkers;
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Groups records by the values of a set of columns and emits one record per
+ * group with the group-by values and the computed aggregates. Records are 
+ * aggregated in parallel, with each worker thread filling its own group 
+ * table, and the tables are merged once the input is consumed. 
+ * <br><br>
+ * When a table outgrows its share of the memory budget, its partial state is
+ * spilled to one of 64 partitions on disk chosen by a hash of the group. Each
+ * partition is then merged on its own, and split again if it is still too 
+ * large. Groups are written in order of their group-by values, within each
+ * partition when spilling.
+ * 
+ * @author agent
+ */
+public class AggregateTransformer implements Transformer, AutoCloseable
+{
+    public static final long DEFAULT_MEMORY = 256 * 1024 * 1024;
+    
+    private final String[] columns;
+    private final List<AggregateFunction> functions;
+    private final List<PartitionIterator> iterators = new ArrayList<>();
+    
+    private long memory = DEFAULT_MEMORY;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private File temporaryDirectory;
+
+    /**
+     * @param columns the group-by columns. With no columns all records form a single group.
+     * @param functions the aggregates to compute
+     */
+    public AggregateTransformer(String[] columns, List<AggregateFunction> functions)
+    {
+        this.columns = (columns == null) ? new String[0] : columns;
+        this.functions = functions;
+    }
+
+    public String[] getColumns()
+    {
+        return columns;
+    }
+
+    public List<AggregateFunction> getFunctions()
+    {
+        return functions;
+    }
+
+    public long getMemory()
+    {
+        return memory;
+    }
+
+    /**
+     * @param memory the approximate bytes of heap used for groups before spilling to disk
+     */
+    public void setMemory(long memory)
+    {
+        this.memory = memory;
+    }
+
+    public int getThreads()
+    {
+        return threads;
+    }
+
+    public void setThreads(int threads)
+    {
+        this.threads = Math.max(1, threads);
+    }
+
+    public File getTemporaryDirectory()
+    {
+        return temporaryDirectory;
+    }
+
+    public void setTemporaryDirectory(File temporaryDirectory)
+    {
+        this.temporaryDirectory = temporaryDirectory;
+    }
+    
+    // Rough heap cost of a group: the hash entry, key arrays and accumulator slots
+    private long getGroupSize()
+    {
+        long size = 128 + 64 * columns.length;
+        
+        for(AggregateFunction function : functions)
+        {
+            if(function.getType() == AggregateFunction.Type.DISTINCT) size += 32 + (1 << DistinctAccumulator.DEFAULT_PRECISION);
+            else size += 32;
+        }
+        
+        return size;
+    }
+    
+    private int getMaxGroups(int tables)
+    {
+        return (int)Math.max(1, Math.min(Integer.MAX_VALUE - 8, memory / tables / getGroupSize()));
+    }
+
+    @Override
+    public Iterable<JSONObject> transform(Iterable<JSONObject> iterable) throws ConvirganceException
+    {
+        return () -> {
+            HashPartitions spill = new HashPartitions(columns, 0, "virge-aggregate-", temporaryDirectory);
+            GroupTable table = aggregate(iterable.iterator(), spill);
+            
+            if(!spill.isUsed()) return new ResultIterator(table);
+            
+            write(spill, table);
+            spill.close();
+            
+            return new PartitionIterator(spill);
+        };
+    }
+    
+    /**
+     * Stops returning spilled groups and deletes the partitions that have 
+     * not been merged yet. Used when no more records are needed before the
+     * output is exhausted.
+     */
+    @Override
+    public void close()
+    {
+        List<PartitionIterator> open;
+        
+        synchronized(iterators)
+        {
+            open = new ArrayList<>(iterators);
+        }
+        
+        for(PartitionIterator iterator : open) iterator.close();
+    }
+    
+    // Workers spill concurrently, so each table is written as a whole
+    private void write(HashPartitions partitions, GroupTable table)
+    {
+        synchronized(partitions)
+        {
+            for(int i=0; i<table.size(); i++) partitions.write(table.getPartial(i));
+        }
+    }
+    
+    private GroupTable aggregate(Iterator<JSONObject> iterator, HashPartitions spill)
+    {
+        int maxGroups = getMaxGroups(threads);
+        BatchWorkers<GroupTable> workers;
+        List<GroupTable> tables;
+        GroupTable table;
+        
+        workers = new BatchWorkers<>("virge-aggregate", threads, () -> new GroupTable(columns, functions), (current, batch, position) -> {
+            for(JSONObject record : batch) current.add(record);
+            
+            if(current.size() <= maxGroups) return current;
+            
+            write(spill, current);
+            
+            return new GroupTable(columns, functions);
+        });
+        
+        tables = workers.run(iterator);
+        table = tables.get(0);
+        
+        for(int i=1; i<tables.size(); i++) 
+        {
+            if(spill.isUsed()) write(spill, tables.get(i));
+            else table.merge(tables.get(i));
+        }
+        
+        return table;
+    }
+    
+    private class ResultIterator implements Iterator<JSONObject>
+    {
+        private final GroupTable table;
+        private final int[] groups;
+        
+        private int index;
+
+        public ResultIterator(GroupTable table)
+        {
+            this.table = table;
+            this.groups = table.getSortedGroups();
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            // A query without group-by columns always returns its single group
+            return index < groups.length || (index == 0 && columns.length == 0);
+        }
+
+        @Override
+        public JSONObject next()
+        {
+            if(!hasNext()) throw new NoSuchElementException();
+            
+            if(groups.length == 0) 
+            {
+                index++;
+                
+                return table.getResult(table.getGroup(new JSONObject()));
+            }
+            
+            return table.getResult(groups[index++]);
+        }
+    }
+    
+    private class PartitionIterator implements Iterator<JSONObject>
+    {
+        private final Deque<HashPartitions> partitions = new ArrayDeque<>();
+        private final Deque<Integer> indexes = new ArrayDeque<>();
+        
+        private Iterator<JSONObject> results;
+
+        public PartitionIterator(HashPartitions spill)
+        {
+            add(spill);
+            
+            synchronized(iterators)
+            {
+                iterators.add(this);
+            }
+        }
+        
+        public void close()
+        {
+            synchronized(iterators)
+            {
+                iterators.remove(this);
+            }
+            
+            while(!partitions.isEmpty()) partitions.pop().delete(indexes.pop());
+            
+            results = null;
+        }
+        
+        private void add(HashPartitions split)
+        {
+            // Pushed in reverse so partitions are merged in order
+            for(int i=HashPartitions.COUNT-1; i>=0; i--)
+            {
+                if(!split.exists(i)) continue;
+                
+                partitions.push(split);
+                indexes.push(i);
+            }
+        }
+        
+        private void merge(HashPartitions from, int index)
+        {
+            GroupTable table = new GroupTable(columns, functions);
+            HashPartitions split = new HashPartitions(columns, from.getDepth() + 1, "virge-aggregate-", temporaryDirectory);
+            Iterator<JSONObject> partials = from.read(index);
+            int maxGroups = getMaxGroups(1);
+            
+            while(partials.hasNext())
+            {
+                table.load(partials.next());
+                
+                if(table.size() <= maxGroups) continue;
+                
+                write(split, table);
+                
+                table = new GroupTable(columns, functions);
+            }
+            
+            from.delete(index);
+            
+            if(!split.isUsed()) 
+            {
+                results = new ResultIterator(table);
+                return;
+            }
+            
+            write(split, table);
+            split.close();
+            
+            add(split);
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            while(results == null || !results.hasNext())
+            {
+                if(partitions.isEmpty()) 
+                {
+                    close();
+                    return false;
+                }
+                
+                merge(partitions.pop(), indexes.pop());
+            }
+            
+            return true;
+        }
+
+        @Override
+        public JSONObject next()
+        {
+            if(!hasNext()) throw new NoSuchElementException();
+            
+            return results.next();
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.aggregate;
+
+import com.invirgance.convirgance.json.JSONObject;
+import java.util.Arrays;
+
+/**
+ * Counts records, or non-null values when a column is given.
+ * 
+ * @author agent
+ */
+public class CountAccumulator extends Accumulator
+{
+    private long[] counts = new long[0];
+
+    public CountAccumulator(String column)
+    {
+        super(column);
+    }
+
+    @Override
+    protected void resize(int capacity)
+    {
+        counts = Arrays.copyOf(counts, capacity);
+    }
+
+    @Override
+    public void add(int group, JSONObject record)
+    {
+        if(column == null || record.get(column) != null) counts[group]++;
+    }
+
+    @Override
+    public void merge(int group, Accumulator other, int from)
+    {
+        counts[group] += ((CountAccumulator)other).counts[from];
+    }
+
+    @Override
+    public Object get(int group)
+    {
+        return counts[group];
+    }
+
+    @Override
+    public void save(int group, JSONObject partial, String name)
+    {
+        partial.put(name, counts[group]);
+    }
+
+    @Override
+    public void load(int group, JSONObject partial, String name)
+    {
+        counts[group] += ((Number)partial.get(name)).longValue();
+    }
+}
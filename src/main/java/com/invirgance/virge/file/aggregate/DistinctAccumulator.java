@@ -0,0 +1,117 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.aggregate;
+
+import com.invirgance.convirgance.json.JSONObject;
+import com.invirgance.virge.file.dedup.Fingerprint;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Estimates the number of distinct non-null values of a column with a 
+ * HyperLogLog sketch per group. Each sketch takes 2^precision bytes and is
+ * only allocated once the group has a value. The default precision gives a
+ * typical error of about 2%.
+ * 
+ * @author agent
+ */
+public class DistinctAccumulator extends Accumulator
+{
+    public static final int DEFAULT_PRECISION = 11;
+    
+    private final int precision;
+    private final Fingerprint fingerprint;
+    
+    private HyperLogLog[] sketches = new HyperLogLog[0];
+
+    public DistinctAccumulator(String column)
+    {
+        this(column, DEFAULT_PRECISION);
+    }
+
+    /**
+     * @param column the column to count
+     * @param precision the number of hash bits used to select a register (4 to 18)
+     */
+    public DistinctAccumulator(String column, int precision)
+    {
+        super(column);
+        
+        this.precision = precision;
+        this.fingerprint = new Fingerprint(new String[]{ column });
+    }
+
+    public int getPrecision()
+    {
+        return precision;
+    }
+
+    @Override
+    protected void resize(int capacity)
+    {
+        sketches = Arrays.copyOf(sketches, capacity);
+    }
+    
+    private HyperLogLog getSketch(int group)
+    {
+        if(sketches[group] == null) sketches[group] = new HyperLogLog(precision);
+        
+        return sketches[group];
+    }
+
+    @Override
+    public void add(int group, JSONObject record)
+    {
+        if(record.get(column) == null) return;
+        
+        fingerprint.compute(record);
+        getSketch(group).add(fingerprint.getHigh());
+    }
+
+    @Override
+    public void merge(int group, Accumulator other, int from)
+    {
+        HyperLogLog sketch = ((DistinctAccumulator)other).sketches[from];
+        
+        if(sketch != null) getSketch(group).merge(sketch);
+    }
+
+    @Override
+    public Object get(int group)
+    {
+        return (sketches[group] == null) ? 0L : sketches[group].estimate();
+    }
+
+    @Override
+    public void save(int group, JSONObject partial, String name)
+    {
+        partial.put(name, sketches[group] == null ? null : Base64.getEncoder().encodeToString(sketches[group].getRegisters()));
+    }
+
+    @Override
+    public void load(int group, JSONObject partial, String name)
+    {
+        String sketch = (String)partial.get(name);
+        
+        if(sketch != null) getSketch(group).merge(new HyperLogLog(precision, Base64.getDecoder().decode(sketch)));
+    }
+}
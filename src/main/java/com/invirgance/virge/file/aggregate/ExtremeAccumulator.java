@@ -0,0 +1,109 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.aggregate;
+
+import com.invirgance.convirgance.json.JSONObject;
+import java.util.Arrays;
+
+/**
+ * Tracks the minimum or maximum numeric value of a column. The result is an
+ * integer when every value seen was an integer.
+ * 
+ * @author agent
+ */
+public class ExtremeAccumulator extends Accumulator
+{
+    private final boolean maximum;
+    
+    private double[] values = new double[0];
+    private boolean[] seen = new boolean[0];
+    private boolean[] fractional = new boolean[0];
+
+    /**
+     * @param column the column to examine
+     * @param maximum true for the maximum, false for the minimum
+     */
+    public ExtremeAccumulator(String column, boolean maximum)
+    {
+        super(column);
+        
+        this.maximum = maximum;
+    }
+
+    @Override
+    protected void resize(int capacity)
+    {
+        values = Arrays.copyOf(values, capacity);
+        seen = Arrays.copyOf(seen, capacity);
+        fractional = Arrays.copyOf(fractional, capacity);
+    }
+    
+    private void add(int group, double value, boolean decimal)
+    {
+        fractional[group] |= decimal;
+        
+        if(seen[group] && (maximum ? value <= values[group] : value >= values[group])) return;
+        
+        values[group] = value;
+        seen[group] = true;
+    }
+
+    @Override
+    public void add(int group, JSONObject record)
+    {
+        Number value = getNumber(record);
+        
+        if(value != null) add(group, value.doubleValue(), !(value instanceof Long));
+    }
+
+    @Override
+    public void merge(int group, Accumulator other, int from)
+    {
+        ExtremeAccumulator extreme = (ExtremeAccumulator)other;
+        
+        if(extreme.seen[from]) add(group, extreme.values[from], extreme.fractional[from]);
+    }
+
+    @Override
+    public Object get(int group)
+    {
+        if(!seen[group]) return null;
+        if(!fractional[group]) return (long)values[group];
+        
+        return values[group];
+    }
+
+    @Override
+    public void save(int group, JSONObject partial, String name)
+    {
+        partial.put(name + ".value", seen[group] ? values[group] : null);
+        partial.put(name + ".fractional", fractional[group]);
+    }
+
+    @Override
+    public void load(int group, JSONObject partial, String name)
+    {
+        Object value = partial.get(name + ".value");
+        
+        if(value != null) add(group, ((Number)value).doubleValue(), (Boolean)partial.get(name + ".fractional"));
+    }
+}
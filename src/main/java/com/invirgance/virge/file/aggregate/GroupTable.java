@@ -0,0 +1,252 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.aggregate;
+
+import com.invirgance.convirgance.json.JSONObject;
+import com.invirgance.virge.file.sort.SortKey;
+import com.invirgance.virge.file.transform.ColumnType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Assigns an id to each distinct group and feeds records to the accumulators 
+ * of their group. Groups are identified by the typed values of the group-by
+ * columns, so "42" and 42 fall in the same group. Each table is used by a 
+ * single thread and tables are merged once their input is consumed.
+ * 
+ * @author agent
+ */
+public class GroupTable
+{
+    private final String[] columns;
+    private final List<AggregateFunction> functions;
+    private final Accumulator[] accumulators;
+    
+    private final Map<Group,Integer> ids = new HashMap<>();
+    private final List<Group> groups = new ArrayList<>();
+
+    /**
+     * @param columns the group-by columns, which may be empty for a single group
+     * @param functions the aggregates to compute for each group
+     */
+    public GroupTable(String[] columns, List<AggregateFunction> functions)
+    {
+        this.columns = columns;
+        this.functions = functions;
+        this.accumulators = new Accumulator[functions.size()];
+        
+        for(int i=0; i<accumulators.length; i++) accumulators[i] = functions.get(i).createAccumulator();
+    }
+    
+    public int size()
+    {
+        return groups.size();
+    }
+    
+    /**
+     * Returns the id of the group a record belongs to, adding the group if it
+     * has not been seen before
+     * 
+     * @param record a record with the group-by columns
+     * @return the group id
+     */
+    public int getGroup(JSONObject record)
+    {
+        Object[] values = new Object[columns.length];
+        Object[] keys = new Object[columns.length];
+        Group group;
+        Integer id;
+        
+        for(int i=0; i<columns.length; i++)
+        {
+            values[i] = record.get(columns[i]);
+            keys[i] = SortKey.toKey(values[i]);
+        }
+        
+        group = new Group(keys, values);
+        id = ids.get(group);
+        
+        if(id != null) return id;
+        
+        id = groups.size();
+        
+        ids.put(group, id);
+        groups.add(group);
+        
+        for(Accumulator accumulator : accumulators) accumulator.ensure(groups.size());
+        
+        return id;
+    }
+    
+    public void add(JSONObject record)
+    {
+        int group = getGroup(record);
+        
+        for(Accumulator accumulator : accumulators) accumulator.add(group, record);
+    }
+    
+    /**
+     * Merges every group of another table into this one
+     * 
+     * @param other a table with the same columns and aggregates
+     */
+    public void merge(GroupTable other)
+    {
+        Group from;
+        int group;
+        
+        for(int i=0; i<other.groups.size(); i++)
+        {
+            from = other.groups.get(i);
+            group = getGroup(from.toRecord(columns));
+            
+            for(int j=0; j<accumulators.length; j++) accumulators[j].merge(group, other.accumulators[j], i);
+        }
+    }
+    
+    /**
+     * Returns the group-by values and the partial state of every aggregate 
+     * for a group. The record can be spilled to disk and merged back with
+     * load().
+     * 
+     * @param group the group id
+     * @return a record holding the partial state
+     */
+    public JSONObject getPartial(int group)
+    {
+        JSONObject partial = groups.get(group).toRecord(columns);
+        
+        for(int i=0; i<accumulators.length; i++) accumulators[i].save(group, partial, "$" + i);
+        
+        return partial;
+    }
+    
+    public void load(JSONObject partial)
+    {
+        int group = getGroup(partial);
+        
+        for(int i=0; i<accumulators.length; i++) accumulators[i].load(group, partial, "$" + i);
+    }
+    
+    /**
+     * @param group the group id
+     * @return the group-by values followed by the final value of each aggregate
+     */
+    public JSONObject getResult(int group)
+    {
+        JSONObject result = groups.get(group).toRecord(columns);
+        
+        for(int i=0; i<accumulators.length; i++) result.put(functions.get(i).getName(), accumulators[i].get(group));
+        
+        return result;
+    }
+    
+    /**
+     * Orders the groups by their group-by values. Each column is compared as
+     * the type widened over all of its values in the table, so a column of
+     * zip codes orders 00501 and 10001 as text rather than ranking the one
+     * that looks like a number first.
+     * 
+     * @return the group ids ordered by their group-by values
+     */
+    public int[] getSortedGroups()
+    {
+        Integer[] sorted = new Integer[groups.size()];
+        int[] result = new int[sorted.length];
+        Object[][] keys = new Object[sorted.length][columns.length];
+        ColumnType[] types = new ColumnType[columns.length];
+        
+        for(int i=0; i<columns.length; i++)
+        {
+            types[i] = ColumnType.NULL;
+            
+            for(Group group : groups) types[i] = types[i].widen(SortKey.typeOf(group.keys[i]));
+        }
+        
+        for(int i=0; i<sorted.length; i++)
+        {
+            sorted[i] = i;
+            
+            for(int j=0; j<columns.length; j++) keys[i][j] = SortKey.toKey(groups.get(i).keys[j], types[j]);
+        }
+        
+        Arrays.sort(sorted, (a, b) -> compare(keys[a], keys[b]));
+        
+        for(int i=0; i<sorted.length; i++) result[i] = sorted[i];
+        
+        return result;
+    }
+    
+    private static int compare(Object[] a, Object[] b)
+    {
+        int result;
+        
+        for(int i=0; i<a.length; i++)
+        {
+            result = SortKey.compare(a[i], b[i]);
+            
+            if(result != 0) return result;
+        }
+        
+        return 0;
+    }
+    
+    private static class Group
+    {
+        private final Object[] keys;
+        private final Object[] values;
+        private final int hash;
+
+        public Group(Object[] keys, Object[] values)
+        {
+            this.keys = keys;
+            this.values = values;
+            this.hash = Arrays.hashCode(keys);
+        }
+        
+        public JSONObject toRecord(String[] columns)
+        {
+            JSONObject record = new JSONObject();
+            
+            for(int i=0; i<columns.length; i++) record.put(columns[i], values[i]);
+            
+            return record;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if(!(obj instanceof Group)) return false;
+            
+            return Arrays.equals(keys, ((Group)obj).keys);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.aggregate;
+
+/**
+ * Estimates the number of distinct values from their 64-bit hashes using
+ * 2^precision one-byte registers. The typical error is 1.04 / sqrt(2^precision).
+ * Sketches of the same precision can be merged.
+ * 
+ * @author agent
+ */
+public class HyperLogLog
+{
+    private final int precision;
+    private final byte[] registers;
+
+    /**
+     * @param precision the number of hash bits used to select a register (4 to 18)
+     */
+    public HyperLogLog(int precision)
+    {
+        this(precision, new byte[1 << precision]);
+    }
+
+    /**
+     * @param precision the number of hash bits used to select a register
+     * @param registers the registers of a previously saved sketch
+     */
+    public HyperLogLog(int precision, byte[] registers)
+    {
+        if(precision < 4 || precision > 18) throw new IllegalArgumentException("Precision must be between 4 and 18: " + precision);
+        if(registers.length != (1 << precision)) throw new IllegalArgumentException("Expected " + (1 << precision) + " registers");
+        
+        this.precision = precision;
+        this.registers = registers;
+    }
+
+    public int getPrecision()
+    {
+        return precision;
+    }
+
+    public byte[] getRegisters()
+    {
+        return registers;
+    }
+    
+    /**
+     * @param hash a well mixed 64-bit hash of the value
+     */
+    public void add(long hash)
+    {
+        int index = (int)(hash >>> (64 - precision));
+        int rank = Math.min(Long.numberOfLeadingZeros(hash << precision), 64 - precision) + 1;
+        
+        if(registers[index] < rank) registers[index] = (byte)rank;
+    }
+    
+    public void merge(HyperLogLog other)
+    {
+        if(other.precision != precision) throw new IllegalArgumentException("Sketches must have the same precision");
+        
+        for(int i=0; i<registers.length; i++)
+        {
+            if(other.registers[i] > registers[i]) registers[i] = other.registers[i];
+        }
+    }
+    
+    /**
+     * @return the estimated number of distinct values added
+     */
+    public long estimate()
+    {
+        int count = registers.length;
+        double alpha = 0.7213 / (1 + 1.079 / count);
+        double sum = 0;
+        double estimate;
+        int zeros = 0;
+        
+        for(byte rank : registers)
+        {
+            sum += Math.scalb(1.0, -rank);
+            
+            if(rank == 0) zeros++;
+        }
+        
+        estimate = alpha * count * count / sum;
+        
+        // Linear counting is more accurate while many registers are still empty
+        if(estimate <= 2.5 * count && zeros > 0) estimate = count * Math.log((double)count / zeros);
+        
+        return Math.round(estimate);
+    }
+}
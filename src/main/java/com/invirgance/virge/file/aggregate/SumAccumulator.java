@@ -0,0 +1,140 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.aggregate;
+
+import com.invirgance.convirgance.json.JSONObject;
+import java.util.Arrays;
+
+/**
+ * Sums the numeric values of a column. Integers are summed exactly and the
+ * result is an integer unless a fractional value was seen or the sum 
+ * overflowed. Also computes averages when created for them.
+ * 
+ * @author agent
+ */
+public class SumAccumulator extends Accumulator
+{
+    private final boolean average;
+    
+    private long[] longs = new long[0];
+    private double[] doubles = new double[0];
+    private long[] counts = new long[0];
+    private boolean[] fractional = new boolean[0];
+
+    /**
+     * @param column the column to sum
+     * @param average true to return the average rather than the sum
+     */
+    public SumAccumulator(String column, boolean average)
+    {
+        super(column);
+        
+        this.average = average;
+    }
+
+    @Override
+    protected void resize(int capacity)
+    {
+        longs = Arrays.copyOf(longs, capacity);
+        doubles = Arrays.copyOf(doubles, capacity);
+        counts = Arrays.copyOf(counts, capacity);
+        fractional = Arrays.copyOf(fractional, capacity);
+    }
+    
+    private void add(int group, long value)
+    {
+        long sum = longs[group] + value;
+        
+        // Overflow moves the running integer sum over to the floating point sum
+        if(((longs[group] ^ sum) & (value ^ sum)) < 0)
+        {
+            doubles[group] += (double)longs[group] + value;
+            longs[group] = 0;
+            fractional[group] = true;
+            
+            return;
+        }
+        
+        longs[group] = sum;
+    }
+
+    @Override
+    public void add(int group, JSONObject record)
+    {
+        Number value = getNumber(record);
+        
+        if(value == null) return;
+        
+        counts[group]++;
+        
+        if(value instanceof Long) 
+        {
+            add(group, value.longValue());
+        }
+        else
+        {
+            doubles[group] += value.doubleValue();
+            fractional[group] = true;
+        }
+    }
+
+    @Override
+    public void merge(int group, Accumulator other, int from)
+    {
+        SumAccumulator sum = (SumAccumulator)other;
+        
+        add(group, sum.longs[from]);
+        
+        doubles[group] += sum.doubles[from];
+        counts[group] += sum.counts[from];
+        fractional[group] |= sum.fractional[from];
+    }
+
+    @Override
+    public Object get(int group)
+    {
+        if(counts[group] == 0) return null;
+        if(average) return (longs[group] + doubles[group]) / counts[group];
+        if(!fractional[group]) return longs[group];
+        
+        return longs[group] + doubles[group];
+    }
+
+    @Override
+    public void save(int group, JSONObject partial, String name)
+    {
+        partial.put(name + ".long", longs[group]);
+        partial.put(name + ".double", doubles[group]);
+        partial.put(name + ".count", counts[group]);
+        partial.put(name + ".fractional", fractional[group]);
+    }
+
+    @Override
+    public void load(int group, JSONObject partial, String name)
+    {
+        add(group, ((Number)partial.get(name + ".long")).longValue());
+        
+        doubles[group] += ((Number)partial.get(name + ".double")).doubleValue();
+        counts[group] += ((Number)partial.get(name + ".count")).longValue();
+        fractional[group] |= (Boolean)partial.get(name + ".fractional");
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.cache;
+
+import com.invirgance.convirgance.json.JSONObject;
+
+/**
+ * A record in the conversion cache manifest. Identifies the state of a 
+ * source file when it was converted and the cached output of the conversion.
+ * 
+ * @author agent
+ */
+public class CacheEntry
+{
+    private String key;
+    private String source;
+    private long size;
+    private long modified;
+    private String hash;
+    private String file;
+    private long length;
+    private long written;
+    private long used;
+
+    /**
+     * @return a hash of the source path and the conversion options
+     */
+    public String getKey()
+    {
+        return key;
+    }
+
+    public void setKey(String key)
+    {
+        this.key = key;
+    }
+
+    public String getSource()
+    {
+        return source;
+    }
+
+    public void setSource(String source)
+    {
+        this.source = source;
+    }
+
+    /**
+     * @return the size of the source when it was converted
+     */
+    public long getSize()
+    {
+        return size;
+    }
+
+    public void setSize(long size)
+    {
+        this.size = size;
+    }
+
+    /**
+     * @return the modification time of the source when it was converted
+     */
+    public long getModified()
+    {
+        return modified;
+    }
+
+    public void setModified(long modified)
+    {
+        this.modified = modified;
+    }
+
+    /**
+     * @return the content hash of the source or null if it was not hashed
+     */
+    public String getHash()
+    {
+        return hash;
+    }
+
+    public void setHash(String hash)
+    {
+        this.hash = hash;
+    }
+
+    /**
+     * @return the name of the cached output in the cache directory
+     */
+    public String getFile()
+    {
+        return file;
+    }
+
+    public void setFile(String file)
+    {
+        this.file = file;
+    }
+
+    /**
+     * @return the length of the cached output
+     */
+    public long getLength()
+    {
+        return length;
+    }
+
+    public void setLength(long length)
+    {
+        this.length = length;
+    }
+
+    /**
+     * @return the modification time of the cached output, used to detect 
+     *         changes made through a hard link
+     */
+    public long getWritten()
+    {
+        return written;
+    }
+
+    public void setWritten(long written)
+    {
+        this.written = written;
+    }
+
+    /**
+     * @return the time the entry was last stored or restored
+     */
+    public long getUsed()
+    {
+        return used;
+    }
+
+    public void setUsed(long used)
+    {
+        this.used = used;
+    }
+    
+    public JSONObject toJSON()
+    {
+        JSONObject record = new JSONObject();
+        
+        record.put("key", key);
+        record.put("source", source);
+        record.put("size", size);
+        record.put("modified", modified);
+        record.put("hash", hash);
+        record.put("file", file);
+        record.put("length", length);
+        record.put("written", written);
+        record.put("used", used);
+        
+        return record;
+    }
+    
+    public static CacheEntry fromJSON(JSONObject record)
+    {
+        CacheEntry entry = new CacheEntry();
+        
+        entry.key = record.getString("key");
+        entry.source = record.getString("source");
+        entry.size = record.getLong("size");
+        entry.modified = record.getLong("modified");
+        entry.hash = record.isNull("hash") ? null : record.getString("hash");
+        entry.file = record.getString("file");
+        entry.length = record.getLong("length");
+        entry.written = record.getLong("written");
+        entry.used = record.getLong("used");
+        
+        return entry;
+    }
+}
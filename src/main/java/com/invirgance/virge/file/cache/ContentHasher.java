@@ -0,0 +1,179 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.cache;
+
+import com.invirgance.convirgance.ConvirganceException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.HexFormat;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Computes a SHA-256 based content hash of a file on multiple threads. The
+ * file is split into fixed size blocks that are read and hashed in parallel
+ * and the final hash is taken over the block hashes in order. Only a bounded
+ * window of blocks is in memory at once.
+ * 
+ * @author agent
+ */
+public class ContentHasher
+{
+    public static final int DEFAULT_BLOCK_SIZE = 4 * 1024 * 1024;
+    
+    private int blockSize = DEFAULT_BLOCK_SIZE;
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    public int getBlockSize()
+    {
+        return blockSize;
+    }
+
+    public void setBlockSize(int blockSize)
+    {
+        this.blockSize = blockSize;
+    }
+
+    public int getThreads()
+    {
+        return threads;
+    }
+
+    public void setThreads(int threads)
+    {
+        this.threads = Math.max(1, threads);
+    }
+    
+    private static MessageDigest getDigest()
+    {
+        try
+        {
+            return MessageDigest.getInstance("SHA-256");
+        }
+        catch(NoSuchAlgorithmException e)
+        {
+            throw new ConvirganceException(e);
+        }
+    }
+    
+    private static byte[] await(Future<byte[]> future) throws IOException
+    {
+        try
+        {
+            return future.get();
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            
+            throw new ConvirganceException(e);
+        }
+        catch(ExecutionException e)
+        {
+            if(e.getCause() instanceof IOException) throw (IOException)e.getCause();
+            if(e.getCause() instanceof RuntimeException) throw (RuntimeException)e.getCause();
+            
+            throw new ConvirganceException(e.getCause());
+        }
+    }
+    
+    private byte[] hashBlock(FileChannel channel, long position, int length) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        MessageDigest digest = getDigest();
+        int count;
+        
+        while(buffer.hasRemaining())
+        {
+            count = channel.read(buffer, position + buffer.position());
+            
+            if(count < 0) throw new IOException("File changed while hashing");
+        }
+        
+        digest.update(buffer.array(), 0, length);
+        
+        return digest.digest();
+    }
+    
+    /**
+     * Hashes the contents of a file
+     * 
+     * @param file the file to hash
+     * @return the hash as a hex string
+     */
+    public String hash(File file)
+    {
+        ArrayDeque<Future<byte[]>> window = new ArrayDeque<>();
+        MessageDigest digest = getDigest();
+        ExecutorService executor;
+        long position = 0;
+        long length;
+        
+        executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "virge-hash");
+
+            thread.setDaemon(true);
+
+            return thread;
+        });
+        
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+        {
+            length = channel.size();
+            
+            while(position < length || !window.isEmpty())
+            {
+                while(position < length && window.size() < threads * 2)
+                {
+                    final long start = position;
+                    final int size = (int)Math.min(blockSize, length - position);
+                    
+                    window.add(executor.submit(() -> hashBlock(channel, start, size)));
+                    
+                    position += size;
+                }
+                
+                digest.update(await(window.poll()));
+            }
+            
+            digest.update(ByteBuffer.allocate(Long.BYTES).putLong(length).array());
+        }
+        catch(IOException e)
+        {
+            throw new ConvirganceException("Unable to hash " + file, e);
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+        
+        return HexFormat.of().formatHex(digest.digest());
+    }
+}
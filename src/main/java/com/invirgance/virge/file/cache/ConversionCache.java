@@ -0,0 +1,581 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.cache;
+
+import com.invirgance.convirgance.ConvirganceException;
+import com.invirgance.convirgance.json.JSONObject;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Remembers the output of conversions so that unchanged sources are not 
+ * converted again. Entries are keyed by the source path and the conversion
+ * options and are valid while the size and modification time of the source
+ * match. When content hashing is enabled, a source that was touched but not
+ * changed is still a hit.
+ * <p>
+ * Cached outputs are hard links to the converted targets where the file 
+ * system allows it, so the cache costs little space while the targets exist.
+ * The manifest is an append only log in the cache directory that is shared 
+ * by threads and processes through a file lock and compacted as it grows. 
+ * The least recently used entries are evicted when the cached outputs exceed
+ * the maximum size.
+ * 
+ * @author agent
+ */
+public class ConversionCache
+{
+    public static final long DEFAULT_MAX_SIZE = 1024L * 1024 * 1024;
+    
+    private static final String MANIFEST = "manifest.jsonl";
+    private static final String LOCK = "manifest.lock";
+    private static final String EXTENSION = ".cached";
+    private static final String TEMPORARY = ".link";
+    
+    private static final Map<File,Manifest> manifests = new HashMap<>();
+    
+    public enum Result
+    {
+        /** Not in the cache. The source has to be converted. */
+        MISS,
+        /** The target is already the cached output */
+        UNCHANGED,
+        /** The cached output was linked or copied to the target */
+        RESTORED
+    }
+    
+    private final File directory;
+    private final ContentHasher hasher = new ContentHasher();
+    
+    private long maxSize = DEFAULT_MAX_SIZE;
+    private boolean hashing;
+
+    /**
+     * Opens a cache, creating the directory if needed
+     * 
+     * @param directory the directory holding the manifest and cached outputs
+     */
+    public ConversionCache(File directory)
+    {
+        if(!directory.isDirectory() && !directory.mkdirs()) throw new ConvirganceException("Unable to create cache directory " + directory);
+        
+        try
+        {
+            this.directory = directory.getCanonicalFile();
+        }
+        catch(IOException e)
+        {
+            throw new ConvirganceException(e);
+        }
+    }
+
+    public File getDirectory()
+    {
+        return directory;
+    }
+
+    public long getMaxSize()
+    {
+        return maxSize;
+    }
+
+    /**
+     * @param maxSize the total size of cached outputs to keep in bytes
+     */
+    public void setMaxSize(long maxSize)
+    {
+        this.maxSize = maxSize;
+    }
+
+    public boolean isHashing()
+    {
+        return hashing;
+    }
+
+    /**
+     * When enabled, a hash of the source content is stored with each entry
+     * and checked when the modification time of the source has changed.
+     * 
+     * @param hashing true to hash source files
+     */
+    public void setHashing(boolean hashing)
+    {
+        this.hashing = hashing;
+    }
+
+    public int getHashThreads()
+    {
+        return hasher.getThreads();
+    }
+
+    public void setHashThreads(int threads)
+    {
+        hasher.setThreads(threads);
+    }
+    
+    private static String digest(String value)
+    {
+        try
+        {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8)));
+        }
+        catch(NoSuchAlgorithmException e)
+        {
+            throw new ConvirganceException(e);
+        }
+    }
+    
+    /**
+     * Captures the current state of a source file. Call before converting so
+     * that changes made during the conversion invalidate the entry.
+     * 
+     * @param source the local source file
+     * @param options a description of every option that affects the output
+     * @return an entry to pass to restore() and store()
+     */
+    public CacheEntry describe(File source, String options)
+    {
+        CacheEntry entry = new CacheEntry();
+        String path;
+        
+        try
+        {
+            path = source.getCanonicalPath();
+        }
+        catch(IOException e)
+        {
+            throw new ConvirganceException(e);
+        }
+        
+        entry.setKey(digest(path + "\n" + options).substring(0, 40));
+        entry.setSource(path);
+        entry.setSize(source.length());
+        entry.setModified(source.lastModified());
+        entry.setFile(entry.getKey() + EXTENSION);
+        
+        return entry;
+    }
+    
+    private File getFile(CacheEntry entry)
+    {
+        return new File(directory, entry.getFile());
+    }
+    
+    private boolean isValid(CacheEntry entry)
+    {
+        File file = getFile(entry);
+        
+        return (file.isFile() && file.length() == entry.getLength() && file.lastModified() == entry.getWritten());
+    }
+    
+    private static boolean isSame(File target, File file) throws IOException
+    {
+        if(!target.isFile()) return false;
+        if(Files.isSameFile(target.toPath(), file.toPath())) return true;
+        
+        // A copy made when the file system doesn't support links
+        return (target.length() == file.length() && target.lastModified() == file.lastModified());
+    }
+    
+    /**
+     * Atomically replaces a file with a hard link to another file, falling 
+     * back to a copy if the file system can't link them.
+     */
+    private static void link(File from, File to) throws IOException
+    {
+        File parent = to.getAbsoluteFile().getParentFile();
+        Path temp = new File(parent, "." + to.getName() + TEMPORARY).toPath();
+        
+        if(!parent.isDirectory() && !parent.mkdirs()) throw new IOException("Unable to create directory " + parent);
+        
+        Files.deleteIfExists(temp);
+        
+        try
+        {
+            Files.createLink(temp, from.toPath());
+        }
+        catch(UnsupportedOperationException | IOException e)
+        {
+            Files.copy(from.toPath(), temp, StandardCopyOption.COPY_ATTRIBUTES);
+        }
+        
+        Files.move(temp, to.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    private <T> T update(Action<T> action)
+    {
+        Manifest manifest;
+        
+        synchronized(manifests)
+        {
+            manifest = manifests.computeIfAbsent(directory, Manifest::new);
+        }
+        
+        // File locks are held by the process, so threads also synchronize
+        synchronized(manifest)
+        {
+            try(FileChannel channel = FileChannel.open(new File(directory, LOCK).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                FileLock lock = channel.lock())
+            {
+                manifest.refresh();
+                
+                return action.run(manifest);
+            }
+            catch(IOException e)
+            {
+                throw new ConvirganceException("Unable to update the conversion cache in " + directory, e);
+            }
+        }
+    }
+    
+    /**
+     * Restores the cached output of a conversion if the source hasn't 
+     * changed since it was stored.
+     * 
+     * @param current the state of the source from describe()
+     * @param target the file to place the cached output in
+     * @return MISS if the source needs to be converted
+     */
+    public Result restore(CacheEntry current, File target)
+    {
+        CacheEntry cached = update(manifest -> manifest.get(current.getKey()));
+        String hash;
+        
+        if(cached == null || cached.getSize() != current.getSize()) return Result.MISS;
+        
+        if(cached.getModified() != current.getModified())
+        {
+            if(!hashing || cached.getHash() == null) return Result.MISS;
+            
+            // Hash outside of the lock so other conversions aren't blocked
+            hash = hasher.hash(new File(current.getSource()));
+            
+            if(!hash.equals(cached.getHash())) return Result.MISS;
+            
+            current.setHash(hash);
+        }
+        else if(hashing && cached.getHash() == null)
+        {
+            // Stored without hashing. Hash now so a later touch is still a hit.
+            current.setHash(hasher.hash(new File(current.getSource())));
+        }
+        
+        return update(manifest -> {
+            
+            CacheEntry entry = manifest.get(current.getKey());
+            Result result;
+            
+            // Replaced by another conversion while hashing
+            if(entry == null || entry.getWritten() != cached.getWritten()) return Result.MISS;
+            
+            if(!isValid(entry))
+            {
+                manifest.remove(entry.getKey());
+                Files.deleteIfExists(getFile(entry).toPath());
+                
+                return Result.MISS;
+            }
+            
+            if(isSame(target, getFile(entry)))
+            {
+                result = Result.UNCHANGED;
+            }
+            else
+            {
+                link(getFile(entry), target);
+                
+                result = Result.RESTORED;
+            }
+            
+            // Matched by hash, so remember the new time to avoid hashing again
+            if(current.getHash() != null) entry.setHash(current.getHash());
+            
+            entry.setModified(current.getModified());
+            entry.setUsed(System.currentTimeMillis());
+            
+            manifest.put(entry);
+            
+            if(manifest.getSize() > maxSize) evict(manifest);
+            
+            return result;
+        });
+    }
+    
+    /**
+     * Stores the output of a conversion. Nothing is stored if the source 
+     * changed during the conversion.
+     * 
+     * @param current the state of the source from describe() before converting
+     * @param target the converted output
+     */
+    public void store(CacheEntry current, File target)
+    {
+        File source = new File(current.getSource());
+        
+        if(source.length() != current.getSize() || source.lastModified() != current.getModified()) return;
+        if(hashing && current.getHash() == null) current.setHash(hasher.hash(source));
+        
+        update(manifest -> {
+            
+            File file = getFile(current);
+            
+            link(target, file);
+            
+            current.setLength(file.length());
+            current.setWritten(file.lastModified());
+            current.setUsed(System.currentTimeMillis());
+            
+            manifest.put(current);
+            
+            if(manifest.getSize() > maxSize) evict(manifest);
+            
+            manifest.compact();
+            
+            return null;
+        });
+    }
+    
+    private void evict(Manifest manifest) throws IOException
+    {
+        List<CacheEntry> entries = manifest.getEntries();
+        long total = 0;
+        
+        entries.sort(Comparator.comparingLong(CacheEntry::getUsed).reversed());
+        
+        for(CacheEntry entry : entries)
+        {
+            total += entry.getLength();
+            
+            if(total <= maxSize) continue;
+            
+            manifest.remove(entry.getKey());
+            Files.deleteIfExists(getFile(entry).toPath());
+        }
+    }
+    
+    private interface Action<T>
+    {
+        public T run(Manifest manifest) throws IOException;
+    }
+    
+    /**
+     * In memory copy of the manifest log. Only reloaded when the log was 
+     * written by another process.
+     */
+    private static class Manifest
+    {
+        private final File directory;
+        private final Path path;
+        private final Map<String,CacheEntry> entries = new HashMap<>();
+        
+        private long size;
+        private int lines;
+        private long length = -1;
+        private long modified;
+        private Object fileKey;
+
+        public Manifest(File directory)
+        {
+            this.directory = directory;
+            this.path = new File(directory, MANIFEST).toPath();
+        }
+        
+        public long getSize()
+        {
+            return size;
+        }
+        
+        public List<CacheEntry> getEntries()
+        {
+            List<CacheEntry> list = new ArrayList<>();
+            
+            for(CacheEntry entry : entries.values()) list.add(CacheEntry.fromJSON(entry.toJSON()));
+            
+            return list;
+        }
+        
+        public CacheEntry get(String key)
+        {
+            CacheEntry entry = entries.get(key);
+            
+            return (entry == null) ? null : CacheEntry.fromJSON(entry.toJSON());
+        }
+        
+        private void apply(JSONObject record)
+        {
+            CacheEntry entry;
+            CacheEntry previous;
+            
+            if(!record.isNull("removed"))
+            {
+                previous = entries.remove(record.getString("key"));
+            }
+            else
+            {
+                entry = CacheEntry.fromJSON(record);
+                previous = entries.put(entry.getKey(), entry);
+                size += entry.getLength();
+            }
+            
+            if(previous != null) size -= previous.getLength();
+        }
+        
+        private void stamp() throws IOException
+        {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            
+            length = attributes.size();
+            modified = attributes.lastModifiedTime().toMillis();
+            fileKey = attributes.fileKey();
+        }
+        
+        public void refresh() throws IOException
+        {
+            BasicFileAttributes attributes;
+            String line;
+            
+            if(!Files.exists(path))
+            {
+                entries.clear();
+                
+                size = 0;
+                lines = 0;
+                length = -1;
+                
+                return;
+            }
+            
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            
+            if(attributes.size() == length && attributes.lastModifiedTime().toMillis() == modified && Objects.equals(attributes.fileKey(), fileKey)) return;
+            
+            entries.clear();
+            
+            size = 0;
+            lines = 0;
+            
+            try(BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8))
+            {
+                while((line = reader.readLine()) != null)
+                {
+                    if(line.isBlank()) continue;
+                    
+                    try
+                    {
+                        apply(new JSONObject(line));
+                    }
+                    catch(RuntimeException e)
+                    {
+                        // A partial line left by a crash. Later lines are still valid.
+                        continue;
+                    }
+                    
+                    lines++;
+                }
+            }
+            
+            stamp();
+        }
+        
+        private void append(JSONObject record) throws IOException
+        {
+            Files.writeString(path, record.toString() + "\n", StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            
+            apply(record);
+            stamp();
+            
+            lines++;
+        }
+        
+        public void put(CacheEntry entry) throws IOException
+        {
+            append(entry.toJSON());
+        }
+        
+        public void remove(String key) throws IOException
+        {
+            JSONObject record = new JSONObject();
+            
+            record.put("key", key);
+            record.put("removed", true);
+            
+            append(record);
+        }
+        
+        /**
+         * Rewrites the log once most of it is superseded and deletes cached 
+         * outputs that are no longer referenced.
+         */
+        public void compact() throws IOException
+        {
+            Path temp = new File(directory, MANIFEST + ".tmp").toPath();
+            Set<String> files = new HashSet<>();
+            StringBuilder buffer = new StringBuilder();
+            File[] list;
+            
+            if(lines <= entries.size() * 2 + 1024) return;
+            
+            for(CacheEntry entry : entries.values())
+            {
+                buffer.append(entry.toJSON().toString()).append('\n');
+                files.add(entry.getFile());
+            }
+            
+            Files.writeString(temp, buffer, StandardCharsets.UTF_8);
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            
+            lines = entries.size();
+            
+            stamp();
+            
+            list = directory.listFiles();
+            
+            if(list == null) return;
+            
+            for(File file : list)
+            {
+                if(file.getName().endsWith(EXTENSION) && !files.contains(file.getName())) Files.deleteIfExists(file.toPath());
+                if(file.getName().endsWith(TEMPORARY)) Files.deleteIfExists(file.toPath());
+            }
+        }
+    }
+}
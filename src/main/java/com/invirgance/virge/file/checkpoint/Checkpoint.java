@@ -0,0 +1,180 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.checkpoint;
+
+import com.invirgance.convirgance.ConvirganceException;
+import com.invirgance.convirgance.json.JSONObject;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * The progress of a conversion at a point where both the source and the 
+ * target are at a record boundary. Checkpoints are stored as a small JSON
+ * document that is replaced atomically, so a crash while saving leaves the
+ * previous checkpoint intact.
+ * 
+ * @author agent
+ */
+public class Checkpoint
+{
+    private String source;
+    private long sourceOffset = -1;
+    private long records;
+    private long written;
+    private String target;
+    private long targetLength;
+
+    public String getSource()
+    {
+        return source;
+    }
+
+    public void setSource(String source)
+    {
+        this.source = source;
+    }
+
+    /**
+     * @return the byte offset of the next unread record or -1 if the source can not be seeked
+     */
+    public long getSourceOffset()
+    {
+        return sourceOffset;
+    }
+
+    public void setSourceOffset(long sourceOffset)
+    {
+        this.sourceOffset = sourceOffset;
+    }
+
+    /**
+     * @return the number of source records consumed
+     */
+    public long getRecords()
+    {
+        return records;
+    }
+
+    public void setRecords(long records)
+    {
+        this.records = records;
+    }
+
+    /**
+     * @return the number of records in the target
+     */
+    public long getWritten()
+    {
+        return written;
+    }
+
+    public void setWritten(long written)
+    {
+        this.written = written;
+    }
+
+    public String getTarget()
+    {
+        return target;
+    }
+
+    public void setTarget(String target)
+    {
+        this.target = target;
+    }
+
+    /**
+     * @return the length of the target up to the last complete record
+     */
+    public long getTargetLength()
+    {
+        return targetLength;
+    }
+
+    public void setTargetLength(long targetLength)
+    {
+        this.targetLength = targetLength;
+    }
+    
+    /**
+     * Atomically replaces the checkpoint file with this checkpoint
+     * 
+     * @param file the checkpoint file
+     */
+    public void save(File file)
+    {
+        JSONObject record = new JSONObject();
+        File temp = new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".tmp");
+        
+        record.put("source", source);
+        record.put("sourceOffset", sourceOffset);
+        record.put("records", records);
+        record.put("written", written);
+        record.put("target", target);
+        record.put("targetLength", targetLength);
+        
+        try
+        {
+            Files.writeString(temp.toPath(), record.toString(), StandardCharsets.UTF_8);
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch(IOException e)
+        {
+            throw new ConvirganceException("Unable to save checkpoint " + file, e);
+        }
+    }
+    
+    /**
+     * Loads a checkpoint previously saved with save()
+     * 
+     * @param file the checkpoint file
+     * @return the checkpoint or null if the file does not exist
+     */
+    public static Checkpoint load(File file)
+    {
+        Checkpoint checkpoint = new Checkpoint();
+        JSONObject record;
+        
+        if(!file.isFile()) return null;
+        
+        try
+        {
+            record = new JSONObject(Files.readString(file.toPath(), StandardCharsets.UTF_8));
+        }
+        catch(IOException e)
+        {
+            throw new ConvirganceException("Unable to load checkpoint " + file, e);
+        }
+        
+        checkpoint.source = record.getString("source");
+        checkpoint.sourceOffset = record.getLong("sourceOffset");
+        checkpoint.records = record.getLong("records");
+        checkpoint.written = record.getLong("written");
+        checkpoint.target = record.getString("target");
+        checkpoint.targetLength = record.getLong("targetLength");
+        
+        return checkpoint;
+    }
+}
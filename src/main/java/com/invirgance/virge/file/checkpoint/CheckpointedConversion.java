@@ -0,0 +1,496 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.checkpoint;
+
+import com.invirgance.convirgance.ConvirganceException;
+import com.invirgance.convirgance.input.Input;
+import com.invirgance.convirgance.json.JSONObject;
+import com.invirgance.convirgance.output.Output;
+import com.invirgance.convirgance.source.InputStreamSource;
+import com.invirgance.convirgance.source.Source;
+import com.invirgance.convirgance.transform.Transformer;
+import com.invirgance.virge.file.Compression;
+import com.invirgance.virge.file.metrics.ConversionMetrics;
+import com.invirgance.virge.file.output.ChunkEncoder;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Converts a source into a local target file in chunks, periodically saving
+ * a checkpoint that allows an interrupted conversion to be resumed. Each 
+ * chunk is encoded separately and appended to the target, so the target is
+ * always at a record boundary when a checkpoint is taken. Resuming truncates
+ * the target back to the checkpoint, discarding any partial tail, and 
+ * continues with the next source record. 
+ * <p>
+ * Delimited files are resumed by seeking directly to the byte offset of the 
+ * next record. Other sources are resumed by skipping the records that were 
+ * already converted. The transformer must operate on each record 
+ * independently for a resumed conversion to match an uninterrupted one.
+ * 
+ * @author agent
+ */
+public class CheckpointedConversion
+{
+    public static final int DEFAULT_CHUNK_SIZE = 8 * 1024 * 1024;
+    public static final int DEFAULT_CHUNK_RECORDS = 100_000;
+    public static final long DEFAULT_INTERVAL = 10_000;
+    
+    private final Input<JSONObject> input;
+    private final Output output;
+    private final File target;
+    private final File checkpointFile;
+    private final ChunkEncoder encoder;
+    
+    private Source source;
+    private File sourceFile;
+    private boolean quoted;
+    private Transformer transformer;
+    private ConversionMetrics metrics;
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+    private int chunkRecords = DEFAULT_CHUNK_RECORDS;
+    private long interval = DEFAULT_INTERVAL;
+
+    /**
+     * Creates a new checkpointed conversion
+     * 
+     * @param input the input used to parse the source
+     * @param output the output used to encode each chunk
+     * @param target the local file to write
+     * @param checkpointFile the file the checkpoint is saved to
+     */
+    public CheckpointedConversion(Input<JSONObject> input, Output output, File target, File checkpointFile)
+    {
+        this.input = input;
+        this.output = output;
+        this.target = target;
+        this.checkpointFile = checkpointFile;
+        this.encoder = new ChunkEncoder(output);
+    }
+
+    public Source getSource()
+    {
+        return source;
+    }
+
+    /**
+     * Sets a source that is resumed by skipping already converted records
+     * 
+     * @param source the source to convert
+     */
+    public void setSource(Source source)
+    {
+        this.source = source;
+        this.sourceFile = null;
+    }
+
+    public File getSourceFile()
+    {
+        return sourceFile;
+    }
+
+    /**
+     * Sets a delimited source file that is resumed by seeking to the next
+     * record. The first line of the file is treated as the header and is
+     * prepended to every chunk.
+     * 
+     * @param sourceFile the delimited file to convert
+     * @param quoted true if the format allows newlines inside double quoted values (e.g. CSV)
+     */
+    public void setSourceFile(File sourceFile, boolean quoted)
+    {
+        this.sourceFile = sourceFile;
+        this.quoted = quoted;
+        this.source = null;
+    }
+
+    public boolean isHeaderLine()
+    {
+        return encoder.isHeaderLine();
+    }
+
+    /**
+     * Set for targets that begin with a header line (e.g. CSV). 
+     * 
+     * @param headerLine true if the output writes a header line
+     * @see ChunkEncoder#setHeaderLine(boolean) 
+     */
+    public void setHeaderLine(boolean headerLine)
+    {
+        encoder.setHeaderLine(headerLine);
+    }
+
+    public Compression getCompression()
+    {
+        return encoder.getCompression();
+    }
+
+    /**
+     * @param compression either NONE or GZIP. Each chunk is written as a separate gzip member.
+     */
+    public void setCompression(Compression compression)
+    {
+        encoder.setCompression(compression);
+    }
+
+    public Transformer getTransformer()
+    {
+        return transformer;
+    }
+
+    public void setTransformer(Transformer transformer)
+    {
+        this.transformer = transformer;
+    }
+
+    public ConversionMetrics getMetrics()
+    {
+        return metrics;
+    }
+
+    public void setMetrics(ConversionMetrics metrics)
+    {
+        this.metrics = metrics;
+    }
+
+    public int getChunkSize()
+    {
+        return chunkSize;
+    }
+
+    /**
+     * @param chunkSize the approximate number of source bytes in each chunk of a delimited file
+     */
+    public void setChunkSize(int chunkSize)
+    {
+        this.chunkSize = chunkSize;
+    }
+
+    public int getChunkRecords()
+    {
+        return chunkRecords;
+    }
+
+    /**
+     * @param chunkRecords the number of records in each chunk of other sources
+     */
+    public void setChunkRecords(int chunkRecords)
+    {
+        this.chunkRecords = chunkRecords;
+    }
+
+    public long getInterval()
+    {
+        return interval;
+    }
+
+    /**
+     * @param interval the minimum milliseconds between saved checkpoints
+     */
+    public void setInterval(long interval)
+    {
+        this.interval = interval;
+    }
+    
+    private String getSourceName()
+    {
+        return (sourceFile != null) ? sourceFile.getAbsolutePath() : null;
+    }
+    
+    private Checkpoint restore()
+    {
+        Checkpoint checkpoint = Checkpoint.load(checkpointFile);
+        
+        if(checkpoint == null) return null;
+        
+        if(!target.getAbsolutePath().equals(checkpoint.getTarget()))
+        {
+            throw new ConvirganceException("Checkpoint " + checkpointFile + " is for target " + checkpoint.getTarget());
+        }
+        
+        if(checkpoint.getSource() != null && !checkpoint.getSource().equals(getSourceName()))
+        {
+            throw new ConvirganceException("Checkpoint " + checkpointFile + " is for source " + checkpoint.getSource());
+        }
+        
+        if(target.length() < checkpoint.getTargetLength())
+        {
+            throw new ConvirganceException("Target " + target + " is shorter than the checkpoint. Unable to resume.");
+        }
+        
+        if(sourceFile != null && sourceFile.length() < checkpoint.getSourceOffset())
+        {
+            throw new ConvirganceException("Source " + sourceFile + " is shorter than the checkpoint. Unable to resume.");
+        }
+        
+        return checkpoint;
+    }
+    
+    /**
+     * Runs the conversion. The checkpoint file is removed once the conversion
+     * completes successfully.
+     * 
+     * @param resume true to resume from the checkpoint file if it exists
+     */
+    public void run(boolean resume)
+    {
+        Checkpoint checkpoint = resume ? restore() : null;
+        Iterator<List<JSONObject>> chunks;
+        List<JSONObject> records;
+        ByteBuffer buffer;
+        long position;
+        long last;
+        
+        if(checkpoint == null)
+        {
+            checkpoint = new Checkpoint();
+            
+            checkpoint.setSource(getSourceName());
+            checkpoint.setTarget(target.getAbsolutePath());
+        }
+        
+        try(FileChannel channel = FileChannel.open(target.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE))
+        {
+            // Discard anything written after the checkpoint, including partial records
+            channel.truncate(checkpoint.getTargetLength());
+            
+            position = checkpoint.getTargetLength();
+            last = System.currentTimeMillis();
+            
+            if(sourceFile != null) chunks = new DelimitedChunks(checkpoint.getSourceOffset());
+            else chunks = new RecordChunks(checkpoint.getRecords());
+            
+            while(chunks.hasNext())
+            {
+                records = chunks.next();
+                
+                checkpoint.setRecords(checkpoint.getRecords() + records.size());
+                
+                if(transformer != null) records = collect(transformer.transform(records));
+                
+                if(!records.isEmpty())
+                {
+                    buffer = ByteBuffer.wrap(encoder.encode(records, position > 0));
+                    
+                    if(metrics != null) metrics.addBytesOut(buffer.remaining());
+                    
+                    while(buffer.hasRemaining()) position += channel.write(buffer, position);
+                    
+                    checkpoint.setWritten(checkpoint.getWritten() + records.size());
+                }
+                
+                if(chunks instanceof DelimitedChunks) checkpoint.setSourceOffset(((DelimitedChunks)chunks).position);
+                
+                checkpoint.setTargetLength(position);
+                
+                if(metrics != null)
+                {
+                    metrics.setRecordsRead(checkpoint.getRecords());
+                    metrics.setRecordsWritten(checkpoint.getWritten());
+                }
+                
+                if(System.currentTimeMillis() - last >= interval)
+                {
+                    channel.force(false);
+                    checkpoint.save(checkpointFile);
+                    
+                    last = System.currentTimeMillis();
+                }
+            }
+            
+            // Empty conversions still produce whatever the output writes for no records
+            if(position == 0) channel.write(ByteBuffer.wrap(encoder.encode(List.of(), false)), 0);
+            
+            channel.force(false);
+        }
+        catch(IOException e)
+        {
+            throw new ConvirganceException(e);
+        }
+        
+        checkpointFile.delete();
+    }
+    
+    private static List<JSONObject> collect(Iterable<JSONObject> iterable)
+    {
+        List<JSONObject> records = new ArrayList<>();
+        
+        for(JSONObject record : iterable) records.add(record);
+        
+        return records;
+    }
+    
+    private class RecordChunks implements Iterator<List<JSONObject>>
+    {
+        private final Iterator<JSONObject> iterator;
+
+        public RecordChunks(long skip)
+        {
+            this.iterator = input.read(source).iterator();
+            
+            for(long i=0; i<skip && iterator.hasNext(); i++) iterator.next();
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return iterator.hasNext();
+        }
+
+        @Override
+        public List<JSONObject> next()
+        {
+            List<JSONObject> records = new ArrayList<>(chunkRecords);
+            
+            if(!hasNext()) throw new NoSuchElementException();
+            
+            while(records.size() < chunkRecords && iterator.hasNext()) records.add(iterator.next());
+            
+            return records;
+        }
+    }
+    
+    private class DelimitedChunks implements Iterator<List<JSONObject>>
+    {
+        private final FileChannel channel;
+        private final long size;
+        
+        private byte[] header;
+        private long position;
+
+        public DelimitedChunks(long offset) throws IOException
+        {
+            this.channel = FileChannel.open(sourceFile.toPath(), StandardOpenOption.READ);
+            this.size = channel.size();
+            
+            readHeader();
+            
+            if(offset > position) position = offset;
+            
+            if(position >= size) channel.close();
+        }
+        
+        private int getLastBoundary(byte[] data, int length)
+        {
+            boolean open = false;
+            int boundary = -1;
+            
+            for(int i=0; i<length; i++)
+            {
+                if(quoted && data[i] == '"') open = !open;
+                else if(data[i] == '\n' && !open) boundary = i;
+            }
+            
+            return boundary;
+        }
+        
+        private void readHeader() throws IOException
+        {
+            byte[] data = new byte[(int)Math.min(64 * 1024, size)];
+            int length = 0;
+            int boundary = -1;
+            
+            while(boundary < 0 && length < size)
+            {
+                if(length == data.length) data = Arrays.copyOf(data, (int)Math.min(data.length * 2L, size));
+                
+                length += channel.read(ByteBuffer.wrap(data, length, data.length - length), length);
+                
+                boundary = getFirstBoundary(data, length);
+            }
+            
+            header = Arrays.copyOf(data, (boundary < 0) ? length : boundary + 1);
+            position = header.length;
+        }
+        
+        private int getFirstBoundary(byte[] data, int length)
+        {
+            boolean open = false;
+            
+            for(int i=0; i<length; i++)
+            {
+                if(quoted && data[i] == '"') open = !open;
+                else if(data[i] == '\n' && !open) return i;
+            }
+            
+            return -1;
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return position < size;
+        }
+
+        @Override
+        public List<JSONObject> next()
+        {
+            byte[] data;
+            int length = 0;
+            int boundary = -1;
+            int count;
+            
+            if(!hasNext()) throw new NoSuchElementException();
+            
+            data = new byte[(int)Math.min(chunkSize, size - position)];
+            
+            try
+            {
+                // Grow the chunk until it contains at least one complete record
+                while(boundary < 0)
+                {
+                    while(length < data.length && (count = channel.read(ByteBuffer.wrap(data, length, data.length - length), position + length)) > 0)
+                    {
+                        length += count;
+                    }
+                    
+                    if(position + length >= size) boundary = length - 1;
+                    else boundary = getLastBoundary(data, length);
+                    
+                    if(boundary < 0) data = Arrays.copyOf(data, (int)Math.min(data.length * 2L, size - position));
+                }
+                
+                position += boundary + 1;
+                
+                if(metrics != null) metrics.addBytesIn(boundary + 1);
+                
+                if(position >= size) channel.close();
+            }
+            catch(IOException e)
+            {
+                throw new ConvirganceException(e);
+            }
+            
+            return collect(input.read(new InputStreamSource(new SequenceInputStream(new ByteArrayInputStream(header), new ByteArrayInputStream(data, 0, boundary + 1)))));
+        }
+    }
+}
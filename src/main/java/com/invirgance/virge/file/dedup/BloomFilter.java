@@ -0,0 +1,96 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.dedup;
+
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+
+/**
+ * Off-heap Bloom filter over 128-bit fingerprints. Bit positions are derived
+ * from the two halves of the fingerprint using double hashing. Adding a 
+ * fingerprint reports whether it may have been seen before, with a false 
+ * positive rate that grows as the filter fills.
+ * 
+ * @author agent
+ */
+public class BloomFilter
+{
+    public static final int DEFAULT_HASHES = 7;
+    
+    private static final long MAX_WORDS = 1L << 27;
+    
+    private final LongBuffer words;
+    private final long bits;
+    private final int hashes;
+
+    /**
+     * @param memory the number of bytes of off-heap memory to use
+     * @param hashes the number of bits set for each fingerprint
+     */
+    public BloomFilter(long memory, int hashes)
+    {
+        int count = (int)Math.max(1, Math.min(MAX_WORDS, memory / 8));
+        
+        this.words = ByteBuffer.allocateDirect(count * 8).asLongBuffer();
+        this.bits = count * 64L;
+        this.hashes = hashes;
+    }
+    
+    public long getBits()
+    {
+        return bits;
+    }
+    
+    public int getHashes()
+    {
+        return hashes;
+    }
+    
+    /**
+     * Adds a fingerprint to the filter
+     * 
+     * @param high the upper 64 bits of the fingerprint
+     * @param low the lower 64 bits of the fingerprint
+     * @return true if the fingerprint was definitely not present before
+     */
+    public boolean add(long high, long low)
+    {
+        boolean added = false;
+        long bit;
+        long word;
+        int index;
+        
+        for(int i=0; i<hashes; i++)
+        {
+            bit = Long.remainderUnsigned(high + i * low, bits);
+            index = (int)(bit >>> 6);
+            word = words.get(index);
+            
+            if((word & (1L << bit)) != 0) continue;
+            
+            words.put(index, word | (1L << bit));
+            added = true;
+        }
+        
+        return added;
+    }
+}
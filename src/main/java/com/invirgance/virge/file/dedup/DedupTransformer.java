@@ -0,0 +1,319 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.dedup;
+
+import com.invirgance.convirgance.ConvirganceException;
+import com.invirgance.convirgance.json.JSONObject;
+import com.invirgance.convirgance.transform.Transformer;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Removes records with duplicate keys, keeping the first occurrence. Keys 
+ * are reduced to 128-bit fingerprints held in a fixed size off-heap table, 
+ * so memory use does not grow with the input. Once the table is full, 
+ * records with keys not already in the table are hash partitioned into
+ * temporary JBIN files which are deduplicated one at a time after the input
+ * is exhausted, reusing the same table. Records from the partitions follow
+ * the records that fit in the table, so the output is not in input order
+ * when spilling occurs.
+ * <p>
+ * In approximate mode a Bloom filter replaces the table. Nothing is spilled,
+ * order is preserved, and a small fraction of unique records may be dropped
+ * as false positives.
+ * 
+ * @author agent
+ */
+public class DedupTransformer implements Transformer, AutoCloseable
+{
+    public static final long DEFAULT_MEMORY = 256 * 1024 * 1024;
+    
+    private final String[] columns;
+    private final List<DedupIterator> iterators = new ArrayList<>();
+    
+    private long memory = DEFAULT_MEMORY;
+    private boolean approximate;
+    private File temporaryDirectory;
+
+    /**
+     * @param columns the key columns or null to compare entire records
+     */
+    public DedupTransformer(String... columns)
+    {
+        this.columns = columns;
+    }
+
+    public String[] getColumns()
+    {
+        return columns;
+    }
+
+    public long getMemory()
+    {
+        return memory;
+    }
+
+    /**
+     * @param memory the bytes of off-heap memory used for the fingerprint table or Bloom filter
+     */
+    public void setMemory(long memory)
+    {
+        this.memory = memory;
+    }
+
+    public boolean isApproximate()
+    {
+        return approximate;
+    }
+
+    public void setApproximate(boolean approximate)
+    {
+        this.approximate = approximate;
+    }
+
+    public File getTemporaryDirectory()
+    {
+        return temporaryDirectory;
+    }
+
+    public void setTemporaryDirectory(File temporaryDirectory)
+    {
+        this.temporaryDirectory = temporaryDirectory;
+    }
+
+    @Override
+    public Iterable<JSONObject> transform(Iterable<JSONObject> iterable) throws ConvirganceException
+    {
+        return () -> {
+            Fingerprint fingerprint = new Fingerprint(columns);
+            
+            if(approximate) return new BloomIterator(iterable.iterator(), new BloomFilter(memory, BloomFilter.DEFAULT_HASHES), fingerprint);
+            
+            return new DedupIterator(iterable.iterator(), new FingerprintTable(memory), fingerprint, 0);
+        };
+    }
+    
+    /**
+     * Stops any deduplication in progress and deletes its partitions. Used 
+     * when no more records are needed before the output is exhausted.
+     */
+    @Override
+    public void close()
+    {
+        List<DedupIterator> open;
+        
+        synchronized(iterators)
+        {
+            open = new ArrayList<>(iterators);
+        }
+        
+        for(DedupIterator iterator : open) iterator.close();
+    }
+    
+    private static class BloomIterator implements Iterator<JSONObject>
+    {
+        private final Iterator<JSONObject> iterator;
+        private final BloomFilter filter;
+        private final Fingerprint fingerprint;
+        
+        private JSONObject next;
+
+        public BloomIterator(Iterator<JSONObject> iterator, BloomFilter filter, Fingerprint fingerprint)
+        {
+            this.iterator = iterator;
+            this.filter = filter;
+            this.fingerprint = fingerprint;
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            JSONObject record;
+            
+            while(next == null && iterator.hasNext())
+            {
+                record = iterator.next();
+                
+                fingerprint.compute(record);
+                
+                if(filter.add(fingerprint.getHigh(), fingerprint.getLow())) next = record;
+            }
+            
+            return (next != null);
+        }
+
+        @Override
+        public JSONObject next()
+        {
+            JSONObject record;
+            
+            if(!hasNext()) throw new NoSuchElementException();
+            
+            record = next;
+            next = null;
+            
+            return record;
+        }
+    }
+    
+    private class DedupIterator implements Iterator<JSONObject>
+    {
+        private final FingerprintTable table;
+        private final Fingerprint fingerprint;
+        private final int depth;
+        private final HashPartitions partitions;
+        
+        private Iterator<JSONObject> source;
+        private int partition;
+        private DedupIterator nested;
+        private JSONObject next;
+
+        public DedupIterator(Iterator<JSONObject> source, FingerprintTable table, Fingerprint fingerprint, int depth)
+        {
+            this.source = source;
+            this.table = table;
+            this.fingerprint = fingerprint;
+            this.depth = depth;
+            this.partitions = new HashPartitions(columns, depth, "virge-dedup-", temporaryDirectory);
+            
+            // The table is shared by every level and reused once a level has consumed its source
+            if(table.getSize() > 0) table.clear();
+            
+            if(depth > 0) return;
+            
+            synchronized(iterators)
+            {
+                iterators.add(this);
+            }
+        }
+        
+        private boolean accept(JSONObject record)
+        {
+            fingerprint.compute(record);
+            
+            switch(table.add(fingerprint.getHigh(), fingerprint.getLow()))
+            {
+                case FingerprintTable.ADDED:
+                    return true;
+                    
+                case FingerprintTable.FULL:
+                    partitions.write(record, fingerprint.getLow());
+                    return false;
+                    
+                default:
+                    return false;
+            }
+        }
+        
+        private void finishSource()
+        {
+            source = null;
+            
+            partitions.close();
+        }
+        
+        private boolean nextPartition()
+        {
+            if(nested != null) partitions.delete(partition - 1);
+            
+            nested = null;
+            
+            while(partition < HashPartitions.COUNT)
+            {
+                if(!partitions.exists(partition++)) continue;
+                
+                nested = new DedupIterator(partitions.read(partition - 1), table, fingerprint, depth + 1);
+                
+                return true;
+            }
+            
+            if(depth == 0) close();
+            
+            return false;
+        }
+        
+        public void close()
+        {
+            synchronized(iterators)
+            {
+                iterators.remove(this);
+            }
+            
+            if(nested != null) nested.close();
+            
+            source = null;
+            nested = null;
+            next = null;
+            partition = HashPartitions.COUNT;
+            
+            partitions.delete();
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            JSONObject record;
+            
+            while(next == null)
+            {
+                if(source != null)
+                {
+                    if(!source.hasNext()) 
+                    {
+                        finishSource();
+                        continue;
+                    }
+                    
+                    record = source.next();
+                    
+                    if(accept(record)) next = record;
+                }
+                else if(nested != null && nested.hasNext())
+                {
+                    next = nested.next();
+                }
+                else if(!nextPartition())
+                {
+                    return false;
+                }
+            }
+            
+            return true;
+        }
+
+        @Override
+        public JSONObject next()
+        {
+            JSONObject record;
+            
+            if(!hasNext()) throw new NoSuchElementException();
+            
+            record = next;
+            next = null;
+            
+            return record;
+        }
+    }
+}
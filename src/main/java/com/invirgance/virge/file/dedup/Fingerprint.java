@@ -0,0 +1,213 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.dedup;
+
+import com.invirgance.convirgance.json.JSONObject;
+import com.invirgance.virge.file.sort.SortKey;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Computes a 128-bit MurmurHash3 fingerprint of the key columns of a record.
+ * Values are typed as for sorting, so "42" and 42 produce the same 
+ * fingerprint. The instance reuses its buffer and is not thread safe.
+ * 
+ * @author agent
+ */
+public class Fingerprint
+{
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+    
+    private final String[] columns;
+    
+    private byte[] buffer = new byte[256];
+    private int length;
+    
+    private long high;
+    private long low;
+
+    /**
+     * @param columns the key columns or null to use every column in the record
+     */
+    public Fingerprint(String[] columns)
+    {
+        this.columns = columns;
+    }
+
+    public String[] getColumns()
+    {
+        return columns;
+    }
+
+    public long getHigh()
+    {
+        return high;
+    }
+
+    public long getLow()
+    {
+        return low;
+    }
+    
+    private void append(byte b)
+    {
+        if(length == buffer.length) buffer = Arrays.copyOf(buffer, length * 2);
+        
+        buffer[length++] = b;
+    }
+    
+    private void append(Object value)
+    {
+        appendKey(SortKey.toKey(value));
+    }
+    
+    private void appendKey(Object key)
+    {
+        byte[] data;
+        
+        // Tag the type so that null, "null" and adjacent values can't collide
+        if(key == null) 
+        {
+            append((byte)0);
+            return;
+        }
+        
+        data = key.toString().getBytes(StandardCharsets.UTF_8);
+        
+        append((byte)(key instanceof Boolean ? 1 : key instanceof Number ? 2 : 3));
+        
+        for(int i=0; i<4; i++) append((byte)(data.length >>> (i * 8)));
+        
+        if(length + data.length > buffer.length) buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + data.length));
+        
+        System.arraycopy(data, 0, buffer, length, data.length);
+        
+        length += data.length;
+    }
+    
+    /**
+     * Computes the fingerprint of a record. Read the result with getHigh() 
+     * and getLow().
+     * 
+     * @param record the record to fingerprint
+     */
+    public void compute(JSONObject record)
+    {
+        length = 0;
+        
+        if(columns == null)
+        {
+            for(String key : record.keySet())
+            {
+                append(key);
+                append(record.get(key));
+            }
+        }
+        else
+        {
+            for(String column : columns) append(record.get(column));
+        }
+        
+        hash(buffer, length);
+    }
+    
+    /**
+     * Computes the fingerprint of a single value that has already been 
+     * converted with SortKey.toKey(). Produces the same result as compute()
+     * for a record holding only that value in a single key column.
+     * 
+     * @param key the typed key
+     */
+    public void computeKey(Object key)
+    {
+        length = 0;
+        
+        appendKey(key);
+        hash(buffer, length);
+    }
+    
+    private static long getLong(byte[] data, int offset)
+    {
+        long value = 0;
+        
+        for(int i=7; i>=0; i--) value = (value << 8) | (data[offset + i] & 0xFFL);
+        
+        return value;
+    }
+    
+    private static long mix(long k)
+    {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        
+        return k;
+    }
+    
+    private void hash(byte[] data, int length)
+    {
+        long h1 = 0;
+        long h2 = 0;
+        long k1;
+        long k2;
+        int blocks = length / 16;
+        int tail = blocks * 16;
+        
+        for(int i=0; i<blocks; i++)
+        {
+            k1 = getLong(data, i * 16);
+            k2 = getLong(data, i * 16 + 8);
+            
+            h1 ^= Long.rotateLeft(k1 * C1, 31) * C2;
+            h1 = (Long.rotateLeft(h1, 27) + h2) * 5 + 0x52dce729;
+            h2 ^= Long.rotateLeft(k2 * C2, 33) * C1;
+            h2 = (Long.rotateLeft(h2, 31) + h1) * 5 + 0x38495ab5;
+        }
+        
+        k1 = 0;
+        k2 = 0;
+        
+        for(int i=length-1; i>=tail; i--)
+        {
+            if(i - tail >= 8) k2 = (k2 << 8) | (data[i] & 0xFFL);
+            else k1 = (k1 << 8) | (data[i] & 0xFFL);
+        }
+        
+        if(length - tail > 8) h2 ^= Long.rotateLeft(k2 * C2, 33) * C1;
+        if(length > tail) h1 ^= Long.rotateLeft(k1 * C1, 31) * C2;
+        
+        h1 ^= length;
+        h2 ^= length;
+        h1 += h2;
+        h2 += h1;
+        h1 = mix(h1);
+        h2 = mix(h2);
+        h1 += h2;
+        h2 += h1;
+        
+        high = h1;
+        low = h2;
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.dedup;
+
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+
+/**
+ * Off-heap open addressing hash set of 128-bit fingerprints. The table has
+ * a fixed size determined by its memory budget and reports when it is full
+ * rather than growing. Slots are probed linearly and the table is considered
+ * full at 75% occupancy to keep probe sequences short.
+ * 
+ * @author agent
+ */
+public class FingerprintTable
+{
+    public static final int ADDED = 0;
+    public static final int PRESENT = 1;
+    public static final int FULL = 2;
+    
+    private static final int MAX_SLOTS = 1 << 26;
+    
+    private final LongBuffer slots;
+    private final int mask;
+    private final int limit;
+    
+    private int size;
+
+    /**
+     * @param memory the number of bytes of off-heap memory to use
+     */
+    public FingerprintTable(long memory)
+    {
+        int capacity = Integer.highestOneBit((int)Math.max(16, Math.min(MAX_SLOTS, memory / 16)));
+        
+        this.slots = ByteBuffer.allocateDirect(capacity * 16).asLongBuffer();
+        this.mask = capacity - 1;
+        this.limit = capacity / 4 * 3;
+    }
+
+    public int getSize()
+    {
+        return size;
+    }
+    
+    public int getCapacity()
+    {
+        return mask + 1;
+    }
+    
+    public boolean isFull()
+    {
+        return size >= limit;
+    }
+    
+    private int find(long high, long low)
+    {
+        int slot = (int)high & mask;
+        long h;
+        long l;
+        
+        while(true)
+        {
+            h = slots.get(slot * 2);
+            l = slots.get(slot * 2 + 1);
+            
+            if((h == high && l == low) || (h == 0 && l == 0)) return slot;
+            
+            slot = (slot + 1) & mask;
+        }
+    }
+    
+    /**
+     * Adds a fingerprint to the table
+     * 
+     * @param high the upper 64 bits of the fingerprint
+     * @param low the lower 64 bits of the fingerprint
+     * @return ADDED if the fingerprint is new, PRESENT if it was already in the table, or FULL if it is new but there is no room
+     */
+    public int add(long high, long low)
+    {
+        int slot;
+        
+        // Zero marks an empty slot
+        if(high == 0 && low == 0) low = 1;
+        
+        slot = find(high, low);
+        
+        if(slots.get(slot * 2) != 0 || slots.get(slot * 2 + 1) != 0) return PRESENT;
+        if(isFull()) return FULL;
+        
+        slots.put(slot * 2, high);
+        slots.put(slot * 2 + 1, low);
+        size++;
+        
+        return ADDED;
+    }
+    
+    /**
+     * Removes every fingerprint so the memory can be reused
+     */
+    public void clear()
+    {
+        for(int i=0; i<slots.capacity(); i++) slots.put(i, 0);
+        
+        size = 0;
+    }
+}
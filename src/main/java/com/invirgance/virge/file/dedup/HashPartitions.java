@@ -0,0 +1,200 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.dedup;
+
+import com.invirgance.convirgance.ConvirganceException;
+import com.invirgance.convirgance.input.JBINInput;
+import com.invirgance.convirgance.json.JSONObject;
+import com.invirgance.convirgance.output.JBINOutput;
+import com.invirgance.convirgance.output.OutputCursor;
+import com.invirgance.convirgance.source.FileSource;
+import com.invirgance.convirgance.target.FileTarget;
+import com.invirgance.virge.file.TemporaryFiles;
+import com.invirgance.virge.file.source.CloseableSource;
+import java.io.File;
+import java.util.Collections;
+import java.util.Iterator;
+
+/**
+ * Spills records into 64 temporary JBIN files chosen by the fingerprint of
+ * their key columns, so that records with the same key always land in the
+ * same partition. Each level of partitioning uses different bits of the
+ * fingerprint, allowing a partition that is still too large to be split
+ * again at the next depth. Files are created on first use and deleted once
+ * read. Writes are not thread safe.
+ * 
+ * @author agent
+ */
+public class HashPartitions
+{
+    public static final int BITS = 6;
+    public static final int COUNT = 1 << BITS;
+    
+    private final Fingerprint fingerprint;
+    private final int depth;
+    private final String prefix;
+    private final File directory;
+    
+    private final File[] files = new File[COUNT];
+    private final OutputCursor[] cursors = new OutputCursor[COUNT];
+    private final CloseableSource[] sources = new CloseableSource[COUNT];
+    
+    private boolean used;
+    private boolean closed;
+    
+    /**
+     * @param columns the key columns or null to use every column in the record
+     * @param depth the level of partitioning, starting from zero
+     * @param prefix the prefix of the temporary file names
+     * @param directory the directory for temporary files or null for the default
+     */
+    public HashPartitions(String[] columns, int depth, String prefix, File directory)
+    {
+        this.fingerprint = new Fingerprint(columns);
+        this.depth = depth;
+        this.prefix = prefix;
+        this.directory = directory;
+    }
+    
+    /**
+     * @param depth the level of partitioning
+     * @return true if the fingerprint has bits left to partition at this depth
+     */
+    public static boolean canPartition(int depth)
+    {
+        return (depth * BITS < 64);
+    }
+    
+    public int getDepth()
+    {
+        return depth;
+    }
+    
+    /**
+     * @return true once a record has been written
+     */
+    public boolean isUsed()
+    {
+        return used;
+    }
+    
+    /**
+     * @param index the partition number
+     * @return true if any records were written to the partition and it has not been deleted
+     */
+    public boolean exists(int index)
+    {
+        return (files[index] != null);
+    }
+    
+    /**
+     * Writes a record to the partition of its key
+     * 
+     * @param record the record to spill
+     */
+    public void write(JSONObject record)
+    {
+        fingerprint.compute(record);
+        
+        write(record, fingerprint.getLow());
+    }
+    
+    /**
+     * Writes a record whose fingerprint the caller has already computed
+     * 
+     * @param record the record to spill
+     * @param hash the low bits of the fingerprint of the record's key
+     */
+    public void write(JSONObject record, long hash)
+    {
+        int index;
+        
+        if(!canPartition(depth)) throw new ConvirganceException("Unable to partition records to fit in memory. Increase the memory budget.");
+        
+        // Use different fingerprint bits at each level so a partition can be split again
+        index = (int)(hash >>> (depth * BITS)) & (COUNT - 1);
+        
+        if(cursors[index] == null)
+        {
+            files[index] = TemporaryFiles.create(prefix, ".jbin", directory);
+            cursors[index] = new JBINOutput().write(new FileTarget(files[index]));
+        }
+        
+        cursors[index].write(record);
+        
+        used = true;
+    }
+    
+    /**
+     * Finishes writing the partitions so that they can be read
+     */
+    public void close()
+    {
+        if(closed) return;
+        
+        closed = true;
+        
+        for(OutputCursor cursor : cursors)
+        {
+            if(cursor != null) cursor.close();
+        }
+    }
+    
+    /**
+     * Reads the records of a partition. Must only be called after close().
+     * 
+     * @param index the partition number
+     * @return the records of the partition, empty if nothing was written to it
+     */
+    public Iterator<JSONObject> read(int index)
+    {
+        if(files[index] == null) return Collections.emptyIterator();
+        
+        sources[index] = new CloseableSource(new FileSource(files[index]));
+        
+        return new JBINInput().read(sources[index]).iterator();
+    }
+    
+    /**
+     * Stops reading a partition and deletes its file
+     * 
+     * @param index the partition number
+     */
+    public void delete(int index)
+    {
+        if(sources[index] != null) sources[index].close();
+        if(files[index] != null) TemporaryFiles.delete(files[index]);
+        
+        sources[index] = null;
+        files[index] = null;
+    }
+    
+    /**
+     * Closes and deletes every partition that remains
+     */
+    public void delete()
+    {
+        close();
+        
+        for(int i=0; i<COUNT; i++) delete(i);
+    }
+}
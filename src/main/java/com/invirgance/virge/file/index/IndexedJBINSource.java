@@ -0,0 +1,108 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.index;
+
+import com.invirgance.convirgance.ConvirganceException;
+import com.invirgance.convirgance.source.Source;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads an indexed JBIN file starting from a segment rather than the start
+ * of the file. The preamble stored in the index is placed in front of the
+ * segment so it can be decoded by a normal JBIN input.
+ * 
+ * @author agent
+ */
+public class IndexedJBINSource implements Source
+{
+    private final File file;
+    private final JBINIndex index;
+    private final int segment;
+
+    /**
+     * Creates a new source
+     * 
+     * @param file the indexed JBIN file
+     * @param index the index of the file
+     * @param segment the segment to start reading from
+     */
+    public IndexedJBINSource(File file, JBINIndex index, int segment)
+    {
+        this.file = file;
+        this.index = index;
+        this.segment = segment;
+    }
+
+    public File getFile()
+    {
+        return file;
+    }
+
+    public JBINIndex getIndex()
+    {
+        return index;
+    }
+
+    public int getSegment()
+    {
+        return segment;
+    }
+    
+    /**
+     * @return the number of the first record read from this source
+     */
+    public long getFirstRecord()
+    {
+        return (long)segment * index.getInterval();
+    }
+
+    @Override
+    public InputStream getInputStream()
+    {
+        FileChannel channel;
+        InputStream in;
+        
+        if(index.getSegments() == 0) return new ByteArrayInputStream(index.getPreamble());
+        
+        try
+        {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            in = new BufferedInputStream(Channels.newInputStream(channel.position(index.getOffset(segment))), 64 * 1024);
+            
+            if(segment == 0) return in;
+            
+            return new SequenceInputStream(new ByteArrayInputStream(index.getPreamble()), in);
+        }
+        catch(IOException e)
+        {
+            throw new ConvirganceException(e);
+        }
+    }
+}
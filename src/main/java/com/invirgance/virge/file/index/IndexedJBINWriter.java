@@ -0,0 +1,134 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.index;
+
+import com.invirgance.convirgance.ConvirganceException;
+import com.invirgance.convirgance.json.JSONObject;
+import com.invirgance.convirgance.output.Output;
+import com.invirgance.virge.file.output.ChunkEncoder;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes a JBIN file in independently encoded segments along with a 
+ * {@link JBINIndex} sidecar pointing at the start of every segment. Each 
+ * segment must decode on its own after the preamble, so the output should
+ * not be compressed.
+ * 
+ * @author agent
+ */
+public class IndexedJBINWriter
+{
+    private final File file;
+    private final ChunkEncoder encoder;
+    
+    private int interval = JBINIndex.DEFAULT_INTERVAL;
+
+    /**
+     * Creates a new writer
+     * 
+     * @param output the JBIN output used to encode each segment
+     * @param file the JBIN file to write
+     */
+    public IndexedJBINWriter(Output output, File file)
+    {
+        this.file = file;
+        this.encoder = new ChunkEncoder(output);
+    }
+
+    public int getInterval()
+    {
+        return interval;
+    }
+
+    /**
+     * @param interval the number of records in each indexed segment
+     */
+    public void setInterval(int interval)
+    {
+        this.interval = interval;
+    }
+    
+    private long write(FileChannel channel, List<JSONObject> records, long position) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.wrap(encoder.encode(records, position > 0));
+        
+        while(buffer.hasRemaining()) position += channel.write(buffer, position);
+        
+        return position;
+    }
+    
+    /**
+     * Writes the records and the index, replacing any existing file
+     * 
+     * @param records the records to write
+     * @return the index of the written file
+     */
+    public JBINIndex write(Iterable<JSONObject> records)
+    {
+        JBINIndex index = new JBINIndex(interval);
+        List<JSONObject> segment = new ArrayList<>(interval);
+        long position = 0;
+        long count = 0;
+        
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            for(JSONObject record : records)
+            {
+                segment.add(record);
+                
+                if(segment.size() < interval) continue;
+                
+                index.add(position);
+                
+                position = write(channel, segment, position);
+                count += segment.size();
+                
+                segment.clear();
+            }
+            
+            if(!segment.isEmpty() || position == 0)
+            {
+                if(!segment.isEmpty()) index.add(position);
+                
+                position = write(channel, segment, position);
+                count += segment.size();
+            }
+        }
+        catch(IOException e)
+        {
+            throw new ConvirganceException(e);
+        }
+        
+        index.setRecords(count);
+        index.setLength(position);
+        index.setPreamble(encoder.getPreamble());
+        index.save(file);
+        
+        return index;
+    }
+}
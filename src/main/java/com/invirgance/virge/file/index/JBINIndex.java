@@ -0,0 +1,269 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.index;
+
+import com.invirgance.convirgance.ConvirganceException;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Sparse index of a JBIN file stored in a sidecar file next to it (e.g. 
+ * data.jbin.idx). The file is written in segments of a fixed number of 
+ * records, each encoded independently. The index stores the byte offset of
+ * every segment along with the preamble that must be placed in front of a 
+ * segment to decode it on its own. This allows a reader to seek directly to
+ * the segment containing a record rather than decoding the whole file.
+ * <br><br>
+ * The index also records the length, modification time and a checksum of 
+ * the end of the file so that an index left behind by an earlier version of
+ * the file is not used.
+ * 
+ * @author agent
+ */
+public class JBINIndex
+{
+    public static final String EXTENSION = ".idx";
+    public static final int DEFAULT_INTERVAL = 8192;
+    
+    private static final int MAGIC = 0x4A494458; // JIDX
+    private static final int VERSION = 2;
+    private static final int TAIL = 4096;
+    
+    private int interval;
+    private long records;
+    private long length;
+    private long modified;
+    private long checksum;
+    private byte[] preamble = new byte[0];
+    private long[] offsets = new long[16];
+    private int size;
+
+    public JBINIndex(int interval)
+    {
+        this.interval = interval;
+    }
+    
+    /**
+     * @param file a JBIN file
+     * @return the sidecar index file for the JBIN file
+     */
+    public static File getFile(File file)
+    {
+        return new File(file.getPath() + EXTENSION);
+    }
+    
+    /**
+     * Removes the sidecar index of a JBIN file if there is one. Called before
+     * a file is rewritten so that the old index can't be used with it.
+     * 
+     * @param file a JBIN file
+     */
+    public static void delete(File file)
+    {
+        getFile(file).delete();
+    }
+    
+    // CRC of the last few KB, which changes when records are rewritten or appended
+    private static long checksum(File file, long length) throws IOException
+    {
+        CRC32 crc = new CRC32();
+        byte[] tail = new byte[(int)Math.min(TAIL, length)];
+        
+        try(RandomAccessFile in = new RandomAccessFile(file, "r"))
+        {
+            in.seek(length - tail.length);
+            in.readFully(tail);
+        }
+        
+        crc.update(tail);
+        
+        return crc.getValue();
+    }
+
+    /**
+     * @return the number of records in each segment
+     */
+    public int getInterval()
+    {
+        return interval;
+    }
+
+    /**
+     * @return the total number of records in the indexed file
+     */
+    public long getRecords()
+    {
+        return records;
+    }
+
+    public void setRecords(long records)
+    {
+        this.records = records;
+    }
+
+    /**
+     * @return the length in bytes of the indexed file
+     */
+    public long getLength()
+    {
+        return length;
+    }
+
+    public void setLength(long length)
+    {
+        this.length = length;
+    }
+
+    public byte[] getPreamble()
+    {
+        return preamble;
+    }
+
+    public void setPreamble(byte[] preamble)
+    {
+        this.preamble = preamble;
+    }
+    
+    /**
+     * @return the number of segments in the index
+     */
+    public int getSegments()
+    {
+        return size;
+    }
+    
+    /**
+     * Adds the offset of the next segment
+     * 
+     * @param offset byte offset of the segment within the indexed file
+     */
+    public void add(long offset)
+    {
+        if(size == offsets.length) offsets = Arrays.copyOf(offsets, size * 2);
+        
+        offsets[size++] = offset;
+    }
+    
+    /**
+     * @param segment the segment number
+     * @return the byte offset of the segment within the indexed file
+     */
+    public long getOffset(int segment)
+    {
+        return offsets[segment];
+    }
+    
+    /**
+     * @param record the number of a record starting from zero
+     * @return the segment containing the record
+     */
+    public int getSegment(long record)
+    {
+        if(size == 0) return 0;
+        
+        return (int)Math.min(record / interval, size - 1);
+    }
+    
+    /**
+     * Writes the index to the sidecar of the JBIN file
+     * 
+     * @param file the indexed JBIN file
+     */
+    public void save(File file)
+    {
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(getFile(file)))))
+        {
+            modified = file.lastModified();
+            checksum = checksum(file, length);
+            
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(interval);
+            out.writeLong(records);
+            out.writeLong(length);
+            out.writeLong(modified);
+            out.writeLong(checksum);
+            out.writeInt(preamble.length);
+            out.write(preamble);
+            out.writeInt(size);
+            
+            for(int i=0; i<size; i++) out.writeLong(offsets[i]);
+        }
+        catch(IOException e)
+        {
+            throw new ConvirganceException("Unable to write index for " + file, e);
+        }
+    }
+    
+    /**
+     * Loads the sidecar index of a JBIN file. Indexes that are missing, 
+     * unreadable, or do not match the length, modification time or checksum
+     * of the file are ignored.
+     * 
+     * @param file the JBIN file
+     * @return the index or null if no valid index exists
+     */
+    public static JBINIndex load(File file)
+    {
+        File sidecar = getFile(file);
+        JBINIndex index;
+        int count;
+        
+        if(!sidecar.isFile()) return null;
+        
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(sidecar))))
+        {
+            if(in.readInt() != MAGIC || in.readInt() != VERSION) return null;
+            
+            index = new JBINIndex(in.readInt());
+            index.records = in.readLong();
+            index.length = in.readLong();
+            index.modified = in.readLong();
+            index.checksum = in.readLong();
+            index.preamble = in.readNBytes(in.readInt());
+            
+            count = in.readInt();
+            index.offsets = new long[Math.max(1, count)];
+            
+            for(int i=0; i<count; i++) index.add(in.readLong());
+            
+            // The file has been modified since it was indexed
+            if(index.length != file.length() || index.modified != file.lastModified()) return null;
+            if(index.checksum != checksum(file, index.length)) return null;
+        }
+        catch(IOException e)
+        {
+            return null;
+        }
+        
+        return index;
+    }
+}
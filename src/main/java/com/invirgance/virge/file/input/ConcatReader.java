@@ -0,0 +1,471 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.input;
+
+import com.invirgance.convirgance.ConvirganceException;
+import com.invirgance.convirgance.json.JSONObject;
+import com.invirgance.convirgance.transform.Transformer;
+import com.invirgance.virge.file.sort.ExternalSortTransformer;
+import com.invirgance.virge.file.transform.UnionTransformer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Reads several sources as a single stream of records. Each source is read
+ * and parsed on its own worker thread and the parsed records are prefetched
+ * in batches up to a memory budget. Records are either returned in source
+ * order, one source after another, or in the order the batches arrive for 
+ * the most throughput.
+ * <p>
+ * In source order, the source currently being returned may always prefetch
+ * one batch beyond the budget. Otherwise the sources read ahead could use up
+ * the budget while the reader waits on the current source.
+ * <p>
+ * Sources with different columns can be reconciled into the union of the
+ * columns in their first records. The first records are read on the worker
+ * threads before any source is read, since the union must be known before
+ * the first record is returned.
+ * 
+ * @author agent
+ */
+public class ConcatReader implements Iterable<JSONObject>
+{
+    public static final int DEFAULT_THREADS = 4;
+    public static final long DEFAULT_MEMORY = 64L * 1024 * 1024;
+    public static final int BATCH_SIZE = 1024;
+    
+    private final List<Iterable<JSONObject>> sources;
+    
+    private int threads = DEFAULT_THREADS;
+    private long memory = DEFAULT_MEMORY;
+    private boolean ordered = true;
+    private Transformer transformer;
+    private List<Iterable<JSONObject>> peeks;
+    
+    private final List<ConcatIterator> iterators = new ArrayList<>();
+
+    /**
+     * Creates a new reader
+     * 
+     * @param sources the parsed sources. Each is only iterated once.
+     */
+    public ConcatReader(List<Iterable<JSONObject>> sources)
+    {
+        this.sources = sources;
+    }
+
+    public int getThreads()
+    {
+        return threads;
+    }
+
+    /**
+     * @param threads the number of sources to read at the same time
+     */
+    public void setThreads(int threads)
+    {
+        this.threads = Math.max(1, threads);
+    }
+
+    public long getMemory()
+    {
+        return memory;
+    }
+
+    /**
+     * @param memory approximate heap to use for prefetched records in bytes
+     */
+    public void setMemory(long memory)
+    {
+        this.memory = memory;
+    }
+
+    public boolean isOrdered()
+    {
+        return ordered;
+    }
+
+    /**
+     * @param ordered true to return the sources one after another or false to return records as they are parsed
+     */
+    public void setOrdered(boolean ordered)
+    {
+        this.ordered = ordered;
+    }
+
+    public Transformer getTransformer()
+    {
+        return transformer;
+    }
+
+    /**
+     * Optional transformer applied to each source on its worker thread. The
+     * transformer must operate on each record independently.
+     * 
+     * @param transformer transformer to apply or null for none
+     */
+    public void setTransformer(Transformer transformer)
+    {
+        this.transformer = transformer;
+    }
+
+    public List<Iterable<JSONObject>> getPeeks()
+    {
+        return peeks;
+    }
+
+    /**
+     * Reconciles the sources into the union of the columns of their first
+     * records, in the order the columns are first seen. Each peek is read
+     * separately from its source so that the source is only iterated once,
+     * and only its first record is used. A record with a column outside the
+     * union fails the read. The union is applied before the transformer.
+     * 
+     * @param peeks an iterable starting with the first record of each source, or null to leave the columns unchanged
+     */
+    public void setPeeks(List<Iterable<JSONObject>> peeks)
+    {
+        this.peeks = peeks;
+    }
+
+    @Override
+    public synchronized Iterator<JSONObject> iterator()
+    {
+        ConcatIterator iterator = new ConcatIterator();
+        
+        iterators.add(iterator);
+        
+        return iterator;
+    }
+    
+    /**
+     * Stops the worker threads for any iterators that have not been read to
+     * the end.
+     */
+    public void close()
+    {
+        List<ConcatIterator> open;
+        
+        synchronized(this)
+        {
+            open = new ArrayList<>(iterators);
+        }
+        
+        for(ConcatIterator iterator : open) iterator.close();
+    }
+    
+    private static class Batch
+    {
+        private final int source;
+        private final List<JSONObject> records;
+        private final long bytes;
+        private final boolean last;
+        private final Throwable error;
+
+        public Batch(int source, List<JSONObject> records, long bytes, boolean last, Throwable error)
+        {
+            this.source = source;
+            this.records = records;
+            this.bytes = bytes;
+            this.last = last;
+            this.error = error;
+        }
+    }
+    
+    private class ConcatIterator implements Iterator<JSONObject>
+    {
+        private final ExecutorService executor;
+        private final List<ArrayDeque<Batch>> queues = new ArrayList<>();
+        private final List<List<String>> peeked = new ArrayList<>();
+        
+        private int peeking;
+        private boolean reconciled;
+        private Transformer union;
+        private long used;
+        private int head;
+        private int finished;
+        private boolean closed;
+        private Iterator<JSONObject> current;
+
+        public ConcatIterator()
+        {
+            this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "virge-concat");
+
+                thread.setDaemon(true);
+
+                return thread;
+            });
+            
+            for(int i=0; i<(ordered ? sources.size() : 1); i++) queues.add(new ArrayDeque<>());
+            
+            // Every peek is queued ahead of the sources, so no source waits on a peek that has not started
+            for(int i=0; peeks != null && i<sources.size(); i++)
+            {
+                final int source = i;
+                
+                peeked.add(null);
+                peeking++;
+                
+                executor.submit(() -> peek(source));
+            }
+            
+            // The pool starts the sources in order as threads become free
+            for(int i=0; i<sources.size(); i++)
+            {
+                final int source = i;
+                
+                executor.submit(() -> read(source));
+            }
+            
+            executor.shutdown();
+        }
+        
+        private ArrayDeque<Batch> getQueue(int source)
+        {
+            return queues.get(ordered ? source : 0);
+        }
+        
+        private void peek(int source)
+        {
+            List<String> keys = null;
+            Iterator<JSONObject> iterator;
+            
+            try
+            {
+                iterator = peeks.get(source).iterator();
+                
+                if(iterator.hasNext()) keys = new ArrayList<>(iterator.next().keySet());
+            }
+            catch(Throwable t)
+            {
+                // The same error is reported when the source itself is read
+            }
+            finally
+            {
+                peeked(source, keys);
+            }
+        }
+        
+        private synchronized void peeked(int source, List<String> keys)
+        {
+            peeked.set(source, keys);
+            peeking--;
+            
+            notifyAll();
+        }
+        
+        /**
+         * Waits for the first record of every source and returns a transformer
+         * for the union of their columns
+         * 
+         * @return the transformer or null if every source has the same columns
+         */
+        private synchronized Transformer getUnion() throws InterruptedException
+        {
+            Set<String> columns = new LinkedHashSet<>();
+            List<String> first = null;
+            boolean differs = false;
+            
+            while(!closed && peeking > 0) wait();
+            
+            if(closed || reconciled) return union;
+            
+            for(List<String> keys : peeked)
+            {
+                if(keys == null) continue;
+                
+                if(first == null) first = keys;
+                else if(!first.equals(keys)) differs = true;
+                
+                columns.addAll(keys);
+            }
+            
+            if(differs) union = new UnionTransformer(columns.toArray(String[]::new));
+            
+            reconciled = true;
+            
+            return union;
+        }
+        
+        private void read(int source)
+        {
+            Transformer reconcile;
+            Iterable<JSONObject> iterable = sources.get(source);
+            List<JSONObject> records = new ArrayList<>(BATCH_SIZE);
+            long bytes = 0;
+            
+            try
+            {
+                reconcile = (peeks != null) ? getUnion() : null;
+                
+                if(reconcile != null) iterable = reconcile.transform(iterable);
+                if(transformer != null) iterable = transformer.transform(iterable);
+                
+                for(JSONObject record : iterable)
+                {
+                    records.add(record);
+                    bytes += ExternalSortTransformer.estimate(record);
+                    
+                    if(records.size() < BATCH_SIZE) continue;
+                    
+                    if(!put(new Batch(source, records, bytes, false, null))) return;
+                    
+                    records = new ArrayList<>(BATCH_SIZE);
+                    bytes = 0;
+                }
+                
+                put(new Batch(source, records, bytes, true, null));
+            }
+            catch(Throwable t)
+            {
+                put(new Batch(source, Collections.emptyList(), 0, true, t));
+            }
+        }
+        
+        /**
+         * Waits for room in the memory budget and queues the batch
+         * 
+         * @return false if the iterator was closed
+         */
+        private synchronized boolean put(Batch batch)
+        {
+            try
+            {
+                while(!closed && used > 0 && used + batch.bytes > memory && !(ordered && batch.source == head && getQueue(head).isEmpty())) wait();
+            }
+            catch(InterruptedException e)
+            {
+                return false;
+            }
+            
+            if(closed) return false;
+            
+            getQueue(batch.source).add(batch);
+            
+            used += batch.bytes;
+            
+            notifyAll();
+            
+            return true;
+        }
+        
+        private synchronized Batch take()
+        {
+            Batch batch;
+            
+            try
+            {
+                while(getQueue(head).isEmpty()) wait();
+            }
+            catch(InterruptedException e)
+            {
+                close();
+                Thread.currentThread().interrupt();
+                
+                throw new ConvirganceException(e);
+            }
+            
+            batch = getQueue(head).poll();
+            used -= batch.bytes;
+            
+            if(batch.last)
+            {
+                finished++;
+                
+                if(ordered) head++;
+            }
+            
+            notifyAll();
+            
+            return batch;
+        }
+        
+        private void close()
+        {
+            synchronized(ConcatReader.this)
+            {
+                iterators.remove(this);
+            }
+            
+            synchronized(this)
+            {
+                closed = true;
+                current = null;
+
+                for(ArrayDeque<Batch> queue : queues) queue.clear();
+
+                executor.shutdownNow();
+                notifyAll();
+            }
+        }
+        
+        @Override
+        public boolean hasNext()
+        {
+            Batch batch;
+            
+            if(closed) return false;
+            
+            while(current == null || !current.hasNext())
+            {
+                if(finished == sources.size())
+                {
+                    close();
+                    return false;
+                }
+                
+                batch = take();
+                
+                if(batch.error != null)
+                {
+                    close();
+                    
+                    if(batch.error instanceof RuntimeException) throw (RuntimeException)batch.error;
+                    if(batch.error instanceof Error) throw (Error)batch.error;
+                    
+                    throw new ConvirganceException(batch.error);
+                }
+                
+                current = batch.records.iterator();
+            }
+            
+            return true;
+        }
+
+        @Override
+        public JSONObject next()
+        {
+            if(!hasNext()) throw new NoSuchElementException();
+            
+            return current.next();
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.input;
+
+import com.invirgance.convirgance.input.CSVInput;
+import com.invirgance.convirgance.input.DelimitedInput;
+import com.invirgance.convirgance.input.Input;
+import com.invirgance.convirgance.input.JBINInput;
+import com.invirgance.convirgance.input.JSONInput;
+import com.invirgance.convirgance.json.JSONObject;
+import com.invirgance.virge.file.Compression;
+
+/**
+ * Detects the format of a source from its first bytes. Recognizes gzip and
+ * zlib compression, JBIN, JSON (arrays or a stream of objects), and delimited
+ * text by scoring candidate delimiters for consistency across lines.
+ * 
+ * @author agent
+ */
+public class FormatSniffer
+{
+    public static final int PEEK_SIZE = 64 * 1024;
+    
+    private static final char[] DELIMITERS = new char[]{ ',', '\t', '|', ';' };
+    private static final int MAX_LINES = 100;
+    
+    private final byte[] data;
+    private final int start;
+
+    /**
+     * Analyzes the start of a source
+     * 
+     * @param data the first bytes of the source, see PeekableSource
+     */
+    public FormatSniffer(byte[] data)
+    {
+        this.data = data;
+        
+        // Skip the UTF-8 byte order mark
+        if(data.length >= 3 && (data[0] & 0xFF) == 0xEF && (data[1] & 0xFF) == 0xBB && (data[2] & 0xFF) == 0xBF) start = 3;
+        else start = 0;
+    }
+    
+    /**
+     * @return the compression of the data or NONE
+     */
+    public Compression getCompression()
+    {
+        int cmf;
+        int flg;
+        
+        if(data.length < 2) return Compression.NONE;
+        
+        cmf = data[0] & 0xFF;
+        flg = data[1] & 0xFF;
+        
+        if(cmf == 0x1F && flg == 0x8B) return Compression.GZIP;
+        // The zlib header with a printable second byte (x^) is excluded to avoid matching text
+        if(cmf == 0x78 && (flg == 0x01 || flg == 0x9C || flg == 0xDA)) return Compression.DEFLATE;
+        
+        return Compression.NONE;
+    }
+    
+    /**
+     * @return true if the data is JBIN, or binary data that can only be JBIN
+     */
+    public boolean isJBIN()
+    {
+        int control = 0;
+        int b;
+        
+        if(data.length >= 4 && data[0] == 'J' && data[1] == 'B' && data[2] == 'I' && data[3] == 'N') return true;
+        
+        for(int i=start; i<data.length; i++)
+        {
+            b = data[i] & 0xFF;
+            
+            if(b == 0) return true;
+            if(b < 0x20 && b != '\t' && b != '\r' && b != '\n') control++;
+        }
+        
+        return (data.length > start && control * 10 > data.length - start);
+    }
+    
+    /**
+     * @return true if the data starts with a JSON array or object
+     */
+    public boolean isJSON()
+    {
+        for(int i=start; i<data.length; i++)
+        {
+            if(Character.isWhitespace(data[i])) continue;
+            
+            return (data[i] == '[' || data[i] == '{');
+        }
+        
+        return false;
+    }
+    
+    private int[] count(char delimiter, int[] lines)
+    {
+        int[] counts = new int[MAX_LINES];
+        boolean quoted = false;
+        int line = 0;
+        byte b;
+        
+        for(int i=start; i<data.length && line < MAX_LINES; i++)
+        {
+            b = data[i];
+            
+            if(b == '"') quoted = !quoted;
+            else if(b == delimiter && !quoted) counts[line]++;
+            else if(b == '\n' && !quoted) line++;
+        }
+        
+        lines[0] = line;
+        
+        return counts;
+    }
+    
+    /**
+     * Scores each candidate delimiter by how consistently it appears across
+     * the complete lines in the data.
+     * 
+     * @return the most likely delimiter or 0 if none is consistent
+     */
+    public char getDelimiter()
+    {
+        int[] lines = new int[1];
+        double best = 0;
+        char result = 0;
+        int[] counts;
+        int consistent;
+        double score;
+        
+        for(char delimiter : DELIMITERS)
+        {
+            counts = count(delimiter, lines);
+            consistent = 0;
+            
+            // A file with no complete line still has a header
+            if(lines[0] == 0) lines[0] = 1;
+            if(counts[0] == 0) continue;
+            
+            for(int i=0; i<lines[0]; i++)
+            {
+                if(counts[i] == counts[0]) consistent++;
+            }
+            
+            // Favor delimiters that are consistent first and frequent second
+            score = (consistent / (double)lines[0]) * 1000 + Math.min(counts[0], 999);
+            
+            if(consistent * 10 >= lines[0] * 9 && score > best)
+            {
+                best = score;
+                result = delimiter;
+            }
+        }
+        
+        return result;
+    }
+    
+    /**
+     * @return an input able to read the data or null if the format was not recognized
+     */
+    public Input<JSONObject> getInput()
+    {
+        char delimiter;
+        
+        if(data.length == 0) return null;
+        if(isJBIN()) return new JBINInput();
+        if(isJSON()) return new JSONInput();
+        
+        delimiter = getDelimiter();
+        
+        if(delimiter == ',') return new CSVInput();
+        if(delimiter != 0) return new DelimitedInput(delimiter);
+        
+        return null;
+    }
+}
@@ -0,0 +1,425 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.input;
+
+import com.invirgance.convirgance.ConvirganceException;
+import com.invirgance.convirgance.input.Input;
+import com.invirgance.convirgance.json.JSONObject;
+import com.invirgance.convirgance.source.InputStreamSource;
+import com.invirgance.convirgance.transform.Transformer;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Parses a delimited file on multiple threads. The file is read in fixed size
+ * segments which are scanned in parallel for the first record boundary. Since
+ * a segment may begin inside a quoted value, the boundary is computed for both
+ * possible quote states and resolved once the quote parity of the preceding
+ * segments is known. Each resulting chunk is parsed with the header prepended
+ * and the records are returned in their original file order.
+ * 
+ * @author agent
+ */
+public class ParallelDelimitedReader implements Iterable<JSONObject>
+{
+    public static final int DEFAULT_CHUNK_SIZE = 2 * 1024 * 1024;
+    
+    private final File file;
+    private final Input<JSONObject> input;
+    private final int threads;
+    private final boolean quoted;
+    
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+    private Transformer transformer;
+    
+    private final List<ChunkIterator> iterators = new ArrayList<>();
+
+    /**
+     * Creates a new parallel reader
+     * 
+     * @param file the delimited file to read
+     * @param input the input used to parse each chunk. Must be safe to call read() from multiple threads.
+     * @param threads the number of parser threads
+     * @param quoted true if the format allows newlines inside double quoted values (e.g. CSV)
+     */
+    public ParallelDelimitedReader(File file, Input<JSONObject> input, int threads, boolean quoted)
+    {
+        this.file = file;
+        this.input = input;
+        this.threads = Math.max(1, threads);
+        this.quoted = quoted;
+    }
+
+    public int getChunkSize()
+    {
+        return chunkSize;
+    }
+
+    public void setChunkSize(int chunkSize)
+    {
+        this.chunkSize = chunkSize;
+    }
+
+    public Transformer getTransformer()
+    {
+        return transformer;
+    }
+
+    /**
+     * Optional transformer applied to each chunk on the worker threads. The
+     * transformer must operate on each record independently for the output
+     * to match single threaded processing.
+     * 
+     * @param transformer transformer to apply or null for none
+     */
+    public void setTransformer(Transformer transformer)
+    {
+        this.transformer = transformer;
+    }
+    
+    @Override
+    public synchronized Iterator<JSONObject> iterator()
+    {
+        ChunkIterator iterator;
+        
+        try
+        {
+            iterator = new ChunkIterator();
+        }
+        catch(IOException e)
+        {
+            throw new ConvirganceException(e);
+        }
+        
+        iterators.add(iterator);
+        
+        return iterator;
+    }
+    
+    /**
+     * Stops the parser threads and closes the file for any iterators that 
+     * have not been read to the end.
+     */
+    public synchronized void close()
+    {
+        for(ChunkIterator iterator : new ArrayList<>(iterators)) iterator.close();
+    }
+    
+    private static <T> T await(Future<T> future)
+    {
+        try
+        {
+            return future.get();
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            
+            throw new ConvirganceException(e);
+        }
+        catch(ExecutionException e)
+        {
+            if(e.getCause() instanceof RuntimeException) throw (RuntimeException)e.getCause();
+            
+            throw new ConvirganceException(e.getCause());
+        }
+    }
+    
+    private static class Segment
+    {
+        private byte[] data;
+        private int length;
+        private int quotes;
+        private int[] breaks = new int[]{ -1, -1 };
+    }
+    
+    private static class Slice
+    {
+        private final byte[] data;
+        private final int offset;
+        private final int length;
+
+        public Slice(byte[] data, int offset, int length)
+        {
+            this.data = data;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+    
+    private class ChunkIterator implements Iterator<JSONObject>
+    {
+        private final FileChannel channel;
+        private final ExecutorService executor;
+        private final int window = threads * 2;
+        
+        private final ArrayDeque<Future<Segment>> scans = new ArrayDeque<>();
+        private final ArrayDeque<Future<List<JSONObject>>> parsed = new ArrayDeque<>();
+        
+        private byte[] header;
+        private long position;
+        private boolean inside;
+        private List<Slice> pending = new ArrayList<>();
+        private Iterator<JSONObject> current;
+        private boolean done;
+
+        public ChunkIterator() throws IOException
+        {
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "virge-parse");
+                
+                thread.setDaemon(true);
+                
+                return thread;
+            });
+            
+            readHeader();
+        }
+        
+        private void readHeader() throws IOException
+        {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+            boolean open = false;
+            byte b;
+            
+            while(channel.read(buffer, position) > 0)
+            {
+                buffer.flip();
+                
+                while(buffer.hasRemaining())
+                {
+                    b = buffer.get();
+                    
+                    out.write(b);
+                    position++;
+                    
+                    if(quoted && b == '"') open = !open;
+                    if(b == '\n' && !open) 
+                    {
+                        header = out.toByteArray();
+                        return;
+                    }
+                }
+                
+                buffer.clear();
+            }
+            
+            header = out.toByteArray();
+        }
+        
+        private Segment scan(Segment segment)
+        {
+            boolean[] open = new boolean[]{ false, true };
+            byte b;
+            
+            for(int i=0; i<segment.length; i++)
+            {
+                b = segment.data[i];
+                
+                if(b == '"' && quoted) 
+                {
+                    segment.quotes++;
+                    open[0] = !open[0];
+                    open[1] = !open[1];
+                }
+                else if(b == '\n')
+                {
+                    if(!open[0] && segment.breaks[0] < 0) segment.breaks[0] = i;
+                    if(!open[1] && segment.breaks[1] < 0) segment.breaks[1] = i;
+                }
+            }
+            
+            return segment;
+        }
+        
+        private Segment read() throws IOException
+        {
+            Segment segment = new Segment();
+            ByteBuffer buffer;
+            int count;
+            
+            segment.data = new byte[(int)Math.min(chunkSize, channel.size() - position)];
+            buffer = ByteBuffer.wrap(segment.data);
+            
+            while(buffer.hasRemaining() && (count = channel.read(buffer, position)) > 0)
+            {
+                position += count;
+            }
+            
+            segment.length = buffer.position();
+            
+            return segment;
+        }
+        
+        private List<JSONObject> parse(List<Slice> slices)
+        {
+            List<InputStream> streams = new ArrayList<>(slices.size() + 1);
+            List<JSONObject> records = new ArrayList<>();
+            Iterable<JSONObject> iterable;
+            
+            streams.add(new ByteArrayInputStream(header));
+            
+            for(Slice slice : slices) streams.add(new ByteArrayInputStream(slice.data, slice.offset, slice.length));
+            
+            iterable = input.read(new InputStreamSource(new SequenceInputStream(Collections.enumeration(streams))));
+            
+            if(transformer != null) iterable = transformer.transform(iterable);
+            
+            for(JSONObject record : iterable) records.add(record);
+            
+            return records;
+        }
+        
+        private void submit()
+        {
+            final List<Slice> slices = pending;
+            
+            if(!slices.isEmpty()) parsed.add(executor.submit(() -> parse(slices)));
+            
+            pending = new ArrayList<>();
+        }
+        
+        private void fill() throws IOException
+        {
+            Segment segment;
+            int index;
+            
+            while(parsed.size() < window)
+            {
+                while(scans.size() < window && position < channel.size())
+                {
+                    final Segment next = read();
+                    
+                    scans.add(executor.submit(() -> scan(next)));
+                }
+                
+                if(scans.isEmpty())
+                {
+                    submit();
+                    return;
+                }
+                
+                segment = await(scans.poll());
+                index = segment.breaks[inside ? 1 : 0];
+                
+                if(index < 0)
+                {
+                    pending.add(new Slice(segment.data, 0, segment.length));
+                }
+                else
+                {
+                    pending.add(new Slice(segment.data, 0, index + 1));
+                    submit();
+                    
+                    if(index + 1 < segment.length) pending.add(new Slice(segment.data, index + 1, segment.length - index - 1));
+                }
+                
+                if((segment.quotes & 1) == 1) inside = !inside;
+            }
+        }
+        
+        private void close()
+        {
+            synchronized(ParallelDelimitedReader.this)
+            {
+                iterators.remove(this);
+            }
+            
+            done = true;
+            current = null;
+            
+            executor.shutdownNow();
+            
+            try
+            {
+                channel.close();
+            }
+            catch(IOException e)
+            {
+                throw new ConvirganceException(e);
+            }
+        }
+        
+        @Override
+        public boolean hasNext()
+        {
+            if(done) return false;
+            
+            try
+            {
+                while(current == null || !current.hasNext())
+                {
+                    fill();
+                    
+                    if(parsed.isEmpty())
+                    {
+                        close();
+                        return false;
+                    }
+
+                    current = await(parsed.poll()).iterator();
+                }
+            }
+            catch(IOException e)
+            {
+                close();
+                
+                throw new ConvirganceException(e);
+            }
+            catch(RuntimeException e)
+            {
+                close();
+                
+                throw e;
+            }
+            
+            return true;
+        }
+
+        @Override
+        public JSONObject next()
+        {
+            if(!hasNext()) throw new NoSuchElementException();
+            
+            return current.next();
+        }
+    }
+}
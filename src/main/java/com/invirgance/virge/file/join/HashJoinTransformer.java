@@ -0,0 +1,495 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.join;
+
+import com.invirgance.convirgance.ConvirganceException;
+import com.invirgance.convirgance.json.JSONObject;
+import com.invirgance.convirgance.transform.Transformer;
+import com.invirgance.virge.file.dedup.HashPartitions;
+import com.invirgance.virge.file.sort.ExternalSortTransformer;
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Joins the records passing through the transformer (the left side) with the
+ * records of another input (the right side). A hash table is built from one
+ * side and the other side is streamed through it, with batches of records 
+ * probed in parallel while preserving their order.
+ * <br><br>
+ * The table is built from the right side unless setBuildLeft() is enabled,
+ * which is only allowed for inner joins. If the build side exceeds the memory
+ * budget, both sides are split into 64 partitions on disk by a hash of the 
+ * join key and each pair of partitions is joined on its own (a grace hash 
+ * join). Partitions that are still too large are split again, except 
+ * that the records of a single key are always held in memory together.
+ * <br><br>
+ * Output follows the order of the streamed side only while the table fits
+ * in memory. Once partitioned, records are returned one partition after
+ * another and the original order is lost for every type of join.
+ * 
+ * @author agent
+ */
+public class HashJoinTransformer implements Transformer, AutoCloseable
+{
+    public static final long DEFAULT_MEMORY = 256 * 1024 * 1024;
+    
+    private static final int BATCH_SIZE = 1024;
+    
+    public enum Type
+    {
+        /** Records with a match on both sides */
+        INNER,
+        /** Every left record, joined with its matches if it has any */
+        LEFT,
+        /** Left records without a match */
+        ANTI
+    }
+    
+    private final Iterable<JSONObject> right;
+    private final String[] leftColumns;
+    private final String[] rightColumns;
+    private final Type type;
+    private final Set<String> rightKeys;
+    private final List<JoinIterator> iterators = new ArrayList<>();
+    
+    private long memory = DEFAULT_MEMORY;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private boolean buildLeft;
+    private String rightPrefix = "right_";
+    private File temporaryDirectory;
+
+    /**
+     * @param right the records of the right side
+     * @param leftColumns the join columns of the left side
+     * @param rightColumns the matching join columns of the right side
+     * @param type the type of join
+     */
+    public HashJoinTransformer(Iterable<JSONObject> right, String[] leftColumns, String[] rightColumns, Type type)
+    {
+        if(leftColumns.length != rightColumns.length) throw new ConvirganceException("The number of left and right join columns must match");
+        
+        this.right = right;
+        this.leftColumns = leftColumns;
+        this.rightColumns = rightColumns;
+        this.type = type;
+        this.rightKeys = new HashSet<>(List.of(rightColumns));
+    }
+
+    public Type getType()
+    {
+        return type;
+    }
+
+    public long getMemory()
+    {
+        return memory;
+    }
+
+    /**
+     * @param memory the approximate bytes of heap used for the hash table before partitioning to disk
+     */
+    public void setMemory(long memory)
+    {
+        this.memory = memory;
+    }
+
+    public int getThreads()
+    {
+        return threads;
+    }
+
+    public void setThreads(int threads)
+    {
+        this.threads = Math.max(1, threads);
+    }
+
+    public boolean isBuildLeft()
+    {
+        return buildLeft;
+    }
+
+    /**
+     * Builds the hash table from the left side, which is cheaper when the left
+     * side is the smaller one. Only supported for inner joins, as other joins 
+     * stream the left side to find the left records without a match.
+     * 
+     * @param buildLeft true to build from the left side
+     */
+    public void setBuildLeft(boolean buildLeft)
+    {
+        if(buildLeft && type != Type.INNER) throw new ConvirganceException("Only inner joins can build from the left side");
+        
+        this.buildLeft = buildLeft;
+    }
+
+    public String getRightPrefix()
+    {
+        return rightPrefix;
+    }
+
+    /**
+     * @param rightPrefix prepended to right columns whose names are already used by the left side
+     */
+    public void setRightPrefix(String rightPrefix)
+    {
+        this.rightPrefix = rightPrefix;
+    }
+
+    public File getTemporaryDirectory()
+    {
+        return temporaryDirectory;
+    }
+
+    public void setTemporaryDirectory(File temporaryDirectory)
+    {
+        this.temporaryDirectory = temporaryDirectory;
+    }
+    
+    private JSONObject combine(JSONObject left, JSONObject right)
+    {
+        JSONObject result = new JSONObject();
+        
+        result.putAll(left);
+        
+        for(String key : right.keySet())
+        {
+            // The join columns already carry the same values on the left
+            if(rightKeys.contains(key)) continue;
+            
+            result.put(result.containsKey(key) ? rightPrefix + key : key, right.get(key));
+        }
+        
+        return result;
+    }
+
+    @Override
+    public Iterable<JSONObject> transform(Iterable<JSONObject> iterable) throws ConvirganceException
+    {
+        return () -> {
+            JoinIterator iterator;
+            
+            if(buildLeft) iterator = join(iterable.iterator(), right.iterator(), 0);
+            else iterator = join(right.iterator(), iterable.iterator(), 0);
+            
+            synchronized(iterators)
+            {
+                iterators.add(iterator);
+            }
+            
+            return iterator;
+        };
+    }
+    
+    /**
+     * Stops any join in progress, shutting down its probe threads and 
+     * deleting its partitions. Used when no more records are needed before 
+     * the output is exhausted.
+     */
+    @Override
+    public void close()
+    {
+        List<JoinIterator> open;
+        
+        synchronized(iterators)
+        {
+            open = new ArrayList<>(iterators);
+        }
+        
+        for(JoinIterator iterator : open) iterator.close();
+    }
+    
+    private void release(JoinIterator iterator)
+    {
+        synchronized(iterators)
+        {
+            iterators.remove(iterator);
+        }
+    }
+    
+    private JoinIterator join(Iterator<JSONObject> build, Iterator<JSONObject> probe, int depth)
+    {
+        String[] buildColumns = buildLeft ? leftColumns : rightColumns;
+        Map<JoinKey,List<JSONObject>> table = new HashMap<>();
+        HashPartitions buildPartitions;
+        HashPartitions probePartitions;
+        JSONObject record;
+        JoinKey key;
+        long size = 0;
+        
+        while(build.hasNext())
+        {
+            record = build.next();
+            key = JoinKey.of(record, buildColumns);
+            
+            // Null keys never match, so they are never needed on the build side
+            if(key == null) continue;
+            
+            table.computeIfAbsent(key, k -> new ArrayList<>(1)).add(record);
+            
+            size += ExternalSortTransformer.estimate(record) + 64;
+            
+            // Partitioning can't split the records of a single key, so they are held in memory
+            if(size > memory && table.size() > 1 && HashPartitions.canPartition(depth)) break;
+        }
+        
+        if(!build.hasNext()) return new ProbeIterator(table, probe);
+        
+        buildPartitions = new HashPartitions(buildColumns, depth, "virge-join-", temporaryDirectory);
+        probePartitions = new HashPartitions(buildLeft ? rightColumns : leftColumns, depth, "virge-join-", temporaryDirectory);
+        
+        for(List<JSONObject> records : table.values())
+        {
+            for(JSONObject entry : records) buildPartitions.write(entry);
+        }
+        
+        table = null;
+        
+        while(build.hasNext()) buildPartitions.write(build.next());
+        while(probe.hasNext()) probePartitions.write(probe.next());
+        
+        buildPartitions.close();
+        probePartitions.close();
+        
+        return new PartitionIterator(buildPartitions, probePartitions);
+    }
+    
+    private interface JoinIterator extends Iterator<JSONObject>
+    {
+        /**
+         * Releases the threads and temporary files of the join. Called once
+         * the iterator is exhausted or when it is abandoned.
+         */
+        public void close();
+    }
+    
+    private class PartitionIterator implements JoinIterator
+    {
+        private final HashPartitions build;
+        private final HashPartitions probe;
+        
+        private JoinIterator results;
+        private int partition;
+
+        public PartitionIterator(HashPartitions build, HashPartitions probe)
+        {
+            this.build = build;
+            this.probe = probe;
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            while(results == null || !results.hasNext())
+            {
+                if(results != null) probe.delete(partition - 1);
+                
+                if(partition >= HashPartitions.COUNT) 
+                {
+                    close();
+                    return false;
+                }
+                
+                results = join(build.read(partition), probe.read(partition), build.getDepth() + 1);
+                
+                // The build side is fully loaded or repartitioned by now
+                build.delete(partition++);
+            }
+            
+            return true;
+        }
+
+        @Override
+        public JSONObject next()
+        {
+            if(!hasNext()) throw new NoSuchElementException();
+            
+            return results.next();
+        }
+
+        @Override
+        public void close()
+        {
+            release(this);
+            
+            if(results != null) results.close();
+            
+            build.delete();
+            probe.delete();
+            
+            results = null;
+            partition = HashPartitions.COUNT;
+        }
+    }
+    
+    private class ProbeIterator implements JoinIterator
+    {
+        private final Map<JoinKey,List<JSONObject>> table;
+        private final Iterator<JSONObject> probe;
+        private final String[] probeColumns = buildLeft ? rightColumns : leftColumns;
+        private final Deque<Future<List<JSONObject>>> pending = new ArrayDeque<>();
+        
+        private ExecutorService executor;
+        private Iterator<JSONObject> results;
+        private boolean closed;
+
+        public ProbeIterator(Map<JoinKey,List<JSONObject>> table, Iterator<JSONObject> probe)
+        {
+            this.table = table;
+            this.probe = probe;
+            
+            if(threads > 1) 
+            {
+                executor = Executors.newFixedThreadPool(threads, runnable -> {
+                    Thread thread = new Thread(runnable, "virge-join");
+                    
+                    thread.setDaemon(true);
+                    
+                    return thread;
+                });
+            }
+        }
+        
+        private List<JSONObject> probe(List<JSONObject> batch)
+        {
+            List<JSONObject> output = new ArrayList<>(batch.size());
+            List<JSONObject> matches;
+            JoinKey key;
+            
+            for(JSONObject record : batch)
+            {
+                key = JoinKey.of(record, probeColumns);
+                matches = (key == null) ? null : table.get(key);
+                
+                if(matches == null)
+                {
+                    if(type != Type.INNER) output.add(record);
+                    
+                    continue;
+                }
+                
+                if(type == Type.ANTI) continue;
+                
+                for(JSONObject match : matches)
+                {
+                    output.add(buildLeft ? combine(match, record) : combine(record, match));
+                }
+            }
+            
+            return output;
+        }
+        
+        // Keeps a bounded number of batches in flight, read in order
+        private void fill()
+        {
+            List<JSONObject> batch;
+            
+            while(pending.size() < threads * 2 && probe.hasNext())
+            {
+                batch = new ArrayList<>(BATCH_SIZE);
+                
+                while(batch.size() < BATCH_SIZE && probe.hasNext()) batch.add(probe.next());
+                
+                submit(batch);
+            }
+        }
+        
+        private void submit(List<JSONObject> batch)
+        {
+            if(executor == null) pending.add(CompletableFuture.completedFuture(probe(batch)));
+            else pending.add(executor.submit(() -> probe(batch)));
+        }
+        
+        private List<JSONObject> take()
+        {
+            try
+            {
+                return pending.poll().get();
+            }
+            catch(InterruptedException e)
+            {
+                throw new ConvirganceException(e);
+            }
+            catch(ExecutionException e)
+            {
+                if(e.getCause() instanceof ConvirganceException) throw (ConvirganceException)e.getCause();
+                
+                throw new ConvirganceException(e.getCause());
+            }
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            while(results == null || !results.hasNext())
+            {
+                if(closed) return false;
+                
+                fill();
+                
+                if(pending.isEmpty())
+                {
+                    close();
+                    return false;
+                }
+                
+                results = take().iterator();
+            }
+            
+            return true;
+        }
+
+        @Override
+        public JSONObject next()
+        {
+            if(!hasNext()) throw new NoSuchElementException();
+            
+            return results.next();
+        }
+
+        @Override
+        public void close()
+        {
+            release(this);
+            
+            closed = true;
+            results = null;
+            
+            pending.clear();
+            
+            if(executor != null) executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.join;
+
+import com.invirgance.convirgance.json.JSONObject;
+import com.invirgance.virge.file.sort.SortKey;
+import java.util.Arrays;
+
+/**
+ * The typed values of the join columns of a record, so that "42" in a CSV 
+ * file matches 42 in a JSON file.
+ * 
+ * @author agent
+ */
+public class JoinKey
+{
+    private final Object[] keys;
+    private final int hash;
+
+    private JoinKey(Object[] keys)
+    {
+        this.keys = keys;
+        this.hash = Arrays.hashCode(keys);
+    }
+    
+    /**
+     * @param record the record
+     * @param columns the join columns
+     * @return the key or null if any join column is null, as nulls never match
+     */
+    public static JoinKey of(JSONObject record, String[] columns)
+    {
+        Object[] keys = new Object[columns.length];
+        
+        for(int i=0; i<columns.length; i++)
+        {
+            keys[i] = SortKey.toKey(record.get(columns[i]));
+            
+            if(keys[i] == null) return null;
+        }
+        
+        return new JoinKey(keys);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+        if(!(obj instanceof JoinKey)) return false;
+        
+        return Arrays.equals(keys, ((JoinKey)obj).keys);
+    }
+}
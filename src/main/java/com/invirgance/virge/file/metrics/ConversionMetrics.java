@@ -0,0 +1,289 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.metrics;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and timings collected while a conversion runs. Counters are 
+ * updated in bulk (per buffer or per batch of records) so they are cheap
+ * enough to leave enabled. Stage timings are estimated from a sample of 
+ * records. Allocation and heap figures come from the JVM management beans 
+ * and cover the whole process.
+ * 
+ * @author agent
+ */
+public class ConversionMetrics
+{
+    private final AtomicLong recordsRead = new AtomicLong();
+    private final AtomicLong recordsWritten = new AtomicLong();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    
+    private long readNanos;
+    private long transformNanos;
+    private long writeNanos;
+    
+    private long startNanos;
+    private long endNanos;
+    private long startAllocated;
+    private long allocated = -1;
+    private long peakHeap = -1;
+    
+    private Thread progress;
+
+    /**
+     * Marks the start of the conversion and resets the heap peak counters.
+     */
+    public void start()
+    {
+        for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+        {
+            if(pool.getType() == MemoryType.HEAP) pool.resetPeakUsage();
+        }
+        
+        startAllocated = getTotalAllocated();
+        startNanos = System.nanoTime();
+    }
+    
+    /**
+     * Marks the end of the conversion and stops any progress reporting.
+     */
+    public void finish()
+    {
+        long total = getTotalAllocated();
+        
+        endNanos = System.nanoTime();
+        peakHeap = 0;
+        
+        if(startAllocated >= 0 && total >= 0) allocated = total - startAllocated;
+        
+        for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+        {
+            if(pool.getType() == MemoryType.HEAP) peakHeap += pool.getPeakUsage().getUsed();
+        }
+        
+        if(progress != null) progress.interrupt();
+    }
+    
+    private long getTotalAllocated()
+    {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        
+        if(!(bean instanceof com.sun.management.ThreadMXBean)) return -1;
+        if(!((com.sun.management.ThreadMXBean)bean).isThreadAllocatedMemoryEnabled()) return -1;
+        
+        return ((com.sun.management.ThreadMXBean)bean).getTotalThreadAllocatedBytes();
+    }
+    
+    /**
+     * Prints a progress line to the stream at a fixed interval until the
+     * conversion finishes.
+     * 
+     * @param out the stream to print to, typically System.err
+     * @param interval time between progress lines in milliseconds
+     */
+    public void startProgress(PrintStream out, long interval)
+    {
+        progress = new Thread(() -> {
+            try
+            {
+                while(true)
+                {
+                    Thread.sleep(interval);
+                    
+                    out.println(String.format("Progress: %,d records read, %,d records written, %,.1f MB in, %,.0f records/sec", 
+                        getRecordsRead(), getRecordsWritten(), bytesIn.sum() / 1048576.0, getThroughput()));
+                }
+            }
+            catch(InterruptedException e)
+            {
+                // Conversion finished
+            }
+        }, "virge-progress");
+        
+        progress.setDaemon(true);
+        progress.start();
+    }
+
+    public long getRecordsRead()
+    {
+        return recordsRead.get();
+    }
+
+    public long getRecordsWritten()
+    {
+        return recordsWritten.get();
+    }
+    
+    public void setRecordsRead(long records)
+    {
+        recordsRead.set(records);
+    }
+    
+    /**
+     * Adds to the records read. Used when records are counted on several
+     * threads at once.
+     * 
+     * @param records the number of records read since the last call
+     */
+    public void addRecordsRead(long records)
+    {
+        recordsRead.addAndGet(records);
+    }
+    
+    public void setRecordsWritten(long records)
+    {
+        recordsWritten.set(records);
+    }
+
+    public long getBytesIn()
+    {
+        return bytesIn.sum();
+    }
+
+    public long getBytesOut()
+    {
+        return bytesOut.sum();
+    }
+    
+    public void addBytesIn(long bytes)
+    {
+        bytesIn.add(bytes);
+    }
+
+    public void addBytesOut(long bytes)
+    {
+        bytesOut.add(bytes);
+    }
+
+    public long getReadNanos()
+    {
+        return readNanos;
+    }
+
+    public long getTransformNanos()
+    {
+        return transformNanos;
+    }
+
+    public long getWriteNanos()
+    {
+        return writeNanos;
+    }
+    
+    /**
+     * Records the time spent in each stage of the conversion.
+     * 
+     * @param read nanoseconds spent reading and parsing
+     * @param transform nanoseconds spent in transformers such as type coercion
+     * @param write nanoseconds spent encoding and writing
+     */
+    public void setStageNanos(long read, long transform, long write)
+    {
+        this.readNanos = Math.max(0, read);
+        this.transformNanos = Math.max(0, transform);
+        this.writeNanos = Math.max(0, write);
+    }
+    
+    /**
+     * @return nanoseconds since the conversion started, or the total time if finished
+     */
+    public long getElapsedNanos()
+    {
+        if(startNanos == 0) return 0;
+        
+        return (endNanos > 0 ? endNanos : System.nanoTime()) - startNanos;
+    }
+    
+    /**
+     * @return records read per second
+     */
+    public double getThroughput()
+    {
+        long elapsed = getElapsedNanos();
+        
+        if(elapsed <= 0) return 0;
+        
+        return getRecordsRead() / (elapsed / 1_000_000_000.0);
+    }
+
+    /**
+     * @return the peak heap usage in bytes or -1 if the conversion has not finished
+     */
+    public long getPeakHeap()
+    {
+        return peakHeap;
+    }
+
+    /**
+     * @return bytes allocated by all threads during the conversion or -1 if unavailable
+     */
+    public long getAllocatedBytes()
+    {
+        return allocated;
+    }
+    
+    /**
+     * @return bytes allocated per record read or -1 if unavailable
+     */
+    public long getAllocatedBytesPerRecord()
+    {
+        if(allocated < 0) return -1;
+        
+        return allocated / Math.max(1, getRecordsRead());
+    }
+    
+    private String seconds(long nanos)
+    {
+        return String.format("%,.3fs", nanos / (double)TimeUnit.SECONDS.toNanos(1));
+    }
+    
+    /**
+     * Prints a summary of the conversion
+     * 
+     * @param out the stream to print to
+     */
+    public void print(PrintStream out)
+    {
+        out.println();
+        out.println(String.format("Records read:      %,d", getRecordsRead()));
+        out.println(String.format("Records written:   %,d", getRecordsWritten()));
+        out.println(String.format("Bytes in:          %,d", getBytesIn()));
+        out.println(String.format("Bytes out:         %,d", getBytesOut()));
+        out.println("Read/parse:        " + seconds(readNanos));
+        out.println("Coerce/transform:  " + seconds(transformNanos));
+        out.println("Write:             " + seconds(writeNanos));
+        out.println("Elapsed:           " + seconds(getElapsedNanos()));
+        out.println(String.format("Throughput:        %,.0f records/sec", getThroughput()));
+        out.println(String.format("Peak heap:         %,.1f MB", peakHeap / 1048576.0));
+        
+        if(allocated >= 0) out.println(String.format("Allocated/record:  %,d bytes", getAllocatedBytesPerRecord()));
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.metrics;
+
+import com.invirgance.convirgance.ConvirganceException;
+import com.invirgance.convirgance.json.JSONObject;
+import com.invirgance.convirgance.transform.Transformer;
+import java.util.Iterator;
+import java.util.function.LongConsumer;
+
+/**
+ * Counts the records passing through without timing them. Unlike 
+ * {@link MeteringTransformer}, every iteration keeps its own count and 
+ * reports only the records it has added since its last report, so a single
+ * instance can count records transformed concurrently on several threads.
+ * 
+ * @author agent
+ */
+public class CountingTransformer implements Transformer
+{
+    private static final int PUBLISH_MASK = 1023;
+    
+    private final LongConsumer counter;
+
+    /**
+     * Creates a new counting transformer
+     * 
+     * @param counter called periodically with the number of records since the previous call
+     */
+    public CountingTransformer(LongConsumer counter)
+    {
+        this.counter = counter;
+    }
+    
+    @Override
+    public Iterable<JSONObject> transform(Iterable<JSONObject> iterable) throws ConvirganceException
+    {
+        return () -> new Iterator<JSONObject>() {
+            
+            private final Iterator<JSONObject> iterator = iterable.iterator();
+            private long count;
+            
+            @Override
+            public boolean hasNext()
+            {
+                boolean next = iterator.hasNext();
+                
+                if(!next && count > 0) 
+                {
+                    counter.accept(count);
+                    
+                    count = 0;
+                }
+                
+                return next;
+            }
+
+            @Override
+            public JSONObject next()
+            {
+                JSONObject record = iterator.next();
+                
+                if((++count & PUBLISH_MASK) == 0) 
+                {
+                    counter.accept(count);
+                    
+                    count = 0;
+                }
+                
+                return record;
+            }
+        };
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.metrics;
+
+import com.invirgance.convirgance.source.Source;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.LongConsumer;
+
+/**
+ * Counts the bytes read from another source.
+ * 
+ * @author agent
+ */
+public class MeteredSource implements Source
+{
+    private final Source source;
+    private final LongConsumer counter;
+
+    public MeteredSource(Source source, ConversionMetrics metrics)
+    {
+        this(source, metrics::addBytesIn);
+    }
+
+    /**
+     * Wraps a source, passing the number of bytes in each read to the counter
+     * 
+     * @param source the source to meter
+     * @param counter receives byte counts as data is read
+     */
+    public MeteredSource(Source source, LongConsumer counter)
+    {
+        this.source = source;
+        this.counter = counter;
+    }
+
+    public Source getSource()
+    {
+        return source;
+    }
+
+    @Override
+    public InputStream getInputStream()
+    {
+        return new FilterInputStream(source.getInputStream()) {
+            
+            @Override
+            public int read() throws IOException
+            {
+                int b = super.read();
+                
+                if(b >= 0) counter.accept(1);
+                
+                return b;
+            }
+
+            @Override
+            public int read(byte[] data, int offset, int length) throws IOException
+            {
+                int count = super.read(data, offset, length);
+                
+                if(count > 0) counter.accept(count);
+                
+                return count;
+            }
+
+            @Override
+            public long skip(long count) throws IOException
+            {
+                long skipped = super.skip(count);
+                
+                counter.accept(skipped);
+                
+                return skipped;
+            }
+        };
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.metrics;
+
+import com.invirgance.convirgance.target.Target;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.function.LongConsumer;
+
+/**
+ * Counts the bytes written to another target.
+ * 
+ * @author agent
+ */
+public class MeteredTarget implements Target
+{
+    private final Target target;
+    private final LongConsumer counter;
+
+    public MeteredTarget(Target target, ConversionMetrics metrics)
+    {
+        this(target, metrics::addBytesOut);
+    }
+
+    /**
+     * Wraps a target, passing the number of bytes in each write to the counter
+     * 
+     * @param target the target to meter
+     * @param counter receives byte counts as data is written
+     */
+    public MeteredTarget(Target target, LongConsumer counter)
+    {
+        this.target = target;
+        this.counter = counter;
+    }
+
+    public Target getTarget()
+    {
+        return target;
+    }
+
+    @Override
+    public OutputStream getOutputStream()
+    {
+        return new FilterOutputStream(target.getOutputStream()) {
+            
+            @Override
+            public void write(int b) throws IOException
+            {
+                out.write(b);
+                counter.accept(1);
+            }
+
+            @Override
+            public void write(byte[] data, int offset, int length) throws IOException
+            {
+                out.write(data, offset, length);
+                counter.accept(length);
+            }
+        };
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.metrics;
+
+import com.invirgance.convirgance.ConvirganceException;
+import com.invirgance.convirgance.json.JSONObject;
+import com.invirgance.convirgance.transform.Transformer;
+import java.util.Iterator;
+import java.util.function.LongConsumer;
+
+/**
+ * Passes records through unchanged while counting them and estimating the
+ * time spent producing them upstream. Only one record in every 16 is timed,
+ * keeping the overhead of System.nanoTime() off the hot path.
+ * 
+ * @author agent
+ */
+public class MeteringTransformer implements Transformer
+{
+    private static final int SAMPLE_MASK = 15;
+    private static final int PUBLISH_MASK = 1023;
+    
+    private final LongConsumer counter;
+    
+    private long count;
+    private long sampled;
+    private long nanos;
+
+    /**
+     * Creates a new metering transformer
+     * 
+     * @param counter called periodically with the number of records so far, may be null
+     */
+    public MeteringTransformer(LongConsumer counter)
+    {
+        this.counter = counter;
+    }
+
+    public long getCount()
+    {
+        return count;
+    }
+    
+    /**
+     * @return the estimated nanoseconds spent in hasNext() and next() of the upstream iterator
+     */
+    public long getNanos()
+    {
+        if(sampled == 0) return nanos;
+        
+        return nanos * count / sampled;
+    }
+    
+    @Override
+    public Iterable<JSONObject> transform(Iterable<JSONObject> iterable) throws ConvirganceException
+    {
+        return () -> new Iterator<JSONObject>() {
+            
+            private final Iterator<JSONObject> iterator = iterable.iterator();
+            private boolean timing = true;
+            
+            @Override
+            public boolean hasNext()
+            {
+                long start;
+                boolean next;
+                
+                if(!timing) 
+                {
+                    next = iterator.hasNext();
+                }
+                else
+                {
+                    start = System.nanoTime();
+                    next = iterator.hasNext();
+                    nanos += System.nanoTime() - start;
+                }
+                
+                if(!next && counter != null) counter.accept(count);
+                
+                return next;
+            }
+
+            @Override
+            public JSONObject next()
+            {
+                JSONObject record;
+                long start;
+                
+                if(!timing) 
+                {
+                    record = iterator.next();
+                }
+                else
+                {
+                    start = System.nanoTime();
+                    record = iterator.next();
+                    nanos += System.nanoTime() - start;
+                    sampled++;
+                }
+                
+                count++;
+                timing = ((count & SAMPLE_MASK) == 0);
+                
+                if(counter != null && (count & PUBLISH_MASK) == 0) counter.accept(count);
+                
+                return record;
+            }
+        };
+    }
+}
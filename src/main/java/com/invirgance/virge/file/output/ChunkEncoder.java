@@ -0,0 +1,178 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.output;
+
+import com.invirgance.convirgance.ConvirganceException;
+import com.invirgance.convirgance.json.JSONObject;
+import com.invirgance.convirgance.output.Output;
+import com.invirgance.convirgance.target.OutputStreamTarget;
+import com.invirgance.virge.file.Compression;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Encodes records with an output in independent chunks that can be 
+ * concatenated into a single file. Every chunk after the first has the 
+ * preamble the output writes at the start of a file removed. For outputs 
+ * with a header line (e.g. CSV) the preamble is the header. For other
+ * outputs it is whatever the output writes for an empty set of records, 
+ * and chunks that do not begin with it are rejected.
+ * 
+ * @author agent
+ */
+public class ChunkEncoder
+{
+    private final Output output;
+    
+    private boolean headerLine;
+    private Compression compression = Compression.NONE;
+    private volatile byte[] preamble;
+
+    public ChunkEncoder(Output output)
+    {
+        this.output = output;
+    }
+
+    public Output getOutput()
+    {
+        return output;
+    }
+
+    public boolean isHeaderLine()
+    {
+        return headerLine;
+    }
+
+    /**
+     * @param headerLine true if the output writes a header line
+     */
+    public void setHeaderLine(boolean headerLine)
+    {
+        this.headerLine = headerLine;
+    }
+
+    public Compression getCompression()
+    {
+        return compression;
+    }
+
+    /**
+     * @param compression either NONE or GZIP. Each chunk is compressed as a separate gzip member.
+     */
+    public void setCompression(Compression compression)
+    {
+        if(compression == null) compression = Compression.NONE;
+        if(compression == Compression.DEFLATE) throw new ConvirganceException("Deflate compressed chunks can not be concatenated");
+        
+        this.compression = compression;
+    }
+    
+    /**
+     * Returns the bytes removed from the start of every appended chunk. For 
+     * outputs with a header line this is null until the first chunk has been
+     * encoded.
+     * 
+     * @return the preamble of the output
+     */
+    public byte[] getPreamble()
+    {
+        ByteArrayOutputStream empty;
+        
+        if(preamble == null && !headerLine)
+        {
+            empty = new ByteArrayOutputStream();
+            
+            output.write(new OutputStreamTarget(empty), List.of());
+            
+            preamble = empty.toByteArray();
+        }
+        
+        return preamble;
+    }
+    
+    private static boolean startsWith(byte[] data, byte[] prefix)
+    {
+        return data.length >= prefix.length && Arrays.equals(data, 0, prefix.length, prefix, 0, prefix.length);
+    }
+    
+    private byte[] getPreamble(byte[] data)
+    {
+        int index = 0;
+        
+        // Empty output has no header line to take yet
+        if(preamble == null && headerLine && data.length > 0)
+        {
+            while(index < data.length && data[index] != '\n') index++;
+            
+            preamble = Arrays.copyOf(data, Math.min(index + 1, data.length));
+        }
+        
+        return getPreamble();
+    }
+    
+    /**
+     * Encodes a chunk of records
+     * 
+     * @param records the records to encode
+     * @param append true if the chunk follows previously written data and the preamble should be removed
+     * @return the encoded and optionally compressed bytes
+     */
+    public byte[] encode(List<JSONObject> records, boolean append)
+    {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        byte[] data;
+        byte[] prefix;
+        
+        output.write(new OutputStreamTarget(buffer), records);
+        
+        data = buffer.toByteArray();
+        prefix = getPreamble(data);
+        
+        if(append)
+        {
+            if(!startsWith(data, prefix)) 
+            {
+                throw new ConvirganceException(output.getClass().getSimpleName() + " does not produce output that can be appended in chunks");
+            }
+            
+            data = Arrays.copyOfRange(data, prefix.length, data.length);
+        }
+        
+        if(compression == Compression.NONE) return data;
+        
+        buffer = new ByteArrayOutputStream();
+        
+        try(OutputStream out = compression.compress(buffer))
+        {
+            out.write(data);
+        }
+        catch(IOException e)
+        {
+            throw new ConvirganceException(e);
+        }
+        
+        return buffer.toByteArray();
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.output;
+
+import com.invirgance.convirgance.ConvirganceException;
+import com.invirgance.convirgance.json.JSONObject;
+import com.invirgance.convirgance.output.Output;
+import com.invirgance.convirgance.target.Target;
+import com.invirgance.virge.file.Compression;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes the records of a followed source as they arrive. Records are 
+ * encoded in chunks that are appended to the target, and flush() writes the
+ * partial chunk so that readers of the target see every record read so far.
+ * Compressed targets are written as one gzip member per chunk so that each
+ * flush leaves a complete, readable file.
+ * 
+ * @author agent
+ */
+public class FollowWriter
+{
+    public static final int DEFAULT_BUFFER_RECORDS = 1024;
+    
+    private final ChunkEncoder encoder;
+    private final Target target;
+    private final List<JSONObject> buffer = new ArrayList<>();
+    
+    private int bufferRecords = DEFAULT_BUFFER_RECORDS;
+    private OutputStream out;
+    private boolean started;
+
+    /**
+     * @param output the output used to encode the records
+     * @param target the target to append to
+     */
+    public FollowWriter(Output output, Target target)
+    {
+        this.encoder = new ChunkEncoder(output);
+        this.target = target;
+    }
+
+    public boolean isHeaderLine()
+    {
+        return encoder.isHeaderLine();
+    }
+
+    /**
+     * @param headerLine true if the output writes a header line that must be removed from appended chunks
+     * @see ChunkEncoder#setHeaderLine(boolean) 
+     */
+    public void setHeaderLine(boolean headerLine)
+    {
+        encoder.setHeaderLine(headerLine);
+    }
+
+    public Compression getCompression()
+    {
+        return encoder.getCompression();
+    }
+
+    /**
+     * @param compression either NONE or GZIP
+     */
+    public void setCompression(Compression compression)
+    {
+        encoder.setCompression(compression);
+    }
+
+    public int getBufferRecords()
+    {
+        return bufferRecords;
+    }
+
+    /**
+     * @param bufferRecords the number of records encoded together when the source is busy
+     */
+    public void setBufferRecords(int bufferRecords)
+    {
+        this.bufferRecords = Math.max(1, bufferRecords);
+    }
+
+    private void append(byte[] data)
+    {
+        try
+        {
+            out.write(data);
+            out.flush();
+        }
+        catch(IOException e)
+        {
+            throw new ConvirganceException(e);
+        }
+        
+        started = true;
+    }
+    
+    private void writeChunk()
+    {
+        // An empty chunk would record an empty CSV header before the real one is seen
+        if(buffer.isEmpty()) return;
+        
+        append(encoder.encode(buffer, started));
+        
+        buffer.clear();
+    }
+    
+    /**
+     * Writes the records buffered since the last chunk. Call from the thread
+     * reading the records, e.g. when the source is waiting for new data.
+     */
+    public void flush()
+    {
+        if(out != null) writeChunk();
+    }
+    
+    /**
+     * Writes records until the source ends
+     * 
+     * @param records the records to write
+     */
+    public void write(Iterable<JSONObject> records)
+    {
+        out = target.getOutputStream();
+        
+        try
+        {
+            for(JSONObject record : records)
+            {
+                buffer.add(record);
+                
+                if(buffer.size() >= bufferRecords) writeChunk();
+            }
+            
+            writeChunk();
+            
+            // Formats such as JBIN still need their preamble when nothing was read
+            if(!started) append(encoder.encode(buffer, false));
+        }
+        finally
+        {
+            try
+            {
+                out.close();
+            }
+            catch(IOException e)
+            {
+                throw new ConvirganceException(e);
+            }
+            
+            out = null;
+        }
+    }
+}
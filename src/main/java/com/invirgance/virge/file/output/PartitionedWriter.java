@@ -0,0 +1,352 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.output;
+
+import com.invirgance.convirgance.ConvirganceException;
+import com.invirgance.convirgance.json.JSONObject;
+import com.invirgance.convirgance.output.Output;
+import com.invirgance.virge.file.Compression;
+import com.invirgance.virge.file.index.JBINIndex;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Routes records to a file per distinct value of one or more columns, laid 
+ * out as directories named column=value (e.g. out/date=2026-10-01/part.jbin
+ * for the file out/part.jbin). The input is read once regardless of the
+ * number of partitions.
+ * <br><br>
+ * Characters in column names and values that are not safe in file names,
+ * and %, are written as %XX.
+ * Since a % in a value is always escaped, names starting with % that are 
+ * not an escape are reserved: null values are written as %null and empty
+ * values as %empty.
+ * <br><br>
+ * Records are buffered per partition and each full buffer is encoded as a
+ * chunk that is appended to the partition file, so busy partitions are 
+ * written in large blocks. Only a limited number of files are kept open, 
+ * with the least recently written closed first and reopened for appending 
+ * when it receives more records.
+ * 
+ * @author agent
+ */
+public class PartitionedWriter
+{
+    public static final int DEFAULT_MAX_OPEN = 128;
+    public static final int DEFAULT_BUFFER_RECORDS = 1024;
+    public static final int DEFAULT_MAX_BUFFERED = 256 * 1024;
+    
+    private final Output output;
+    private final File file;
+    private final File parent;
+    private final String[] columns;
+    private final Compression compression;
+    
+    private boolean headerLine;
+    private int maxOpen = DEFAULT_MAX_OPEN;
+    private int bufferRecords = DEFAULT_BUFFER_RECORDS;
+    private int maxBuffered = DEFAULT_MAX_BUFFERED;
+    
+    private final Map<List<Object>,Partition> partitions = new HashMap<>();
+    private final Map<File,Partition> files = new LinkedHashMap<>();
+    private final LinkedHashMap<Partition,OutputStream> open = new LinkedHashMap<>(16, 0.75f, true);
+    private int buffered;
+    private long bytes;
+
+    /**
+     * @param output the output used to encode every partition
+     * @param file the file name used in every partition. Partition directories are created alongside it.
+     * @param columns the columns to partition by
+     * @param compression compression applied to each partition file, either NONE or GZIP
+     */
+    public PartitionedWriter(Output output, File file, String[] columns, Compression compression)
+    {
+        this.output = output;
+        this.file = file;
+        this.parent = file.getAbsoluteFile().getParentFile();
+        this.columns = columns;
+        this.compression = (compression == null) ? Compression.NONE : compression;
+    }
+
+    public boolean isHeaderLine()
+    {
+        return headerLine;
+    }
+
+    /**
+     * @param headerLine true if the output writes a header line
+     * @see ChunkEncoder#setHeaderLine(boolean) 
+     */
+    public void setHeaderLine(boolean headerLine)
+    {
+        this.headerLine = headerLine;
+    }
+
+    public int getMaxOpen()
+    {
+        return maxOpen;
+    }
+
+    /**
+     * @param maxOpen the maximum number of partition files open at once
+     */
+    public void setMaxOpen(int maxOpen)
+    {
+        this.maxOpen = Math.max(1, maxOpen);
+    }
+
+    public int getBufferRecords()
+    {
+        return bufferRecords;
+    }
+
+    /**
+     * @param bufferRecords the number of records buffered for a partition before they are written
+     */
+    public void setBufferRecords(int bufferRecords)
+    {
+        this.bufferRecords = Math.max(1, bufferRecords);
+    }
+
+    public int getMaxBuffered()
+    {
+        return maxBuffered;
+    }
+
+    /**
+     * @param maxBuffered the total records buffered across all partitions before every buffer is written
+     */
+    public void setMaxBuffered(int maxBuffered)
+    {
+        this.maxBuffered = maxBuffered;
+    }
+    
+    /**
+     * @return the partitions written so far
+     */
+    public Collection<Partition> getPartitions()
+    {
+        return files.values();
+    }
+    
+    private static String escape(Object value)
+    {
+        StringBuilder builder = new StringBuilder();
+        String text;
+        
+        if(value == null) return "%null";
+        
+        text = value.toString();
+        
+        if(text.isEmpty()) return "%empty";
+        if(text.equals(".") || text.equals("..")) return text.replace(".", "%2E");
+        
+        for(char c : text.toCharArray())
+        {
+            if(c < 0x20 || "%/\\:*?\"<>|=".indexOf(c) >= 0) builder.append(String.format("%%%02X", (int)c));
+            else builder.append(c);
+        }
+        
+        return builder.toString();
+    }
+    
+    private Partition getPartition(JSONObject record)
+    {
+        Object[] values = new Object[columns.length];
+        List<Object> key = Arrays.asList(values);
+        Partition partition;
+        File directory = parent;
+        
+        for(int i=0; i<columns.length; i++) values[i] = record.get(columns[i]);
+        
+        partition = partitions.get(key);
+        
+        if(partition != null) return partition;
+        
+        for(int i=0; i<columns.length; i++) directory = new File(directory, escape(columns[i]) + "=" + escape(values[i]));
+        
+        // Values such as "42" and 42 share a directory and therefore a partition
+        partition = files.computeIfAbsent(new File(directory, file.getName()), Partition::new);
+        
+        partitions.put(key, partition);
+        
+        return partition;
+    }
+    
+    private OutputStream getStream(Partition partition) throws IOException
+    {
+        OutputStream stream = open.get(partition);
+        Map.Entry<Partition,OutputStream> eldest;
+        
+        if(stream != null) return stream;
+        
+        if(open.size() >= maxOpen)
+        {
+            eldest = open.entrySet().iterator().next();
+            
+            eldest.getValue().close();
+            open.remove(eldest.getKey());
+        }
+        
+        // A partition is created the first time it is written and appended to after that
+        if(!partition.started) 
+        {
+            partition.file.getParentFile().mkdirs();
+            
+            JBINIndex.delete(partition.file);
+        }
+        
+        stream = new FileOutputStream(partition.file, partition.started);
+        
+        open.put(partition, stream);
+        
+        return stream;
+    }
+    
+    private void flush(Partition partition) throws IOException
+    {
+        byte[] chunk;
+        
+        if(partition.buffer.isEmpty()) return;
+        
+        chunk = partition.encoder.encode(partition.buffer, partition.started);
+        
+        getStream(partition).write(chunk);
+        
+        buffered -= partition.buffer.size();
+        bytes += chunk.length;
+        partition.bytes += chunk.length;
+        partition.started = true;
+        
+        partition.buffer.clear();
+    }
+    
+    private void flushAll() throws IOException
+    {
+        for(Partition partition : files.values()) flush(partition);
+    }
+    
+    /**
+     * Writes every record to its partition and closes all partition files
+     * 
+     * @param records the records to write
+     * @return the number of bytes written across all partitions
+     */
+    public long write(Iterable<JSONObject> records)
+    {
+        Partition partition;
+        
+        try
+        {
+            for(JSONObject record : records)
+            {
+                partition = getPartition(record);
+                
+                partition.buffer.add(record);
+                partition.records++;
+                buffered++;
+                
+                if(partition.buffer.size() >= bufferRecords) flush(partition);
+                else if(buffered >= maxBuffered) flushAll();
+            }
+            
+            flushAll();
+        }
+        catch(IOException e)
+        {
+            throw new ConvirganceException(e);
+        }
+        finally
+        {
+            close();
+        }
+        
+        return bytes;
+    }
+    
+    private void close()
+    {
+        IOException error = null;
+        
+        for(OutputStream stream : open.values())
+        {
+            try
+            {
+                stream.close();
+            }
+            catch(IOException e)
+            {
+                error = e;
+            }
+        }
+        
+        open.clear();
+        
+        if(error != null) throw new ConvirganceException(error);
+    }
+    
+    /**
+     * A single partition file
+     */
+    public class Partition
+    {
+        private final File file;
+        private final ChunkEncoder encoder = new ChunkEncoder(output);
+        private final List<JSONObject> buffer = new ArrayList<>();
+        
+        private boolean started;
+        private long records;
+        private long bytes;
+
+        private Partition(File file)
+        {
+            this.file = file;
+            
+            encoder.setHeaderLine(headerLine);
+            encoder.setCompression(compression);
+        }
+
+        public File getFile()
+        {
+            return file;
+        }
+
+        public long getRecords()
+        {
+            return records;
+        }
+
+        public long getBytes()
+        {
+            return bytes;
+        }
+    }
+}
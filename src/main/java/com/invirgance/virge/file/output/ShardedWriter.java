@@ -0,0 +1,433 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.output;
+
+import com.invirgance.convirgance.ConvirganceException;
+import com.invirgance.convirgance.json.JSONObject;
+import com.invirgance.convirgance.output.JSONOutput;
+import com.invirgance.convirgance.output.Output;
+import com.invirgance.convirgance.target.FileTarget;
+import com.invirgance.convirgance.target.Target;
+import com.invirgance.virge.file.Compression;
+import com.invirgance.virge.file.metrics.MeteredTarget;
+import com.invirgance.virge.file.target.CompressedTarget;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/**
+ * Splits a stream of records across numbered files (name-00001.jbin, 
+ * name-00002.jbin, ...) by record count or approximate size. Records are 
+ * encoded in chunks on a pool of threads and the chunks are appended to the
+ * shards in their original order, so reading the shards in sequence returns
+ * the records in the order they were written. Each shard is opened when
+ * its first chunk is written and closed as soon as its last chunk has been
+ * written, so only one shard is open at a time. A name.manifest.json file 
+ * lists the shards with their record and byte counts once all shards are 
+ * complete.
+ * 
+ * @author agent
+ */
+public class ShardedWriter
+{
+    private static final int CHUNK_SIZE = 8192;
+    private static final int FIRST_CHUNK_SIZE = 1024;
+    
+    private final Output output;
+    private final File file;
+    private final Compression compression;
+    private final ChunkEncoder encoder;
+    
+    private long splitRows;
+    private long splitBytes;
+    private int maxWriters = Runtime.getRuntime().availableProcessors();
+    private Function<File,Target> targets = FileTarget::new;
+
+    /**
+     * Creates a new sharded writer
+     * 
+     * @param output the output used to encode every shard
+     * @param file the base file name. Shards are numbered before the extension.
+     * @param compression compression applied to each shard
+     */
+    public ShardedWriter(Output output, File file, Compression compression)
+    {
+        this.output = output;
+        this.file = file;
+        this.compression = (compression == null) ? Compression.NONE : compression;
+        this.encoder = new ChunkEncoder(output);
+        
+        // Gzip members can be concatenated, so each chunk is compressed in parallel
+        if(this.compression == Compression.GZIP) encoder.setCompression(Compression.GZIP);
+    }
+
+    public long getSplitRows()
+    {
+        return splitRows;
+    }
+
+    /**
+     * @param splitRows the maximum number of records in a shard or 0 for no limit
+     */
+    public void setSplitRows(long splitRows)
+    {
+        this.splitRows = splitRows;
+    }
+
+    public long getSplitBytes()
+    {
+        return splitBytes;
+    }
+
+    /**
+     * Sets the approximate maximum size of a shard. Since chunks are encoded
+     * ahead of being written, a shard may exceed this by a few chunks.
+     * 
+     * @param splitBytes the approximate maximum bytes in a shard or 0 for no limit
+     */
+    public void setSplitBytes(long splitBytes)
+    {
+        this.splitBytes = splitBytes;
+    }
+
+    public int getMaxWriters()
+    {
+        return maxWriters;
+    }
+
+    /**
+     * @param maxWriters the maximum number of chunks being encoded at once
+     */
+    public void setMaxWriters(int maxWriters)
+    {
+        this.maxWriters = Math.max(1, maxWriters);
+    }
+
+    public boolean isHeaderLine()
+    {
+        return encoder.isHeaderLine();
+    }
+
+    /**
+     * @param headerLine true if the output writes a header line that must be removed from appended chunks
+     * @see ChunkEncoder#setHeaderLine(boolean) 
+     */
+    public void setHeaderLine(boolean headerLine)
+    {
+        encoder.setHeaderLine(headerLine);
+    }
+
+    /**
+     * Sets the factory used to create the target for each shard file. 
+     * Defaults to FileTarget.
+     * 
+     * @param targets creates a target for a shard file
+     */
+    public void setTargets(Function<File,Target> targets)
+    {
+        this.targets = targets;
+    }
+    
+    private File getShardFile(int index)
+    {
+        String name = Compression.strip(file.getName());
+        int dot = name.lastIndexOf('.');
+        String stem = (dot > 0) ? name.substring(0, dot) : name;
+        String extension = (dot > 0) ? name.substring(dot) : "";
+        
+        return new File(file.getParentFile(), String.format("%s-%05d%s%s", stem, index, extension, compression.getExtension()));
+    }
+    
+    /**
+     * @return the manifest file written alongside the shards
+     */
+    public File getManifestFile()
+    {
+        String name = Compression.strip(file.getName());
+        int dot = name.lastIndexOf('.');
+        
+        return new File(file.getParentFile(), ((dot > 0) ? name.substring(0, dot) : name) + ".manifest.json");
+    }
+    
+    private static byte[] await(Future<byte[]> future)
+    {
+        try
+        {
+            return future.get();
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            
+            throw new ConvirganceException(e);
+        }
+        catch(ExecutionException e)
+        {
+            if(e.getCause() instanceof RuntimeException) throw (RuntimeException)e.getCause();
+            if(e.getCause() instanceof Error) throw (Error)e.getCause();
+            
+            throw new ConvirganceException(e.getCause());
+        }
+    }
+    
+    /**
+     * Writes the records across as many shards as needed, then writes the
+     * manifest. Blocks until all shards are complete.
+     * 
+     * @param records the records to write
+     * @return the shards written
+     */
+    public List<Shard> write(Iterable<JSONObject> records)
+    {
+        Iterator<JSONObject> iterator = records.iterator();
+        ArrayDeque<Chunk> window = new ArrayDeque<>();
+        List<Shard> shards = new ArrayList<>();
+        List<JSONObject> batch;
+        ExecutorService executor;
+        Shard shard = null;
+        Chunk chunk;
+        long bytesWritten = 0;
+        long recordsWritten = 0;
+        double recordSize;
+        long size;
+        
+        executor = Executors.newFixedThreadPool(maxWriters, runnable -> {
+            Thread thread = new Thread(runnable, "virge-shard");
+
+            thread.setDaemon(true);
+
+            return thread;
+        });
+        
+        try
+        {
+            while(shard == null || iterator.hasNext())
+            {
+                recordSize = (recordsWritten > 0) ? (double)bytesWritten / recordsWritten : 0;
+                
+                if(shard == null || shard.isFull(recordSize))
+                {
+                    if(shard != null) shard.finish();
+                    
+                    shard = new Shard(getShardFile(shards.size() + 1));
+                    
+                    shards.add(shard);
+                }
+                
+                size = CHUNK_SIZE;
+                batch = new ArrayList<>();
+                
+                if(splitRows > 0) size = Math.min(size, splitRows - shard.records);
+                
+                // Size chunks to fill the shard. The first chunk is written before
+                // any others are encoded so that the record size is known.
+                if(splitBytes > 0 && recordSize > 0) size = Math.min(size, Math.max(1, (long)((splitBytes - shard.getEstimate(recordSize)) / recordSize)));
+                if(splitBytes > 0 && recordSize <= 0) size = Math.min(size, FIRST_CHUNK_SIZE);
+                
+                while(batch.size() < size && iterator.hasNext()) batch.add(iterator.next());
+                
+                window.add(new Chunk(shard, batch, executor));
+                
+                shard.records += batch.size();
+                
+                // Chunks are encoded in parallel but written in order
+                while(window.size() > maxWriters * 2 || (!iterator.hasNext() && !window.isEmpty()) || (splitBytes > 0 && recordsWritten <= 0 && !window.isEmpty()))
+                {
+                    chunk = window.poll();
+                    
+                    bytesWritten += chunk.write();
+                    recordsWritten += chunk.records;
+                }
+            }
+            
+            shard.finish();
+        }
+        finally
+        {
+            executor.shutdownNow();
+            
+            for(Shard item : shards) item.close();
+        }
+        
+        writeManifest(shards);
+        
+        return shards;
+    }
+    
+    private void writeManifest(List<Shard> shards)
+    {
+        List<JSONObject> entries = new ArrayList<>();
+        JSONObject entry;
+        
+        for(Shard shard : shards)
+        {
+            entry = new JSONObject();
+            
+            entry.put("file", shard.file.getName());
+            entry.put("records", shard.records);
+            entry.put("bytes", shard.bytes);
+            
+            entries.add(entry);
+        }
+        
+        new JSONOutput().write(new FileTarget(getManifestFile()), entries);
+    }
+    
+    /**
+     * A single output file.
+     */
+    public class Shard
+    {
+        private final File file;
+        
+        private OutputStream out;
+        private long records;
+        private long written;
+        private long bytes;
+        private int pending;
+        private boolean finished;
+
+        private Shard(File file)
+        {
+            this.file = file;
+        }
+
+        public File getFile()
+        {
+            return file;
+        }
+
+        public long getRecords()
+        {
+            return records;
+        }
+
+        public long getBytes()
+        {
+            return bytes;
+        }
+        
+        private double getEstimate(double recordSize)
+        {
+            // Chunks still being encoded are estimated from the average record size so far
+            return bytes + (records - written) * recordSize;
+        }
+        
+        private boolean isFull(double recordSize)
+        {
+            if(splitRows > 0 && records >= splitRows) return true;
+            
+            return (splitBytes > 0 && getEstimate(recordSize) >= splitBytes);
+        }
+        
+        private void open()
+        {
+            Target target = new MeteredTarget(targets.apply(file), count -> bytes += count);
+            
+            // Compression that can't be applied per chunk is applied to the whole shard
+            if(compression != Compression.NONE && compression != Compression.GZIP) target = new CompressedTarget(target, compression);
+            
+            out = target.getOutputStream();
+        }
+        
+        private void append(byte[] data, int count)
+        {
+            if(out == null) open();
+            
+            try
+            {
+                out.write(data);
+            }
+            catch(IOException e)
+            {
+                throw new ConvirganceException(e);
+            }
+            
+            written += count;
+            
+            if(--pending == 0 && finished) close();
+        }
+        
+        /**
+         * Marks the shard as complete. It is closed once the chunks still 
+         * waiting to be written have been appended.
+         */
+        private void finish()
+        {
+            finished = true;
+            
+            if(pending == 0) close();
+        }
+        
+        private void close()
+        {
+            if(out == null) return;
+            
+            try
+            {
+                out.close();
+            }
+            catch(IOException e)
+            {
+                throw new ConvirganceException(e);
+            }
+            
+            out = null;
+        }
+    }
+    
+    private class Chunk
+    {
+        private final Shard shard;
+        private final int records;
+        private final Future<byte[]> data;
+
+        public Chunk(Shard shard, List<JSONObject> records, ExecutorService executor)
+        {
+            final boolean append = shard.records > 0;
+            
+            this.shard = shard;
+            this.records = records.size();
+            this.data = executor.submit(() -> encoder.encode(records, append));
+            
+            shard.pending++;
+        }
+        
+        public long write()
+        {
+            byte[] bytes = await(data);
+            
+            shard.append(bytes, records);
+            
+            return bytes.length;
+        }
+    }
+}
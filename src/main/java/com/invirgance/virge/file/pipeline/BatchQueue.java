@@ -0,0 +1,229 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.pipeline;
+
+import com.invirgance.convirgance.ConvirganceException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded queue for handing batches of records from one thread to another.
+ * The producer calls add() and close() while the consumer iterates. When the
+ * queue is full the producer blocks, applying backpressure to the stage
+ * feeding it. Either side can cancel the queue, which causes the other side
+ * to fail rather than wait forever.
+ * 
+ * @param <T> the type of record passed through the queue
+ * @author agent
+ */
+public class BatchQueue<T> implements Iterable<T>
+{
+    private static final long POLL_MILLIS = 100;
+    
+    private final BlockingQueue<List<T>> queue;
+    private final int batchSize;
+    
+    private List<T> batch;
+    private long waitNanos;
+    private volatile boolean closed;
+    private volatile Throwable cancelled;
+
+    /**
+     * Creates a new queue
+     * 
+     * @param capacity the maximum number of batches waiting in the queue
+     * @param batchSize the number of records in each batch
+     */
+    public BatchQueue(int capacity, int batchSize)
+    {
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        this.batchSize = Math.max(1, batchSize);
+        this.batch = new ArrayList<>(this.batchSize);
+    }
+    
+    private void checkCancelled()
+    {
+        if(cancelled == null) return;
+        
+        throw (CancellationException)new CancellationException("Pipeline cancelled").initCause(cancelled);
+    }
+    
+    private void put(List<T> list)
+    {
+        try
+        {
+            while(!queue.offer(list, POLL_MILLIS, TimeUnit.MILLISECONDS))
+            {
+                checkCancelled();
+            }
+            
+            checkCancelled();
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            
+            throw new ConvirganceException(e);
+        }
+    }
+    
+    /**
+     * Adds a record to the current batch, blocking if the batch is full and
+     * the queue has no room for it. Must only be called by the producer.
+     * 
+     * @param record the record to add
+     */
+    public void add(T record)
+    {
+        batch.add(record);
+        
+        if(batch.size() >= batchSize) flush();
+    }
+    
+    /**
+     * Passes the current partial batch to the consumer. Must only be called
+     * by the producer.
+     */
+    public void flush()
+    {
+        if(batch.isEmpty()) return;
+        
+        put(batch);
+        
+        batch = new ArrayList<>(batchSize);
+    }
+    
+    /**
+     * Flushes any remaining records and signals the consumer that no more
+     * records will be added.
+     */
+    public void close()
+    {
+        flush();
+        put(Collections.emptyList());
+    }
+    
+    /**
+     * Aborts the queue. Any thread blocked on the queue will fail with a 
+     * CancellationException.
+     * 
+     * @param cause the reason the queue was cancelled
+     */
+    public void cancel(Throwable cause)
+    {
+        if(cancelled == null) cancelled = cause;
+        
+        queue.clear();
+    }
+
+    public boolean isCancelled()
+    {
+        return (cancelled != null);
+    }
+
+    /**
+     * @return the nanoseconds the consumer spent waiting for batches
+     */
+    public long getWaitNanos()
+    {
+        return waitNanos;
+    }
+    
+    private List<T> take()
+    {
+        long start = System.nanoTime();
+        List<T> list;
+        
+        try
+        {
+            while((list = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS)) == null)
+            {
+                checkCancelled();
+            }
+            
+            checkCancelled();
+            
+            return list;
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            
+            throw new ConvirganceException(e);
+        }
+        finally
+        {
+            waitNanos += System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Returns an iterator over the records added by the producer. The 
+     * iterator may only be obtained once.
+     * 
+     * @return iterator that blocks until records are available
+     */
+    @Override
+    public Iterator<T> iterator()
+    {
+        if(closed) throw new IllegalStateException("Queue may only be iterated once");
+        
+        closed = true;
+        
+        return new Iterator<T>() {
+            
+            private Iterator<T> current = Collections.emptyIterator();
+            private boolean done;
+            
+            @Override
+            public boolean hasNext()
+            {
+                List<T> list;
+                
+                while(!done && !current.hasNext())
+                {
+                    list = take();
+                    
+                    if(list.isEmpty()) done = true;
+                    else current = list.iterator();
+                }
+                
+                return current.hasNext();
+            }
+
+            @Override
+            public T next()
+            {
+                if(!hasNext()) throw new NoSuchElementException();
+                
+                return current.next();
+            }
+        };
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.pipeline;
+
+import com.invirgance.convirgance.ConvirganceException;
+import com.invirgance.convirgance.json.JSONObject;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Supplier;
+
+/**
+ * Spreads batches of records over a number of worker threads, each folding
+ * the records it receives into its own state. The states are returned once
+ * the input is consumed so the caller can merge them. With a single thread
+ * the batches are handled on the calling thread.
+ * 
+ * @param <S> the type of state kept by each worker
+ * @author agent
+ */
+public class BatchWorkers<S>
+{
+    public static final int DEFAULT_BATCH_SIZE = 1024;
+    
+    private final String name;
+    private final int threads;
+    private final Supplier<S> initial;
+    private final Handler<S> handler;
+    
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private volatile boolean failed;
+    
+    /**
+     * Folds a batch of records into the state of a worker
+     * 
+     * @param <S> the type of state kept by each worker
+     */
+    @FunctionalInterface
+    public interface Handler<S>
+    {
+        /**
+         * @param state the state of the worker
+         * @param batch the records to add
+         * @param position the number of records in the input before the batch
+         * @return the state to use for the next batch, usually the same one
+         */
+        public S handle(S state, List<JSONObject> batch, long position);
+    }
+    
+    /**
+     * @param name the name of the worker threads
+     * @param threads the number of worker threads
+     * @param initial creates the initial state of each worker
+     * @param handler folds each batch into a worker's state
+     */
+    public BatchWorkers(String name, int threads, Supplier<S> initial, Handler<S> handler)
+    {
+        this.name = name;
+        this.threads = Math.max(1, threads);
+        this.initial = initial;
+        this.handler = handler;
+    }
+    
+    public int getBatchSize()
+    {
+        return batchSize;
+    }
+    
+    public void setBatchSize(int batchSize)
+    {
+        this.batchSize = Math.max(1, batchSize);
+    }
+    
+    private List<S> runSerial(Iterator<JSONObject> iterator)
+    {
+        List<JSONObject> batch = new ArrayList<>(batchSize);
+        S state = initial.get();
+        long position = 0;
+        
+        while(iterator.hasNext())
+        {
+            batch.add(iterator.next());
+            
+            if(batch.size() < batchSize && iterator.hasNext()) continue;
+            
+            state = handler.handle(state, batch, position);
+            position += batch.size();
+            
+            batch = new ArrayList<>(batchSize);
+        }
+        
+        return List.of(state);
+    }
+    
+    /**
+     * Reads every record and hands them out to the workers in batches,
+     * blocking while all workers are busy.
+     * 
+     * @param iterator the records to process
+     * @return the final state of each worker
+     */
+    public List<S> run(Iterator<JSONObject> iterator)
+    {
+        BlockingQueue<Batch> queue;
+        List<Worker> workers;
+        List<S> states;
+        Batch batch;
+        long position = 0;
+        
+        if(threads <= 1) return runSerial(iterator);
+        
+        queue = new ArrayBlockingQueue<>(threads * 2);
+        workers = new ArrayList<>(threads);
+        states = new ArrayList<>(threads);
+        batch = new Batch(0, batchSize);
+        
+        for(int i=0; i<threads; i++)
+        {
+            workers.add(new Worker(queue, initial.get()));
+            workers.get(i).start();
+        }
+        
+        try
+        {
+            // A failed worker is reported once the others finish, so stop reading
+            while(!failed && iterator.hasNext())
+            {
+                batch.records.add(iterator.next());
+                
+                if(batch.records.size() < batchSize) continue;
+                
+                queue.put(batch);
+                
+                position += batchSize;
+                batch = new Batch(position, batchSize);
+            }
+            
+            if(!failed && !batch.records.isEmpty()) queue.put(batch);
+        }
+        catch(InterruptedException e)
+        {
+            throw new ConvirganceException(e);
+        }
+        finally
+        {
+            for(Worker worker : workers) worker.finish();
+        }
+        
+        for(Worker worker : workers) states.add(worker.getState());
+        
+        return states;
+    }
+    
+    private static class Batch
+    {
+        private final long position;
+        private final List<JSONObject> records;
+        
+        public Batch(long position, int size)
+        {
+            this.position = position;
+            this.records = new ArrayList<>(size);
+        }
+    }
+    
+    private class Worker extends Thread
+    {
+        private final BlockingQueue<Batch> queue;
+        
+        private S state;
+        private Throwable error;
+        
+        public Worker(BlockingQueue<Batch> queue, S state)
+        {
+            super(name);
+            
+            this.queue = queue;
+            this.state = state;
+            
+            setDaemon(true);
+        }
+        
+        @Override
+        public void run()
+        {
+            Batch batch;
+            
+            try
+            {
+                while(!(batch = queue.take()).records.isEmpty())
+                {
+                    // Keep draining after a failure so the reader never blocks
+                    if(error != null) continue;
+                    
+                    try
+                    {
+                        state = handler.handle(state, batch.records, batch.position);
+                    }
+                    catch(Throwable t)
+                    {
+                        error = t;
+                        failed = true;
+                    }
+                }
+            }
+            catch(InterruptedException e)
+            {
+                error = e;
+                failed = true;
+            }
+        }
+        
+        public void finish()
+        {
+            try
+            {
+                queue.put(new Batch(-1, 0));
+            }
+            catch(InterruptedException e)
+            {
+                throw new ConvirganceException(e);
+            }
+        }
+        
+        public S getState()
+        {
+            try
+            {
+                join();
+            }
+            catch(InterruptedException e)
+            {
+                throw new ConvirganceException(e);
+            }
+            
+            if(error instanceof ConvirganceException) throw (ConvirganceException)error;
+            if(error != null) throw new ConvirganceException(error);
+            
+            return state;
+        }
+    }
+}
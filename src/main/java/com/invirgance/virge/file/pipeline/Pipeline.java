@@ -0,0 +1,215 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.pipeline;
+
+import com.invirgance.convirgance.ConvirganceException;
+import com.invirgance.convirgance.json.JSONObject;
+import com.invirgance.convirgance.output.Output;
+import com.invirgance.convirgance.target.Target;
+import com.invirgance.convirgance.transform.Transformer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.function.Consumer;
+
+/**
+ * Runs the read, transform and write stages of a conversion on separate 
+ * virtual threads connected by bounded batch queues. A failure in any stage
+ * cancels the others and is rethrown from run(). A writer that returns 
+ * early stops the stages before it. A pipeline may only be run once.
+ * 
+ * @author agent
+ */
+public class Pipeline
+{
+    public static final int DEFAULT_BATCH_SIZE = 1024;
+    public static final int DEFAULT_CAPACITY = 8;
+    
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private int capacity = DEFAULT_CAPACITY;
+    
+    private final List<BatchQueue<JSONObject>> queues = new ArrayList<>();
+    private final List<Thread> threads = new ArrayList<>();
+    private volatile Throwable error;
+    
+    private BatchQueue<JSONObject> read;
+    private BatchQueue<JSONObject> written;
+
+    public int getBatchSize()
+    {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize)
+    {
+        this.batchSize = batchSize;
+    }
+
+    public int getCapacity()
+    {
+        return capacity;
+    }
+
+    /**
+     * Sets the number of batches that may be waiting between two stages 
+     * before the upstream stage blocks.
+     * 
+     * @param capacity the number of batches buffered between stages
+     */
+    public void setCapacity(int capacity)
+    {
+        this.capacity = capacity;
+    }
+    
+    /**
+     * @return nanoseconds the transform stage spent waiting on the read stage
+     */
+    public long getTransformWaitNanos()
+    {
+        return (read == null || read == written) ? 0 : read.getWaitNanos();
+    }
+    
+    /**
+     * @return nanoseconds the write stage spent waiting on the stages before it
+     */
+    public long getWriteWaitNanos()
+    {
+        return (written == null) ? 0 : written.getWaitNanos();
+    }
+    
+    private synchronized void fail(Throwable throwable)
+    {
+        // Cancellations are a consequence of the original failure
+        if(error != null || throwable instanceof CancellationException) return;
+        
+        error = throwable;
+        
+        for(BatchQueue<JSONObject> queue : queues) queue.cancel(throwable);
+    }
+    
+    /**
+     * Stops the stages feeding a writer that returned without reading every
+     * record. They fail with a CancellationException, which is not an error.
+     */
+    private void stop()
+    {
+        CancellationException stopped = new CancellationException("Writer finished");
+        
+        for(BatchQueue<JSONObject> queue : queues) queue.cancel(stopped);
+    }
+    
+    private void start(String name, Runnable runnable)
+    {
+        threads.add(Thread.ofVirtual().name(name).start(() -> {
+            try
+            {
+                runnable.run();
+            }
+            catch(Throwable t)
+            {
+                fail(t);
+            }
+        }));
+    }
+    
+    private void pump(Iterable<JSONObject> iterable, BatchQueue<JSONObject> queue)
+    {
+        for(JSONObject record : iterable) queue.add(record);
+        
+        queue.close();
+    }
+    
+    private BatchQueue<JSONObject> createQueue()
+    {
+        BatchQueue<JSONObject> queue = new BatchQueue<>(capacity, batchSize);
+        
+        queues.add(queue);
+        
+        return queue;
+    }
+    
+    /**
+     * Executes the pipeline, blocking until all stages complete.
+     * 
+     * @param iterable the records to read, typically the cursor from Input.read()
+     * @param transformers transformers to apply in order on the transform stage
+     * @param output the output used to encode records
+     * @param target the target the output is written to
+     */
+    public void run(Iterable<JSONObject> iterable, List<Transformer> transformers, Output output, Target target)
+    {
+        run(iterable, transformers, records -> output.write(target, records));
+    }
+    
+    /**
+     * Executes the pipeline, blocking until all stages complete.
+     * 
+     * @param iterable the records to read, typically the cursor from Input.read()
+     * @param transformers transformers to apply in order on the transform stage
+     * @param writer consumes the transformed records on the write stage
+     */
+    public void run(Iterable<JSONObject> iterable, List<Transformer> transformers, Consumer<Iterable<JSONObject>> writer)
+    {
+        read = createQueue();
+        written = read;
+        
+        start("virge-read", () -> pump(iterable, read));
+        
+        if(!transformers.isEmpty())
+        {
+            BatchQueue<JSONObject> queue = createQueue();
+            
+            start("virge-transform", () -> {
+                Iterable<JSONObject> records = read;
+                
+                for(Transformer transformer : transformers) records = transformer.transform(records);
+                
+                pump(records, queue);
+            });
+            
+            written = queue;
+        }
+        
+        start("virge-write", () -> {
+            writer.accept(written);
+            stop();
+        });
+        
+        for(Thread thread : threads)
+        {
+            try
+            {
+                thread.join();
+            }
+            catch(InterruptedException e)
+            {
+                fail(e);
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        
+        if(error instanceof RuntimeException) throw (RuntimeException)error;
+        if(error instanceof Error) throw (Error)error;
+        if(error != null) throw new ConvirganceException(error);
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.profile;
+
+import com.invirgance.convirgance.json.JSONObject;
+import com.invirgance.virge.file.aggregate.HyperLogLog;
+import com.invirgance.virge.file.dedup.Fingerprint;
+import com.invirgance.virge.file.sort.SortKey;
+import com.invirgance.virge.file.transform.ColumnType;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.List;
+
+/**
+ * Statistics for a single column: the number of values, minimum and maximum,
+ * approximate distinct count, most frequent values, inferred type and the
+ * longest value. Memory is fixed regardless of the number of distinct values,
+ * and profiles of the same column can be merged.
+ * 
+ * @author agent
+ */
+public class ColumnProfile
+{
+    public static final int DEFAULT_PRECISION = 14;
+    
+    private final String name;
+    private final Fingerprint fingerprint;
+    private final HyperLogLog distinct = new HyperLogLog(DEFAULT_PRECISION);
+    private final FrequentValues frequent;
+    
+    private final Range numbers = new Range();
+    private final Range booleans = new Range();
+    private final Range text = new Range();
+    
+    private long values;
+    private ColumnType type = ColumnType.NULL;
+    private int maxLength;
+
+    /**
+     * @param name the column name
+     * @param top the number of most frequent values to track
+     */
+    public ColumnProfile(String name, int top)
+    {
+        this.name = name;
+        this.fingerprint = new Fingerprint(new String[]{ name });
+        this.frequent = new FrequentValues(top);
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+    
+    /**
+     * @return the number of non-null values
+     */
+    public long getValues()
+    {
+        return values;
+    }
+
+    /**
+     * Returns the range of the values compared as the inferred type of the 
+     * column. A column holding any text compares every value as text, so 
+     * zip codes with and without leading zeros are ordered consistently.
+     */
+    private Range getRange()
+    {
+        switch(type)
+        {
+            case NULL:
+                return null;
+                
+            case BOOLEAN:
+                return booleans;
+                
+            case STRING:
+                return text;
+                
+            default:
+                return numbers;
+        }
+    }
+
+    public Object getMin()
+    {
+        return (getRange() == null) ? null : getRange().min;
+    }
+
+    public Object getMax()
+    {
+        return (getRange() == null) ? null : getRange().max;
+    }
+
+    public ColumnType getType()
+    {
+        return type;
+    }
+
+    public int getMaxLength()
+    {
+        return maxLength;
+    }
+    
+    public long getDistinct()
+    {
+        return distinct.estimate();
+    }
+    
+    public List<FrequentValues.Candidate> getTop()
+    {
+        return frequent.getTop();
+    }
+    
+    /**
+     * Infers the type of a value. Strings take the type of the key they were
+     * converted to, while values that are already typed keep their type.
+     */
+    private static ColumnType getType(Object value, Object key)
+    {
+        long number;
+        
+        if(value instanceof String)
+        {
+            if(key instanceof String) return ((String)key).isEmpty() ? ColumnType.NULL : ColumnType.STRING;
+            if(key instanceof Boolean) return ColumnType.BOOLEAN;
+            if(key instanceof Double) return ColumnType.DOUBLE;
+            
+            number = (Long)key;
+            
+            return (number == (int)number) ? ColumnType.INTEGER : ColumnType.LONG;
+        }
+        
+        if(value instanceof Boolean) return ColumnType.BOOLEAN;
+        if(value instanceof Double || value instanceof Float || value instanceof BigDecimal) return ColumnType.DOUBLE;
+        
+        if(value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte)
+        {
+            number = ((Number)value).longValue();
+            
+            return (number == (int)number) ? ColumnType.INTEGER : ColumnType.LONG;
+        }
+        
+        if(value instanceof BigInteger) return (((BigInteger)value).bitLength() < 64) ? ColumnType.LONG : ColumnType.STRING;
+        
+        return ColumnType.STRING;
+    }
+    
+    /**
+     * Adds the value of this column from a record. Missing values, nulls and
+     * empty strings count as nulls.
+     * 
+     * @param record the record
+     */
+    public void add(JSONObject record)
+    {
+        Object value = record.get(name);
+        Object key;
+        ColumnType valueType;
+        String string;
+        
+        if(value == null) return;
+        
+        // Each value is parsed once and the key shared by every statistic
+        key = SortKey.toKey(value);
+        valueType = getType(value, key);
+        
+        if(valueType == ColumnType.NULL) return;
+        
+        string = value.toString();
+        
+        values++;
+        type = type.widen(valueType);
+        maxLength = Math.max(maxLength, string.length());
+        
+        // The type is only known at the end, so the range is kept for each way of comparing
+        text.add(value, string);
+        
+        if(key instanceof Number) numbers.add(value, key);
+        if(key instanceof Boolean) booleans.add(value, key);
+        
+        fingerprint.computeKey(key);
+        distinct.add(fingerprint.getHigh());
+        frequent.add(value, key, fingerprint.getHigh(), fingerprint.getLow());
+    }
+    
+    public void merge(ColumnProfile other)
+    {
+        values += other.values;
+        type = type.widen(other.type);
+        maxLength = Math.max(maxLength, other.maxLength);
+        
+        numbers.merge(other.numbers);
+        booleans.merge(other.booleans);
+        text.merge(other.text);
+        
+        distinct.merge(other.distinct);
+        frequent.merge(other.frequent);
+    }
+    
+    /**
+     * The smallest and largest values of one kind, compared by their keys
+     */
+    private static class Range
+    {
+        private Object min;
+        private Object max;
+        private Object minKey;
+        private Object maxKey;
+        
+        public void add(Object value, Object key)
+        {
+            if(minKey == null || SortKey.compare(key, minKey) < 0)
+            {
+                min = value;
+                minKey = key;
+            }
+            
+            if(maxKey == null || SortKey.compare(key, maxKey) > 0)
+            {
+                max = value;
+                maxKey = key;
+            }
+        }
+        
+        public void merge(Range other)
+        {
+            if(other.minKey != null) add(other.min, other.minKey);
+            if(other.maxKey != null) add(other.max, other.maxKey);
+        }
+    }
+}
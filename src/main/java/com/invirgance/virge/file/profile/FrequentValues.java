@@ -0,0 +1,201 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.profile;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds the most frequent values of a column in bounded memory. Counts are
+ * estimated with a count-min sketch using conservative updates, which never
+ * underestimates, and a limited set of candidate values with the highest
+ * estimates is kept.
+ * Instances with the same dimensions can be merged.
+ * 
+ * @author agent
+ */
+public class FrequentValues
+{
+    public static final int DEFAULT_DEPTH = 4;
+    public static final int DEFAULT_WIDTH = 2048;
+    
+    private final int k;
+    private final int depth;
+    private final int width;
+    private final long[] counters;
+    private final Map<Object,Candidate> candidates = new HashMap<>();
+    
+    private long threshold;
+
+    /**
+     * @param k the number of most frequent values to report
+     */
+    public FrequentValues(int k)
+    {
+        this(k, DEFAULT_DEPTH, DEFAULT_WIDTH);
+    }
+
+    /**
+     * @param k the number of most frequent values to report
+     * @param depth the number of hash rows in the sketch
+     * @param width the number of counters per row
+     */
+    public FrequentValues(int k, int depth, int width)
+    {
+        this.k = Math.max(1, k);
+        this.depth = depth;
+        this.width = width;
+        this.counters = new long[depth * width];
+    }
+    
+    private int getIndex(int row, long high, long low)
+    {
+        return row * width + (int)Long.remainderUnsigned(high + row * low, width);
+    }
+    
+    private long estimate(long high, long low)
+    {
+        long estimate = Long.MAX_VALUE;
+        
+        for(int i=0; i<depth; i++) estimate = Math.min(estimate, counters[getIndex(i, high, low)]);
+        
+        return estimate;
+    }
+    
+    /**
+     * Counts a value
+     * 
+     * @param value the value as it appeared in the record
+     * @param key the value converted with SortKey.toKey()
+     * @param high the high 64 bits of the value's hash
+     * @param low the low 64 bits of the value's hash
+     */
+    public void add(Object value, Object key, long high, long low)
+    {
+        Candidate candidate;
+        long estimate = Long.MAX_VALUE;
+        int index;
+        
+        for(int i=0; i<depth; i++) estimate = Math.min(estimate, counters[getIndex(i, high, low)]);
+        
+        estimate++;
+        
+        // Conservative update only raises the counters that determine the estimate
+        for(int i=0; i<depth; i++)
+        {
+            index = getIndex(i, high, low);
+            
+            if(counters[index] < estimate) counters[index] = estimate;
+        }
+        
+        candidate = candidates.get(key);
+        
+        if(candidate != null)
+        {
+            candidate.count = estimate;
+            return;
+        }
+        
+        if(estimate <= threshold) return;
+        
+        candidates.put(key, new Candidate(value, key, high, low, estimate));
+        
+        if(candidates.size() >= k * 4) prune(k * 2);
+    }
+    
+    // Keeps the candidates with the highest estimates
+    private void prune(int size)
+    {
+        List<Candidate> sorted = new ArrayList<>(candidates.values());
+        
+        sorted.sort((a, b) -> Long.compare(b.count, a.count));
+        
+        if(sorted.size() <= size) return;
+        
+        threshold = Math.max(threshold, sorted.get(size).count);
+        
+        for(int i=size; i<sorted.size(); i++) candidates.remove(sorted.get(i).key);
+    }
+    
+    public void merge(FrequentValues other)
+    {
+        for(int i=0; i<counters.length; i++) counters[i] += other.counters[i];
+        
+        for(Candidate candidate : other.candidates.values())
+        {
+            if(!candidates.containsKey(candidate.key)) candidates.put(candidate.key, new Candidate(candidate.value, candidate.key, candidate.high, candidate.low, 0));
+        }
+        
+        // Estimates from the combined sketch cover both inputs
+        for(Candidate candidate : candidates.values()) candidate.count = estimate(candidate.high, candidate.low);
+        
+        threshold = 0;
+        
+        prune(k * 2);
+    }
+    
+    /**
+     * @return the most frequent values, most frequent first
+     */
+    public List<Candidate> getTop()
+    {
+        List<Candidate> sorted = new ArrayList<>(candidates.values());
+        
+        sorted.sort((a, b) -> Long.compare(b.count, a.count));
+        
+        return sorted.subList(0, Math.min(k, sorted.size()));
+    }
+    
+    /**
+     * A frequent value and its estimated count
+     */
+    public static class Candidate
+    {
+        private final Object value;
+        private final Object key;
+        private final long high;
+        private final long low;
+        
+        private long count;
+
+        private Candidate(Object value, Object key, long high, long low, long count)
+        {
+            this.value = value;
+            this.key = key;
+            this.high = high;
+            this.low = low;
+            this.count = count;
+        }
+
+        public Object getValue()
+        {
+            return value;
+        }
+
+        public long getCount()
+        {
+            return count;
+        }
+    }
+}
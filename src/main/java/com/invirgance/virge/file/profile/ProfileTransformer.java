@@ -0,0 +1,225 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.profile;
+
+import com.invirgance.convirgance.ConvirganceException;
+import com.invirgance.convirgance.json.JSONArray;
+import com.invirgance.convirgance.json.JSONObject;
+import com.invirgance.convirgance.transform.Transformer;
+import com.invirgance.virge.file.pipeline.BatchWorkers;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Profiles every column of the records in a single pass and emits one record
+ * per column with its statistics. Batches of records are profiled on worker 
+ * threads, each keeping its own sketches, which are merged once the input is
+ * consumed. Columns are reported in the order they first appear.
+ * 
+ * @author agent
+ */
+public class ProfileTransformer implements Transformer
+{
+    public static final int DEFAULT_TOP = 10;
+    
+    private static final int COLUMN_BITS = 16;
+    
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int top = DEFAULT_TOP;
+    private boolean nested = true;
+
+    public int getThreads()
+    {
+        return threads;
+    }
+
+    public void setThreads(int threads)
+    {
+        this.threads = Math.max(1, threads);
+    }
+
+    public int getTop()
+    {
+        return top;
+    }
+
+    /**
+     * @param top the number of most frequent values reported for each column
+     */
+    public void setTop(int top)
+    {
+        this.top = Math.max(1, top);
+    }
+
+    public boolean isNested()
+    {
+        return nested;
+    }
+
+    /**
+     * @param nested true to report the most frequent values as an array of 
+     * records, false to report them as text for flat formats such as CSV
+     */
+    public void setNested(boolean nested)
+    {
+        this.nested = nested;
+    }
+
+    @Override
+    public Iterable<JSONObject> transform(Iterable<JSONObject> iterable) throws ConvirganceException
+    {
+        return () -> profile(iterable.iterator()).getResults().iterator();
+    }
+    
+    private Profile profile(Iterator<JSONObject> iterator)
+    {
+        BatchWorkers<Profile> workers;
+        List<Profile> profiles;
+        
+        workers = new BatchWorkers<>("virge-profile", threads, Profile::new, (profile, batch, position) -> {
+            long next = position;
+            
+            for(JSONObject record : batch) profile.add(record, next++);
+            
+            return profile;
+        });
+        
+        profiles = workers.run(iterator);
+        
+        for(int i=1; i<profiles.size(); i++) profiles.get(0).merge(profiles.get(i));
+        
+        return profiles.get(0);
+    }
+    
+    private class Profile
+    {
+        private final Map<String,ColumnProfile> columns = new HashMap<>();
+        private final Map<String,Long> first = new HashMap<>();
+        
+        private long records;
+        
+        public void add(JSONObject record, long position)
+        {
+            ColumnProfile column;
+            int index = 0;
+            
+            records++;
+            
+            for(String key : record.keySet())
+            {
+                column = columns.get(key);
+                
+                if(column == null)
+                {
+                    column = new ColumnProfile(key, top);
+                    
+                    // Ordered by the record a column first appears in, then by its place in that record
+                    columns.put(key, column);
+                    first.put(key, (position << COLUMN_BITS) | Math.min(index, (1 << COLUMN_BITS) - 1));
+                }
+                
+                index++;
+                
+                column.add(record);
+            }
+        }
+        
+        public void merge(Profile other)
+        {
+            ColumnProfile column;
+            
+            records += other.records;
+            
+            for(String key : other.columns.keySet())
+            {
+                column = columns.get(key);
+                
+                first.merge(key, other.first.get(key), Math::min);
+                
+                if(column == null) columns.put(key, other.columns.get(key));
+                else column.merge(other.columns.get(key));
+            }
+        }
+        
+        private Object getTop(ColumnProfile column)
+        {
+            JSONArray<JSONObject> values = new JSONArray<>();
+            StringBuilder text = new StringBuilder();
+            JSONObject value;
+            
+            for(FrequentValues.Candidate candidate : column.getTop())
+            {
+                if(nested)
+                {
+                    value = new JSONObject();
+                    
+                    value.put("value", candidate.getValue());
+                    value.put("count", candidate.getCount());
+                    
+                    values.add(value);
+                }
+                else
+                {
+                    if(text.length() > 0) text.append(", ");
+                    
+                    text.append(candidate.getValue()).append(" (").append(candidate.getCount()).append(")");
+                }
+            }
+            
+            return nested ? values : text.toString();
+        }
+        
+        public List<JSONObject> getResults()
+        {
+            List<String> names = new ArrayList<>(columns.keySet());
+            List<JSONObject> results = new ArrayList<>();
+            ColumnProfile column;
+            JSONObject result;
+            
+            Collections.sort(names, (a, b) -> Long.compare(first.get(a), first.get(b)));
+            
+            for(String name : names)
+            {
+                column = columns.get(name);
+                result = new JSONObject();
+                
+                result.put("column", name);
+                result.put("type", column.getType().name().toLowerCase());
+                result.put("count", column.getValues());
+                result.put("nulls", records - column.getValues());
+                result.put("distinct", Math.min(column.getDistinct(), column.getValues()));
+                result.put("min", column.getMin());
+                result.put("max", column.getMax());
+                result.put("max_length", column.getMaxLength());
+                result.put("top", getTop(column));
+                
+                results.add(result);
+            }
+            
+            return results;
+        }
+    }
+}
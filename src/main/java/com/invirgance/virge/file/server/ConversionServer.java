@@ -0,0 +1,433 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.server;
+
+import com.invirgance.virge.file.ExitException;
+import com.invirgance.virge.file.TemporaryFiles;
+import com.invirgance.virge.file.VirgeFile;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps a warm JVM listening on a Unix domain socket and runs the same 
+ * command lines as the virge file module, avoiding JVM startup and letting 
+ * the JIT warm up across jobs. Jobs run concurrently on a bounded pool, and
+ * their output and exit status are streamed back to the client. Jobs that
+ * arrive when the queue is full are rejected so the client can run them 
+ * itself.
+ * <br><br>
+ * Tools report errors by throwing an ExitException rather than exiting the
+ * JVM, which the server returns as the job's exit status. Output written by
+ * a job's thread, or by threads it starts, is sent to the job's client.
+ * <br><br>
+ * A client that connects but does not finish sending its request within the
+ * request timeout is disconnected, so a stalled client cannot hold a worker.
+ * 
+ * @author agent
+ */
+public class ConversionServer
+{
+    public static final int DEFAULT_QUEUE = 64;
+    public static final long DEFAULT_REQUEST_TIMEOUT = 10000;
+    
+    private static final InheritableThreadLocal<PrintStream[]> job = new InheritableThreadLocal<>();
+    
+    private final File socket;
+    
+    private int workers = Runtime.getRuntime().availableProcessors();
+    private int queue = DEFAULT_QUEUE;
+    private long requestTimeout = DEFAULT_REQUEST_TIMEOUT;
+    private String directory = new File("").getAbsolutePath();
+
+    /**
+     * @param socket the path of the Unix domain socket to listen on
+     */
+    public ConversionServer(File socket)
+    {
+        this.socket = socket;
+    }
+
+    public File getSocket()
+    {
+        return socket;
+    }
+
+    public int getWorkers()
+    {
+        return workers;
+    }
+
+    /**
+     * @param workers the number of jobs run at once
+     */
+    public void setWorkers(int workers)
+    {
+        this.workers = Math.max(1, workers);
+    }
+
+    public int getQueue()
+    {
+        return queue;
+    }
+
+    /**
+     * @param queue the number of jobs waiting for a worker before new jobs are rejected
+     */
+    public void setQueue(int queue)
+    {
+        this.queue = Math.max(1, queue);
+    }
+
+    public long getRequestTimeout()
+    {
+        return requestTimeout;
+    }
+
+    /**
+     * @param requestTimeout the milliseconds a client has to send its request before it is disconnected
+     */
+    public void setRequestTimeout(long requestTimeout)
+    {
+        this.requestTimeout = Math.max(1, requestTimeout);
+    }
+    
+    private static boolean isRunning(File socket)
+    {
+        try
+        {
+            SocketChannel.open(UnixDomainSocketAddress.of(socket.toPath())).close();
+            
+            return true;
+        }
+        catch(IOException e)
+        {
+            return false;
+        }
+    }
+    
+    private static synchronized void install()
+    {
+        PrintStream out = System.out;
+        PrintStream err = System.err;
+        
+        if(out instanceof RoutingPrintStream) return;
+        
+        // Output from a job's threads goes to its client, everything else to the console
+        System.setOut(new RoutingPrintStream(out, 0));
+        System.setErr(new RoutingPrintStream(err, 1));
+    }
+    
+    private ServerSocketChannel bind() throws IOException
+    {
+        Path path = socket.getAbsoluteFile().toPath();
+        Path directory = Files.createTempDirectory(path.getParent(), ".virge-", PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+        Path bound = directory.resolve("socket");
+        ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        
+        // Jobs run with the permissions of the server, so only its user may 
+        // submit them. The socket is private before it is visible at its path.
+        try
+        {
+            server.bind(UnixDomainSocketAddress.of(bound));
+            Files.setPosixFilePermissions(bound, PosixFilePermissions.fromString("rw-------"));
+            Files.move(bound, path, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch(IOException e)
+        {
+            server.close();
+            Files.deleteIfExists(bound);
+            
+            throw e;
+        }
+        finally
+        {
+            Files.deleteIfExists(directory);
+        }
+        
+        return server;
+    }
+    
+    /**
+     * Listens for jobs until the JVM exits
+     * 
+     * @throws IOException if the socket cannot be opened
+     */
+    public void run() throws IOException
+    {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(workers, workers, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queue));
+        ScheduledExecutorService timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "virge-request-timeout");
+            
+            thread.setDaemon(true);
+            
+            return thread;
+        });
+        ServerSocketChannel server;
+        SocketChannel channel;
+        
+        if(socket.exists())
+        {
+            if(isRunning(socket)) throw new IOException("A server is already listening on " + socket);
+            
+            // Left behind by a server that did not shut down cleanly
+            socket.delete();
+        }
+        
+        install();
+        
+        server = bind();
+        
+        socket.deleteOnExit();
+        
+        while(true)
+        {
+            channel = server.accept();
+            
+            submit(executor, timer, channel);
+        }
+    }
+    
+    private void submit(ThreadPoolExecutor executor, ScheduledExecutorService timer, SocketChannel channel)
+    {
+        try
+        {
+            executor.execute(() -> handle(timer, channel));
+        }
+        catch(RejectedExecutionException e)
+        {
+            reject(channel, "Server is busy");
+        }
+    }
+    
+    private void reject(SocketChannel channel, String reason)
+    {
+        try(channel)
+        {
+            Protocol.writeRejected(new DataOutputStream(Channels.newOutputStream(channel)), reason);
+        }
+        catch(IOException e)
+        {
+            // The client has gone away
+        }
+    }
+    
+    /**
+     * Reads a request before the deadline. A Unix domain channel has no read
+     * timeout, so the timer closes the channel instead, which fails the 
+     * blocked read.
+     */
+    private String[] read(ScheduledExecutorService timer, SocketChannel channel, DataInputStream in) throws IOException
+    {
+        ScheduledFuture<?> deadline = timer.schedule(() -> close(channel), requestTimeout, TimeUnit.MILLISECONDS);
+        String[] request;
+        
+        try
+        {
+            request = Protocol.readRequest(in);
+        }
+        finally
+        {
+            deadline.cancel(false);
+        }
+        
+        // The deadline may have passed just as the request arrived
+        if(!channel.isOpen()) throw new IOException("Timed out reading the request");
+        
+        return request;
+    }
+    
+    private static void close(SocketChannel channel)
+    {
+        try
+        {
+            channel.close();
+        }
+        catch(IOException e)
+        {
+            // Already closed
+        }
+    }
+    
+    private void handle(ScheduledExecutorService timer, SocketChannel channel)
+    {
+        DataInputStream in;
+        DataOutputStream out;
+        PrintStream stdout;
+        PrintStream stderr;
+        String[] request;
+        String[] args;
+        int status;
+        
+        try(channel)
+        {
+            in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            request = read(timer, channel, in);
+            
+            // Relative paths would resolve against the wrong directory
+            if(!request[0].equals(directory))
+            {
+                Protocol.writeRejected(out, "Client working directory differs from the server");
+                return;
+            }
+            
+            args = new String[request.length - 1];
+            stdout = new PrintStream(new BufferedOutputStream(new Protocol.FrameOutputStream(out, Protocol.STDOUT), 64 * 1024), false);
+            stderr = new PrintStream(new Protocol.FrameOutputStream(out, Protocol.STDERR), true);
+            
+            System.arraycopy(request, 1, args, 0, args.length);
+            job.set(new PrintStream[]{ stdout, stderr });
+            
+            try(TemporaryFiles.Scope scope = TemporaryFiles.open())
+            {
+                status = execute(args, stderr);
+            }
+            finally
+            {
+                job.remove();
+            }
+            
+            stdout.flush();
+            stderr.flush();
+            
+            Protocol.writeExit(out, status);
+        }
+        catch(IOException e)
+        {
+            // The client has gone away
+        }
+    }
+    
+    private static ExitException getExit(Throwable throwable)
+    {
+        while(throwable != null)
+        {
+            if(throwable instanceof ExitException) return (ExitException)throwable;
+            
+            throwable = throwable.getCause();
+        }
+        
+        return null;
+    }
+    
+    /**
+     * Runs a command line in the current thread the same way as the virge 
+     * file module
+     * 
+     * @param args the arguments, starting with the tool name
+     * @param err stream for errors
+     * @return the exit status
+     */
+    private int execute(String[] args, PrintStream err)
+    {
+        ExitException exit;
+        
+        try
+        {
+            VirgeFile.run(args);
+            
+            return 0;
+        }
+        catch(Throwable t)
+        {
+            exit = getExit(t);
+            
+            if(exit == null)
+            {
+                t.printStackTrace(err);
+                
+                return 1;
+            }
+            
+            if(exit.getMessage() != null) err.println(exit.getMessage());
+            
+            return exit.getStatus();
+        }
+    }
+    
+    private static class RoutingPrintStream extends PrintStream
+    {
+        public RoutingPrintStream(PrintStream console, int index)
+        {
+            super(new RoutingOutputStream(console, index), true);
+        }
+    }
+    
+    private static class RoutingOutputStream extends OutputStream
+    {
+        private final OutputStream console;
+        private final int index;
+
+        public RoutingOutputStream(OutputStream console, int index)
+        {
+            this.console = console;
+            this.index = index;
+        }
+        
+        private OutputStream getStream()
+        {
+            PrintStream[] streams = job.get();
+            
+            return (streams != null) ? streams[index] : console;
+        }
+
+        @Override
+        public void write(int b) throws IOException
+        {
+            getStream().write(b);
+        }
+
+        @Override
+        public void write(byte[] data, int offset, int length) throws IOException
+        {
+            getStream().write(data, offset, length);
+        }
+
+        @Override
+        public void flush() throws IOException
+        {
+            getStream().flush();
+        }
+    }
+}
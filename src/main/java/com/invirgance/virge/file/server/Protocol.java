@@ -0,0 +1,177 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.server;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The messages exchanged between the conversion server and its clients. A
+ * client sends its working directory and the command line arguments. The 
+ * server answers with frames of output, each a type byte followed by a 
+ * length and the data, ending with the exit status of the job.
+ * 
+ * @author agent
+ */
+public class Protocol
+{
+    public static final int MAGIC = 0x56524731; // VRG1
+    
+    public static final byte STDOUT = 1;
+    public static final byte STDERR = 2;
+    public static final byte EXIT = 3;
+    public static final byte REJECTED = 4;
+    
+    private static final int MAX_ARGUMENTS = 64 * 1024;
+    private static final int MAX_STRING = 16 * 1024 * 1024;
+    
+    private static void writeString(DataOutputStream out, String value) throws IOException
+    {
+        byte[] data = value.getBytes(StandardCharsets.UTF_8);
+        
+        out.writeInt(data.length);
+        out.write(data);
+    }
+    
+    private static String readString(DataInputStream in) throws IOException
+    {
+        int length = in.readInt();
+        byte[] data;
+        
+        if(length < 0 || length > MAX_STRING) throw new IOException("Invalid request");
+        
+        data = new byte[length];
+        
+        in.readFully(data);
+        
+        return new String(data, StandardCharsets.UTF_8);
+    }
+    
+    public static void writeRequest(DataOutputStream out, String directory, String[] args) throws IOException
+    {
+        out.writeInt(MAGIC);
+        
+        writeString(out, directory);
+        
+        out.writeInt(args.length);
+        
+        for(String arg : args) writeString(out, arg);
+        
+        out.flush();
+    }
+    
+    /**
+     * Reads a request
+     * 
+     * @param in the stream to read
+     * @return the working directory of the client followed by the arguments
+     * @throws IOException if the request could not be read or is not valid
+     */
+    public static String[] readRequest(DataInputStream in) throws IOException
+    {
+        String directory;
+        String[] request;
+        int count;
+        
+        if(in.readInt() != MAGIC) throw new IOException("Invalid request");
+        
+        directory = readString(in);
+        count = in.readInt();
+        
+        if(count < 0 || count > MAX_ARGUMENTS) throw new IOException("Invalid request");
+        
+        request = new String[count + 1];
+        request[0] = directory;
+        
+        for(int i=1; i<request.length; i++) request[i] = readString(in);
+        
+        return request;
+    }
+    
+    public static void writeFrame(DataOutputStream out, byte type, byte[] data, int offset, int length) throws IOException
+    {
+        synchronized(out)
+        {
+            out.writeByte(type);
+            out.writeInt(length);
+            out.write(data, offset, length);
+            out.flush();
+        }
+    }
+    
+    public static void writeExit(DataOutputStream out, int status) throws IOException
+    {
+        synchronized(out)
+        {
+            out.writeByte(EXIT);
+            out.writeInt(status);
+            out.flush();
+        }
+    }
+    
+    public static void writeRejected(DataOutputStream out, String reason) throws IOException
+    {
+        synchronized(out)
+        {
+            out.writeByte(REJECTED);
+            
+            writeString(out, reason);
+            
+            out.flush();
+        }
+    }
+    
+    public static String readRejected(DataInputStream in) throws IOException
+    {
+        return readString(in);
+    }
+    
+    /**
+     * A stream that sends everything written to it as frames of a given type
+     */
+    public static class FrameOutputStream extends OutputStream
+    {
+        private final DataOutputStream out;
+        private final byte type;
+
+        public FrameOutputStream(DataOutputStream out, byte type)
+        {
+            this.out = out;
+            this.type = type;
+        }
+
+        @Override
+        public void write(int b) throws IOException
+        {
+            write(new byte[]{ (byte)b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] data, int offset, int length) throws IOException
+        {
+            if(length > 0) writeFrame(out, type, data, offset, length);
+        }
+    }
+}
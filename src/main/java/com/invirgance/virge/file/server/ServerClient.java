@@ -0,0 +1,147 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Forwards a command line to a running conversion server and relays its
+ * output. When no server is listening, or the server declines the job, the
+ * caller runs the command itself.
+ * 
+ * @author agent
+ */
+public class ServerClient
+{
+    /**
+     * Environment variable naming the socket of the server that commands are 
+     * forwarded to
+     */
+    public static final String SOCKET_VARIABLE = "VIRGE_FILE_SOCKET";
+    
+    /**
+     * Forwards the command to the server named by the VIRGE_FILE_SOCKET 
+     * environment variable, if it is set.
+     * 
+     * @param args the command line arguments, starting with the tool name
+     * @return the exit status of the job or null if the command was not run by a server
+     */
+    public static Integer forward(String[] args)
+    {
+        String socket = System.getenv(SOCKET_VARIABLE);
+        
+        if(socket == null || socket.isBlank()) return null;
+        
+        return forward(new File(socket), args);
+    }
+    
+    /**
+     * Forwards the command to a server
+     * 
+     * @param socket the socket the server listens on
+     * @param args the command line arguments, starting with the tool name
+     * @return the exit status of the job or null if the command was not run by the server
+     */
+    public static Integer forward(File socket, String[] args)
+    {
+        DataInputStream in;
+        DataOutputStream out;
+        PrintStream stream;
+        byte[] buffer = new byte[64 * 1024];
+        boolean sent = false;
+        int length;
+        byte type;
+        
+        if(!socket.exists() || args.length == 0 || args[0].equals("serve")) return null;
+        
+        // Standard input can't be forwarded
+        for(String arg : args)
+        {
+            if(arg.equals("-")) return null;
+        }
+        
+        try(SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(socket.toPath())))
+        {
+            in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            
+            Protocol.writeRequest(out, new File("").getAbsolutePath(), args);
+            
+            sent = true;
+            
+            while(true)
+            {
+                type = in.readByte();
+                
+                switch(type)
+                {
+                    case Protocol.STDOUT:
+                    case Protocol.STDERR:
+                        stream = (type == Protocol.STDOUT) ? System.out : System.err;
+                        length = in.readInt();
+                        
+                        while(length > 0)
+                        {
+                            in.readFully(buffer, 0, Math.min(length, buffer.length));
+                            stream.write(buffer, 0, Math.min(length, buffer.length));
+                            
+                            length -= Math.min(length, buffer.length);
+                        }
+                        
+                        break;
+                        
+                    case Protocol.EXIT:
+                        System.out.flush();
+                        System.err.flush();
+                        
+                        return in.readInt();
+                        
+                    case Protocol.REJECTED:
+                        Protocol.readRejected(in);
+                        return null;
+                        
+                    default:
+                        throw new IOException("Unknown response from the server: " + type);
+                }
+            }
+        }
+        catch(IOException e)
+        {
+            // No server is listening
+            if(!sent) return null;
+            
+            // The job may have run, so running it again here is not safe
+            System.err.println("Lost connection to the server at " + socket);
+            
+            return 255;
+        }
+    }
+}
@@ -0,0 +1,445 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.sort;
+
+import com.invirgance.convirgance.ConvirganceException;
+import com.invirgance.convirgance.input.JBINInput;
+import com.invirgance.convirgance.json.JSONObject;
+import com.invirgance.convirgance.output.JBINOutput;
+import com.invirgance.convirgance.source.FileSource;
+import com.invirgance.convirgance.target.FileTarget;
+import com.invirgance.convirgance.transform.Transformer;
+import com.invirgance.virge.file.TemporaryFiles;
+import com.invirgance.virge.file.transform.ColumnType;
+import com.invirgance.virge.file.source.CloseableSource;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Sorts records that may not fit in memory. Records are collected into runs
+ * up to half of the memory budget. Each full run is sorted in parallel and
+ * spilled to a temporary JBIN file on a background thread while the next run
+ * is read. The runs are then merged with a heap. When there are more runs 
+ * than the fan-in, neighbouring runs are first merged into larger runs so 
+ * that no more than the fan-in are ever open at once. Inputs that fit in a
+ * single run are sorted in memory without touching disk. The sort is stable.
+ * <br><br>
+ * Keys without an explicit type are compared as the type widened over every
+ * value of the column in the first run, so the whole sort orders each 
+ * column the same way.
+ * 
+ * @author agent
+ */
+public class ExternalSortTransformer implements Transformer, AutoCloseable
+{
+    public static final long DEFAULT_MEMORY = 256 * 1024 * 1024;
+    public static final int DEFAULT_FAN_IN = 64;
+    
+    private final SortKey[] keys;
+    private final List<MergeIterator> merges = new ArrayList<>();
+    
+    private long memory = DEFAULT_MEMORY;
+    private int fanIn = DEFAULT_FAN_IN;
+    private File temporaryDirectory;
+
+    public ExternalSortTransformer(List<SortKey> keys)
+    {
+        this.keys = keys.toArray(SortKey[]::new);
+    }
+
+    public long getMemory()
+    {
+        return memory;
+    }
+
+    /**
+     * @param memory the approximate number of bytes of records held in memory
+     */
+    public void setMemory(long memory)
+    {
+        this.memory = memory;
+    }
+
+    public int getFanIn()
+    {
+        return fanIn;
+    }
+
+    /**
+     * @param fanIn the maximum number of spilled runs merged at once
+     */
+    public void setFanIn(int fanIn)
+    {
+        this.fanIn = Math.max(2, fanIn);
+    }
+
+    public File getTemporaryDirectory()
+    {
+        return temporaryDirectory;
+    }
+
+    /**
+     * @param temporaryDirectory directory for spilled runs or null for the system default
+     */
+    public void setTemporaryDirectory(File temporaryDirectory)
+    {
+        this.temporaryDirectory = temporaryDirectory;
+    }
+    
+    /**
+     * Rough estimate of the heap used by a record
+     */
+    public static long estimate(JSONObject record)
+    {
+        long size = 64;
+        Object value;
+        
+        for(String key : record.keySet())
+        {
+            value = record.get(key);
+            size += 48 + key.length() * 2L;
+            
+            if(value instanceof String) size += 40 + ((String)value).length() * 2L;
+            else size += 24;
+        }
+        
+        return size;
+    }
+    
+    private Entry entry(JSONObject record, long sequence, ColumnType[] types)
+    {
+        Entry entry = new Entry(new Object[keys.length], record, sequence);
+        
+        if(types != null) fill(entry, types);
+        
+        return entry;
+    }
+    
+    private void fill(Entry entry, ColumnType[] types)
+    {
+        for(int i=0; i<keys.length; i++) entry.keys[i] = keys[i].getKey(entry.record, types[i]);
+    }
+    
+    /**
+     * Decides the type of each key from the records of the first run and 
+     * fills in the keys of its entries, which were created before the types
+     * were known.
+     */
+    private ColumnType[] sample(List<Entry> run)
+    {
+        ColumnType[] types = new ColumnType[keys.length];
+        
+        for(int i=0; i<keys.length; i++)
+        {
+            types[i] = keys[i].getType();
+            
+            if(types[i] != null) continue;
+            
+            types[i] = ColumnType.NULL;
+            
+            for(Entry entry : run) types[i] = types[i].widen(SortKey.typeOf(entry.record.get(keys[i].getColumn())));
+        }
+        
+        for(Entry entry : run) fill(entry, types);
+        
+        return types;
+    }
+    
+    private int compare(Entry a, Entry b)
+    {
+        int result;
+        
+        for(int i=0; i<keys.length; i++)
+        {
+            result = SortKey.compare(a.keys[i], b.keys[i]);
+            
+            if(result != 0) return keys[i].isDescending() ? -result : result;
+        }
+        
+        return Long.compare(a.sequence, b.sequence);
+    }
+    
+    private Entry[] sort(List<Entry> run)
+    {
+        Entry[] entries = run.toArray(Entry[]::new);
+        
+        Arrays.parallelSort(entries, this::compare);
+        
+        return entries;
+    }
+    
+    private File spill(List<Entry> run)
+    {
+        Entry[] entries = sort(run);
+        List<JSONObject> records = new ArrayList<>(entries.length);
+        File file;
+        
+        for(Entry entry : entries) records.add(entry.record);
+        
+        file = TemporaryFiles.create("virge-sort-", ".jbin", temporaryDirectory);
+        
+        new JBINOutput().write(new FileTarget(file), records);
+        
+        return file;
+    }
+    
+    /**
+     * Merges groups of neighbouring runs until no more than the fan-in 
+     * remain. Keeping the groups in run order keeps the sort stable.
+     */
+    private List<File> reduce(List<File> files, ColumnType[] types)
+    {
+        List<File> merged = new ArrayList<>();
+        File file;
+        
+        try
+        {
+            while(files.size() > fanIn)
+            {
+                for(int i=0; i<files.size(); i+=fanIn)
+                {
+                    if(i + 1 == files.size())
+                    {
+                        merged.add(files.get(i));
+                        continue;
+                    }
+                    
+                    file = TemporaryFiles.create("virge-sort-", ".jbin", temporaryDirectory);
+                    
+                    merged.add(file);
+                    
+                    final MergeIterator merge = new MergeIterator(new ArrayList<>(files.subList(i, Math.min(files.size(), i + fanIn))), types);
+                    
+                    new JBINOutput().write(new FileTarget(file), () -> merge);
+                }
+                
+                files = merged;
+                merged = new ArrayList<>();
+            }
+        }
+        catch(RuntimeException e)
+        {
+            for(File run : files) TemporaryFiles.delete(run);
+            for(File run : merged) TemporaryFiles.delete(run);
+            
+            throw e;
+        }
+        
+        return files;
+    }
+    
+    /**
+     * Stops any merge in progress and deletes its spilled runs. Used when no
+     * more records are needed before the sorted output is exhausted.
+     */
+    @Override
+    public void close()
+    {
+        List<MergeIterator> open;
+        
+        synchronized(merges)
+        {
+            open = new ArrayList<>(merges);
+        }
+        
+        for(MergeIterator merge : open) merge.close();
+    }
+    
+    private static <T> T await(Future<T> future)
+    {
+        try
+        {
+            return future.get();
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            
+            throw new ConvirganceException(e);
+        }
+        catch(ExecutionException e)
+        {
+            if(e.getCause() instanceof RuntimeException) throw (RuntimeException)e.getCause();
+            
+            throw new ConvirganceException(e.getCause());
+        }
+    }
+
+    @Override
+    public Iterable<JSONObject> transform(Iterable<JSONObject> iterable) throws ConvirganceException
+    {
+        return () -> {
+            ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "virge-sort");
+
+                thread.setDaemon(true);
+
+                return thread;
+            });
+            List<File> files = new ArrayList<>();
+            List<Entry> run = new ArrayList<>();
+            Future<File> pending = null;
+            ColumnType[] types = null;
+            long budget = Math.max(1, memory / 2);
+            long size = 0;
+            long sequence = 0;
+            
+            try
+            {
+                for(JSONObject record : iterable)
+                {
+                    run.add(entry(record, sequence++, types));
+                    
+                    size += estimate(record);
+                    
+                    if(size < budget) continue;
+                    if(types == null) types = sample(run);
+                    
+                    // Only one run is spilled at a time to stay within the budget
+                    if(pending != null) files.add(await(pending));
+                    
+                    final List<Entry> full = run;
+                    
+                    pending = executor.submit(() -> spill(full));
+                    run = new ArrayList<>();
+                    size = 0;
+                }
+                
+                if(pending != null) files.add(await(pending));
+            }
+            catch(RuntimeException e)
+            {
+                for(File file : files) TemporaryFiles.delete(file);
+                
+                throw e;
+            }
+            finally
+            {
+                executor.shutdownNow();
+            }
+            
+            if(types == null) types = sample(run);
+            
+            if(files.isEmpty()) return Arrays.stream(sort(run)).map(entry -> entry.record).iterator();
+            
+            if(!run.isEmpty()) files.add(spill(run));
+            
+            return new MergeIterator(reduce(files, types), types);
+        };
+    }
+    
+    private static class Entry
+    {
+        private final Object[] keys;
+        private final JSONObject record;
+        private final long sequence;
+
+        public Entry(Object[] keys, JSONObject record, long sequence)
+        {
+            this.keys = keys;
+            this.record = record;
+            this.sequence = sequence;
+        }
+    }
+    
+    private class MergeIterator implements Iterator<JSONObject>
+    {
+        private final List<File> files;
+        private final ColumnType[] types;
+        private final PriorityQueue<Entry> heap;
+        private final List<CloseableSource> sources = new ArrayList<>();
+        private final List<Iterator<JSONObject>> runs = new ArrayList<>();
+
+        public MergeIterator(List<File> files, ColumnType[] types)
+        {
+            this.files = files;
+            this.types = types;
+            this.heap = new PriorityQueue<>(Math.max(1, files.size()), ExternalSortTransformer.this::compare);
+            
+            synchronized(merges)
+            {
+                merges.add(this);
+            }
+            
+            for(File file : files) sources.add(new CloseableSource(new FileSource(file)));
+            for(CloseableSource source : sources) runs.add(new JBINInput().read(source).iterator());
+            
+            // The run number keeps equal keys in their original order
+            for(int i=0; i<runs.size(); i++) advance(i);
+        }
+        
+        public void close()
+        {
+            synchronized(merges)
+            {
+                merges.remove(this);
+            }
+            
+            heap.clear();
+            
+            for(CloseableSource source : sources) source.close();
+            for(File file : files) TemporaryFiles.delete(file);
+            
+            files.clear();
+        }
+        
+        private void advance(int index)
+        {
+            Iterator<JSONObject> iterator = runs.get(index);
+            
+            if(iterator.hasNext()) heap.add(entry(iterator.next(), index, types));
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            if(!heap.isEmpty()) return true;
+            
+            close();
+            
+            return false;
+        }
+
+        @Override
+        public JSONObject next()
+        {
+            Entry entry;
+            
+            if(!hasNext()) throw new NoSuchElementException();
+            
+            entry = heap.poll();
+            
+            advance((int)entry.sequence);
+            
+            return entry.record;
+        }
+    }
+}
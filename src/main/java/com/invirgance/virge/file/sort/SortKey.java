@@ -0,0 +1,265 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.sort;
+
+import com.invirgance.convirgance.ConvirganceException;
+import com.invirgance.convirgance.json.JSONObject;
+import com.invirgance.virge.file.transform.ColumnType;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A column to sort by, its direction and optionally the type its values are
+ * compared as. Values are converted to a typed key once per record so that
+ * comparisons never parse strings.
+ * <br><br>
+ * Ordering a column needs a single type for all of its values. Otherwise
+ * zip codes such as 10001 would sort as numbers ahead of 00501, which is 
+ * kept as a string to preserve its leading zero. The type is either given
+ * explicitly or widened over a sample of the column with typeOf(). Keys 
+ * converted without a type are only suitable for grouping and joining, 
+ * where equal values produce equal keys.
+ * 
+ * @author agent
+ */
+public class SortKey
+{
+    private final String column;
+    private final boolean descending;
+    private final ColumnType type;
+
+    public SortKey(String column, boolean descending)
+    {
+        this(column, descending, null);
+    }
+
+    /**
+     * @param column the column to sort by
+     * @param descending true to sort in descending order
+     * @param type the type to compare values as, or null to sample the column
+     */
+    public SortKey(String column, boolean descending, ColumnType type)
+    {
+        this.column = column;
+        this.descending = descending;
+        this.type = type;
+    }
+
+    public String getColumn()
+    {
+        return column;
+    }
+
+    public boolean isDescending()
+    {
+        return descending;
+    }
+
+    /**
+     * @return the type values are compared as, or null when it is sampled
+     */
+    public ColumnType getType()
+    {
+        return type;
+    }
+    
+    /**
+     * Returns the value of the column as a typed key
+     * 
+     * @param record the record to read the column from
+     * @param type the type of the column
+     * @return a Long, Double, Boolean, String or null
+     */
+    public Object getKey(JSONObject record, ColumnType type)
+    {
+        return toKey(record.get(column), type);
+    }
+    
+    /**
+     * Returns the type of a single value, to be widened with the types of the
+     * other values in its column.
+     * 
+     * @param value any record value
+     * @return the narrowest type of the value
+     */
+    public static ColumnType typeOf(Object value)
+    {
+        if(value == null) return ColumnType.NULL;
+        if(value instanceof Boolean) return ColumnType.BOOLEAN;
+        if(value instanceof Integer || value instanceof Short || value instanceof Byte) return ColumnType.INTEGER;
+        if(value instanceof Long) return ColumnType.LONG;
+        if(value instanceof Number) return ColumnType.DOUBLE;
+        
+        return ColumnType.of(value.toString());
+    }
+    
+    /**
+     * Converts a value into a typed key for a column of the given type. In a
+     * string column every value is compared as a string. In a numeric column
+     * any number is accepted, including those with leading zeros, and blanks
+     * become null. Values that do not fit the type are kept as strings and
+     * sort after the values that do.
+     * 
+     * @param value any record value
+     * @param type the type of the column or null to type the value on its own
+     * @return a Long, Double, Boolean, String or null
+     */
+    public static Object toKey(Object value, ColumnType type)
+    {
+        Object key;
+        
+        if(value == null || type == null || type == ColumnType.NULL) return toKey(value);
+        if(type == ColumnType.STRING) return value.toString();
+        
+        if(type == ColumnType.BOOLEAN || value instanceof Number)
+        {
+            key = toKey(value);
+            
+            return "".equals(key) ? null : key;
+        }
+        
+        return toNumber(value.toString());
+    }
+    
+    private static Object toNumber(String value)
+    {
+        if(value.isEmpty()) return null;
+        
+        try
+        {
+            return Long.parseLong(value);
+        }
+        catch(NumberFormatException e)
+        {
+            // Not an integer
+        }
+        
+        try
+        {
+            return Double.parseDouble(value);
+        }
+        catch(NumberFormatException e)
+        {
+            return value;
+        }
+    }
+    
+    /**
+     * Converts a value into a typed key on its own. Strings holding numbers
+     * or booleans are converted so that "42" and 42 are the same key.
+     * 
+     * @param value any record value
+     * @return a Long, Double, Boolean, String or null
+     */
+    public static Object toKey(Object value)
+    {
+        String string;
+        
+        if(value == null) return null;
+        if(value instanceof Boolean) return value;
+        
+        if(value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte)
+        {
+            return ((Number)value).longValue();
+        }
+        
+        if(value instanceof Number) return ((Number)value).doubleValue();
+        
+        string = value.toString();
+        value = ColumnType.parse(string);
+        
+        if(value instanceof Integer) return ((Integer)value).longValue();
+        
+        return value;
+    }
+    
+    /**
+     * Compares two typed keys. Nulls sort first, followed by booleans, 
+     * numbers and strings.
+     * 
+     * @param a a typed key
+     * @param b a typed key
+     * @return the comparison of the keys
+     */
+    public static int compare(Object a, Object b)
+    {
+        int rank = Integer.compare(rank(a), rank(b));
+        
+        if(rank != 0 || a == null) return rank;
+        
+        if(a instanceof Long && b instanceof Long) return Long.compare((Long)a, (Long)b);
+        if(a instanceof Number) return Double.compare(((Number)a).doubleValue(), ((Number)b).doubleValue());
+        if(a instanceof Boolean) return Boolean.compare((Boolean)a, (Boolean)b);
+        
+        return ((String)a).compareTo((String)b);
+    }
+    
+    private static int rank(Object key)
+    {
+        if(key == null) return 0;
+        if(key instanceof Boolean) return 1;
+        if(key instanceof Number) return 2;
+        
+        return 3;
+    }
+    
+    /**
+     * Parses a list of sort keys such as "name,zip:str,age:num:desc"
+     * 
+     * @param spec comma separated columns, each with an optional :num or :str type and an optional :asc or :desc direction
+     * @return the sort keys
+     */
+    public static List<SortKey> parse(String spec)
+    {
+        List<SortKey> keys = new ArrayList<>();
+        String direction;
+        String modifier;
+        ColumnType type;
+        int index;
+        
+        for(String column : spec.split(","))
+        {
+            column = column.trim();
+            direction = null;
+            type = null;
+            
+            while((index = column.lastIndexOf(':')) >= 0)
+            {
+                modifier = column.substring(index + 1).toLowerCase();
+                
+                if(direction == null && (modifier.equals("asc") || modifier.equals("desc"))) direction = modifier;
+                else if(type == null && modifier.equals("num")) type = ColumnType.DOUBLE;
+                else if(type == null && modifier.equals("str")) type = ColumnType.STRING;
+                else if(direction == null && type == null) throw new ConvirganceException("Unknown sort modifier: " + modifier);
+                else break;
+                
+                column = column.substring(0, index);
+            }
+            
+            if(column.isEmpty()) throw new ConvirganceException("Missing column in sort: " + spec);
+            
+            keys.add(new SortKey(column, "desc".equals(direction), type));
+        }
+        
+        return keys;
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.source;
+
+import com.invirgance.convirgance.ConvirganceException;
+import com.invirgance.convirgance.source.Source;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a local file through a FileChannel using a direct buffer of a chosen
+ * size. The counterpart of ChannelFileTarget, used when the buffer size is
+ * set explicitly. Large files are memory mapped by MappedFileSource instead.
+ * 
+ * @author agent
+ */
+public class ChannelFileSource implements Source
+{
+    public static final int DEFAULT_BUFFER_SIZE = 4 * 1024 * 1024;
+    
+    private final File file;
+    private int bufferSize = DEFAULT_BUFFER_SIZE;
+    
+    public ChannelFileSource(File file)
+    {
+        this.file = file;
+    }
+    
+    public ChannelFileSource(File file, int bufferSize)
+    {
+        this.file = file;
+        
+        setBufferSize(bufferSize);
+    }
+    
+    public File getFile()
+    {
+        return file;
+    }
+    
+    public int getBufferSize()
+    {
+        return bufferSize;
+    }
+    
+    public void setBufferSize(int bufferSize)
+    {
+        if(bufferSize <= 0) throw new ConvirganceException("Buffer size must be positive: " + bufferSize);
+        
+        this.bufferSize = bufferSize;
+    }
+    
+    @Override
+    public InputStream getInputStream()
+    {
+        FileChannel channel;
+        ByteBuffer buffer;
+        
+        try
+        {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            buffer = ByteBuffer.allocateDirect(bufferSize);
+            
+            // Start empty so the first read fills the buffer
+            buffer.flip();
+            
+            return new ChannelInputStream(channel, buffer);
+        }
+        catch(IOException e)
+        {
+            throw new ConvirganceException(e);
+        }
+    }
+    
+    private static class ChannelInputStream extends InputStream
+    {
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        
+        public ChannelInputStream(FileChannel channel, ByteBuffer buffer)
+        {
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+        
+        private boolean fill() throws IOException
+        {
+            int count = 0;
+            
+            if(buffer.hasRemaining()) return true;
+            
+            buffer.clear();
+            
+            while(count == 0) count = channel.read(buffer);
+            
+            buffer.flip();
+            
+            return (count > 0);
+        }
+        
+        @Override
+        public int read() throws IOException
+        {
+            if(!fill()) return -1;
+            
+            return buffer.get() & 0xFF;
+        }
+        
+        @Override
+        public int read(byte[] data, int offset, int length) throws IOException
+        {
+            if(length == 0) return 0;
+            
+            // Large reads bypass the buffer entirely
+            if(!buffer.hasRemaining() && length >= buffer.capacity()) return channel.read(ByteBuffer.wrap(data, offset, length));
+            if(!fill()) return -1;
+            
+            length = Math.min(length, buffer.remaining());
+            
+            buffer.get(data, offset, length);
+            
+            return length;
+        }
+        
+        @Override
+        public long skip(long count) throws IOException
+        {
+            long skipped;
+            
+            if(count <= 0) return 0;
+            
+            skipped = Math.min(count, buffer.remaining());
+            
+            buffer.position(buffer.position() + (int)skipped);
+            
+            if(skipped < count)
+            {
+                count = Math.max(0, Math.min(count - skipped, channel.size() - channel.position()));
+                
+                channel.position(channel.position() + count);
+                
+                skipped += count;
+            }
+            
+            return skipped;
+        }
+        
+        @Override
+        public int available() throws IOException
+        {
+            return (int)Math.min(Integer.MAX_VALUE, buffer.remaining() + channel.size() - channel.position());
+        }
+        
+        @Override
+        public void close() throws IOException
+        {
+            channel.close();
+        }
+    }
+}
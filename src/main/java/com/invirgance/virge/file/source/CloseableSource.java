@@ -0,0 +1,117 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.source;
+
+import com.invirgance.convirgance.ConvirganceException;
+import com.invirgance.convirgance.source.Source;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps track of the streams opened from another source so that they can be
+ * closed by someone other than the reader. Used to stop reading (and for URL
+ * sources, downloading) as soon as no more records are needed.
+ * 
+ * @author agent
+ */
+public class CloseableSource implements Source
+{
+    private final Source source;
+    private final List<InputStream> streams = new ArrayList<>();
+    
+    private boolean closed;
+
+    public CloseableSource(Source source)
+    {
+        this.source = source;
+    }
+
+    public Source getSource()
+    {
+        return source;
+    }
+
+    public synchronized boolean isClosed()
+    {
+        return closed;
+    }
+
+    @Override
+    public synchronized InputStream getInputStream()
+    {
+        InputStream stream;
+        
+        if(closed) throw new ConvirganceException("Source has been closed");
+        
+        stream = new FilterInputStream(source.getInputStream()) {
+            
+            @Override
+            public void close() throws IOException
+            {
+                synchronized(CloseableSource.this)
+                {
+                    streams.remove(this);
+                }
+                
+                super.close();
+            }
+        };
+        
+        streams.add(stream);
+        
+        return stream;
+    }
+    
+    /**
+     * Closes every stream that is still open. Calls after the first have no
+     * effect.
+     */
+    public void close()
+    {
+        List<InputStream> open;
+        
+        synchronized(this)
+        {
+            if(closed) return;
+            
+            closed = true;
+            open = new ArrayList<>(streams);
+            
+            streams.clear();
+        }
+        
+        for(InputStream stream : open)
+        {
+            try
+            {
+                stream.close();
+            }
+            catch(IOException e)
+            {
+                throw new ConvirganceException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.source;
+
+import com.invirgance.convirgance.source.Source;
+import com.invirgance.virge.file.Compression;
+import java.io.InputStream;
+
+/**
+ * Decompresses another source as it is read. Decompression runs on its own
+ * thread ahead of the reader so that inflating overlaps with parsing.
+ * 
+ * @author agent
+ */
+public class CompressedSource implements Source
+{
+    private final Source source;
+    private final Compression compression;
+
+    public CompressedSource(Source source, Compression compression)
+    {
+        this.source = source;
+        this.compression = compression;
+    }
+
+    public Source getSource()
+    {
+        return source;
+    }
+
+    public Compression getCompression()
+    {
+        return compression;
+    }
+
+    @Override
+    public InputStream getInputStream()
+    {
+        return new ReadAheadInputStream(compression.decompress(source.getInputStream()));
+    }
+}
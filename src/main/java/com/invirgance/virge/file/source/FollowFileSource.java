@@ -0,0 +1,334 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.source;
+
+import com.invirgance.convirgance.ConvirganceException;
+import com.invirgance.convirgance.source.Source;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+
+/**
+ * Reads a file that is continuously appended to, like <code>tail -f</code>.
+ * The stream never ends on its own. Only complete lines are released to the
+ * reader so a parser never sees a partially written record. When no new
+ * data is available the file is polled with an interval that backs off up
+ * to the maximum latency. Truncation restarts reading from the beginning of
+ * the file and rotation (a new file at the same path) drains the old file 
+ * before switching to the new one. The last line of the old file is then
+ * released even if it was never terminated.
+ * 
+ * @author agent
+ */
+public class FollowFileSource implements Source
+{
+    public static final int DEFAULT_MAX_LATENCY = 250;
+    
+    private static final int MIN_POLL_INTERVAL = 5;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    
+    private final File file;
+    
+    private int maxLatency = DEFAULT_MAX_LATENCY;
+    private boolean skipHeader;
+    private Runnable idleListener;
+
+    public FollowFileSource(File file)
+    {
+        this.file = file;
+    }
+
+    public File getFile()
+    {
+        return file;
+    }
+
+    public int getMaxLatency()
+    {
+        return maxLatency;
+    }
+
+    /**
+     * @param maxLatency the longest time in milliseconds between polls of the file
+     */
+    public void setMaxLatency(int maxLatency)
+    {
+        this.maxLatency = Math.max(MIN_POLL_INTERVAL, maxLatency);
+    }
+
+    public boolean isSkipHeader()
+    {
+        return skipHeader;
+    }
+
+    /**
+     * When enabled, the first line of a truncated or rotated file is skipped
+     * so that formats with a header row do not see the header as a record.
+     * 
+     * @param skipHeader true to skip the header of restarted files
+     */
+    public void setSkipHeader(boolean skipHeader)
+    {
+        this.skipHeader = skipHeader;
+    }
+
+    public Runnable getIdleListener()
+    {
+        return idleListener;
+    }
+
+    /**
+     * Sets a callback that is invoked on the reading thread each time all 
+     * available data has been consumed. This is the place to flush output so
+     * that records are delivered with bounded latency.
+     * 
+     * @param idleListener callback to invoke when waiting for new data
+     */
+    public void setIdleListener(Runnable idleListener)
+    {
+        this.idleListener = idleListener;
+    }
+
+    @Override
+    public InputStream getInputStream()
+    {
+        try
+        {
+            return new FollowInputStream();
+        }
+        catch(IOException e)
+        {
+            throw new ConvirganceException(e);
+        }
+    }
+    
+    private class FollowInputStream extends InputStream
+    {
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        
+        private FileChannel channel;
+        private Object key;
+        private long position;
+        private int released;
+        private boolean skipping;
+        private volatile boolean closed;
+
+        public FollowInputStream() throws IOException
+        {
+            open(false);
+        }
+        
+        private void open(boolean restarted) throws IOException
+        {
+            if(channel != null) channel.close();
+            
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            key = Files.readAttributes(file.toPath(), BasicFileAttributes.class).fileKey();
+            position = 0;
+            skipping = restarted && skipHeader;
+            
+            buffer.clear();
+            buffer.flip();
+            
+            released = 0;
+        }
+        
+        /**
+         * Makes bytes up to the last complete line available to the reader
+         */
+        private void release(boolean all)
+        {
+            int limit = buffer.limit();
+            
+            released = buffer.position();
+            
+            for(int i=limit-1; i>=buffer.position() && !all; i--)
+            {
+                if(buffer.get(i) == '\n') 
+                {
+                    released = i + 1;
+                    break;
+                }
+            }
+            
+            if(all) released = limit;
+            
+            // Drop the header line of a restarted file
+            while(skipping && buffer.position() < released)
+            {
+                if(buffer.get() == '\n') skipping = false;
+            }
+        }
+        
+        private int fill() throws IOException
+        {
+            int count;
+            
+            buffer.compact();
+            
+            count = channel.read(buffer, position);
+            
+            if(count > 0) position += count;
+            
+            buffer.flip();
+            
+            // Anything left over from the previous fill is an incomplete line
+            released = 0;
+            
+            return count;
+        }
+        
+        /**
+         * Ends the unreleased bytes with a newline, if there is room, so the
+         * last line of a rotated file isn't joined to the first of the next
+         */
+        private void terminate()
+        {
+            if(buffer.get(buffer.limit() - 1) == '\n' || buffer.limit() >= buffer.capacity()) return;
+            
+            buffer.limit(buffer.limit() + 1);
+            buffer.put(buffer.limit() - 1, (byte)'\n');
+        }
+        
+        private boolean isRotated() throws IOException
+        {
+            BasicFileAttributes attributes;
+            
+            try
+            {
+                attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+            }
+            catch(NoSuchFileException e)
+            {
+                return false; // Wait for the new file to appear
+            }
+            
+            if(attributes.size() < position) return true;
+            
+            return (key != null && !Objects.equals(key, attributes.fileKey()));
+        }
+        
+        private void await() throws IOException
+        {
+            int interval = MIN_POLL_INTERVAL;
+            
+            if(idleListener != null) idleListener.run();
+            
+            while(!closed)
+            {
+                if(channel.size() > position) return;
+                
+                if(isRotated())
+                {
+                    // Drain complete lines written to the old file before it was rotated away
+                    while(fill() > 0)
+                    {
+                        release(false);
+                        
+                        if(buffer.position() < released) return;
+                    }
+                    
+                    // The old file won't grow any more, so its last line is complete
+                    if(buffer.hasRemaining())
+                    {
+                        terminate();
+                        release(true);
+                        
+                        if(buffer.position() < released) return;
+                    }
+                    
+                    open(true);
+                    return;
+                }
+                
+                try
+                {
+                    Thread.sleep(interval);
+                }
+                catch(InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    
+                    throw new IOException(e);
+                }
+                
+                interval = Math.min(interval * 2, maxLatency);
+            }
+        }
+        
+        private boolean advance() throws IOException
+        {
+            while(buffer.position() >= released)
+            {
+                if(closed) return false;
+                
+                if(buffer.remaining() >= buffer.capacity()) 
+                {
+                    // A single line larger than the buffer is released as is
+                    release(true);
+                    continue;
+                }
+                
+                if(fill() > 0) release(false);
+                else await();
+            }
+            
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            if(!advance()) return -1;
+            
+            return buffer.get() & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] data, int offset, int length) throws IOException
+        {
+            if(length == 0) return 0;
+            if(!advance()) return -1;
+            
+            length = Math.min(length, released - buffer.position());
+            
+            buffer.get(data, offset, length);
+            
+            return length;
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            closed = true;
+            
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.source;
+
+import com.invirgance.convirgance.ConvirganceException;
+import com.invirgance.convirgance.source.Source;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a local file through memory mapped regions of the file rather than 
+ * read() calls. Pages are copied straight from the page cache into the 
+ * caller's buffer, avoiding a system call per buffer. Files larger than the
+ * region size are mapped one region at a time.
+ * 
+ * @author agent
+ */
+public class MappedFileSource implements Source
+{
+    public static final int DEFAULT_REGION_SIZE = 64 * 1024 * 1024;
+    
+    private final File file;
+    private int regionSize = DEFAULT_REGION_SIZE;
+
+    public MappedFileSource(File file)
+    {
+        this.file = file;
+    }
+
+    public MappedFileSource(File file, int regionSize)
+    {
+        this.file = file;
+        
+        setRegionSize(regionSize);
+    }
+
+    public File getFile()
+    {
+        return file;
+    }
+
+    public int getRegionSize()
+    {
+        return regionSize;
+    }
+
+    /**
+     * Sets the number of bytes mapped at a time.
+     * 
+     * @param regionSize size of each mapped region in bytes
+     */
+    public void setRegionSize(int regionSize)
+    {
+        if(regionSize <= 0) throw new ConvirganceException("Region size must be positive: " + regionSize);
+        
+        this.regionSize = regionSize;
+    }
+
+    @Override
+    public InputStream getInputStream()
+    {
+        try
+        {
+            return new MappedInputStream(FileChannel.open(file.toPath(), StandardOpenOption.READ));
+        }
+        catch(IOException e)
+        {
+            throw new ConvirganceException(e);
+        }
+    }
+    
+    private class MappedInputStream extends InputStream
+    {
+        private final FileChannel channel;
+        private final long size;
+        
+        private long position;
+        private MappedByteBuffer buffer;
+
+        public MappedInputStream(FileChannel channel) throws IOException
+        {
+            this.channel = channel;
+            this.size = channel.size();
+        }
+        
+        private boolean map() throws IOException
+        {
+            long length;
+            
+            if(buffer != null && buffer.hasRemaining()) return true;
+            if(position >= size) return false;
+            
+            length = Math.min(regionSize, size - position);
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            position += length;
+            
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            if(!map()) return -1;
+            
+            return buffer.get() & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] data, int offset, int length) throws IOException
+        {
+            if(length == 0) return 0;
+            if(!map()) return -1;
+            
+            length = Math.min(length, buffer.remaining());
+            
+            buffer.get(data, offset, length);
+            
+            return length;
+        }
+
+        @Override
+        public long skip(long count) throws IOException
+        {
+            long skipped = 0;
+            int length;
+            
+            if(buffer != null && buffer.hasRemaining())
+            {
+                length = (int)Math.min(count, buffer.remaining());
+                
+                buffer.position(buffer.position() + length);
+                skipped += length;
+            }
+            
+            if(skipped < count && position < size)
+            {
+                length = (int)Math.min(count - skipped, size - position);
+                
+                buffer = null;
+                position += length;
+                skipped += length;
+            }
+            
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException
+        {
+            int remaining = (buffer != null) ? buffer.remaining() : 0;
+            
+            return (int)Math.min(Integer.MAX_VALUE, remaining + (size - position));
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            buffer = null;
+            
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.source;
+
+import com.invirgance.convirgance.ConvirganceException;
+import com.invirgance.convirgance.source.Source;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Allows the start of another source to be examined without consuming it.
+ * The peeked bytes stay buffered in front of the stream, so sources that can
+ * only be read once (such as stdin) are not read twice.
+ * 
+ * @author agent
+ */
+public class PeekableSource implements Source
+{
+    private final Source source;
+    private final int size;
+    
+    private BufferedInputStream stream;
+    private byte[] peeked;
+
+    /**
+     * Wraps a source
+     * 
+     * @param source the source to peek at
+     * @param size the maximum number of bytes that can be peeked
+     */
+    public PeekableSource(Source source, int size)
+    {
+        this.source = source;
+        this.size = size;
+    }
+
+    public Source getSource()
+    {
+        return source;
+    }
+    
+    /**
+     * Returns the first bytes of the source. Fewer bytes than the peek size
+     * are returned if the source is shorter.
+     * 
+     * @return the bytes at the start of the source
+     */
+    public byte[] peek()
+    {
+        int length = 0;
+        int count;
+        
+        if(peeked != null) return peeked;
+        
+        peeked = new byte[size];
+        stream = new BufferedInputStream(source.getInputStream(), size);
+        
+        try
+        {
+            stream.mark(size);
+            
+            while(length < size && (count = stream.read(peeked, length, size - length)) > 0)
+            {
+                length += count;
+            }
+            
+            stream.reset();
+        }
+        catch(IOException e)
+        {
+            throw new ConvirganceException(e);
+        }
+        
+        peeked = Arrays.copyOf(peeked, length);
+        
+        return peeked;
+    }
+    
+    /**
+     * Closes the stream opened by peek() if it was never handed out by 
+     * getInputStream().
+     */
+    public void close()
+    {
+        if(stream == null) return;
+        
+        try
+        {
+            stream.close();
+            stream = null;
+        }
+        catch(IOException e)
+        {
+            throw new ConvirganceException(e);
+        }
+    }
+
+    @Override
+    public InputStream getInputStream()
+    {
+        InputStream in = stream;
+        
+        // The peeked stream is handed out once. Later calls read the source again.
+        if(in == null) return source.getInputStream();
+        
+        stream = null;
+        
+        return in;
+    }
+}
@@ -0,0 +1,545 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.source;
+
+import com.invirgance.convirgance.ConvirganceException;
+import com.invirgance.convirgance.source.Source;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Downloads a URL over several concurrent HTTP range requests. The first 
+ * request asks for the first range. If the server answers with a partial 
+ * response the remaining ranges are fetched in parallel into a bounded
+ * window and returned in order, allowing parsing to start as soon as the 
+ * first range arrives. Servers that ignore the range receive a single 
+ * streamed download as before, as do non-HTTP URLs.
+ * <br><br>
+ * Later ranges are pinned to the entity of the first response with If-Range
+ * and their ETag and length are checked, so a resource that changes during 
+ * the download fails rather than returning a mix of two versions. Servers 
+ * may answer with less than the range asked for, in which case the rest of 
+ * the range is requested again.
+ * 
+ * @author agent
+ */
+public class RangeURLSource implements Source
+{
+    public static final int DEFAULT_RANGE_SIZE = 4 * 1024 * 1024;
+    public static final int DEFAULT_CONNECTIONS = 4;
+    
+    private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+    
+    private final URL url;
+    
+    private int rangeSize = DEFAULT_RANGE_SIZE;
+    private int connections = DEFAULT_CONNECTIONS;
+
+    public RangeURLSource(URL url)
+    {
+        this.url = url;
+    }
+
+    public URL getURL()
+    {
+        return url;
+    }
+
+    public int getRangeSize()
+    {
+        return rangeSize;
+    }
+
+    public void setRangeSize(int rangeSize)
+    {
+        this.rangeSize = rangeSize;
+    }
+
+    public int getConnections()
+    {
+        return connections;
+    }
+
+    /**
+     * @param connections the number of ranges downloaded at the same time
+     */
+    public void setConnections(int connections)
+    {
+        this.connections = Math.max(1, connections);
+    }
+    
+    private HttpURLConnection request(long start, long end, String validator) throws IOException
+    {
+        HttpURLConnection connection = (HttpURLConnection)url.openConnection();
+        
+        connection.setRequestProperty("Range", "bytes=" + start + "-" + (end >= 0 ? end : ""));
+        
+        if(validator != null) connection.setRequestProperty("If-Range", validator);
+        
+        return connection;
+    }
+    
+    /**
+     * Returns the value for If-Range that identifies the entity of a 
+     * response. Weak ETags can't be used with If-Range, so the Last-Modified
+     * date is used instead.
+     */
+    private static String getValidator(HttpURLConnection connection)
+    {
+        String etag = connection.getHeaderField("ETag");
+        
+        if(etag != null && !etag.startsWith("W/")) return etag;
+        
+        return connection.getHeaderField("Last-Modified");
+    }
+    
+    private static byte[] readFully(InputStream in, int length) throws IOException
+    {
+        try(in)
+        {
+            byte[] data = in.readNBytes(length);
+            
+            if(data.length != length) throw new IOException("Expected " + length + " bytes but received " + data.length);
+            
+            return data;
+        }
+    }
+    
+    /**
+     * Parses the total length from a header such as "bytes 0-1023/4096"
+     */
+    private static long getTotal(String range)
+    {
+        int index = (range == null) ? -1 : range.lastIndexOf('/');
+        
+        if(index < 0 || range.substring(index + 1).trim().equals("*")) return -1;
+        
+        try
+        {
+            return Long.parseLong(range.substring(index + 1).trim());
+        }
+        catch(NumberFormatException e)
+        {
+            return -1;
+        }
+    }
+    
+    /**
+     * Parses the first and last byte from a header such as "bytes 0-1023/4096"
+     * 
+     * @return the first and last byte, or null if the header isn't a range
+     */
+    private static long[] getRange(String range)
+    {
+        int start = (range == null) ? -1 : range.indexOf(' ');
+        int dash = (range == null) ? -1 : range.indexOf('-', start + 1);
+        int slash = (range == null) ? -1 : range.indexOf('/', dash + 1);
+        long first;
+        long last;
+        
+        if(start < 0 || dash < 0 || slash < 0) return null;
+        
+        try
+        {
+            first = Long.parseLong(range.substring(start + 1, dash).trim());
+            last = Long.parseLong(range.substring(dash + 1, slash).trim());
+        }
+        catch(NumberFormatException e)
+        {
+            return null;
+        }
+        
+        return (last < first) ? null : new long[]{ first, last };
+    }
+    
+    /**
+     * Checks that a partial response starts where requested and does not run
+     * past the requested end. Servers may return less than was asked for.
+     * 
+     * @return the last byte of the response
+     */
+    private long getEnd(HttpURLConnection connection, long start, long end) throws IOException
+    {
+        String header = connection.getHeaderField("Content-Range");
+        long[] range = getRange(header);
+        
+        if(range == null || range[0] != start || range[1] > end)
+        {
+            connection.getInputStream().close();
+            
+            throw new IOException("Server returned range " + header + " for " + start + "-" + end + " of " + url);
+        }
+        
+        return range[1];
+    }
+
+    /**
+     * Reads the first range of a resource whose length the server did not 
+     * report, then streams the remainder with an open ended range. A short 
+     * first range may be the whole resource or a limit of the server, so the
+     * remainder is then requested until the server has nothing left.
+     */
+    private InputStream getUnknownLength(HttpURLConnection first) throws IOException
+    {
+        String validator = getValidator(first);
+        long end = getEnd(first, 0, rangeSize - 1);
+        byte[] data = readFully(first.getInputStream(), (int)(end + 1));
+        HttpURLConnection rest;
+        
+        rest = request(end + 1, -1, validator);
+        
+        switch(rest.getResponseCode())
+        {
+            case HttpURLConnection.HTTP_PARTIAL:
+                return new SequenceInputStream(new ByteArrayInputStream(data), new OpenRangeInputStream(rest, end + 1, validator, end < rangeSize - 1));
+                
+            case HTTP_RANGE_NOT_SATISFIABLE:
+                return new ByteArrayInputStream(data);
+                
+            case HttpURLConnection.HTTP_OK:
+                // The resource changed or the server ignored the range. Nothing has been read yet, so start over.
+                return rest.getInputStream();
+                
+            default:
+                throw new IOException("Unable to download " + url + ": HTTP " + rest.getResponseCode());
+        }
+    }
+
+    @Override
+    public InputStream getInputStream()
+    {
+        HttpURLConnection connection;
+        long total;
+        long end;
+        
+        try
+        {
+            if(!url.getProtocol().equals("http") && !url.getProtocol().equals("https")) return url.openStream();
+            
+            connection = request(0, rangeSize - 1, null);
+            
+            // Only an empty resource can't satisfy a range starting at zero
+            if(connection.getResponseCode() == HTTP_RANGE_NOT_SATISFIABLE) return InputStream.nullInputStream();
+            if(connection.getResponseCode() != HttpURLConnection.HTTP_PARTIAL) return connection.getInputStream();
+            
+            total = getTotal(connection.getHeaderField("Content-Range"));
+            
+            if(total == 0)
+            {
+                connection.getInputStream().close();
+                
+                return InputStream.nullInputStream();
+            }
+            
+            if(total < 0) return getUnknownLength(connection);
+            
+            end = getEnd(connection, 0, rangeSize - 1);
+            
+            if(end >= total - 1) return connection.getInputStream();
+            
+            return new RangeInputStream(connection, end, total);
+        }
+        catch(IOException e)
+        {
+            throw new ConvirganceException(e);
+        }
+    }
+    
+    /**
+     * Streams a resource of unknown length from an open ended range. When 
+     * the server limits the size of its responses, the range is requested 
+     * again from where the last response ended.
+     */
+    private class OpenRangeInputStream extends InputStream
+    {
+        private final String validator;
+        private final boolean limited;
+        
+        private InputStream in;
+        private long position;
+        private long end;
+
+        public OpenRangeInputStream(HttpURLConnection connection, long start, String validator, boolean limited) throws IOException
+        {
+            this.validator = validator;
+            this.limited = limited;
+            this.position = start;
+            
+            open(connection);
+        }
+        
+        private void open(HttpURLConnection connection) throws IOException
+        {
+            end = getEnd(connection, position, Long.MAX_VALUE);
+            in = connection.getInputStream();
+        }
+        
+        private boolean advance() throws IOException
+        {
+            HttpURLConnection connection;
+            
+            if(in == null) return false;
+            if(position <= end) return true;
+            
+            in.close();
+            in = null;
+            
+            if(!limited) return false;
+            
+            connection = request(position, -1, validator);
+            
+            if(connection.getResponseCode() == HTTP_RANGE_NOT_SATISFIABLE) return false;
+            
+            if(connection.getResponseCode() == HttpURLConnection.HTTP_OK)
+            {
+                connection.getInputStream().close();
+                
+                throw new IOException(url + " changed during the download");
+            }
+            
+            if(connection.getResponseCode() != HttpURLConnection.HTTP_PARTIAL)
+            {
+                throw new IOException("Unable to download " + url + ": HTTP " + connection.getResponseCode());
+            }
+            
+            open(connection);
+            
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            int value;
+            
+            if(!advance()) return -1;
+            
+            value = in.read();
+            
+            if(value < 0) throw new IOException("Expected " + (end - position + 1) + " more bytes of " + url);
+            
+            position++;
+            
+            return value;
+        }
+
+        @Override
+        public int read(byte[] data, int offset, int length) throws IOException
+        {
+            int count;
+            
+            if(length == 0) return 0;
+            if(!advance()) return -1;
+            
+            count = in.read(data, offset, (int)Math.min(length, end - position + 1));
+            
+            if(count < 0) throw new IOException("Expected " + (end - position + 1) + " more bytes of " + url);
+            
+            position += count;
+            
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            if(in != null) in.close();
+            
+            in = null;
+        }
+    }
+    
+    private class RangeInputStream extends InputStream
+    {
+        private final long total;
+        private final String etag;
+        private final String validator;
+        private final ExecutorService executor;
+        private final ArrayDeque<Future<byte[]>> pending = new ArrayDeque<>();
+        
+        private long next;
+        private byte[] current = new byte[0];
+        private int position;
+
+        public RangeInputStream(HttpURLConnection first, long end, long total)
+        {
+            this.total = total;
+            this.etag = first.getHeaderField("ETag");
+            this.validator = getValidator(first);
+            this.executor = Executors.newFixedThreadPool(connections, runnable -> {
+                Thread thread = new Thread(runnable, "virge-download");
+                
+                thread.setDaemon(true);
+                
+                return thread;
+            });
+            
+            pending.add(executor.submit(() -> readFully(first.getInputStream(), (int)(end + 1))));
+            
+            next = end + 1;
+            
+            fill();
+        }
+        
+        /**
+         * Requests a range and reads as much of it as the server returns
+         */
+        private byte[] fetchPart(long start, long end) throws IOException
+        {
+            HttpURLConnection connection = request(start, end, validator);
+            
+            // If-Range returns the whole entity when it no longer matches
+            if(connection.getResponseCode() == HttpURLConnection.HTTP_OK)
+            {
+                connection.getInputStream().close();
+                
+                throw new IOException(url + " changed during the download");
+            }
+            
+            if(connection.getResponseCode() != HttpURLConnection.HTTP_PARTIAL)
+            {
+                throw new IOException("Server did not honor range " + start + "-" + end + " of " + url + ": HTTP " + connection.getResponseCode());
+            }
+            
+            // Servers that ignore If-Range are still caught by a different ETag or length
+            if(!Objects.equals(etag, connection.getHeaderField("ETag")) || getTotal(connection.getHeaderField("Content-Range")) != total)
+            {
+                connection.getInputStream().close();
+                
+                throw new IOException(url + " changed during the download");
+            }
+            
+            end = getEnd(connection, start, end);
+            
+            return readFully(connection.getInputStream(), (int)(end - start + 1));
+        }
+        
+        private byte[] fetch(long start, long end) throws IOException
+        {
+            byte[] data = new byte[(int)(end - start + 1)];
+            long position = start;
+            byte[] part;
+            
+            // Ask again for the remainder of a shortened range
+            while(position <= end)
+            {
+                part = fetchPart(position, end);
+                
+                System.arraycopy(part, 0, data, (int)(position - start), part.length);
+                
+                position += part.length;
+            }
+            
+            return data;
+        }
+        
+        private void submit(long start, long end)
+        {
+            pending.add(executor.submit(() -> fetch(start, end)));
+        }
+        
+        private void fill()
+        {
+            long end;
+            
+            // Bound the reassembly buffer to two ranges per connection
+            while(pending.size() < connections * 2 && next < total)
+            {
+                end = Math.min(next + rangeSize, total) - 1;
+                
+                submit(next, end);
+                
+                next = end + 1;
+            }
+        }
+        
+        private boolean advance() throws IOException
+        {
+            if(position < current.length) return true;
+            if(pending.isEmpty()) return false;
+            
+            try
+            {
+                current = pending.poll().get();
+                position = 0;
+            }
+            catch(InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                
+                throw new IOException(e);
+            }
+            catch(ExecutionException e)
+            {
+                if(e.getCause() instanceof IOException) throw (IOException)e.getCause();
+                
+                throw new IOException(e.getCause());
+            }
+            
+            fill();
+            
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            if(!advance()) return -1;
+            
+            return current[position++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] data, int offset, int length) throws IOException
+        {
+            if(length == 0) return 0;
+            if(!advance()) return -1;
+            
+            length = Math.min(length, current.length - position);
+            
+            System.arraycopy(current, position, data, offset, length);
+            
+            position += length;
+            
+            return length;
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            for(Future<byte[]> future : pending) future.cancel(true);
+            
+            pending.clear();
+            executor.shutdownNow();
+        }
+    }
+}
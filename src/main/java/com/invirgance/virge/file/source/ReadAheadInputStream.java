@@ -0,0 +1,197 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.source;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Reads an underlying stream on a background thread, keeping a bounded number
+ * of blocks ready for the consumer. Useful for overlapping expensive stream
+ * work such as decompression with parsing.
+ * 
+ * @author agent
+ */
+public class ReadAheadInputStream extends InputStream
+{
+    public static final int DEFAULT_BLOCK_SIZE = 256 * 1024;
+    public static final int DEFAULT_BLOCKS = 4;
+    
+    private static final Block END = new Block(new byte[0], -1, null);
+    
+    private final InputStream in;
+    private final BlockingQueue<Block> queue;
+    private final Thread thread;
+    
+    private Block current;
+    private int position;
+    private volatile boolean closed;
+
+    public ReadAheadInputStream(InputStream in)
+    {
+        this(in, DEFAULT_BLOCK_SIZE, DEFAULT_BLOCKS);
+    }
+
+    /**
+     * Starts reading ahead from the provided stream
+     * 
+     * @param in the stream to read on the background thread
+     * @param blockSize the size of each block read
+     * @param blocks the number of blocks to read ahead
+     */
+    public ReadAheadInputStream(InputStream in, int blockSize, int blocks)
+    {
+        this.in = in;
+        this.queue = new ArrayBlockingQueue<>(blocks);
+        this.thread = Thread.ofVirtual().name("virge-read-ahead").start(() -> fill(blockSize));
+    }
+    
+    private void fill(int blockSize)
+    {
+        byte[] data;
+        int length;
+        int count;
+        
+        try
+        {
+            while(true)
+            {
+                data = new byte[blockSize];
+                length = 0;
+                
+                while(length < blockSize && (count = in.read(data, length, blockSize - length)) >= 0)
+                {
+                    length += count;
+                }
+                
+                // The stream may have swallowed the interrupt from close(), so check before waiting on the queue
+                if(closed) return;
+                if(length > 0) queue.put(new Block(data, length, null));
+                if(length < blockSize) break;
+            }
+            
+            queue.put(END);
+        }
+        catch(InterruptedException e)
+        {
+            // Closed by the consumer
+        }
+        catch(Throwable e)
+        {
+            queue.clear();
+            queue.offer(new Block(null, -1, e));
+        }
+    }
+    
+    private void check() throws IOException
+    {
+        if(current.error instanceof IOException) throw (IOException)current.error;
+        if(current.error != null) throw new IOException(current.error);
+    }
+    
+    private boolean next() throws IOException
+    {
+        if(closed) throw new IOException("Stream closed");
+        if(current == END) return false;
+        if(current != null && current.error != null) check();
+        if(current != null && position < current.length) return true;
+        
+        try
+        {
+            current = queue.take();
+            position = 0;
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            
+            throw new IOException(e);
+        }
+        
+        // The error or end block stays current so later reads never wait on the queue again
+        check();
+        
+        return (current != END);
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        if(!next()) return -1;
+        
+        return current.data[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] data, int offset, int length) throws IOException
+    {
+        if(length == 0) return 0;
+        if(!next()) return -1;
+        
+        length = Math.min(length, current.length - position);
+        
+        System.arraycopy(current.data, position, data, offset, length);
+        
+        position += length;
+        
+        return length;
+    }
+
+    /**
+     * Stops the background thread and waits for it to finish its current read
+     * before closing the underlying stream.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        closed = true;
+        
+        thread.interrupt();
+        
+        try
+        {
+            thread.join();
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        
+        in.close();
+    }
+    
+    private static class Block
+    {
+        private final byte[] data;
+        private final int length;
+        private final Throwable error;
+
+        public Block(byte[] data, int length, Throwable error)
+        {
+            this.data = data;
+            this.length = length;
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.target;
+
+import com.invirgance.convirgance.ConvirganceException;
+import com.invirgance.convirgance.target.Target;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes a local file through a FileChannel using a large direct buffer. 
+ * Direct buffers are handed to the operating system without an intermediate
+ * copy, and the large buffer reduces the number of write calls.
+ * 
+ * @author agent
+ */
+public class ChannelFileTarget implements Target
+{
+    public static final int DEFAULT_BUFFER_SIZE = 4 * 1024 * 1024;
+    
+    private final File file;
+    private int bufferSize = DEFAULT_BUFFER_SIZE;
+
+    public ChannelFileTarget(File file)
+    {
+        this.file = file;
+    }
+
+    public ChannelFileTarget(File file, int bufferSize)
+    {
+        this.file = file;
+        
+        setBufferSize(bufferSize);
+    }
+
+    public File getFile()
+    {
+        return file;
+    }
+
+    public int getBufferSize()
+    {
+        return bufferSize;
+    }
+
+    public void setBufferSize(int bufferSize)
+    {
+        if(bufferSize <= 0) throw new ConvirganceException("Buffer size must be positive: " + bufferSize);
+        
+        this.bufferSize = bufferSize;
+    }
+
+    @Override
+    public OutputStream getOutputStream()
+    {
+        FileChannel channel;
+        
+        try
+        {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            
+            return new ChannelOutputStream(channel, ByteBuffer.allocateDirect(bufferSize));
+        }
+        catch(IOException e)
+        {
+            throw new ConvirganceException(e);
+        }
+    }
+    
+    private static class ChannelOutputStream extends OutputStream
+    {
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+
+        public ChannelOutputStream(FileChannel channel, ByteBuffer buffer)
+        {
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+        
+        private void drain(ByteBuffer data) throws IOException
+        {
+            while(data.hasRemaining()) channel.write(data);
+        }
+
+        @Override
+        public void write(int b) throws IOException
+        {
+            if(!buffer.hasRemaining()) flush();
+            
+            buffer.put((byte)b);
+        }
+
+        @Override
+        public void write(byte[] data, int offset, int length) throws IOException
+        {
+            int count;
+            
+            // Large writes bypass the buffer entirely
+            if(length >= buffer.capacity())
+            {
+                flush();
+                drain(ByteBuffer.wrap(data, offset, length));
+                
+                return;
+            }
+            
+            while(length > 0)
+            {
+                if(!buffer.hasRemaining()) flush();
+                
+                count = Math.min(length, buffer.remaining());
+                
+                buffer.put(data, offset, count);
+                
+                offset += count;
+                length -= count;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException
+        {
+            buffer.flip();
+            drain(buffer);
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            if(!channel.isOpen()) return;
+            
+            try
+            {
+                flush();
+            }
+            finally
+            {
+                channel.close();
+            }
+        }
+    }
+}
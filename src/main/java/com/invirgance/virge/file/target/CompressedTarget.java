@@ -0,0 +1,59 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.target;
+
+import com.invirgance.convirgance.target.Target;
+import com.invirgance.virge.file.Compression;
+import java.io.OutputStream;
+
+/**
+ * Compresses everything written to another target.
+ * 
+ * @author agent
+ */
+public class CompressedTarget implements Target
+{
+    private final Target target;
+    private final Compression compression;
+
+    public CompressedTarget(Target target, Compression compression)
+    {
+        this.target = target;
+        this.compression = compression;
+    }
+
+    public Target getTarget()
+    {
+        return target;
+    }
+
+    public Compression getCompression()
+    {
+        return compression;
+    }
+
+    @Override
+    public OutputStream getOutputStream()
+    {
+        return compression.compress(target.getOutputStream());
+    }
+}
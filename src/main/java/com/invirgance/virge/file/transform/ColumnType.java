@@ -0,0 +1,241 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.transform;
+
+/**
+ * The type of a column inferred from its string values. Types are ordered so
+ * that widen() can combine the types seen across many values.
+ * 
+ * @author agent
+ */
+public enum ColumnType
+{
+    NULL,
+    BOOLEAN,
+    INTEGER,
+    LONG,
+    DOUBLE,
+    STRING;
+    
+    private static final String MIN_LONG = Long.toString(Long.MIN_VALUE);
+    
+    /**
+     * Returns the narrowest type able to hold values of both types.
+     * 
+     * @param other the type of another value in the same column
+     * @return the combined type
+     */
+    public ColumnType widen(ColumnType other)
+    {
+        if(this == other || other == NULL) return this;
+        if(this == NULL) return other;
+        if(this == BOOLEAN || other == BOOLEAN) return STRING;
+        
+        return (ordinal() > other.ordinal()) ? this : other;
+    }
+    
+    /**
+     * Determines the narrowest type for a single value. Numbers are only
+     * recognized in their canonical form so that values such as zip codes 
+     * with leading zeros are not altered.
+     * 
+     * @param value a string value from the source
+     * @return the inferred type
+     */
+    public static ColumnType of(String value)
+    {
+        long number;
+        
+        if(value.length() == 0) return NULL;
+        if(value.equalsIgnoreCase("true") || value.equalsIgnoreCase("false")) return BOOLEAN;
+        
+        if(isInteger(value))
+        {
+            number = parseInteger(value);
+            
+            if(isOverflow(number, value)) return STRING;
+            
+            return (number == (int)number) ? INTEGER : LONG;
+        }
+        
+        return isDecimal(value) ? DOUBLE : STRING;
+    }
+    
+    /**
+     * Converts a string into the narrowest value able to hold it, as a 
+     * single pass equivalent of <code>of(value).convert(value)</code>.
+     * 
+     * @param value a string value from the source
+     * @return a Boolean, Integer, Long, Double or the original string
+     */
+    public static Object parse(String value)
+    {
+        long number;
+        
+        if(value.length() == 0) return value;
+        if(value.equalsIgnoreCase("true")) return Boolean.TRUE;
+        if(value.equalsIgnoreCase("false")) return Boolean.FALSE;
+        
+        if(isInteger(value))
+        {
+            number = parseInteger(value);
+            
+            if(isOverflow(number, value)) return value;
+            if(number == (int)number) return (int)number;
+            
+            return number;
+        }
+        
+        return isDecimal(value) ? (Object)Double.parseDouble(value) : value;
+    }
+    
+    // Canonical integers have no leading zeros and an optional minus sign
+    private static boolean isInteger(String value)
+    {
+        int length = value.length();
+        int start = (length > 0 && value.charAt(0) == '-') ? 1 : 0;
+        char c;
+        
+        if(start == length) return false;
+        if(value.charAt(start) == '0' && length > start + 1) return false;
+        
+        for(int i=start; i<length; i++)
+        {
+            c = value.charAt(i);
+            
+            if(c < '0' || c > '9') return false;
+        }
+        
+        return true;
+    }
+    
+    // Parses a value accepted by isInteger(), returning Long.MIN_VALUE on overflow
+    private static long parseInteger(String value)
+    {
+        boolean negative = (value.charAt(0) == '-');
+        long number = 0;
+        int digit;
+        
+        // Accumulate negatively so that Long.MIN_VALUE can be represented
+        for(int i=(negative ? 1 : 0); i<value.length(); i++)
+        {
+            digit = value.charAt(i) - '0';
+            
+            if(number < (Long.MIN_VALUE + digit) / 10) return Long.MIN_VALUE;
+            
+            number = number * 10 - digit;
+        }
+        
+        if(negative) return number;
+        if(number == Long.MIN_VALUE) return Long.MIN_VALUE;
+        
+        return -number;
+    }
+    
+    private static boolean isOverflow(long number, String value)
+    {
+        return (number == Long.MIN_VALUE && !value.equals(MIN_LONG));
+    }
+    
+    // Canonical decimals have a fraction or exponent and no leading zeros
+    private static boolean isDecimal(String value)
+    {
+        int length = value.length();
+        int start = (length > 0 && value.charAt(0) == '-') ? 1 : 0;
+        boolean decimal = false;
+        boolean exponent = false;
+        char c;
+        
+        if(start == length) return false;
+        if(value.charAt(start) == '0' && length > start + 1 && value.charAt(start + 1) != '.') return false;
+        
+        for(int i=start; i<length; i++)
+        {
+            c = value.charAt(i);
+            
+            if(c >= '0' && c <= '9') continue;
+            
+            if(c == '.' && !decimal && !exponent && i > start && i < length - 1)
+            {
+                decimal = true;
+                continue;
+            }
+            
+            if((c == 'e' || c == 'E') && !exponent && i > start && i < length - 1)
+            {
+                exponent = true;
+                
+                if(value.charAt(i+1) == '-' || value.charAt(i+1) == '+') i++;
+                if(i == length - 1) return false;
+                
+                continue;
+            }
+            
+            return false;
+        }
+        
+        return (decimal || exponent);
+    }
+    
+    /**
+     * Converts a string value into this type. The value is parsed directly 
+     * as this type, and values that do not fit the type are returned 
+     * unchanged. Empty values become null in boolean and numeric columns.
+     * 
+     * @param value the string value
+     * @return the converted value, null or the original string
+     */
+    public Object convert(String value)
+    {
+        long number;
+        
+        if(value.length() == 0) return (this == STRING || this == NULL) ? value : null;
+        
+        switch(this)
+        {
+            case BOOLEAN:
+                if(value.equalsIgnoreCase("true")) return Boolean.TRUE;
+                if(value.equalsIgnoreCase("false")) return Boolean.FALSE;
+                break;
+                
+            case INTEGER:
+            case LONG:
+                if(!isInteger(value)) break;
+                
+                number = parseInteger(value);
+                
+                if(isOverflow(number, value)) break;
+                
+                // Keep the column type stable unless the value no longer fits
+                if(this == INTEGER && number == (int)number) return (int)number;
+                
+                return number;
+                
+            case DOUBLE:
+                if(isDecimal(value)) return Double.parseDouble(value);
+                if(isInteger(value) && !isOverflow(parseInteger(value), value)) return Double.parseDouble(value);
+                break;
+        }
+        
+        return value;
+    }
+}
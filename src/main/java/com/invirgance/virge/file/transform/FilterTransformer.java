@@ -0,0 +1,87 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.transform;
+
+import com.invirgance.convirgance.ConvirganceException;
+import com.invirgance.convirgance.json.JSONObject;
+import com.invirgance.convirgance.transform.Transformer;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Predicate;
+
+/**
+ * Drops records that do not match a predicate.
+ * 
+ * @author agent
+ */
+public class FilterTransformer implements Transformer
+{
+    private final Predicate<JSONObject> predicate;
+
+    public FilterTransformer(Predicate<JSONObject> predicate)
+    {
+        this.predicate = predicate;
+    }
+
+    public Predicate<JSONObject> getPredicate()
+    {
+        return predicate;
+    }
+
+    @Override
+    public Iterable<JSONObject> transform(Iterable<JSONObject> iterable) throws ConvirganceException
+    {
+        return () -> new Iterator<JSONObject>() {
+            
+            private final Iterator<JSONObject> iterator = iterable.iterator();
+            private JSONObject next;
+            
+            @Override
+            public boolean hasNext()
+            {
+                JSONObject record;
+                
+                while(next == null && iterator.hasNext())
+                {
+                    record = iterator.next();
+                    
+                    if(predicate.test(record)) next = record;
+                }
+                
+                return (next != null);
+            }
+
+            @Override
+            public JSONObject next()
+            {
+                JSONObject record;
+                
+                if(!hasNext()) throw new NoSuchElementException();
+                
+                record = next;
+                next = null;
+                
+                return record;
+            }
+        };
+    }
+}
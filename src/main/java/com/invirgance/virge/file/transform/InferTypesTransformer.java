@@ -0,0 +1,182 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.transform;
+
+import com.invirgance.convirgance.ConvirganceException;
+import com.invirgance.convirgance.json.JSONObject;
+import com.invirgance.convirgance.transform.Transformer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Infers a fixed type for each column from a sample of the first records and
+ * converts string values according to that type. Unlike coercing each value
+ * independently, a column keeps the same type in every record and values are
+ * parsed without guessing. Values that don't fit their column's type are 
+ * left as strings, and empty values in boolean and numeric columns become
+ * null. Columns that are empty throughout the sample or missing from it are
+ * typed per value.
+ * 
+ * @author agent
+ */
+public class InferTypesTransformer implements Transformer
+{
+    public static final int DEFAULT_SAMPLE_SIZE = 10_000;
+    
+    private int sampleSize = DEFAULT_SAMPLE_SIZE;
+    private Map<String,ColumnType> schema;
+
+    public InferTypesTransformer()
+    {
+    }
+
+    public InferTypesTransformer(int sampleSize)
+    {
+        this.sampleSize = sampleSize;
+    }
+
+    public int getSampleSize()
+    {
+        return sampleSize;
+    }
+
+    public void setSampleSize(int sampleSize)
+    {
+        this.sampleSize = sampleSize;
+    }
+
+    /**
+     * @return the inferred type of each column or null if no records have been read
+     */
+    public Map<String,ColumnType> getSchema()
+    {
+        return (schema == null) ? null : Collections.unmodifiableMap(schema);
+    }
+    
+    private Map<String,ColumnType> infer(List<JSONObject> sample)
+    {
+        Map<String,ColumnType> types = new LinkedHashMap<>();
+        ColumnType type;
+        Object value;
+        
+        for(JSONObject record : sample)
+        {
+            for(String key : record.keySet())
+            {
+                value = record.get(key);
+                type = types.getOrDefault(key, ColumnType.NULL);
+                
+                if(value instanceof String) type = type.widen(ColumnType.of((String)value));
+                else if(value != null) type = ColumnType.STRING; // Already typed, leave it alone
+                
+                types.put(key, type);
+            }
+        }
+        
+        return types;
+    }
+    
+    private JSONObject convert(JSONObject record, String[] keys, ColumnType[] types)
+    {
+        Object value;
+        
+        for(int i=0; i<keys.length; i++)
+        {
+            value = record.get(keys[i]);
+            
+            if(!(value instanceof String)) continue;
+            
+            // Nothing in the sample decided the type of the column
+            if(types[i] == ColumnType.NULL) record.put(keys[i], ColumnType.parse((String)value));
+            else record.put(keys[i], types[i].convert((String)value));
+        }
+        
+        // Columns missing from the sample are typed per value
+        if(record.size() > keys.length)
+        {
+            for(String key : new ArrayList<>(record.keySet()))
+            {
+                value = record.get(key);
+                
+                if(!schema.containsKey(key) && value instanceof String) 
+                {
+                    record.put(key, ColumnType.parse((String)value));
+                }
+            }
+        }
+        
+        return record;
+    }
+
+    @Override
+    public Iterable<JSONObject> transform(Iterable<JSONObject> iterable) throws ConvirganceException
+    {
+        return () -> new Iterator<JSONObject>() {
+            
+            private final Iterator<JSONObject> iterator = iterable.iterator();
+            private Iterator<JSONObject> sample;
+            private String[] keys;
+            private ColumnType[] types;
+            
+            private void initialize()
+            {
+                List<JSONObject> records = new ArrayList<>();
+                int index = 0;
+                
+                while(records.size() < sampleSize && iterator.hasNext()) records.add(iterator.next());
+                
+                schema = infer(records);
+                sample = records.iterator();
+                keys = new String[schema.size()];
+                types = new ColumnType[schema.size()];
+                
+                for(Map.Entry<String,ColumnType> entry : schema.entrySet())
+                {
+                    keys[index] = entry.getKey();
+                    types[index] = entry.getValue();
+                    index++;
+                }
+            }
+            
+            @Override
+            public boolean hasNext()
+            {
+                if(sample == null) initialize();
+                
+                return sample.hasNext() || iterator.hasNext();
+            }
+
+            @Override
+            public JSONObject next()
+            {
+                if(!hasNext()) throw new NoSuchElementException();
+                
+                return convert(sample.hasNext() ? sample.next() : iterator.next(), keys, types);
+            }
+        };
+    }
+}
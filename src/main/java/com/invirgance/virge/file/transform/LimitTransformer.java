@@ -0,0 +1,125 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.transform;
+
+import com.invirgance.convirgance.ConvirganceException;
+import com.invirgance.convirgance.json.JSONObject;
+import com.invirgance.convirgance.transform.Transformer;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Skips a number of records and then passes through at most a limited 
+ * number of records. Once the limit is reached no further records are read
+ * from upstream and the optional limit listener is notified so the source
+ * can be closed.
+ * 
+ * @author agent
+ */
+public class LimitTransformer implements Transformer
+{
+    private final long skip;
+    private final long limit;
+    
+    private Runnable limitListener;
+
+    /**
+     * Creates a new limit transformer
+     * 
+     * @param skip the number of records to drop
+     * @param limit the maximum number of records to return or -1 for no limit
+     */
+    public LimitTransformer(long skip, long limit)
+    {
+        this.skip = skip;
+        this.limit = limit;
+    }
+
+    public long getSkip()
+    {
+        return skip;
+    }
+
+    public long getLimit()
+    {
+        return limit;
+    }
+
+    public Runnable getLimitListener()
+    {
+        return limitListener;
+    }
+
+    /**
+     * Sets a callback that is run once when the limit is reached. Typically 
+     * used to close the source rather than reading it to the end.
+     * 
+     * @param limitListener called when no more records will be requested
+     */
+    public void setLimitListener(Runnable limitListener)
+    {
+        this.limitListener = limitListener;
+    }
+
+    @Override
+    public Iterable<JSONObject> transform(Iterable<JSONObject> iterable) throws ConvirganceException
+    {
+        return () -> new Iterator<JSONObject>() {
+            
+            private final Iterator<JSONObject> iterator = iterable.iterator();
+            private long skipped;
+            private long count;
+            private boolean reached;
+            
+            @Override
+            public boolean hasNext()
+            {
+                if(limit >= 0 && count >= limit)
+                {
+                    if(!reached && limitListener != null) limitListener.run();
+                    
+                    reached = true;
+                    
+                    return false;
+                }
+                
+                while(skipped < skip && iterator.hasNext())
+                {
+                    iterator.next();
+                    skipped++;
+                }
+                
+                return iterator.hasNext();
+            }
+
+            @Override
+            public JSONObject next()
+            {
+                if(!hasNext()) throw new NoSuchElementException();
+                
+                count++;
+                
+                return iterator.next();
+            }
+        };
+    }
+}
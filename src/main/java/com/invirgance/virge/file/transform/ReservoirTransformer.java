@@ -0,0 +1,166 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.transform;
+
+import com.invirgance.convirgance.ConvirganceException;
+import com.invirgance.convirgance.json.JSONObject;
+import com.invirgance.convirgance.transform.Transformer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+/**
+ * Selects a uniform random sample of a fixed number of records in a single
+ * pass using reservoir sampling. Skips between replacements are computed 
+ * directly (Li's Algorithm L) so the random number generator is only used 
+ * when the reservoir changes. The sample is returned in its original order
+ * and a fixed seed makes it reproducible.
+ * 
+ * @author agent
+ */
+public class ReservoirTransformer implements Transformer
+{
+    private final int size;
+    
+    private long seed = SampleTransformer.DEFAULT_SEED;
+
+    /**
+     * Creates a new reservoir sampling transformer
+     * 
+     * @param size the number of records to sample
+     */
+    public ReservoirTransformer(int size)
+    {
+        if(size < 0) throw new ConvirganceException("Sample size cannot be negative: " + size);
+        
+        this.size = size;
+    }
+
+    public int getSize()
+    {
+        return size;
+    }
+
+    public long getSeed()
+    {
+        return seed;
+    }
+
+    public void setSeed(long seed)
+    {
+        this.seed = seed;
+    }
+    
+    private static double random(Random random)
+    {
+        return 1 - random.nextDouble(); // Avoid log(0)
+    }
+    
+    private JSONObject[] sample(Iterator<JSONObject> iterator)
+    {
+        Random random = new Random(seed);
+        JSONObject[] records = new JSONObject[size];
+        long[] positions = new long[size];
+        Integer[] order;
+        JSONObject[] sorted;
+        long position = 0;
+        long next;
+        double weight;
+        double gap;
+        int count = 0;
+        int slot;
+        
+        while(count < size && iterator.hasNext())
+        {
+            records[count] = iterator.next();
+            positions[count++] = position++;
+        }
+        
+        if(count == size && size > 0)
+        {
+            weight = Math.exp(Math.log(random(random)) / size);
+            
+            while(true)
+            {
+                gap = Math.floor(Math.log(random(random)) / Math.log(1 - weight));
+                next = (gap >= Long.MAX_VALUE - position) ? Long.MAX_VALUE : position + (long)gap;
+                
+                while(position < next && iterator.hasNext())
+                {
+                    iterator.next();
+                    position++;
+                }
+                
+                if(!iterator.hasNext()) break;
+                
+                slot = random.nextInt(size);
+                
+                records[slot] = iterator.next();
+                positions[slot] = position++;
+                weight *= Math.exp(Math.log(random(random)) / size);
+            }
+        }
+        
+        order = new Integer[count];
+        sorted = new JSONObject[count];
+        
+        for(int i=0; i<count; i++) order[i] = i;
+        
+        Arrays.sort(order, (a, b) -> Long.compare(positions[a], positions[b]));
+        
+        for(int i=0; i<count; i++) sorted[i] = records[order[i]];
+        
+        return sorted;
+    }
+
+    @Override
+    public Iterable<JSONObject> transform(Iterable<JSONObject> iterable) throws ConvirganceException
+    {
+        return () -> new Iterator<JSONObject>() {
+            
+            private JSONObject[] records;
+            private int index;
+            
+            @Override
+            public boolean hasNext()
+            {
+                if(records == null) records = sample(iterable.iterator());
+                
+                return (index < records.length);
+            }
+
+            @Override
+            public JSONObject next()
+            {
+                JSONObject record;
+                
+                if(!hasNext()) throw new NoSuchElementException();
+                
+                record = records[index];
+                records[index++] = null;
+                
+                return record;
+            }
+        };
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.transform;
+
+import com.invirgance.convirgance.ConvirganceException;
+import com.invirgance.convirgance.json.JSONObject;
+import com.invirgance.convirgance.transform.Transformer;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+/**
+ * Streams a Bernoulli sample of the records, keeping each record with the 
+ * given probability. Rather than drawing a random number for every record,
+ * the gap to the next kept record is drawn from the geometric distribution.
+ * A fixed seed makes the sample reproducible.
+ * 
+ * @author agent
+ */
+public class SampleTransformer implements Transformer
+{
+    public static final long DEFAULT_SEED = 0x5EED;
+    
+    private final double rate;
+    
+    private long seed = DEFAULT_SEED;
+
+    /**
+     * Creates a new sampling transformer
+     * 
+     * @param rate the probability of keeping each record between 0 and 1
+     */
+    public SampleTransformer(double rate)
+    {
+        if(!(rate >= 0 && rate <= 1)) throw new ConvirganceException("Sample rate must be between 0 and 1: " + rate);
+        
+        this.rate = rate;
+    }
+
+    public double getRate()
+    {
+        return rate;
+    }
+
+    public long getSeed()
+    {
+        return seed;
+    }
+
+    public void setSeed(long seed)
+    {
+        this.seed = seed;
+    }
+    
+    private static long gap(Random random, double rate)
+    {
+        double gap;
+        
+        if(rate >= 1) return 0;
+        if(rate <= 0) return Long.MAX_VALUE;
+        
+        gap = Math.floor(Math.log(1 - random.nextDouble()) / Math.log(1 - rate));
+        
+        return (gap >= Long.MAX_VALUE) ? Long.MAX_VALUE : (long)gap;
+    }
+
+    @Override
+    public Iterable<JSONObject> transform(Iterable<JSONObject> iterable) throws ConvirganceException
+    {
+        return () -> new Iterator<JSONObject>() {
+            
+            private final Iterator<JSONObject> iterator = iterable.iterator();
+            private final Random random = new Random(seed);
+            private long skip = gap(random, rate);
+            private JSONObject next;
+            
+            @Override
+            public boolean hasNext()
+            {
+                if(next != null) return true;
+                if(skip == Long.MAX_VALUE) return false;
+                
+                while(skip > 0 && iterator.hasNext())
+                {
+                    iterator.next();
+                    skip--;
+                }
+                
+                if(!iterator.hasNext()) return false;
+                
+                next = iterator.next();
+                skip = gap(random, rate);
+                
+                return true;
+            }
+
+            @Override
+            public JSONObject next()
+            {
+                JSONObject record;
+                
+                if(!hasNext()) throw new NoSuchElementException();
+                
+                record = next;
+                next = null;
+                
+                return record;
+            }
+        };
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.transform;
+
+import com.invirgance.convirgance.ConvirganceException;
+import com.invirgance.convirgance.json.JSONObject;
+import com.invirgance.convirgance.transform.Transformer;
+import java.util.Iterator;
+
+/**
+ * Reconciles records with different columns into a union schema. Every 
+ * record gets the union columns in order, with null for the columns it is
+ * missing. The union must be known before the first record is written, so 
+ * a record with a column outside the union is rejected rather than passed 
+ * on with a column the target may not have.
+ * 
+ * @author agent
+ */
+public class UnionTransformer implements Transformer
+{
+    private final String[] columns;
+
+    public UnionTransformer(String... columns)
+    {
+        this.columns = columns;
+    }
+
+    public String[] getColumns()
+    {
+        return columns.clone();
+    }
+
+    @Override
+    public Iterable<JSONObject> transform(Iterable<JSONObject> iterable) throws ConvirganceException
+    {
+        return () -> new Iterator<JSONObject>() {
+            
+            private final Iterator<JSONObject> iterator = iterable.iterator();
+            
+            @Override
+            public boolean hasNext()
+            {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public JSONObject next()
+            {
+                JSONObject record = iterator.next();
+                JSONObject union = new JSONObject();
+                int matched = 0;
+                
+                for(String column : columns)
+                {
+                    if(record.containsKey(column)) matched++;
+                    
+                    union.put(column, record.get(column));
+                }
+                
+                if(matched == record.size()) return union;
+                
+                for(String key : record.keySet())
+                {
+                    if(!union.containsKey(key)) throw new ConvirganceException("Column '" + key + "' is not in the first record of any source. Use --columns to list every target column.");
+                }
+                
+                return union;
+            }
+        };
+    }
+}
@@ -0,0 +1,376 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.transform;
+
+import com.invirgance.convirgance.ConvirganceException;
+import com.invirgance.convirgance.json.JSONObject;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Parses simple record predicates such as:
+ * <pre>
+ * status = 'ACTIVE' and (amount &gt;= 100 or region in ('US', 'CA')) and deleted is null
+ * </pre>
+ * Supported operators are =, !=, &lt;&gt;, &lt;, &lt;=, &gt;, &gt;=, in, is null, 
+ * is not null, and, or, and not. Values are compared numerically when both 
+ * sides are numbers or numeric strings, allowing predicates to run on
+ * records before their types have been coerced. Integers are compared 
+ * exactly as longs and any other numbers as decimals, so large longs are
+ * never rounded to the nearest double.
+ * 
+ * @author agent
+ */
+public class WhereParser
+{
+    // Result of comparing with null. Never matches any operator.
+    private static final int NULL = Integer.MIN_VALUE;
+    
+    private final String expression;
+    private final List<String> tokens = new ArrayList<>();
+    private int index;
+
+    public WhereParser(String expression)
+    {
+        this.expression = expression;
+        
+        tokenize();
+    }
+    
+    /**
+     * Parses the expression
+     * 
+     * @return predicate that tests records against the expression
+     */
+    public Predicate<JSONObject> parse()
+    {
+        Predicate<JSONObject> predicate;
+        
+        index = 0;
+        predicate = parseOr();
+        
+        if(index < tokens.size()) throw error("Unexpected '" + tokens.get(index) + "'");
+        
+        return predicate;
+    }
+    
+    private ConvirganceException error(String message)
+    {
+        return new ConvirganceException(message + " in where clause: " + expression);
+    }
+    
+    private void tokenize()
+    {
+        int length = expression.length();
+        int start;
+        char c;
+        
+        for(int i=0; i<length; i++)
+        {
+            c = expression.charAt(i);
+            start = i;
+            
+            if(Character.isWhitespace(c)) continue;
+            
+            if(c == '\'' || c == '"')
+            {
+                StringBuilder buffer = new StringBuilder().append(c);
+                
+                for(i++; i<length; i++)
+                {
+                    if(expression.charAt(i) != c) buffer.append(expression.charAt(i));
+                    else if(i + 1 < length && expression.charAt(i+1) == c) buffer.append(expression.charAt(++i)); // Escaped quote
+                    else break;
+                }
+                
+                if(i >= length) throw error("Unterminated string");
+                
+                tokens.add(buffer.toString());
+            }
+            else if("()," .indexOf(c) >= 0)
+            {
+                tokens.add(String.valueOf(c));
+            }
+            else if("=!<>".indexOf(c) >= 0)
+            {
+                if(i + 1 < length && "=>".indexOf(expression.charAt(i+1)) >= 0) i++;
+                
+                tokens.add(expression.substring(start, i + 1));
+            }
+            else
+            {
+                while(i + 1 < length && !Character.isWhitespace(expression.charAt(i+1)) && "()=!<>,'\"".indexOf(expression.charAt(i+1)) < 0) i++;
+                
+                tokens.add(expression.substring(start, i + 1));
+            }
+        }
+    }
+    
+    private String peek()
+    {
+        return (index < tokens.size()) ? tokens.get(index) : null;
+    }
+    
+    private String next()
+    {
+        if(index >= tokens.size()) throw error("Unexpected end of expression");
+        
+        return tokens.get(index++);
+    }
+    
+    private boolean accept(String keyword)
+    {
+        if(peek() == null || !peek().equalsIgnoreCase(keyword)) return false;
+        
+        index++;
+        
+        return true;
+    }
+    
+    private void expect(String token)
+    {
+        if(!accept(token)) throw error("Expected '" + token + "'");
+    }
+    
+    private Predicate<JSONObject> parseOr()
+    {
+        Predicate<JSONObject> predicate = parseAnd();
+        
+        while(accept("or")) predicate = predicate.or(parseAnd());
+        
+        return predicate;
+    }
+    
+    private Predicate<JSONObject> parseAnd()
+    {
+        Predicate<JSONObject> predicate = parseNot();
+        
+        while(accept("and")) predicate = predicate.and(parseNot());
+        
+        return predicate;
+    }
+    
+    private Predicate<JSONObject> parseNot()
+    {
+        Predicate<JSONObject> predicate;
+        
+        if(accept("not")) return parseNot().negate();
+        
+        if(accept("("))
+        {
+            predicate = parseOr();
+            
+            expect(")");
+            
+            return predicate;
+        }
+        
+        return parseComparison();
+    }
+    
+    private Object parseLiteral()
+    {
+        String token = next();
+        ColumnType type;
+        
+        if(token.charAt(0) == '\'' || token.charAt(0) == '"') return token.substring(1);
+        if(token.equalsIgnoreCase("null")) return null;
+        if(token.equalsIgnoreCase("true")) return Boolean.TRUE;
+        if(token.equalsIgnoreCase("false")) return Boolean.FALSE;
+        
+        try
+        {
+            type = ColumnType.of(token);
+            
+            // Integer literals are kept as longs for the common long to long comparison
+            if(type == ColumnType.INTEGER || type == ColumnType.LONG) return Long.parseLong(token);
+            
+            return new BigDecimal(token);
+        }
+        catch(NumberFormatException e)
+        {
+            throw error("Invalid value '" + token + "'");
+        }
+    }
+    
+    private Predicate<JSONObject> parseComparison()
+    {
+        String column = next();
+        String operator;
+        List<Object> values;
+        Object value;
+        
+        if("()=!<>,".indexOf(column.charAt(0)) >= 0) throw error("Expected column name but found '" + column + "'");
+        if(column.charAt(0) == '"') column = column.substring(1);
+        
+        final String key = column;
+        
+        if(accept("is"))
+        {
+            boolean not = accept("not");
+            
+            expect("null");
+            
+            return not ? (record -> record.get(key) != null) : (record -> record.get(key) == null);
+        }
+        
+        if(accept("in"))
+        {
+            values = new ArrayList<>();
+            
+            expect("(");
+            
+            do
+            {
+                values.add(parseLiteral());
+            }
+            while(accept(","));
+            
+            expect(")");
+            
+            return record -> {
+                Object field = record.get(key);
+                
+                for(Object item : values)
+                {
+                    if(compare(field, item) == 0) return true;
+                }
+                
+                return false;
+            };
+        }
+        
+        operator = next();
+        value = parseLiteral();
+        
+        final Object literal = value;
+        
+        switch(operator)
+        {
+            case "=":
+                return record -> compare(record.get(key), literal) == 0;
+                
+            case "!=":
+            case "<>":
+                return record -> { int result = compare(record.get(key), literal); return (result != 0 && result != NULL); };
+                
+            case "<":
+                return record -> { int result = compare(record.get(key), literal); return (result < 0 && result != NULL); };
+                
+            case "<=":
+                return record -> { int result = compare(record.get(key), literal); return (result <= 0 && result != NULL); };
+                
+            case ">":
+                return record -> { int result = compare(record.get(key), literal); return (result > 0 && result != NULL); };
+                
+            case ">=":
+                return record -> { int result = compare(record.get(key), literal); return (result >= 0 && result != NULL); };
+                
+            default:
+                throw error("Unknown operator '" + operator + "'");
+        }
+    }
+    
+    /**
+     * Normalizes numbers and numeric strings to Long for integers, or to 
+     * another Number otherwise. Returns null for anything else.
+     */
+    private static Number toNumber(Object value)
+    {
+        if(value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) return ((Number)value).longValue();
+        if(value instanceof Double && ((Double)value).isNaN()) return null;
+        if(value instanceof Float && ((Float)value).isNaN()) return null;
+        if(value instanceof Number) return (Number)value;
+        if(!(value instanceof String)) return null;
+        
+        switch(ColumnType.of((String)value))
+        {
+            case INTEGER:
+            case LONG:
+                return Long.parseLong((String)value);
+                
+            case DOUBLE:
+                return new BigDecimal((String)value);
+                
+            default:
+                return null;
+        }
+    }
+    
+    private static BigDecimal toDecimal(Number number)
+    {
+        if(number instanceof BigDecimal) return (BigDecimal)number;
+        if(number instanceof Long) return BigDecimal.valueOf(number.longValue());
+        if(number instanceof BigInteger) return new BigDecimal((BigInteger)number);
+        
+        // The shortest decimal form, so that a double 0.1 equals the literal 0.1
+        return new BigDecimal(number.toString());
+    }
+    
+    private static boolean isInfinite(Number number)
+    {
+        if(number instanceof Double) return ((Double)number).isInfinite();
+        if(number instanceof Float) return ((Float)number).isInfinite();
+        
+        return false;
+    }
+    
+    private static int compareNumbers(Number left, Number right)
+    {
+        if(left instanceof Long && right instanceof Long) return Long.compare(left.longValue(), right.longValue());
+        if(left instanceof Double && right instanceof Double) return Double.compare(left.doubleValue(), right.doubleValue());
+        if(isInfinite(left) || isInfinite(right)) return Double.compare(left.doubleValue(), right.doubleValue());
+        
+        return toDecimal(left).compareTo(toDecimal(right));
+    }
+    
+    /**
+     * Compares a record value with a literal. Returns NULL if either side is
+     * null so that comparisons with null never match, as in SQL. A number is
+     * never compared with a value that isn't numeric, so blank or malformed
+     * values don't match numeric comparisons either.
+     */
+    private static int compare(Object value, Object literal)
+    {
+        Number left;
+        Number right;
+        
+        if(value == null || literal == null) return NULL;
+        
+        if(literal instanceof Number || value instanceof Number)
+        {
+            left = toNumber(value);
+            right = toNumber(literal);
+            
+            if(left == null || right == null) return NULL;
+            
+            return compareNumbers(left, right);
+        }
+        
+        if(literal instanceof Boolean && value instanceof String) return Integer.signum(((String)value).compareToIgnoreCase(literal.toString()));
+        
+        return Integer.signum(value.toString().compareTo(literal.toString()));
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.aggregate;
+
+import com.invirgance.convirgance.json.JSONObject;
+import com.invirgance.virge.file.sort.SortKey;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Aggregates with a memory budget small enough to spill partial groups and
+ * compares the result with totals computed in memory. Distinct counts are
+ * estimates, so they only need to be close.
+ * 
+ * @author agent
+ */
+public class AggregateTransformerTest
+{
+    @TempDir
+    File directory;
+    
+    private static List<JSONObject> generate(int count, int groups)
+    {
+        List<JSONObject> records = new ArrayList<>();
+        Random random = new Random(11);
+        JSONObject record;
+        
+        for(int i=0; i<count; i++)
+        {
+            record = new JSONObject();
+            
+            record.put("key", "g" + random.nextInt(groups));
+            record.put("amount", random.nextInt(1000) - 500);
+            
+            records.add(record);
+        }
+        
+        return records;
+    }
+    
+    private static Map<String,String> expected(List<JSONObject> records)
+    {
+        Map<String,long[]> totals = new TreeMap<>();
+        Map<String,String> results = new TreeMap<>();
+        long[] total;
+        long amount;
+        
+        for(JSONObject record : records)
+        {
+            total = totals.computeIfAbsent((String)record.get("key"), key -> new long[]{ 0, 0, Long.MAX_VALUE, Long.MIN_VALUE });
+            amount = ((Number)record.get("amount")).longValue();
+            
+            total[0]++;
+            total[1] += amount;
+            total[2] = Math.min(total[2], amount);
+            total[3] = Math.max(total[3], amount);
+        }
+        
+        for(Map.Entry<String,long[]> entry : totals.entrySet())
+        {
+            total = entry.getValue();
+            
+            results.put(entry.getKey(), total[0] + "/" + total[1] + "/" + total[2] + "/" + total[3]);
+        }
+        
+        return results;
+    }
+    
+    private static String format(JSONObject record)
+    {
+        return toLong(record.get("count")) + "/" + toLong(record.get("sum_amount")) + "/" + toLong(record.get("min_amount")) + "/" + toLong(record.get("max_amount"));
+    }
+    
+    private static long toLong(Object value)
+    {
+        return ((Number)SortKey.toKey(value)).longValue();
+    }
+    
+    private static Map<String,List<Long>> amounts(List<JSONObject> records)
+    {
+        Map<String,List<Long>> amounts = new TreeMap<>();
+        
+        for(JSONObject record : records)
+        {
+            amounts.computeIfAbsent((String)record.get("key"), key -> new ArrayList<>()).add(((Number)record.get("amount")).longValue());
+        }
+        
+        return amounts;
+    }
+    
+    private static double average(List<Long> values)
+    {
+        double sum = 0;
+        
+        for(long value : values) sum += value;
+        
+        return sum / values.size();
+    }
+    
+    private void test(int threads)
+    {
+        List<JSONObject> records = generate(100000, 20000);
+        AggregateTransformer aggregate = new AggregateTransformer(new String[]{ "key" }, AggregateFunction.parseList("count,sum(amount),min(amount),max(amount),avg(amount),distinct(amount)"));
+        Map<String,List<Long>> amounts = amounts(records);
+        Map<String,String> actual = new TreeMap<>();
+        Iterator<JSONObject> iterator;
+        JSONObject record;
+        List<Long> values;
+        long distinct;
+        
+        aggregate.setMemory(64 * 1024);
+        aggregate.setThreads(threads);
+        aggregate.setTemporaryDirectory(directory);
+        
+        iterator = aggregate.transform(records).iterator();
+        
+        assertTrue(directory.list().length > 0, "Expected the aggregate to spill partitions");
+        
+        while(iterator.hasNext())
+        {
+            record = iterator.next();
+            
+            values = amounts.get((String)record.get("key"));
+            distinct = new HashSet<>(values).size();
+            
+            assertEquals(null, actual.put((String)record.get("key"), format(record)), "Group returned twice");
+            assertEquals(average(values), ((Number)SortKey.toKey(record.get("avg_amount"))).doubleValue(), 1e-9);
+            
+            // A sketch merged from spilled partials can only be off by a rare register collision
+            assertTrue(Math.abs(distinct - toLong(record.get("distinct_amount"))) <= 1, record.get("key") + " has " + distinct + " distinct amounts, estimated " + record.get("distinct_amount"));
+        }
+        
+        assertEquals(expected(records), actual);
+        assertEquals(0, directory.list().length);
+    }
+    
+    @Test
+    public void testSpilled()
+    {
+        test(1);
+    }
+    
+    @Test
+    public void testSpilledParallel()
+    {
+        test(4);
+    }
+    
+    @Test
+    public void testLeadingZeroOrder()
+    {
+        AggregateTransformer aggregate = new AggregateTransformer(new String[]{ "zip" }, AggregateFunction.parseList("count"));
+        List<JSONObject> records = new ArrayList<>();
+        List<Object> actual = new ArrayList<>();
+        JSONObject record;
+        
+        for(String zip : new String[]{ "99501", "00501", "10001", "02134", "00501" })
+        {
+            record = new JSONObject();
+            
+            record.put("zip", zip);
+            records.add(record);
+        }
+        
+        aggregate.setTemporaryDirectory(directory);
+        
+        for(JSONObject result : aggregate.transform(records)) actual.add(result.get("zip"));
+        
+        assertEquals(List.of("00501", "02134", "10001", "99501"), actual);
+    }
+}
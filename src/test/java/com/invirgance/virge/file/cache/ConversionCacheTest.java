@@ -0,0 +1,198 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * Stores conversions in a cache and checks which changes to the source, the
+ * options or the cached output invalidate them, and that the least recently
+ * used outputs are evicted first.
+ * 
+ * @author agent
+ */
+public class ConversionCacheTest
+{
+    private static final String OPTIONS = "csv->jbin";
+    
+    @TempDir
+    File directory;
+    
+    private File write(String name, String content) throws IOException
+    {
+        File file = new File(directory, name);
+        
+        Files.writeString(file.toPath(), content, StandardCharsets.UTF_8);
+        
+        return file;
+    }
+    
+    private static String read(File file) throws IOException
+    {
+        return Files.readString(file.toPath(), StandardCharsets.UTF_8);
+    }
+    
+    private static void convert(ConversionCache cache, File source, File target) throws IOException
+    {
+        CacheEntry entry = cache.describe(source, OPTIONS);
+        
+        assertEquals(ConversionCache.Result.MISS, cache.restore(entry, target));
+        
+        Files.writeString(target.toPath(), "converted " + read(source), StandardCharsets.UTF_8);
+        
+        cache.store(entry, target);
+    }
+    
+    @Test
+    public void testRestore() throws IOException
+    {
+        ConversionCache cache = new ConversionCache(new File(directory, "cache"));
+        File source = write("source.csv", "a,b\n1,2\n");
+        File target = new File(directory, "target.jbin");
+        
+        convert(cache, source, target);
+        
+        assertEquals(ConversionCache.Result.UNCHANGED, cache.restore(cache.describe(source, OPTIONS), target));
+        
+        target.delete();
+        
+        assertEquals(ConversionCache.Result.RESTORED, cache.restore(cache.describe(source, OPTIONS), target));
+        assertEquals("converted a,b\n1,2\n", read(target));
+        
+        // The same source with other options is a different conversion
+        assertEquals(ConversionCache.Result.MISS, cache.restore(cache.describe(source, "csv->json"), new File(directory, "target.json")));
+        
+        // Another cache instance sees the same manifest
+        assertEquals(ConversionCache.Result.UNCHANGED, new ConversionCache(new File(directory, "cache")).restore(cache.describe(source, OPTIONS), target));
+    }
+    
+    @Test
+    public void testSourceChanged() throws IOException
+    {
+        ConversionCache cache = new ConversionCache(new File(directory, "cache"));
+        File source = write("source.csv", "a,b\n1,2\n");
+        File target = new File(directory, "target.jbin");
+        
+        convert(cache, source, target);
+        
+        // Touched without changing
+        source.setLastModified(source.lastModified() + 10000);
+        
+        assertEquals(ConversionCache.Result.MISS, cache.restore(cache.describe(source, OPTIONS), target));
+        
+        convert(cache, source, target);
+        
+        // Same length, different content
+        write("source.csv", "a,b\n3,4\n");
+        
+        assertEquals(ConversionCache.Result.MISS, cache.restore(cache.describe(source, OPTIONS), target));
+        
+        write("source.csv", "a,b\n1,2\n3,4\n");
+        
+        assertEquals(ConversionCache.Result.MISS, cache.restore(cache.describe(source, OPTIONS), target));
+    }
+    
+    @Test
+    public void testHashing() throws IOException
+    {
+        ConversionCache cache = new ConversionCache(new File(directory, "cache"));
+        File source = write("source.csv", "a,b\n1,2\n");
+        File target = new File(directory, "target.jbin");
+        long modified;
+        
+        cache.setHashing(true);
+        
+        convert(cache, source, target);
+        
+        // Touched without changing is still a hit, and the new time is remembered
+        source.setLastModified(source.lastModified() + 10000);
+        
+        assertEquals(ConversionCache.Result.UNCHANGED, cache.restore(cache.describe(source, OPTIONS), target));
+        
+        modified = source.lastModified();
+        
+        // Changed content with the same length is caught by the hash
+        write("source.csv", "a,b\n3,4\n");
+        source.setLastModified(modified + 10000);
+        
+        assertEquals(ConversionCache.Result.MISS, cache.restore(cache.describe(source, OPTIONS), target));
+    }
+    
+    @Test
+    public void testOutputChanged() throws IOException
+    {
+        ConversionCache cache = new ConversionCache(new File(directory, "cache"));
+        File source = write("source.csv", "a,b\n1,2\n");
+        File target = new File(directory, "target.jbin");
+        
+        convert(cache, source, target);
+        
+        // The target is a link to the cached output, so rewriting it in place changes both
+        Files.writeString(target.toPath(), "edited", StandardCharsets.UTF_8);
+        
+        assertEquals(ConversionCache.Result.MISS, cache.restore(cache.describe(source, OPTIONS), target));
+        assertEquals(0, new File(directory, "cache").list((parent, name) -> name.endsWith(".cached")).length);
+    }
+    
+    @Test
+    public void testEviction() throws Exception
+    {
+        ConversionCache cache = new ConversionCache(new File(directory, "cache"));
+        File[] sources = new File[3];
+        File[] targets = new File[3];
+        
+        // Room for two of the three outputs
+        cache.setMaxSize(2 * ("converted " + "x".repeat(100)).length() + 10);
+        
+        for(int i=0; i<3; i++)
+        {
+            sources[i] = write("source" + i + ".csv", String.valueOf(i).repeat(100));
+            targets[i] = new File(directory, "target" + i + ".jbin");
+        }
+        
+        convert(cache, sources[0], targets[0]);
+        Thread.sleep(5);
+        convert(cache, sources[1], targets[1]);
+        Thread.sleep(5);
+        
+        // Using the first output makes the second the least recently used
+        assertEquals(ConversionCache.Result.UNCHANGED, cache.restore(cache.describe(sources[0], OPTIONS), targets[0]));
+        Thread.sleep(5);
+        
+        convert(cache, sources[2], targets[2]);
+        
+        for(File target : targets) target.delete();
+        
+        assertEquals(ConversionCache.Result.RESTORED, cache.restore(cache.describe(sources[0], OPTIONS), targets[0]));
+        assertEquals(ConversionCache.Result.MISS, cache.restore(cache.describe(sources[1], OPTIONS), targets[1]));
+        assertEquals(ConversionCache.Result.RESTORED, cache.restore(cache.describe(sources[2], OPTIONS), targets[2]));
+        assertFalse(targets[1].exists());
+    }
+}
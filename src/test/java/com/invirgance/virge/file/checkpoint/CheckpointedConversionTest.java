@@ -0,0 +1,152 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.checkpoint;
+
+import com.invirgance.convirgance.ConvirganceException;
+import com.invirgance.convirgance.input.CSVInput;
+import com.invirgance.convirgance.input.JBINInput;
+import com.invirgance.convirgance.json.JSONObject;
+import com.invirgance.convirgance.output.JBINOutput;
+import com.invirgance.convirgance.source.FileSource;
+import com.invirgance.convirgance.target.FileTarget;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Interrupts checkpointed conversions part way through, resumes them and
+ * compares the result with a conversion that ran without interruption.
+ * 
+ * @author agent
+ */
+public class CheckpointedConversionTest
+{
+    @TempDir
+    File directory;
+    
+    private File writeSource() throws IOException
+    {
+        File file = new File(directory, "source.csv");
+        StringBuilder csv = new StringBuilder("id,name,notes\n");
+        
+        for(int i=0; i<5000; i++)
+        {
+            csv.append(i).append(",name").append(i).append(',').append(i % 7 == 0 ? "\"multi\nline, " + i + "\"" : "plain").append('\n');
+        }
+        
+        Files.writeString(file.toPath(), csv, StandardCharsets.UTF_8);
+        
+        return file;
+    }
+    
+    private static List<String> read(File file)
+    {
+        List<String> records = new ArrayList<>();
+        
+        for(JSONObject record : new JBINInput().read(new FileSource(file))) records.add(record.toString());
+        
+        return records;
+    }
+    
+    private static List<String> serial(File source, File directory)
+    {
+        File target = new File(directory, "serial.jbin");
+        
+        new JBINOutput().write(new FileTarget(target), new CSVInput().read(new FileSource(source)));
+        
+        return read(target);
+    }
+    
+    private CheckpointedConversion create(File source, File target, File checkpoint, boolean delimited)
+    {
+        CheckpointedConversion conversion = new CheckpointedConversion(new CSVInput(), new JBINOutput(), target, checkpoint);
+        
+        if(delimited) conversion.setSourceFile(source, true);
+        else conversion.setSource(new FileSource(source));
+        
+        conversion.setChunkSize(1000);
+        conversion.setChunkRecords(300);
+        conversion.setInterval(0);
+        
+        return conversion;
+    }
+    
+    private void testResume(boolean delimited) throws IOException
+    {
+        File source = writeSource();
+        File target = new File(directory, "target.jbin");
+        File checkpoint = new File(directory, "target.checkpoint");
+        CheckpointedConversion conversion = create(source, target, checkpoint, delimited);
+        int[] chunks = new int[1];
+        
+        conversion.setTransformer(records -> {
+            if(++chunks[0] == 9) throw new ConvirganceException("Interrupted");
+            
+            return records;
+        });
+        
+        assertThrows(ConvirganceException.class, () -> conversion.run(false));
+        assertTrue(checkpoint.exists());
+        
+        // A partial record written after the last checkpoint is discarded
+        Files.write(target.toPath(), new byte[]{ 1, 2, 3 }, StandardOpenOption.APPEND);
+        
+        create(source, target, checkpoint, delimited).run(true);
+        
+        assertFalse(checkpoint.exists());
+        assertEquals(serial(source, directory), read(target));
+    }
+    
+    @Test
+    public void testResumeDelimited() throws IOException
+    {
+        testResume(true);
+    }
+    
+    @Test
+    public void testResumeRecords() throws IOException
+    {
+        testResume(false);
+    }
+    
+    @Test
+    public void testUninterrupted() throws IOException
+    {
+        File source = writeSource();
+        File target = new File(directory, "target.jbin");
+        
+        create(source, target, new File(directory, "target.checkpoint"), true).run(false);
+        
+        assertEquals(serial(source, directory), read(target));
+    }
+}
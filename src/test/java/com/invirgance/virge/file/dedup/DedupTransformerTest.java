@@ -0,0 +1,180 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.dedup;
+
+import com.invirgance.convirgance.json.JSONObject;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Removes duplicates with a memory budget small enough to spill partitions
+ * and compares the result with an in-memory reference.
+ * 
+ * @author agent
+ */
+public class DedupTransformerTest
+{
+    @TempDir
+    File directory;
+    
+    private static List<JSONObject> generate(int count, int keys)
+    {
+        List<JSONObject> records = new ArrayList<>();
+        Random random = new Random(7);
+        JSONObject record;
+        
+        for(int i=0; i<count; i++)
+        {
+            record = new JSONObject();
+            
+            record.put("key", "k" + random.nextInt(keys));
+            record.put("sequence", i);
+            
+            records.add(record);
+        }
+        
+        return records;
+    }
+    
+    private static List<String> first(List<JSONObject> records)
+    {
+        Map<Object,Object> first = new LinkedHashMap<>();
+        List<String> list = new ArrayList<>();
+        
+        for(JSONObject record : records) first.putIfAbsent(record.get("key"), record.get("sequence"));
+        for(Map.Entry<Object,Object> entry : first.entrySet()) list.add(entry.getKey() + "/" + entry.getValue());
+        
+        return list;
+    }
+    
+    private static List<String> expected(List<JSONObject> records)
+    {
+        List<String> list = first(records);
+        
+        Collections.sort(list);
+        
+        return list;
+    }
+    
+    @Test
+    public void testSpilled()
+    {
+        List<JSONObject> records = generate(100000, 30000);
+        DedupTransformer dedup = new DedupTransformer("key");
+        Iterator<JSONObject> iterator;
+        List<String> actual = new ArrayList<>();
+        boolean spilled = false;
+        JSONObject record;
+        
+        dedup.setMemory(16 * 1024);
+        dedup.setTemporaryDirectory(directory);
+        
+        iterator = dedup.transform(records).iterator();
+        
+        while(iterator.hasNext())
+        {
+            record = iterator.next();
+            actual.add(record.get("key") + "/" + record.get("sequence"));
+            
+            if(actual.size() % 1000 == 0) spilled |= (directory.list().length > 0);
+        }
+        
+        Collections.sort(actual);
+        
+        assertTrue(spilled, "Expected the dedup to spill partitions");
+        assertEquals(expected(records), actual);
+        assertEquals(0, directory.list().length);
+    }
+    
+    @Test
+    public void testClose()
+    {
+        DedupTransformer dedup = new DedupTransformer("key");
+        Iterator<JSONObject> iterator;
+        
+        dedup.setMemory(16 * 1024);
+        dedup.setTemporaryDirectory(directory);
+        
+        iterator = dedup.transform(generate(100000, 30000)).iterator();
+        
+        // Stop while the input is still being partitioned
+        while(directory.list().length == 0) iterator.next();
+        
+        dedup.close();
+        
+        assertEquals(0, directory.list().length);
+        assertFalse(iterator.hasNext());
+    }
+    
+    @Test
+    public void testInMemory()
+    {
+        List<JSONObject> records = generate(10000, 500);
+        DedupTransformer dedup = new DedupTransformer("key");
+        List<String> actual = new ArrayList<>();
+        
+        dedup.setTemporaryDirectory(directory);
+        
+        for(JSONObject record : dedup.transform(records)) actual.add(record.get("key") + "/" + record.get("sequence"));
+        
+        Collections.sort(actual);
+        
+        assertEquals(expected(records), actual);
+        assertEquals(0, directory.list().length);
+    }
+    
+    @Test
+    public void testApproximate()
+    {
+        List<JSONObject> records = generate(100000, 30000);
+        List<String> expected = first(records);
+        DedupTransformer dedup = new DedupTransformer("key");
+        List<String> actual = new ArrayList<>();
+        
+        // About 17 bits per key, so false positives should be well under 1%
+        dedup.setApproximate(true);
+        dedup.setMemory(64 * 1024);
+        dedup.setTemporaryDirectory(directory);
+        
+        for(JSONObject record : dedup.transform(records)) actual.add(record.get("key") + "/" + record.get("sequence"));
+        
+        assertEquals(0, directory.list().length);
+        assertTrue(actual.size() > expected.size() * 0.99, "Dropped " + (expected.size() - actual.size()) + " of " + expected.size() + " keys");
+        
+        // Never spills, so the kept records are a subsequence of the exact result
+        expected.retainAll(actual);
+        
+        assertEquals(expected, actual);
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.index;
+
+import com.invirgance.convirgance.input.JBINInput;
+import com.invirgance.convirgance.json.JSONObject;
+import com.invirgance.convirgance.output.JBINOutput;
+import com.invirgance.convirgance.source.FileSource;
+import com.invirgance.convirgance.source.Source;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Reads indexed files from the start and from the middle of a segment, and
+ * checks that a sidecar index is ignored once the indexed file changes, 
+ * even when its length stays the same.
+ * 
+ * @author agent
+ */
+public class JBINIndexTest
+{
+    @TempDir
+    File directory;
+    
+    private static List<JSONObject> generate(int count)
+    {
+        List<JSONObject> records = new ArrayList<>();
+        JSONObject record;
+        
+        for(int i=0; i<count; i++)
+        {
+            record = new JSONObject();
+            
+            record.put("id", i);
+            record.put("name", "record" + i);
+            
+            records.add(record);
+        }
+        
+        return records;
+    }
+    
+    private File write() throws Exception
+    {
+        return write(generate(1000));
+    }
+    
+    private File write(List<JSONObject> records) throws Exception
+    {
+        File file = new File(directory, "data.jbin");
+        IndexedJBINWriter writer = new IndexedJBINWriter(new JBINOutput(), file);
+        
+        writer.setInterval(100);
+        writer.write(records);
+        
+        return file;
+    }
+    
+    private static List<String> collect(Iterable<JSONObject> records, long skip)
+    {
+        List<String> list = new ArrayList<>();
+        long skipped = 0;
+        
+        for(JSONObject record : records)
+        {
+            if(skipped++ < skip) continue;
+            
+            list.add(record.get("id") + "/" + record.get("name"));
+        }
+        
+        return list;
+    }
+    
+    private static List<String> read(Source source, long skip)
+    {
+        return collect(new JBINInput().read(source), skip);
+    }
+    
+    @Test
+    public void testSequentialRead() throws Exception
+    {
+        List<JSONObject> records = generate(1050);
+        File file = write(records);
+        
+        assertEquals(collect(records, 0), read(new FileSource(file), 0));
+    }
+    
+    @Test
+    public void testSkip() throws Exception
+    {
+        List<JSONObject> records = generate(1050);
+        File file = write(records);
+        JBINIndex index = JBINIndex.load(file);
+        IndexedJBINSource source;
+        
+        assertEquals(11, index.getSegments());
+        
+        // The start and middle of the first, a middle and the last segment, and past the end
+        for(long skip : new long[]{ 0, 50, 100, 250, 999, 1000, 1049, 1050, 2000 })
+        {
+            source = new IndexedJBINSource(file, index, index.getSegment(skip));
+            
+            assertEquals(collect(records, skip), read(source, skip - source.getFirstRecord()), "Skipping " + skip);
+            assertEquals(read(new FileSource(file), skip), read(source, skip - source.getFirstRecord()), "Skipping " + skip);
+        }
+    }
+    
+    @Test
+    public void testValid() throws Exception
+    {
+        File file = write();
+        JBINIndex index = JBINIndex.load(file);
+        
+        assertNotNull(index);
+        assertEquals(1000, index.getRecords());
+        assertEquals(10, index.getSegments());
+    }
+    
+    @Test
+    public void testRewrittenSameLength() throws Exception
+    {
+        File file = write();
+        long modified = file.lastModified();
+        int value;
+        
+        try(RandomAccessFile out = new RandomAccessFile(file, "rw"))
+        {
+            out.seek(file.length() - 2);
+            value = out.read();
+            
+            out.seek(file.length() - 2);
+            out.write(value ^ 0xFF);
+        }
+        
+        // Coarse timestamps may not change between writes
+        file.setLastModified(modified);
+        
+        assertNull(JBINIndex.load(file));
+    }
+    
+    @Test
+    public void testTouched() throws Exception
+    {
+        File file = write();
+        
+        file.setLastModified(file.lastModified() - 10000);
+        
+        assertNull(JBINIndex.load(file));
+    }
+    
+    @Test
+    public void testDeleted() throws Exception
+    {
+        File file = write();
+        
+        JBINIndex.delete(file);
+        
+        assertNull(JBINIndex.load(file));
+        assertFalse(JBINIndex.getFile(file).exists());
+    }
+}
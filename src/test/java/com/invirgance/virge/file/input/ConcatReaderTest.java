@@ -0,0 +1,309 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.input;
+
+import com.invirgance.convirgance.ConvirganceException;
+import com.invirgance.convirgance.json.JSONObject;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Reads sources of different sizes on several threads and checks the order
+ * of the records, that prefetching stays within the memory budget while the
+ * reader is slow, that sources with different columns are reconciled, and 
+ * that errors and closing stop the workers.
+ * 
+ * @author agent
+ */
+public class ConcatReaderTest
+{
+    private final AtomicInteger produced = new AtomicInteger();
+    
+    /**
+     * Generates records on demand, counting them, and optionally fails after
+     * a number of records.
+     */
+    private Iterable<JSONObject> source(int index, int count, int failAt)
+    {
+        return () -> new Iterator<JSONObject>() {
+            
+            private int next;
+            
+            @Override
+            public boolean hasNext()
+            {
+                return next < count;
+            }
+            
+            @Override
+            public JSONObject next()
+            {
+                JSONObject record;
+                
+                if(next >= count) throw new NoSuchElementException();
+                if(next == failAt) throw new ConvirganceException("Failed reading source " + index);
+                
+                record = new JSONObject();
+                
+                record.put("source", index);
+                record.put("sequence", next++);
+                
+                produced.incrementAndGet();
+                
+                return record;
+            }
+        };
+    }
+    
+    private List<Iterable<JSONObject>> sources(int... counts)
+    {
+        List<Iterable<JSONObject>> sources = new ArrayList<>();
+        
+        for(int i=0; i<counts.length; i++) sources.add(source(i, counts[i], -1));
+        
+        return sources;
+    }
+    
+    private static List<String> expected(int... counts)
+    {
+        List<String> list = new ArrayList<>();
+        
+        for(int i=0; i<counts.length; i++)
+        {
+            for(int j=0; j<counts[i]; j++) list.add(i + "/" + j);
+        }
+        
+        return list;
+    }
+    
+    private static List<String> collect(Iterable<JSONObject> records)
+    {
+        List<String> list = new ArrayList<>();
+        
+        for(JSONObject record : records) list.add(record.get("source") + "/" + record.get("sequence"));
+        
+        return list;
+    }
+    
+    @Test
+    public void testSourceOrder()
+    {
+        int[] counts = new int[]{ 5000, 0, 1, 3000, ConcatReader.BATCH_SIZE, 12000, 7 };
+        ConcatReader reader = new ConcatReader(sources(counts));
+        
+        reader.setThreads(3);
+        reader.setMemory(64 * 1024);
+        
+        assertEquals(expected(counts), collect(reader));
+    }
+    
+    @Test
+    public void testArrivalOrder()
+    {
+        int[] counts = new int[]{ 5000, 0, 1, 3000, ConcatReader.BATCH_SIZE, 12000, 7 };
+        ConcatReader reader = new ConcatReader(sources(counts));
+        Map<String,Integer> last = new HashMap<>();
+        List<String> expected = expected(counts);
+        List<String> actual = new ArrayList<>();
+        String[] parts;
+        
+        reader.setThreads(3);
+        reader.setMemory(64 * 1024);
+        reader.setOrdered(false);
+        
+        for(String record : collect(reader))
+        {
+            parts = record.split("/");
+            
+            // Sources are interleaved but each keeps its own order
+            assertTrue(Integer.parseInt(parts[1]) > last.getOrDefault(parts[0], -1), record);
+            
+            last.put(parts[0], Integer.parseInt(parts[1]));
+            actual.add(record);
+        }
+        
+        Collections.sort(expected);
+        Collections.sort(actual);
+        
+        assertEquals(expected, actual);
+    }
+    
+    @Test
+    public void testMemoryBudget() throws InterruptedException
+    {
+        int size = 40 * ConcatReader.BATCH_SIZE;
+        ConcatReader reader = new ConcatReader(sources(size, size, size, size));
+        Iterator<JSONObject> iterator;
+        int read = 0;
+        
+        reader.setThreads(4);
+        reader.setMemory(1);
+        
+        iterator = reader.iterator();
+        
+        // A slow reader. Each source may hold a batch waiting for room, a
+        // batch being parsed, and the current source one batch beyond that.
+        for(int i=0; i<3; i++)
+        {
+            iterator.next();
+            read++;
+            
+            Thread.sleep(200);
+            
+            assertTrue(produced.get() - read <= 10 * ConcatReader.BATCH_SIZE, "Prefetched " + (produced.get() - read) + " records");
+        }
+        
+        while(iterator.hasNext())
+        {
+            iterator.next();
+            read++;
+        }
+        
+        assertEquals(4 * size, read);
+    }
+    
+    private static Iterable<JSONObject> columns(int count, String... names)
+    {
+        List<JSONObject> records = new ArrayList<>();
+        JSONObject record;
+        
+        for(int i=0; i<count; i++)
+        {
+            record = new JSONObject();
+            
+            for(String name : names) record.put(name, name + i);
+            
+            records.add(record);
+        }
+        
+        return records;
+    }
+    
+    @Test
+    public void testUnion()
+    {
+        List<Iterable<JSONObject>> sources = List.of(columns(3000, "a", "b"), columns(3000, "b", "c"), columns(0), columns(3000, "a", "b"));
+        ConcatReader reader = new ConcatReader(sources);
+        List<JSONObject> records = new ArrayList<>();
+        
+        reader.setThreads(2);
+        reader.setPeeks(sources);
+        
+        for(JSONObject record : reader) records.add(record);
+        
+        assertEquals(9000, records.size());
+        
+        for(JSONObject record : records) assertEquals(Arrays.asList("a", "b", "c"), new ArrayList<>(record.keySet()));
+        
+        assertEquals("a0", records.get(0).get("a"));
+        assertNull(records.get(0).get("c"));
+        assertNull(records.get(3000).get("a"));
+        assertEquals("c0", records.get(3000).get("c"));
+    }
+    
+    @Test
+    public void testUnionSameColumns()
+    {
+        List<Iterable<JSONObject>> sources = sources(3000, 3000);
+        ConcatReader reader = new ConcatReader(sources);
+        
+        reader.setPeeks(sources);
+        
+        assertEquals(expected(3000, 3000), collect(reader));
+    }
+    
+    @Test
+    public void testUnionLaterColumn()
+    {
+        List<JSONObject> later = new ArrayList<>();
+        List<Iterable<JSONObject>> sources = List.of(columns(3000, "a"), later);
+        ConcatReader reader = new ConcatReader(sources);
+        
+        for(JSONObject record : columns(2, "b")) later.add(record);
+        
+        later.get(1).put("c", "c1");
+        reader.setPeeks(sources);
+        
+        assertThrows(ConvirganceException.class, () -> collect(reader));
+    }
+    
+    @Test
+    public void testError()
+    {
+        List<Iterable<JSONObject>> sources = sources(3000, 3000, 3000);
+        ConcatReader reader;
+        Iterator<JSONObject> iterator;
+        
+        sources.set(1, source(1, 3000, 2500));
+        
+        reader = new ConcatReader(sources);
+        iterator = reader.iterator();
+        
+        for(int i=0; i<3000; i++) iterator.next();
+        
+        assertThrows(ConvirganceException.class, () -> { while(iterator.hasNext()) iterator.next(); });
+        assertFalse(iterator.hasNext());
+    }
+    
+    @Test
+    public void testClose() throws InterruptedException
+    {
+        int size = 100 * ConcatReader.BATCH_SIZE;
+        ConcatReader reader = new ConcatReader(sources(size, size, size, size));
+        Iterator<JSONObject> iterator;
+        int count;
+        
+        reader.setMemory(1);
+        
+        iterator = reader.iterator();
+        
+        for(int i=0; i<10; i++) iterator.next();
+        
+        reader.close();
+        
+        assertFalse(iterator.hasNext());
+        
+        // The workers stop parsing once their current batch is done
+        Thread.sleep(200);
+        
+        count = produced.get();
+        
+        Thread.sleep(200);
+        
+        assertEquals(count, produced.get());
+        assertTrue(count < 4 * size, "Read " + count + " records");
+    }
+}
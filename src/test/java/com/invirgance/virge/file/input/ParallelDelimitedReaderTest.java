@@ -0,0 +1,133 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.input;
+
+import com.invirgance.convirgance.input.CSVInput;
+import com.invirgance.convirgance.json.JSONObject;
+import com.invirgance.convirgance.source.FileSource;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compares chunked parsing against a serial read of the same file, using 
+ * chunks small enough that quoted values span several of them.
+ * 
+ * @author agent
+ */
+public class ParallelDelimitedReaderTest
+{
+    @TempDir
+    File directory;
+    
+    private static String value(Random random)
+    {
+        StringBuilder value = new StringBuilder();
+        String[] parts = new String[]{ "a", "bc", "\n", "\r\n", ",", "\"", "x y", "12", "" };
+        int count = random.nextInt(6);
+        
+        for(int i=0; i<count; i++) value.append(parts[random.nextInt(parts.length)]);
+        
+        return value.toString();
+    }
+    
+    private static String quote(String value)
+    {
+        if(value.indexOf('"') < 0 && value.indexOf(',') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) return value;
+        
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+    
+    private File write(int rows, long seed) throws IOException
+    {
+        File file = new File(directory, "data-" + seed + ".csv");
+        StringBuilder csv = new StringBuilder("id,name,notes\n");
+        Random random = new Random(seed);
+        
+        for(int i=0; i<rows; i++)
+        {
+            csv.append(i).append(',').append(quote(value(random))).append(',').append(quote(value(random))).append('\n');
+        }
+        
+        Files.writeString(file.toPath(), csv, StandardCharsets.UTF_8);
+        
+        return file;
+    }
+    
+    private static List<String> collect(Iterable<JSONObject> records)
+    {
+        List<String> list = new ArrayList<>();
+        
+        for(JSONObject record : records) list.add(record.toString());
+        
+        return list;
+    }
+    
+    @Test
+    public void testQuotedNewlinesAcrossChunks() throws IOException
+    {
+        File file = write(2000, 1);
+        List<String> expected = collect(new CSVInput().read(new FileSource(file)));
+        ParallelDelimitedReader reader;
+        
+        assertEquals(2000, expected.size());
+        
+        for(int size : new int[]{ 7, 16, 61, 257, 4096, 1024 * 1024 })
+        {
+            reader = new ParallelDelimitedReader(file, new CSVInput(), 4, true);
+            
+            reader.setChunkSize(size);
+            
+            assertEquals(expected, collect(reader), "Chunk size " + size);
+        }
+    }
+    
+    @Test
+    public void testSingleThread() throws IOException
+    {
+        File file = write(300, 2);
+        ParallelDelimitedReader reader = new ParallelDelimitedReader(file, new CSVInput(), 1, true);
+        
+        reader.setChunkSize(32);
+        
+        assertEquals(collect(new CSVInput().read(new FileSource(file))), collect(reader));
+    }
+    
+    @Test
+    public void testHeaderOnly() throws IOException
+    {
+        File file = write(0, 3);
+        ParallelDelimitedReader reader = new ParallelDelimitedReader(file, new CSVInput(), 4, true);
+        
+        reader.setChunkSize(8);
+        
+        assertEquals(List.of(), collect(reader));
+    }
+}
@@ -0,0 +1,289 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.join;
+
+import com.invirgance.convirgance.json.JSONObject;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Joins with a memory budget small enough to partition both sides to disk
+ * and compares the result with a nested loop join. Some records on both
+ * sides have no key, which must never match but must still be kept by
+ * left and anti joins.
+ * 
+ * @author agent
+ */
+public class HashJoinTransformerTest
+{
+    @TempDir
+    File directory;
+    
+    private static List<JSONObject> generateLeft(int count, int keys)
+    {
+        List<JSONObject> records = new ArrayList<>();
+        Random random = new Random(11);
+        JSONObject record;
+        
+        for(int i=0; i<count; i++)
+        {
+            record = new JSONObject();
+            
+            record.put("id", "l" + i);
+            
+            if(i % 10 != 0) record.put("key", "k" + random.nextInt(keys));
+            
+            records.add(record);
+        }
+        
+        return records;
+    }
+    
+    private static List<JSONObject> generateRight(int keys)
+    {
+        List<JSONObject> records = new ArrayList<>();
+        JSONObject record;
+        
+        for(int i=0; i<keys; i++)
+        {
+            // Every fifth key has no match and the rest have one to three
+            if(i % 5 == 0) continue;
+            
+            for(int j=0; j<=i%3; j++)
+            {
+                record = new JSONObject();
+                
+                record.put("key", "k" + i);
+                record.put("name", "n" + i + "-" + j);
+                
+                records.add(record);
+            }
+        }
+        
+        for(int i=0; i<10; i++)
+        {
+            record = new JSONObject();
+            
+            record.put("name", "nokey" + i);
+            
+            records.add(record);
+        }
+        
+        return records;
+    }
+    
+    private static List<String> expected(List<JSONObject> left, List<JSONObject> right, HashJoinTransformer.Type type)
+    {
+        Map<Object,List<JSONObject>> matches = new HashMap<>();
+        List<String> list = new ArrayList<>();
+        List<JSONObject> found;
+        
+        for(JSONObject record : right)
+        {
+            if(record.get("key") != null) matches.computeIfAbsent(record.get("key"), key -> new ArrayList<>()).add(record);
+        }
+        
+        for(JSONObject record : left)
+        {
+            found = (record.get("key") == null) ? null : matches.get(record.get("key"));
+            
+            if(found == null)
+            {
+                if(type != HashJoinTransformer.Type.INNER) list.add(record.get("id") + "/" + record.get("key") + "/null");
+                
+                continue;
+            }
+            
+            if(type == HashJoinTransformer.Type.ANTI) continue;
+            
+            for(JSONObject match : found) list.add(record.get("id") + "/" + record.get("key") + "/" + match.get("name"));
+        }
+        
+        return list;
+    }
+    
+    private List<String> join(HashJoinTransformer join, List<JSONObject> left, boolean spill)
+    {
+        Iterator<JSONObject> iterator;
+        List<String> actual = new ArrayList<>();
+        JSONObject record;
+        
+        join.setTemporaryDirectory(directory);
+        join.setThreads(3);
+        
+        if(spill) join.setMemory(16 * 1024);
+        
+        iterator = join.transform(left).iterator();
+        
+        assertEquals(spill, directory.list().length > 0, spill ? "Expected the join to partition" : "Expected the join to fit in memory");
+        
+        while(iterator.hasNext())
+        {
+            record = iterator.next();
+            actual.add(record.get("id") + "/" + record.get("key") + "/" + record.get("name"));
+        }
+        
+        assertEquals(0, directory.list().length);
+        
+        return actual;
+    }
+    
+    private void testPartitioned(HashJoinTransformer.Type type, boolean buildLeft)
+    {
+        List<JSONObject> left = generateLeft(20000, 3000);
+        List<JSONObject> right = generateRight(3000);
+        HashJoinTransformer join = new HashJoinTransformer(right, new String[]{ "key" }, new String[]{ "key" }, type);
+        List<String> expected = expected(left, right, type);
+        List<String> actual;
+        
+        join.setBuildLeft(buildLeft);
+        
+        actual = join(join, left, true);
+        
+        // Partitions are joined one after another and the source order is not kept, so only the contents are compared
+        Collections.sort(expected);
+        Collections.sort(actual);
+        
+        assertEquals(expected, actual);
+    }
+    
+    @Test
+    public void testPartitionedInner()
+    {
+        testPartitioned(HashJoinTransformer.Type.INNER, false);
+    }
+    
+    @Test
+    public void testPartitionedInnerBuildLeft()
+    {
+        testPartitioned(HashJoinTransformer.Type.INNER, true);
+    }
+    
+    @Test
+    public void testPartitionedLeft()
+    {
+        testPartitioned(HashJoinTransformer.Type.LEFT, false);
+    }
+    
+    @Test
+    public void testPartitionedAnti()
+    {
+        testPartitioned(HashJoinTransformer.Type.ANTI, false);
+    }
+    
+    @Test
+    public void testInMemoryKeepsOrder()
+    {
+        List<JSONObject> left = generateLeft(5000, 500);
+        List<JSONObject> right = generateRight(500);
+        HashJoinTransformer join;
+        
+        for(HashJoinTransformer.Type type : HashJoinTransformer.Type.values())
+        {
+            join = new HashJoinTransformer(right, new String[]{ "key" }, new String[]{ "key" }, type);
+            
+            assertEquals(expected(left, right, type), join(join, left, false), type.name());
+        }
+    }
+    
+    @Test
+    public void testDifferentColumns()
+    {
+        List<JSONObject> left = generateLeft(20000, 3000);
+        List<JSONObject> right = generateRight(3000);
+        List<JSONObject> renamed = new ArrayList<>();
+        List<String> expected = expected(left, right, HashJoinTransformer.Type.LEFT);
+        HashJoinTransformer join;
+        List<String> actual;
+        JSONObject record;
+        
+        for(JSONObject original : right)
+        {
+            record = new JSONObject();
+            
+            if(original.get("key") != null) record.put("code", original.get("key"));
+            record.put("name", original.get("name"));
+            record.put("id", "r");
+            
+            renamed.add(record);
+        }
+        
+        Collections.sort(expected);
+        
+        for(boolean spill : new boolean[]{ false, true })
+        {
+            join = new HashJoinTransformer(renamed, new String[]{ "key" }, new String[]{ "code" }, HashJoinTransformer.Type.LEFT);
+            actual = new ArrayList<>();
+            
+            join.setTemporaryDirectory(directory);
+            
+            if(spill) join.setMemory(16 * 1024);
+            
+            for(JSONObject result : join.transform(left))
+            {
+                // The right join column is dropped and a clashing name is prefixed
+                assertFalse(result.containsKey("code"));
+                assertEquals(result.get("name") == null ? null : "r", result.get("right_id"));
+                
+                actual.add(result.get("id") + "/" + result.get("key") + "/" + result.get("name"));
+            }
+            
+            Collections.sort(actual);
+            
+            assertEquals(expected, actual);
+            assertEquals(0, directory.list().length);
+        }
+    }
+    
+    @Test
+    public void testClose()
+    {
+        HashJoinTransformer join = new HashJoinTransformer(generateRight(3000), new String[]{ "key" }, new String[]{ "key" }, HashJoinTransformer.Type.LEFT);
+        Iterator<JSONObject> iterator;
+        
+        join.setMemory(16 * 1024);
+        join.setTemporaryDirectory(directory);
+        
+        iterator = join.transform(generateLeft(20000, 3000)).iterator();
+        
+        for(int i=0; i<10; i++) iterator.next();
+        
+        assertTrue(directory.list().length > 0, "Expected the join to partition");
+        
+        join.close();
+        
+        assertEquals(0, directory.list().length);
+        assertFalse(iterator.hasNext());
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.output;
+
+import com.invirgance.convirgance.input.CSVInput;
+import com.invirgance.convirgance.json.JSONObject;
+import com.invirgance.convirgance.output.CSVOutput;
+import com.invirgance.convirgance.source.FileSource;
+import com.invirgance.convirgance.target.FileTarget;
+import com.invirgance.virge.file.source.CloseableSource;
+import com.invirgance.virge.file.source.FollowFileSource;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Follows a CSV file that starts out empty, is appended to and is then 
+ * rotated, checking that the target is a single valid CSV file at every 
+ * step.
+ * 
+ * @author agent
+ */
+public class FollowWriterTest
+{
+    private static final long TIMEOUT = 10000;
+    
+    @TempDir
+    File directory;
+    
+    private static List<String> collect(Iterable<JSONObject> records)
+    {
+        List<String> list = new ArrayList<>();
+        
+        for(JSONObject record : records) list.add(record.toString());
+        
+        return list;
+    }
+    
+    private List<String> read(String csv) throws IOException
+    {
+        File file = File.createTempFile("expected", ".csv", directory);
+        
+        Files.writeString(file.toPath(), csv, StandardCharsets.UTF_8);
+        
+        return collect(new CSVInput().read(new FileSource(file)));
+    }
+    
+    private static void append(File file, String csv) throws IOException
+    {
+        Files.writeString(file.toPath(), csv, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+    
+    private static void await(String description, Check check) throws Exception
+    {
+        long end = System.currentTimeMillis() + TIMEOUT;
+        
+        while(!check.test())
+        {
+            assertTrue(System.currentTimeMillis() < end, "Timed out waiting for " + description);
+            
+            Thread.sleep(10);
+        }
+    }
+    
+    private static int count(File file)
+    {
+        return collect(new CSVInput().read(new FileSource(file))).size();
+    }
+    
+    @Test
+    public void testIdleAppendAndRotate() throws Exception
+    {
+        File source = new File(directory, "events.csv");
+        File target = new File(directory, "target.csv");
+        FollowFileSource following = new FollowFileSource(source);
+        CloseableSource closeable = new CloseableSource(following);
+        FollowWriter writer = new FollowWriter(new CSVOutput(), new FileTarget(target));
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        AtomicInteger idle = new AtomicInteger();
+        Future<?> result;
+        
+        Files.createFile(source.toPath());
+        
+        writer.setHeaderLine(true);
+        following.setSkipHeader(true);
+        following.setMaxLatency(20);
+        following.setIdleListener(() -> { writer.flush(); idle.incrementAndGet(); });
+        
+        try
+        {
+            result = executor.submit(() -> writer.write(new CSVInput().read(closeable)));
+            
+            // Flushed before the first record (or even the header) exists
+            await("idle flush", () -> idle.get() > 0);
+            
+            assertEquals(0, target.length());
+            
+            append(source, "a,b\n1,2\n");
+            await("first record", () -> count(target) >= 1);
+            
+            assertEquals(read("a,b\n1,2\n"), collect(new CSVInput().read(new FileSource(target))));
+            
+            append(source, "3,4\n");
+            await("appended record", () -> count(target) >= 2);
+            
+            // A new file at the same path with its own header
+            Files.move(source.toPath(), new File(directory, "events.csv.1").toPath());
+            append(source, "a,b\n5,6\n7,8\n");
+            await("rotated records", () -> count(target) >= 3);
+            
+            closeable.close();
+            result.get(TIMEOUT, TimeUnit.MILLISECONDS);
+        }
+        finally
+        {
+            closeable.close();
+            executor.shutdownNow();
+        }
+        
+        assertEquals(read("a,b\n1,2\n3,4\n5,6\n7,8\n"), collect(new CSVInput().read(new FileSource(target))));
+    }
+    
+    @Test
+    public void testNothingRead()
+    {
+        File target = new File(directory, "target.csv");
+        FollowWriter writer = new FollowWriter(new CSVOutput(), new FileTarget(target));
+        
+        writer.setHeaderLine(true);
+        writer.flush();
+        writer.write(List.of());
+        
+        assertEquals(0, target.length());
+    }
+    
+    private interface Check
+    {
+        boolean test() throws Exception;
+    }
+}
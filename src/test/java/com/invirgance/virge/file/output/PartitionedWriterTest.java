@@ -0,0 +1,215 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.output;
+
+import com.invirgance.convirgance.input.CSVInput;
+import com.invirgance.convirgance.input.Input;
+import com.invirgance.convirgance.input.JBINInput;
+import com.invirgance.convirgance.json.JSONObject;
+import com.invirgance.convirgance.output.CSVOutput;
+import com.invirgance.convirgance.output.JBINOutput;
+import com.invirgance.convirgance.source.InputStreamSource;
+import com.invirgance.virge.file.Compression;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Writes more partitions than may be open at once, with buffers small
+ * enough that every partition is closed and reopened many times, and checks
+ * that each partition holds its records in their original order.
+ * 
+ * @author agent
+ */
+public class PartitionedWriterTest
+{
+    @TempDir
+    File directory;
+    
+    private static List<JSONObject> generate(int count, int partitions)
+    {
+        List<JSONObject> records = new ArrayList<>();
+        Random random = new Random(3);
+        JSONObject record;
+        
+        for(int i=0; i<count; i++)
+        {
+            record = new JSONObject();
+            
+            record.put("region", "r" + random.nextInt(partitions));
+            record.put("sequence", String.valueOf(i));
+            
+            records.add(record);
+        }
+        
+        return records;
+    }
+    
+    private static Map<String,List<String>> expected(List<JSONObject> records)
+    {
+        Map<String,List<String>> partitions = new LinkedHashMap<>();
+        
+        for(JSONObject record : records)
+        {
+            partitions.computeIfAbsent("region=" + record.get("region"), key -> new ArrayList<>()).add(record.get("region") + "/" + record.get("sequence"));
+        }
+        
+        return partitions;
+    }
+    
+    private static List<String> read(File file, Input<JSONObject> input, Compression compression) throws IOException
+    {
+        List<String> list = new ArrayList<>();
+        
+        try(FileInputStream in = new FileInputStream(file))
+        {
+            for(JSONObject record : input.read(new InputStreamSource(compression.decompress(in))))
+            {
+                list.add(record.get("region") + "/" + record.get("sequence"));
+            }
+        }
+        
+        return list;
+    }
+    
+    private static long sum(PartitionedWriter writer)
+    {
+        long bytes = 0;
+        
+        for(PartitionedWriter.Partition partition : writer.getPartitions()) bytes += partition.getBytes();
+        
+        return bytes;
+    }
+    
+    private void testEvicted(PartitionedWriter writer, Input<JSONObject> input, Compression compression) throws IOException
+    {
+        List<JSONObject> records = generate(20000, 40);
+        Map<String,List<String>> expected = expected(records);
+        long bytes;
+        long count = 0;
+        
+        writer.setMaxOpen(3);
+        writer.setBufferRecords(7);
+        writer.setMaxBuffered(100);
+        
+        bytes = writer.write(records);
+        
+        assertEquals(sum(writer), bytes);
+        assertEquals(expected.size(), writer.getPartitions().size());
+        
+        for(PartitionedWriter.Partition partition : writer.getPartitions())
+        {
+            assertEquals(partition.getBytes(), partition.getFile().length(), partition.getFile().getPath());
+            assertEquals(expected.get(partition.getFile().getParentFile().getName()), read(partition.getFile(), input, compression), partition.getFile().getPath());
+            
+            count += partition.getRecords();
+        }
+        
+        assertEquals(records.size(), count);
+    }
+    
+    @Test
+    public void testEvictedCSV() throws IOException
+    {
+        PartitionedWriter writer = new PartitionedWriter(new CSVOutput(), new File(directory, "part.csv"), new String[]{ "region" }, Compression.NONE);
+        
+        // Reopened partitions must not repeat the header
+        writer.setHeaderLine(true);
+        
+        testEvicted(writer, new CSVInput(), Compression.NONE);
+    }
+    
+    @Test
+    public void testEvictedGzip() throws IOException
+    {
+        PartitionedWriter writer = new PartitionedWriter(new JBINOutput(), new File(directory, "part.jbin.gz"), new String[]{ "region" }, Compression.GZIP);
+        
+        testEvicted(writer, new JBINInput(), Compression.GZIP);
+    }
+    
+    @Test
+    public void testDirectoryNames()
+    {
+        PartitionedWriter writer = new PartitionedWriter(new JBINOutput(), new File(directory, "part.jbin"), new String[]{ "region", "code" }, Compression.NONE);
+        Object[] values = new Object[]{ null, "", "%null", "%empty", "a/b", "..", "50%", 42, "42" };
+        List<JSONObject> records = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        JSONObject record;
+        
+        for(Object value : values)
+        {
+            record = new JSONObject();
+            
+            record.put("region", value);
+            record.put("code", "x=y");
+            
+            records.add(record);
+        }
+        
+        writer.write(records);
+        
+        for(PartitionedWriter.Partition partition : writer.getPartitions())
+        {
+            assertEquals("code=x%3Dy", partition.getFile().getParentFile().getName());
+            assertEquals(directory.getAbsoluteFile(), partition.getFile().getParentFile().getParentFile().getParentFile());
+            assertTrue(partition.getFile().isFile(), partition.getFile().getPath());
+            
+            names.add(partition.getFile().getParentFile().getParentFile().getName());
+        }
+        
+        // 42 and "42" share a partition, every other value has its own
+        assertEquals(values.length - 1, writer.getPartitions().size());
+        assertEquals(Set.of("region=%null", "region=%empty", "region=%25null", "region=%25empty", "region=a%2Fb", "region=%2E%2E", "region=50%25", "region=42"), names);
+    }
+    
+    @Test
+    public void testColumnNames()
+    {
+        PartitionedWriter writer = new PartitionedWriter(new JBINOutput(), new File(directory, "part.jbin"), new String[]{ "a/b", "x=y", ".." }, Compression.NONE);
+        JSONObject record = new JSONObject();
+        File file;
+        
+        record.put("a/b", "1");
+        record.put("x=y", "2");
+        record.put("..", "3");
+        
+        writer.write(List.of(record));
+        
+        file = writer.getPartitions().iterator().next().getFile();
+        
+        // Each column is a single directory below the target's directory
+        assertEquals(new File(directory, "a%2Fb=1/x%3Dy=2/%2E%2E=3/part.jbin").getAbsoluteFile(), file);
+        assertTrue(file.isFile(), file.getPath());
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.output;
+
+import com.invirgance.convirgance.input.CSVInput;
+import com.invirgance.convirgance.input.Input;
+import com.invirgance.convirgance.input.JBINInput;
+import com.invirgance.convirgance.json.JSONObject;
+import com.invirgance.convirgance.output.CSVOutput;
+import com.invirgance.convirgance.output.JBINOutput;
+import com.invirgance.convirgance.source.FileSource;
+import com.invirgance.convirgance.target.FileTarget;
+import com.invirgance.convirgance.target.Target;
+import com.invirgance.virge.file.Compression;
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Writes many small shards and checks that every shard is complete, that 
+ * the shards hold the records in their original order, and that shards are
+ * closed as soon as they are written rather than at the end.
+ * 
+ * @author agent
+ */
+public class ShardedWriterTest
+{
+    @TempDir
+    File directory;
+    
+    private final AtomicInteger open = new AtomicInteger();
+    private final AtomicInteger opened = new AtomicInteger();
+    private int maxOpen;
+    
+    private static List<JSONObject> generate(int count)
+    {
+        List<JSONObject> records = new ArrayList<>();
+        JSONObject record;
+        
+        for(int i=0; i<count; i++)
+        {
+            record = new JSONObject();
+            
+            record.put("id", String.valueOf(i));
+            record.put("name", "name " + i);
+            
+            records.add(record);
+        }
+        
+        return records;
+    }
+    
+    private static List<String> collect(Iterable<JSONObject> records)
+    {
+        List<String> list = new ArrayList<>();
+        
+        for(JSONObject record : records) list.add(record.get("id") + "/" + record.get("name"));
+        
+        return list;
+    }
+    
+    private Target track(File file)
+    {
+        Target target = new FileTarget(file);
+        
+        return new Target() {
+            
+            @Override
+            public OutputStream getOutputStream()
+            {
+                opened.incrementAndGet();
+                
+                synchronized(ShardedWriterTest.this)
+                {
+                    maxOpen = Math.max(maxOpen, open.incrementAndGet());
+                }
+                
+                return new FilterOutputStream(target.getOutputStream()) {
+                    
+                    private boolean closed;
+                    
+                    @Override
+                    public void write(byte[] data, int offset, int length) throws IOException
+                    {
+                        out.write(data, offset, length);
+                    }
+                    
+                    @Override
+                    public void close() throws IOException
+                    {
+                        if(!closed) open.decrementAndGet();
+                        
+                        closed = true;
+                        
+                        super.close();
+                    }
+                };
+            }
+        };
+    }
+    
+    private List<String> read(List<ShardedWriter.Shard> shards, Input<JSONObject> input)
+    {
+        List<String> list = new ArrayList<>();
+        
+        for(ShardedWriter.Shard shard : shards) 
+        {
+            assertTrue(shard.getFile().exists(), shard.getFile().getName());
+            assertEquals(shard.getBytes(), shard.getFile().length(), shard.getFile().getName());
+            assertEquals(shard.getRecords(), collect(input.read(new FileSource(shard.getFile()))).size(), shard.getFile().getName());
+            
+            list.addAll(collect(input.read(new FileSource(shard.getFile()))));
+        }
+        
+        return list;
+    }
+    
+    @Test
+    public void testManySmallShards()
+    {
+        List<JSONObject> records = generate(5000);
+        ShardedWriter writer = new ShardedWriter(new CSVOutput(), new File(directory, "data.csv"), Compression.NONE);
+        List<ShardedWriter.Shard> shards;
+        
+        writer.setSplitRows(3);
+        writer.setMaxWriters(4);
+        writer.setHeaderLine(true);
+        writer.setTargets(this::track);
+        
+        shards = writer.write(records);
+        
+        assertEquals(1667, shards.size());
+        assertEquals(1667, opened.get());
+        assertEquals(0, open.get());
+        assertEquals(1, maxOpen);
+        assertEquals(collect(records), read(shards, new CSVInput()));
+        assertTrue(writer.getManifestFile().exists());
+    }
+    
+    @Test
+    public void testSplitBytes()
+    {
+        List<JSONObject> records = generate(20000);
+        ShardedWriter writer = new ShardedWriter(new JBINOutput(), new File(directory, "data.jbin"), Compression.NONE);
+        List<ShardedWriter.Shard> shards;
+        
+        writer.setSplitBytes(4096);
+        writer.setMaxWriters(4);
+        writer.setTargets(this::track);
+        
+        shards = writer.write(records);
+        
+        assertTrue(shards.size() > 10, "Only " + shards.size() + " shards");
+        assertEquals(shards.size(), opened.get());
+        assertEquals(0, open.get());
+        assertEquals(1, maxOpen);
+        assertEquals(collect(records), read(shards, new JBINInput()));
+    }
+    
+    @Test
+    public void testEmpty()
+    {
+        ShardedWriter writer = new ShardedWriter(new JBINOutput(), new File(directory, "empty.jbin"), Compression.NONE);
+        List<ShardedWriter.Shard> shards;
+        
+        writer.setSplitRows(10);
+        writer.setTargets(this::track);
+        
+        shards = writer.write(List.of());
+        
+        assertEquals(1, shards.size());
+        assertEquals(0, open.get());
+        assertEquals(List.of(), read(shards, new JBINInput()));
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.pipeline;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Passes records between two threads and checks ordering, that a full queue
+ * blocks the producer, and that cancelling wakes either side.
+ * 
+ * @author agent
+ */
+public class BatchQueueTest
+{
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+    
+    @Test
+    public void testOrder()
+    {
+        BatchQueue<Integer> queue = new BatchQueue<>(2, 7);
+        List<Integer> expected = new ArrayList<>();
+        List<Integer> actual = new ArrayList<>();
+        
+        for(int i=0; i<10000; i++) expected.add(i);
+        
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            Thread producer = Thread.ofVirtual().start(() -> {
+                for(int i=0; i<10000; i++) queue.add(i);
+                
+                queue.close();
+            });
+            
+            for(int value : queue) actual.add(value);
+            
+            producer.join();
+        });
+        
+        assertEquals(expected, actual);
+        assertThrows(IllegalStateException.class, queue::iterator);
+    }
+    
+    @Test
+    public void testBackpressure()
+    {
+        BatchQueue<Integer> queue = new BatchQueue<>(2, 10);
+        AtomicInteger added = new AtomicInteger();
+        
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            Thread producer = Thread.ofVirtual().start(() -> {
+                for(int i=0; i<1000; i++)
+                {
+                    queue.add(i);
+                    added.incrementAndGet();
+                }
+                
+                queue.close();
+            });
+            Iterator<Integer> iterator;
+            
+            // Two full batches fit in the queue and the third blocks on its last record
+            while(producer.getState() != Thread.State.WAITING && producer.getState() != Thread.State.TIMED_WAITING) Thread.sleep(5);
+            
+            assertEquals(29, added.get());
+            
+            iterator = queue.iterator();
+            
+            for(int i=0; i<1000; i++) assertEquals(i, iterator.next());
+            
+            assertFalse(iterator.hasNext());
+            
+            producer.join();
+        });
+    }
+    
+    @Test
+    public void testCancelProducer()
+    {
+        BatchQueue<Integer> queue = new BatchQueue<>(1, 1);
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        RuntimeException cause = new RuntimeException("Consumer failed");
+        
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            Thread producer = Thread.ofVirtual().start(() -> {
+                try
+                {
+                    for(int i=0; i<10; i++) queue.add(i);
+                }
+                catch(Throwable t)
+                {
+                    error.set(t);
+                }
+            });
+            
+            while(producer.getState() != Thread.State.WAITING && producer.getState() != Thread.State.TIMED_WAITING) Thread.sleep(5);
+            
+            queue.cancel(cause);
+            producer.join();
+        });
+        
+        assertInstanceOf(CancellationException.class, error.get());
+        assertEquals(cause, error.get().getCause());
+        assertTrue(queue.isCancelled());
+    }
+    
+    @Test
+    public void testCancelConsumer()
+    {
+        BatchQueue<Integer> queue = new BatchQueue<>(1, 1);
+        RuntimeException cause = new RuntimeException("Producer failed");
+        
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            Thread canceller = Thread.ofVirtual().start(() -> {
+                queue.add(1);
+                
+                try
+                {
+                    Thread.sleep(50);
+                }
+                catch(InterruptedException e)
+                {
+                    return;
+                }
+                
+                queue.cancel(cause);
+            });
+            Iterator<Integer> iterator = queue.iterator();
+            
+            assertEquals(1, iterator.next());
+            assertEquals(cause, assertThrows(CancellationException.class, iterator::hasNext).getCause());
+            
+            canceller.join();
+        });
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.pipeline;
+
+import com.invirgance.convirgance.ConvirganceException;
+import com.invirgance.convirgance.json.JSONObject;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+/**
+ * Checks that every record reaches exactly one worker with its position in 
+ * the input, and that a failing worker ends the run with its error.
+ * 
+ * @author agent
+ */
+public class BatchWorkersTest
+{
+    private static List<JSONObject> generate(int count)
+    {
+        List<JSONObject> records = new ArrayList<>();
+        JSONObject record;
+        
+        for(int i=0; i<count; i++)
+        {
+            record = new JSONObject();
+            
+            record.put("id", i);
+            records.add(record);
+        }
+        
+        return records;
+    }
+    
+    private static void testPositions(int threads)
+    {
+        BatchWorkers<BitSet> workers = new BatchWorkers<>("test", threads, BitSet::new, (seen, batch, position) -> {
+            for(JSONObject record : batch) 
+            {
+                assertEquals(position++, (long)(Integer)record.get("id"));
+                seen.set((Integer)record.get("id"));
+            }
+            
+            return seen;
+        });
+        BitSet all = new BitSet();
+        int total = 0;
+        
+        workers.setBatchSize(100);
+        
+        for(BitSet seen : workers.run(generate(10050).iterator()))
+        {
+            total += seen.cardinality();
+            all.or(seen);
+        }
+        
+        assertEquals(10050, total);
+        assertEquals(10050, all.cardinality());
+    }
+    
+    @Test
+    public void testParallel()
+    {
+        testPositions(4);
+    }
+    
+    @Test
+    public void testSerial()
+    {
+        testPositions(1);
+    }
+    
+    @Test
+    public void testFailure()
+    {
+        BatchWorkers<Integer> workers = new BatchWorkers<>("test", 4, () -> 0, (count, batch, position) -> {
+            if(position >= 5000) throw new ConvirganceException("Worker failed");
+            
+            return count + batch.size();
+        });
+        
+        workers.setBatchSize(100);
+        
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            assertEquals("Worker failed", assertThrows(ConvirganceException.class, () -> workers.run(generate(100000).iterator())).getMessage());
+        });
+    }
+}
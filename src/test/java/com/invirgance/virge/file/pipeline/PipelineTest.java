@@ -0,0 +1,238 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.pipeline;
+
+import com.invirgance.convirgance.ConvirganceException;
+import com.invirgance.convirgance.json.JSONObject;
+import com.invirgance.convirgance.transform.Transformer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs small pipelines and checks that records arrive in order, that a 
+ * failure in any stage or a writer that stops early ends every stage, and
+ * that a slow writer holds back the reader. Every run is bounded by a 
+ * timeout, and run() only returns once all of its threads have ended.
+ * 
+ * @author agent
+ */
+public class PipelineTest
+{
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+    
+    private final AtomicInteger produced = new AtomicInteger();
+    
+    /**
+     * Generates records, failing at the given record unless it is negative
+     */
+    private Iterable<JSONObject> generate(int count, int failAt)
+    {
+        return () -> new Iterator<JSONObject>() {
+            
+            private int index;
+            
+            @Override
+            public boolean hasNext()
+            {
+                return (index < count);
+            }
+
+            @Override
+            public JSONObject next()
+            {
+                JSONObject record = new JSONObject();
+                
+                if(index == failAt) throw new ConvirganceException("Read failed");
+                
+                record.put("id", index++);
+                produced.incrementAndGet();
+                
+                return record;
+            }
+        };
+    }
+    
+    /**
+     * Passes records through, failing at the given id unless it is negative
+     */
+    private static Transformer fail(int failAt)
+    {
+        return new Transformer() {
+            
+            @Override
+            public Iterable<JSONObject> transform(Iterable<JSONObject> iterable) throws ConvirganceException
+            {
+                return () -> new Iterator<JSONObject>() {
+                    
+                    private final Iterator<JSONObject> iterator = iterable.iterator();
+                    
+                    @Override
+                    public boolean hasNext()
+                    {
+                        return iterator.hasNext();
+                    }
+
+                    @Override
+                    public JSONObject next()
+                    {
+                        JSONObject record = iterator.next();
+                        
+                        if((Integer)record.get("id") == failAt) throw new ConvirganceException("Transform failed");
+                        
+                        return record;
+                    }
+                };
+            }
+        };
+    }
+    
+    private static Pipeline pipeline()
+    {
+        Pipeline pipeline = new Pipeline();
+        
+        pipeline.setBatchSize(7);
+        pipeline.setCapacity(2);
+        
+        return pipeline;
+    }
+    
+    private static List<Integer> run(Iterable<JSONObject> records, List<Transformer> transformers)
+    {
+        List<Integer> ids = new ArrayList<>();
+        
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            pipeline().run(records, transformers, written -> {
+                for(JSONObject record : written) ids.add((Integer)record.get("id"));
+            });
+        });
+        
+        return ids;
+    }
+    
+    private static String fails(Iterable<JSONObject> records, List<Transformer> transformers, Consumer<Iterable<JSONObject>> writer)
+    {
+        return assertTimeoutPreemptively(TIMEOUT, () -> {
+            return assertThrows(ConvirganceException.class, () -> pipeline().run(records, transformers, writer)).getMessage();
+        });
+    }
+    
+    @Test
+    public void testOrder()
+    {
+        List<Integer> expected = new ArrayList<>();
+        
+        for(int i=0; i<10000; i++) expected.add(i);
+        
+        assertEquals(expected, run(generate(10000, -1), List.of()));
+        assertEquals(expected, run(generate(10000, -1), List.of(fail(-1), fail(-1))));
+        assertEquals(List.of(), run(generate(0, -1), List.of(fail(-1))));
+    }
+    
+    @Test
+    public void testReadFailure()
+    {
+        Consumer<Iterable<JSONObject>> writer = records -> {
+            for(JSONObject record : records) assertTrue(record.containsKey("id"));
+        };
+        
+        assertEquals("Read failed", fails(generate(10000, 5000), List.of(fail(-1)), writer));
+    }
+    
+    @Test
+    public void testTransformFailure()
+    {
+        Consumer<Iterable<JSONObject>> writer = records -> {
+            for(JSONObject record : records) assertTrue(record.containsKey("id"));
+        };
+        
+        // The reader is left blocked on a full queue unless it is cancelled
+        assertEquals("Transform failed", fails(generate(100000, -1), List.of(fail(5000)), writer));
+        assertTrue(produced.get() < 100000);
+    }
+    
+    @Test
+    public void testWriteFailure()
+    {
+        Consumer<Iterable<JSONObject>> writer = records -> {
+            for(JSONObject record : records)
+            {
+                if((Integer)record.get("id") == 100) throw new ConvirganceException("Write failed");
+            }
+        };
+        
+        assertEquals("Write failed", fails(generate(100000, -1), List.of(fail(-1)), writer));
+        assertTrue(produced.get() < 100000);
+    }
+    
+    @Test
+    public void testWriterStopsEarly()
+    {
+        List<Integer> ids = new ArrayList<>();
+        
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            pipeline().run(generate(100000, -1), List.of(fail(-1)), records -> {
+                for(JSONObject record : records)
+                {
+                    ids.add((Integer)record.get("id"));
+                    
+                    if(ids.size() == 10) return;
+                }
+            });
+        });
+        
+        assertEquals(List.of(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), ids);
+        assertTrue(produced.get() < 100000);
+    }
+    
+    @Test
+    public void testBackpressure()
+    {
+        AtomicInteger ahead = new AtomicInteger();
+        
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            pipeline().run(generate(2000, -1), List.of(fail(-1)), records -> {
+                int consumed = 0;
+                
+                for(JSONObject record : records)
+                {
+                    consumed++;
+                    ahead.accumulateAndGet(produced.get() - consumed, Math::max);
+                    
+                    if(consumed % 100 == 0) Thread.yield();
+                }
+            });
+        });
+        
+        // Each of the two queues holds its capacity plus a batch being filled and one being read
+        assertTrue(ahead.get() <= 2 * (2 + 2) * 7 + 1, "Reader ran " + ahead.get() + " records ahead");
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.profile;
+
+import com.invirgance.convirgance.json.JSONObject;
+import com.invirgance.virge.file.transform.ColumnType;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Profiles columns whose values look like different types and checks that
+ * the minimum and maximum follow the inferred type of the whole column.
+ * 
+ * @author agent
+ */
+public class ColumnProfileTest
+{
+    private static ColumnProfile profile(Object... values)
+    {
+        ColumnProfile profile = new ColumnProfile("column", 5);
+        JSONObject record;
+        
+        for(Object value : values)
+        {
+            record = new JSONObject();
+            
+            record.put("column", value);
+            profile.add(record);
+        }
+        
+        return profile;
+    }
+    
+    @Test
+    public void testLeadingZeros()
+    {
+        ColumnProfile profile = profile("10001", "99501", "00501", "02134");
+        
+        assertEquals(ColumnType.STRING, profile.getType());
+        assertEquals("00501", profile.getMin());
+        assertEquals("99501", profile.getMax());
+    }
+    
+    @Test
+    public void testNumbers()
+    {
+        ColumnProfile profile = profile("10", "9", "", 100L, "-2.5");
+        
+        assertEquals(ColumnType.DOUBLE, profile.getType());
+        assertEquals("-2.5", profile.getMin());
+        assertEquals(100L, profile.getMax());
+    }
+    
+    @Test
+    public void testMerge()
+    {
+        ColumnProfile profile = profile("10001", "99501");
+        
+        assertEquals("10001", profile.getMin());
+        
+        // Text in another part of the input changes how the whole column compares
+        profile.merge(profile("00501", "9"));
+        
+        assertEquals(ColumnType.STRING, profile.getType());
+        assertEquals("00501", profile.getMin());
+        assertEquals("99501", profile.getMax());
+    }
+    
+    @Test
+    public void testEmpty()
+    {
+        ColumnProfile profile = profile(null, "");
+        
+        assertEquals(ColumnType.NULL, profile.getType());
+        assertNull(profile.getMin());
+        assertNull(profile.getMax());
+    }
+}
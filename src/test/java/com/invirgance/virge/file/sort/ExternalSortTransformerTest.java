@@ -0,0 +1,245 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.sort;
+
+import com.invirgance.convirgance.ConvirganceException;
+import com.invirgance.convirgance.json.JSONObject;
+import com.invirgance.virge.file.transform.ColumnType;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Sorts with a memory budget small enough to spill many runs and compares 
+ * the result with a stable in-memory sort. Zip codes check that a column
+ * with leading zeros is compared as text in every run.
+ * 
+ * @author agent
+ */
+public class ExternalSortTransformerTest
+{
+    @TempDir
+    File directory;
+    
+    private static List<JSONObject> generate(int count)
+    {
+        List<JSONObject> records = new ArrayList<>();
+        Random random = new Random(42);
+        JSONObject record;
+        
+        for(int i=0; i<count; i++)
+        {
+            record = new JSONObject();
+            
+            // Few distinct keys so that stability decides the order of most records
+            record.put("key", String.valueOf(random.nextInt(20)));
+            record.put("group", random.nextBoolean() ? "a" : "b");
+            record.put("sequence", i);
+            
+            records.add(record);
+        }
+        
+        return records;
+    }
+    
+    private static List<JSONObject> generateZips(int count)
+    {
+        List<JSONObject> records = new ArrayList<>();
+        Random random = new Random(7);
+        JSONObject record;
+        
+        for(int i=0; i<count; i++)
+        {
+            record = new JSONObject();
+            
+            // About one in ten has a leading zero, the rest look like numbers
+            record.put("key", String.format("%05d", random.nextInt(100000)));
+            record.put("group", "z");
+            record.put("sequence", i);
+            
+            records.add(record);
+        }
+        
+        return records;
+    }
+    
+    private static List<String> collect(Iterable<JSONObject> records)
+    {
+        List<String> list = new ArrayList<>();
+        
+        for(JSONObject record : records) list.add(record.get("key") + "/" + record.get("group") + "/" + record.get("sequence"));
+        
+        return list;
+    }
+    
+    private void testSpilled(int fanIn)
+    {
+        List<JSONObject> records = generate(20000);
+        List<JSONObject> expected = new ArrayList<>(records);
+        List<SortKey> keys = SortKey.parse("key,group:desc");
+        ExternalSortTransformer sort = new ExternalSortTransformer(keys);
+        Iterator<JSONObject> iterator;
+        List<String> actual = new ArrayList<>();
+        JSONObject record;
+        
+        expected.sort(Comparator.comparing((JSONObject item) -> Long.parseLong((String)item.get("key"))).thenComparing(item -> (String)item.get("group"), Comparator.reverseOrder()));
+        
+        sort.setMemory(64 * 1024);
+        sort.setFanIn(fanIn);
+        sort.setTemporaryDirectory(directory);
+        
+        iterator = sort.transform(records).iterator();
+        
+        assertTrue(directory.list().length > 1, "Expected the sort to spill several runs");
+        assertTrue(directory.list().length <= fanIn, "Expected no more runs than the fan-in");
+        
+        while(iterator.hasNext())
+        {
+            record = iterator.next();
+            actual.add(record.get("key") + "/" + record.get("group") + "/" + record.get("sequence"));
+        }
+        
+        assertEquals(collect(expected), actual);
+        assertEquals(0, directory.list().length);
+    }
+    
+    @Test
+    public void testStableAcrossRuns()
+    {
+        testSpilled(ExternalSortTransformer.DEFAULT_FAN_IN);
+    }
+    
+    @Test
+    public void testStableAcrossMergePasses()
+    {
+        testSpilled(3);
+    }
+    
+    @Test
+    public void testClose()
+    {
+        ExternalSortTransformer sort = new ExternalSortTransformer(SortKey.parse("key"));
+        Iterator<JSONObject> iterator;
+        
+        sort.setMemory(64 * 1024);
+        sort.setTemporaryDirectory(directory);
+        
+        iterator = sort.transform(generate(20000)).iterator();
+        
+        for(int i=0; i<10; i++) iterator.next();
+        
+        assertTrue(directory.list().length > 1, "Expected the sort to spill several runs");
+        
+        sort.close();
+        
+        assertEquals(0, directory.list().length);
+        assertFalse(iterator.hasNext());
+    }
+    
+    @Test
+    public void testInMemory()
+    {
+        List<JSONObject> records = generate(1000);
+        List<JSONObject> expected = new ArrayList<>(records);
+        ExternalSortTransformer sort = new ExternalSortTransformer(SortKey.parse("key:desc"));
+        
+        expected.sort(Comparator.comparing((JSONObject item) -> Long.parseLong((String)item.get("key"))).reversed());
+        
+        sort.setTemporaryDirectory(directory);
+        
+        assertEquals(collect(expected), collect(sort.transform(records)));
+        assertEquals(0, directory.list().length);
+    }
+    
+    private List<String> sort(List<JSONObject> records, String spec)
+    {
+        ExternalSortTransformer sort = new ExternalSortTransformer(SortKey.parse(spec));
+        List<String> actual;
+        
+        sort.setMemory(64 * 1024);
+        sort.setTemporaryDirectory(directory);
+        
+        actual = collect(sort.transform(records));
+        
+        assertEquals(0, directory.list().length);
+        
+        return actual;
+    }
+    
+    @Test
+    public void testLeadingZeros()
+    {
+        List<JSONObject> records = generateZips(20000);
+        List<JSONObject> expected = new ArrayList<>(records);
+        
+        expected.sort(Comparator.comparing(item -> (String)item.get("key")));
+        
+        assertEquals(collect(expected), sort(records, "key"));
+        assertEquals(collect(expected), sort(records, "key:str"));
+        
+        // The leading zeros only matter for the order of equal numbers
+        expected.sort(Comparator.comparing(item -> Long.parseLong((String)item.get("key"))));
+        
+        assertEquals(collect(expected), sort(records, "key:num"));
+    }
+    
+    @Test
+    public void testExplicitType()
+    {
+        List<JSONObject> records = generate(20000);
+        List<JSONObject> expected = new ArrayList<>(records);
+        
+        expected.sort(Comparator.comparing((JSONObject item) -> (String)item.get("key")).reversed());
+        
+        assertEquals(collect(expected), sort(records, "key:str:desc"));
+        assertEquals(collect(expected), sort(records, "key:desc:str"));
+    }
+    
+    @Test
+    public void testParse()
+    {
+        List<SortKey> keys = SortKey.parse("zip:str, age:num:desc,name:desc,a:b:asc");
+        
+        assertEquals("zip", keys.get(0).getColumn());
+        assertEquals(ColumnType.STRING, keys.get(0).getType());
+        assertFalse(keys.get(0).isDescending());
+        assertEquals("age", keys.get(1).getColumn());
+        assertTrue(keys.get(1).isDescending());
+        assertEquals(ColumnType.DOUBLE, keys.get(1).getType());
+        assertNull(keys.get(2).getType());
+        assertTrue(keys.get(2).isDescending());
+        assertEquals("a:b", keys.get(3).getColumn());
+        
+        assertThrows(ConvirganceException.class, () -> SortKey.parse("name:up"));
+    }
+}
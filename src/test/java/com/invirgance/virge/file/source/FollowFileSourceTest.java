@@ -0,0 +1,178 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.source;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * Follows a file from a background thread while the test appends to,
+ * truncates and rotates it.
+ * 
+ * @author agent
+ */
+public class FollowFileSourceTest
+{
+    private static final long TIMEOUT = 10_000;
+    
+    @TempDir
+    File directory;
+    
+    private final StringBuffer output = new StringBuffer();
+    
+    private InputStream in;
+    private Thread reader;
+    
+    @AfterEach
+    public void stop() throws Exception
+    {
+        if(in != null) in.close();
+        if(reader != null) reader.join(TIMEOUT);
+    }
+    
+    private File file()
+    {
+        return new File(directory, "data.log");
+    }
+    
+    private void write(String text) throws IOException
+    {
+        Files.write(file().toPath(), text.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+    
+    private void follow(boolean skipHeader)
+    {
+        FollowFileSource source = new FollowFileSource(file());
+        
+        source.setMaxLatency(20);
+        source.setSkipHeader(skipHeader);
+        
+        in = source.getInputStream();
+        reader = new Thread(() -> {
+            int value;
+            
+            try
+            {
+                while((value = in.read()) >= 0) output.append((char)value);
+            }
+            catch(IOException e)
+            {
+                // Closing the stream may interrupt a poll of the file
+            }
+        });
+        
+        reader.setDaemon(true);
+        reader.start();
+    }
+    
+    private void await(String expected) throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        
+        while(!output.toString().equals(expected) && System.currentTimeMillis() < deadline) Thread.sleep(10);
+        
+        assertEquals(expected, output.toString());
+    }
+    
+    @Test
+    public void testCompleteLines() throws Exception
+    {
+        write("one\ntw");
+        follow(false);
+        
+        await("one\n");
+        
+        // The partial line is held back until it is finished
+        Thread.sleep(100);
+        assertEquals("one\n", output.toString());
+        
+        write("o\nthree\n");
+        
+        await("one\ntwo\nthree\n");
+    }
+    
+    @Test
+    public void testTruncated() throws Exception
+    {
+        write("one\ntwo\n");
+        follow(false);
+        
+        await("one\ntwo\n");
+        
+        Files.write(file().toPath(), "six\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.TRUNCATE_EXISTING);
+        
+        await("one\ntwo\nsix\n");
+    }
+    
+    @Test
+    public void testRotated() throws Exception
+    {
+        write("one\ntwo");
+        follow(false);
+        
+        await("one\n");
+        
+        // The unterminated last line of the old file is kept and ended
+        Files.move(file().toPath(), new File(directory, "data.log.1").toPath());
+        write("three\n");
+        
+        await("one\ntwo\nthree\n");
+    }
+    
+    @Test
+    public void testRotatedSkipHeader() throws Exception
+    {
+        write("header\none\n");
+        follow(true);
+        
+        await("header\none\n");
+        
+        Files.move(file().toPath(), new File(directory, "data.log.1").toPath());
+        write("header\ntwo\n");
+        
+        await("header\none\ntwo\n");
+    }
+    
+    @Test
+    public void testClose() throws Exception
+    {
+        write("one\n");
+        follow(false);
+        
+        await("one\n");
+        
+        in.close();
+        reader.join(TIMEOUT);
+        
+        assertFalse(reader.isAlive());
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.source;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Downloads from a local HTTP server that can ignore ranges, hide the 
+ * length or change the resource part way through a download.
+ * 
+ * @author agent
+ */
+public class RangeURLSourceTest
+{
+    private static final int RANGE_SIZE = 1024;
+    
+    private HttpServer server;
+    private final AtomicInteger requests = new AtomicInteger();
+    
+    private volatile byte[] data;
+    private volatile String etag = "\"v1\"";
+    private volatile boolean ranges = true;
+    private volatile boolean knownLength = true;
+    private volatile boolean ifRange = true;
+    private volatile byte[] changed;
+    private volatile int maxRange = Integer.MAX_VALUE;
+    
+    @BeforeEach
+    public void start() throws IOException
+    {
+        data = random(10 * RANGE_SIZE + 123, 1);
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        
+        server.createContext("/data", this::handle);
+        server.start();
+    }
+    
+    @AfterEach
+    public void stop()
+    {
+        server.stop(0);
+    }
+    
+    private static byte[] random(int length, long seed)
+    {
+        byte[] bytes = new byte[length];
+        
+        new Random(seed).nextBytes(bytes);
+        
+        return bytes;
+    }
+    
+    private void send(HttpExchange exchange, int status, byte[] body, int offset, int length) throws IOException
+    {
+        exchange.getResponseHeaders().set("ETag", etag);
+        exchange.sendResponseHeaders(status, (length == 0) ? -1 : length);
+        
+        try(OutputStream out = exchange.getResponseBody())
+        {
+            out.write(body, offset, length);
+        }
+    }
+    
+    private void handle(HttpExchange exchange) throws IOException
+    {
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        String validator = exchange.getRequestHeaders().getFirst("If-Range");
+        byte[] body = data;
+        String[] bounds;
+        int start;
+        int end;
+        
+        // The resource is replaced after the first request
+        if(requests.incrementAndGet() > 1 && changed != null)
+        {
+            body = changed;
+            etag = "\"v2\"";
+        }
+        
+        if(!ranges || range == null || (ifRange && validator != null && !validator.equals(etag)))
+        {
+            send(exchange, 200, body, 0, body.length);
+            return;
+        }
+        
+        bounds = range.substring("bytes=".length()).split("-", -1);
+        start = Integer.parseInt(bounds[0]);
+        end = bounds[1].isEmpty() ? body.length - 1 : Math.min(Integer.parseInt(bounds[1]), body.length - 1);
+        end = (int)Math.min(end, (long)start + maxRange - 1);
+        
+        if(start >= body.length)
+        {
+            exchange.getResponseHeaders().set("Content-Range", "bytes */" + body.length);
+            send(exchange, 416, body, 0, 0);
+            return;
+        }
+        
+        exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/" + (knownLength ? body.length : "*"));
+        send(exchange, 206, body, start, end - start + 1);
+    }
+    
+    private byte[] download() throws IOException
+    {
+        RangeURLSource source = new RangeURLSource(URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/data").toURL());
+        
+        source.setRangeSize(RANGE_SIZE);
+        source.setConnections(3);
+        
+        try(InputStream in = source.getInputStream())
+        {
+            return in.readAllBytes();
+        }
+    }
+    
+    @Test
+    public void testRanges() throws IOException
+    {
+        assertArrayEquals(data, download());
+        assertTrue(requests.get() > 10);
+    }
+    
+    @Test
+    public void testRangeIgnored() throws IOException
+    {
+        ranges = false;
+        
+        assertArrayEquals(data, download());
+        assertEquals(1, requests.get());
+    }
+    
+    @Test
+    public void testUnknownLength() throws IOException
+    {
+        knownLength = false;
+        
+        assertArrayEquals(data, download());
+        assertEquals(2, requests.get());
+    }
+    
+    @Test
+    public void testShortRanges() throws IOException
+    {
+        // Less than a range, and not a divisor of it, so every range is requested more than once
+        maxRange = 300;
+        
+        assertArrayEquals(data, download());
+        assertTrue(requests.get() > data.length / 300);
+    }
+    
+    @Test
+    public void testShortRangesUnknownLength() throws IOException
+    {
+        maxRange = 300;
+        knownLength = false;
+        
+        assertArrayEquals(data, download());
+    }
+    
+    @Test
+    public void testSmall() throws IOException
+    {
+        data = random(100, 2);
+        
+        assertArrayEquals(data, download());
+    }
+    
+    @Test
+    public void testEmpty() throws IOException
+    {
+        data = new byte[0];
+        
+        assertArrayEquals(data, download());
+    }
+    
+    @Test
+    public void testChanged()
+    {
+        changed = random(data.length, 3);
+        
+        assertThrows(IOException.class, this::download);
+    }
+    
+    @Test
+    public void testChangedIfRangeIgnored()
+    {
+        changed = random(data.length, 3);
+        ifRange = false;
+        
+        assertThrows(IOException.class, this::download);
+    }
+    
+    @Test
+    public void testChangedUnknownLength() throws IOException
+    {
+        // Nothing has been returned yet, so the new version is downloaded whole
+        changed = random(data.length, 3);
+        knownLength = false;
+        
+        assertArrayEquals(changed, download());
+    }
+}
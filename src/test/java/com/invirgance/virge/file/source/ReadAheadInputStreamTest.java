@@ -0,0 +1,155 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.source;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+/**
+ * Reads through the background thread and checks that the end and errors
+ * are sticky, and that closing waits for a read in progress.
+ * 
+ * @author agent
+ */
+public class ReadAheadInputStreamTest
+{
+    private static byte[] generate(int length)
+    {
+        byte[] data = new byte[length];
+        
+        for(int i=0; i<length; i++) data[i] = (byte)(i * 31);
+        
+        return data;
+    }
+    
+    @Test
+    public void testRead() throws IOException
+    {
+        byte[] data = generate(10000);
+        
+        try(ReadAheadInputStream in = new ReadAheadInputStream(new ByteArrayInputStream(data), 1000, 2))
+        {
+            assertArrayEquals(data, in.readAllBytes());
+            assertEquals(-1, in.read());
+            assertEquals(-1, in.read(new byte[10], 0, 10));
+        }
+    }
+    
+    @Test
+    public void testErrorRepeats()
+    {
+        InputStream failing = new InputStream() {
+            
+            private int count;
+            
+            @Override
+            public int read() throws IOException
+            {
+                byte[] data = new byte[1];
+                
+                return (read(data, 0, 1) < 0) ? -1 : (data[0] & 0xFF);
+            }
+            
+            @Override
+            public int read(byte[] data, int offset, int length) throws IOException
+            {
+                if(count >= 5000) throw new IOException("Failed");
+                
+                length = Math.min(length, 5000 - count);
+                count += length;
+                
+                return length;
+            }
+        };
+        
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            try(ReadAheadInputStream in = new ReadAheadInputStream(failing, 1000, 2))
+            {
+                assertThrows(IOException.class, () -> in.readAllBytes());
+                
+                // Later reads fail the same way rather than waiting for another block
+                assertEquals("Failed", assertThrows(IOException.class, () -> in.read()).getMessage());
+                assertEquals("Failed", assertThrows(IOException.class, () -> in.read(new byte[10], 0, 10)).getMessage());
+            }
+        });
+    }
+    
+    @Test
+    public void testCloseWaitsForRead() throws Exception
+    {
+        CountDownLatch reading = new CountDownLatch(1);
+        AtomicBoolean inRead = new AtomicBoolean();
+        AtomicBoolean closedDuringRead = new AtomicBoolean();
+        InputStream slow = new InputStream() {
+            
+            @Override
+            public int read() throws IOException
+            {
+                return 1;
+            }
+            
+            @Override
+            public int read(byte[] data, int offset, int length) throws IOException
+            {
+                inRead.set(true);
+                reading.countDown();
+                
+                try
+                {
+                    Thread.sleep(200);
+                }
+                catch(InterruptedException e)
+                {
+                    // Keep going like a read that can't be interrupted
+                }
+                
+                inRead.set(false);
+                
+                return length;
+            }
+            
+            @Override
+            public void close()
+            {
+                closedDuringRead.set(inRead.get());
+            }
+        };
+        ReadAheadInputStream in = new ReadAheadInputStream(slow, 1000, 1);
+        
+        reading.await();
+        in.close();
+        
+        assertFalse(closedDuringRead.get());
+        assertThrows(IOException.class, () -> in.read());
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.transform;
+
+import com.invirgance.convirgance.json.JSONObject;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Infers types from a small sample and checks how empty values and columns
+ * without a type in the sample are converted.
+ * 
+ * @author agent
+ */
+public class InferTypesTransformerTest
+{
+    private static List<JSONObject> transform(int sampleSize, String... values)
+    {
+        List<JSONObject> records = new ArrayList<>();
+        List<JSONObject> result = new ArrayList<>();
+        JSONObject record;
+        
+        for(String value : values)
+        {
+            record = new JSONObject();
+            
+            record.put("value", value);
+            records.add(record);
+        }
+        
+        for(JSONObject item : new InferTypesTransformer(sampleSize).transform(records)) result.add(item);
+        
+        return result;
+    }
+    
+    @Test
+    public void testEmptyNumbers()
+    {
+        List<JSONObject> records = transform(3, "1", "", "3", "", "x");
+        
+        assertEquals(1, records.get(0).get("value"));
+        assertNull(records.get(1).get("value"));
+        assertEquals(3, records.get(2).get("value"));
+        assertNull(records.get(3).get("value"));
+        assertEquals("x", records.get(4).get("value"));
+    }
+    
+    @Test
+    public void testEmptyText()
+    {
+        List<JSONObject> records = transform(3, "a", "", "00501");
+        
+        assertEquals("", records.get(1).get("value"));
+        assertEquals("00501", records.get(2).get("value"));
+    }
+    
+    @Test
+    public void testEmptySample()
+    {
+        List<JSONObject> records = transform(2, "", "", "12", "true", "2.5", "00501", "");
+        
+        assertEquals("", records.get(0).get("value"));
+        assertEquals(12, records.get(2).get("value"));
+        assertEquals(Boolean.TRUE, records.get(3).get("value"));
+        assertEquals(2.5, records.get(4).get("value"));
+        assertEquals("00501", records.get(5).get("value"));
+        assertEquals("", records.get(6).get("value"));
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.transform;
+
+import com.invirgance.convirgance.json.JSONObject;
+import com.invirgance.convirgance.source.Source;
+import com.invirgance.virge.file.source.CloseableSource;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the boundaries of skip and limit, that upstream is not read past 
+ * the limit, and that the limit listener runs once and closes the source.
+ * 
+ * @author agent
+ */
+public class LimitTransformerTest
+{
+    private final AtomicInteger read = new AtomicInteger();
+    
+    private Iterable<JSONObject> generate(int count)
+    {
+        return () -> new Iterator<JSONObject>() {
+            
+            private int index;
+            
+            @Override
+            public boolean hasNext()
+            {
+                return (index < count);
+            }
+
+            @Override
+            public JSONObject next()
+            {
+                JSONObject record = new JSONObject();
+                
+                record.put("id", index++);
+                read.incrementAndGet();
+                
+                return record;
+            }
+        };
+    }
+    
+    private List<Integer> limit(long skip, long limit)
+    {
+        List<Integer> ids = new ArrayList<>();
+        
+        read.set(0);
+        
+        for(JSONObject record : new LimitTransformer(skip, limit).transform(generate(10))) ids.add((Integer)record.get("id"));
+        
+        return ids;
+    }
+    
+    @Test
+    public void testBoundaries()
+    {
+        assertEquals(List.of(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), limit(0, -1));
+        assertEquals(List.of(3, 4, 5, 6, 7, 8, 9), limit(3, -1));
+        assertEquals(List.of(3, 4, 5, 6), limit(3, 4));
+        assertEquals(List.of(8, 9), limit(8, 5));
+        assertEquals(List.of(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), limit(0, 10));
+        assertEquals(List.of(), limit(10, 1));
+        assertEquals(List.of(), limit(20, -1));
+    }
+    
+    @Test
+    public void testNotReadPastLimit()
+    {
+        assertEquals(List.of(3, 4), limit(3, 2));
+        assertEquals(5, read.get());
+        
+        assertEquals(List.of(), limit(0, 0));
+        assertEquals(0, read.get());
+        
+        assertEquals(List.of(), limit(5, 0));
+        assertEquals(0, read.get());
+    }
+    
+    @Test
+    public void testListenerOnce()
+    {
+        LimitTransformer limiter = new LimitTransformer(2, 3);
+        AtomicInteger calls = new AtomicInteger();
+        Iterator<JSONObject> iterator;
+        
+        limiter.setLimitListener(calls::incrementAndGet);
+        
+        iterator = limiter.transform(generate(10)).iterator();
+        
+        for(int i=0; i<3; i++) iterator.next();
+        
+        assertEquals(0, calls.get());
+        assertFalse(iterator.hasNext());
+        assertFalse(iterator.hasNext());
+        assertEquals(1, calls.get());
+        
+        // The input running out first is not the limit
+        limiter = new LimitTransformer(0, 20);
+        limiter.setLimitListener(calls::incrementAndGet);
+        
+        for(JSONObject record : limiter.transform(generate(10))) assertTrue(record.containsKey("id"));
+        
+        assertEquals(1, calls.get());
+    }
+    
+    @Test
+    public void testListenerLimitZero()
+    {
+        LimitTransformer limiter = new LimitTransformer(0, 0);
+        AtomicInteger calls = new AtomicInteger();
+        
+        limiter.setLimitListener(calls::incrementAndGet);
+        
+        assertFalse(limiter.transform(generate(10)).iterator().hasNext());
+        assertEquals(1, calls.get());
+    }
+    
+    @Test
+    public void testClosesSource() throws IOException
+    {
+        AtomicBoolean closed = new AtomicBoolean();
+        Source source = () -> new ByteArrayInputStream(new byte[100]) {
+            
+            @Override
+            public void close() throws IOException
+            {
+                closed.set(true);
+                super.close();
+            }
+        };
+        CloseableSource closeable = new CloseableSource(source);
+        LimitTransformer limiter = new LimitTransformer(0, 5);
+        List<Integer> ids = new ArrayList<>();
+        
+        try(InputStream in = closeable.getInputStream())
+        {
+            assertEquals(0, in.read());
+            
+            limiter.setLimitListener(closeable::close);
+            
+            for(JSONObject record : limiter.transform(generate(10))) ids.add((Integer)record.get("id"));
+            
+            assertEquals(List.of(0, 1, 2, 3, 4), ids);
+            assertTrue(closeable.isClosed());
+            assertTrue(closed.get());
+        }
+    }
+}
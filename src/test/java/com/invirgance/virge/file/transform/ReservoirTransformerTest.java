@@ -0,0 +1,115 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.transform;
+
+import com.invirgance.convirgance.ConvirganceException;
+import com.invirgance.convirgance.json.JSONObject;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that Algorithm L returns min(k, n) distinct records in their input
+ * order, spread across the input, and reproducibly for a seed.
+ * 
+ * @author agent
+ */
+public class ReservoirTransformerTest
+{
+    private static List<JSONObject> generate(int count)
+    {
+        List<JSONObject> records = new ArrayList<>();
+        JSONObject record;
+        
+        for(int i=0; i<count; i++)
+        {
+            record = new JSONObject();
+            
+            record.put("id", i);
+            records.add(record);
+        }
+        
+        return records;
+    }
+    
+    private static List<Integer> sample(int size, long seed, int count)
+    {
+        ReservoirTransformer reservoir = new ReservoirTransformer(size);
+        List<Integer> ids = new ArrayList<>();
+        
+        reservoir.setSeed(seed);
+        
+        for(JSONObject record : reservoir.transform(generate(count))) ids.add((Integer)record.get("id"));
+        
+        return ids;
+    }
+    
+    private static void assertOrdered(List<Integer> ids)
+    {
+        for(int i=1; i<ids.size(); i++) assertTrue(ids.get(i - 1) < ids.get(i), "Out of order at " + i);
+    }
+    
+    @Test
+    public void testSize()
+    {
+        List<Integer> ids = sample(100, 1, 10000);
+        
+        assertEquals(100, ids.size());
+        assertOrdered(ids);
+        
+        // Fewer records than the reservoir returns them all
+        assertEquals(20, sample(50, 1, 20).size());
+        assertOrdered(sample(50, 1, 20));
+        assertEquals(50, sample(50, 1, 50).size());
+        
+        assertEquals(0, sample(0, 1, 100).size());
+        assertEquals(0, sample(10, 1, 0).size());
+        
+        assertThrows(ConvirganceException.class, () -> new ReservoirTransformer(-1));
+    }
+    
+    @Test
+    public void testSpread()
+    {
+        List<Integer> ids = sample(1000, SampleTransformer.DEFAULT_SEED, 100000);
+        long sum = 0;
+        
+        for(int id : ids) sum += id;
+        
+        // A uniform sample averages near the middle, within about five standard deviations
+        assertOrdered(ids);
+        assertTrue(Math.abs(sum / ids.size() - 50000) < 5000, "Mean " + (sum / ids.size()));
+        assertTrue(ids.get(ids.size() - 1) > 90000);
+    }
+    
+    @Test
+    public void testSeed()
+    {
+        assertEquals(sample(100, 42, 10000), sample(100, 42, 10000));
+        assertNotEquals(sample(100, 42, 10000), sample(100, 43, 10000));
+    }
+}
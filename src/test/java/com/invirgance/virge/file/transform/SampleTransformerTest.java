@@ -0,0 +1,100 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.transform;
+
+import com.invirgance.convirgance.ConvirganceException;
+import com.invirgance.convirgance.json.JSONObject;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the edge rates, that a sample keeps the input order and roughly 
+ * the requested share of records, and that a seed makes it reproducible.
+ * 
+ * @author agent
+ */
+public class SampleTransformerTest
+{
+    private static List<JSONObject> generate(int count)
+    {
+        List<JSONObject> records = new ArrayList<>();
+        JSONObject record;
+        
+        for(int i=0; i<count; i++)
+        {
+            record = new JSONObject();
+            
+            record.put("id", i);
+            records.add(record);
+        }
+        
+        return records;
+    }
+    
+    private static List<Integer> sample(double rate, long seed, int count)
+    {
+        SampleTransformer sampler = new SampleTransformer(rate);
+        List<Integer> ids = new ArrayList<>();
+        
+        sampler.setSeed(seed);
+        
+        for(JSONObject record : sampler.transform(generate(count))) ids.add((Integer)record.get("id"));
+        
+        return ids;
+    }
+    
+    @Test
+    public void testEdgeRates()
+    {
+        assertEquals(0, sample(0, 1, 1000).size());
+        assertEquals(1000, sample(1, 1, 1000).size());
+        assertEquals(0, sample(0.5, 1, 0).size());
+        
+        assertThrows(ConvirganceException.class, () -> new SampleTransformer(-0.1));
+        assertThrows(ConvirganceException.class, () -> new SampleTransformer(1.5));
+        assertThrows(ConvirganceException.class, () -> new SampleTransformer(Double.NaN));
+    }
+    
+    @Test
+    public void testRate()
+    {
+        List<Integer> ids = sample(0.1, SampleTransformer.DEFAULT_SEED, 100000);
+        
+        // Within five standard deviations of the expected 10000
+        assertTrue(Math.abs(ids.size() - 10000) < 500, "Sampled " + ids.size());
+        
+        for(int i=1; i<ids.size(); i++) assertTrue(ids.get(i - 1) < ids.get(i));
+    }
+    
+    @Test
+    public void testSeed()
+    {
+        assertEquals(sample(0.05, 42, 10000), sample(0.05, 42, 10000));
+        assertNotEquals(sample(0.05, 42, 10000), sample(0.05, 43, 10000));
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the “Software”), to deal
+in the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+of the Software, and to permit persons to whom the Software is furnished to do
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+ */
+package com.invirgance.virge.file.transform;
+
+import com.invirgance.convirgance.json.JSONObject;
+import java.math.BigDecimal;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that numeric comparisons are exact for values a double can't 
+ * represent.
+ * 
+ * @author agent
+ */
+public class WhereParserTest
+{
+    private static boolean test(String expression, Object value)
+    {
+        JSONObject record = new JSONObject();
+        
+        record.put("value", value);
+        
+        return new WhereParser(expression).parse().test(record);
+    }
+    
+    @Test
+    public void testLargeLongs()
+    {
+        // Both round to the same double
+        assertFalse(test("value = 9007199254740993", 9007199254740992L));
+        assertTrue(test("value < 9007199254740993", 9007199254740992L));
+        assertTrue(test("value = 9007199254740993", 9007199254740993L));
+        assertTrue(test("value = 9007199254740993", "9007199254740993"));
+        assertFalse(test("value in (9007199254740992)", "9007199254740993"));
+    }
+    
+    @Test
+    public void testMixed()
+    {
+        assertTrue(test("value = 0.1", 0.1));
+        assertTrue(test("value = 0.1", "0.1"));
+        assertTrue(test("value = 2", 2.0));
+        assertTrue(test("value > 9007199254740992", new BigDecimal("9007199254740992.5")));
+        assertFalse(test("value = 9007199254740993", 9007199254740992.0));
+        assertTrue(test("value < 1.5", 1));
+        assertTrue(test("value >= -3", "-3"));
+    }
+    
+    @Test
+    public void testNonNumeric()
+    {
+        assertFalse(test("value > 10", "abc"));
+        assertFalse(test("value >= 100", "abc"));
+        assertFalse(test("value != 100", "abc"));
+        assertFalse(test("value = 1", null));
+        assertTrue(test("value > 1e300", Double.POSITIVE_INFINITY));
+        assertTrue(test("value = 'abc'", "abc"));
+        assertTrue(test("value > 'abc'", "abd"));
+    }
+    
+    @Test
+    public void testBlank()
+    {
+        // "" sorts before "100" as a string but isn't a number
+        assertFalse(test("value < 100", ""));
+        assertFalse(test("value >= 100", ""));
+        assertFalse(test("value = 0", ""));
+        assertFalse(test("value in (0, 100)", ""));
+        assertTrue(test("value = ''", ""));
+    }
+}